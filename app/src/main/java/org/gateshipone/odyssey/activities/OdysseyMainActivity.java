@@ -724,7 +724,7 @@ public class OdysseyMainActivity extends GenericActivity
             allAlbums.remove(0);
             if(!allAlbums.isEmpty()) {
                 mTrackRandomGenerator.setEnabled(mIntelligenceFactor);
-                if(mTrackRandomGenerator.getmDataAlbum().isEmpty()) {
+                if(mTrackRandomGenerator.isAlbumDataEmpty()) {
                     mTrackRandomGenerator.fillAlbumFromList(allAlbums);
                 }
                 int num;
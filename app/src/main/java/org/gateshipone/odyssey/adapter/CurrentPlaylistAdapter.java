@@ -35,6 +35,7 @@ import org.gateshipone.odyssey.artwork.ArtworkManager;
 import org.gateshipone.odyssey.models.TrackModel;
 import org.gateshipone.odyssey.playbackservice.NowPlayingInformation;
 import org.gateshipone.odyssey.playbackservice.PlaybackServiceConnection;
+import org.gateshipone.odyssey.playbackservice.PlaylistWindow;
 import org.gateshipone.odyssey.viewitems.ListViewItem;
 
 public class CurrentPlaylistAdapter extends BaseAdapter implements ScrollSpeedAdapter {
@@ -54,7 +55,23 @@ public class CurrentPlaylistAdapter extends BaseAdapter implements ScrollSpeedAd
      */
     private long mAvgImageTime;
 
-    private static final int CACHE_SIZE = 250;
+    /**
+     * Number of tracks that are requested from the PBS in one transaction.
+     */
+    private static final int WINDOW_SIZE = 100;
+
+    /**
+     * Distance in tracks ahead of the scroll direction at which the next window is prefetched.
+     */
+    private static final int PREFETCH_DISTANCE = WINDOW_SIZE / 4;
+
+    /**
+     * Number of tracks that are requested behind the missing position, so small direction
+     * changes do not cause another transaction.
+     */
+    private static final int WINDOW_OVERLAP = 10;
+
+    private static final int CACHE_SIZE = 5 * WINDOW_SIZE;
 
     private static final String TAG = CurrentPlaylistAdapter.class.getSimpleName();
 
@@ -83,6 +100,16 @@ public class CurrentPlaylistAdapter extends BaseAdapter implements ScrollSpeedAd
      */
     private final LruCache<Integer, TrackModel> mTrackCache;
 
+    /**
+     * Position of the last created view, used to determine the scroll direction for prefetching.
+     */
+    private int mLastViewPosition;
+
+    /**
+     * Current scroll direction, windows are prefetched in this direction.
+     */
+    private boolean mScrollingDown = true;
+
     public CurrentPlaylistAdapter(Context context, PlaybackServiceConnection playbackServiceConnection) {
         super();
 
@@ -120,23 +147,59 @@ public class CurrentPlaylistAdapter extends BaseAdapter implements ScrollSpeedAd
      */
     @Override
     public Object getItem(int position) {
+        if (mPlaybackServiceConnection == null) {
+            return null;
+        }
+
         try {
-            if (mPlaybackServiceConnection != null) {
-                // Check cache first for a hit
-                TrackModel track = mTrackCache.get(position);
-                if (track == null) {
-                    track = mPlaybackServiceConnection.getPBS().getPlaylistSong(position);
-                    mTrackCache.put(position, track);
-                }
-                return track;
-            } else {
-                return null;
+            final boolean scrollingDown = mScrollingDown;
+
+            // Check cache first for a hit
+            TrackModel track = mTrackCache.get(position);
+            if (track == null) {
+                loadWindow(position, scrollingDown);
+                track = mTrackCache.get(position);
+            }
+
+            // Prefetch the next window ahead of the scroll direction
+            final int prefetchPosition = scrollingDown ? position + PREFETCH_DISTANCE : position - PREFETCH_DISTANCE;
+            if (prefetchPosition >= 0 && prefetchPosition < mPlaylistSize && mTrackCache.get(prefetchPosition) == null) {
+                loadWindow(prefetchPosition, scrollingDown);
             }
+
+            return track;
         } catch (RemoteException e) {
             return null;
         }
     }
 
+    /**
+     * Loads a window of tracks from the PBS into the cache. The window extends in the scroll
+     * direction starting at the given position.
+     *
+     * @param position      Position that must be part of the window.
+     * @param scrollingDown True if the window should extend below the position, false if above.
+     */
+    private void loadWindow(int position, boolean scrollingDown) throws RemoteException {
+        int offset;
+        if (scrollingDown) {
+            offset = position - WINDOW_OVERLAP;
+        } else {
+            offset = position - WINDOW_SIZE + WINDOW_OVERLAP + 1;
+        }
+        offset = Math.max(0, Math.min(offset, mPlaylistSize - WINDOW_SIZE));
+
+        final PlaylistWindow window = mPlaybackServiceConnection.getPBS().getPlaylistWindow(offset, WINDOW_SIZE);
+        if (window == null) {
+            return;
+        }
+
+        int trackPosition = window.getOffset();
+        for (TrackModel track : window.getTracks()) {
+            mTrackCache.put(trackPosition++, track);
+        }
+    }
+
     /**
      * Simple position->id mapping here.
      *
@@ -193,6 +256,11 @@ public class CurrentPlaylistAdapter extends BaseAdapter implements ScrollSpeedAd
      */
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
+        // Views are created in the scroll direction, other calls to getItem are not reliable for this
+        if (position != mLastViewPosition) {
+            mScrollingDown = position > mLastViewPosition;
+            mLastViewPosition = position;
+        }
 
         // get the trackmodel for the current position from the PBS
         TrackModel currentTrack = (TrackModel) getItem(position);
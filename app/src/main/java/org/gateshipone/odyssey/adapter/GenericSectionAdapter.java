@@ -28,7 +28,9 @@ import android.widget.SectionIndexer;
 import androidx.core.util.Pair;
 
 import org.gateshipone.odyssey.models.GenericModel;
+import org.gateshipone.odyssey.utils.CursorModelList;
 import org.gateshipone.odyssey.utils.FilterTask;
+import org.gateshipone.odyssey.utils.SearchIndex;
 import org.gateshipone.odyssey.utils.SectionCreator;
 
 import java.util.ArrayList;
@@ -55,8 +57,9 @@ public abstract class GenericSectionAdapter<T extends GenericModel> extends Base
 
     /**
      * Abstract list with model data used for this adapter.
+     * A {@link CursorModelList} is used directly, all other lists are copied.
      */
-    private final List<T> mModelData;
+    private List<T> mModelData;
 
     private final List<T> mFilteredModelData;
 
@@ -68,6 +71,11 @@ public abstract class GenericSectionAdapter<T extends GenericModel> extends Base
      */
     private FilterTask<T> mFilterTask;
 
+    /**
+     * Search index for the current model data, created on the first filter request for the data.
+     */
+    private SearchIndex<T> mSearchIndex;
+
     private final ReentrantReadWriteLock mLock;
 
     private final SectionCreator<T> mSectionCreator;
@@ -99,16 +107,24 @@ public abstract class GenericSectionAdapter<T extends GenericModel> extends Base
      */
     public void swapModel(List<T> data) {
         mLock.writeLock().lock();
+        // a running filter task must not search the old data, it might be closed after the swap
+        if (mFilterTask != null) {
+            mFilterTask.cancel(true);
+        }
         mFilteredModelData.clear();
         if (data == null) {
-            mModelData.clear();
+            mModelData = new ArrayList<>();
+            mSearchIndex = null;
             mLock.writeLock().unlock();
             notifyDataSetChanged();
             return;
+        } else if (data instanceof CursorModelList) {
+            // cursor backed lists are read only, copying would create all models
+            mModelData = data;
         } else {
-            mModelData.clear();
-            mModelData.addAll(data);
+            mModelData = new ArrayList<>(data);
         }
+        mSearchIndex = new SearchIndex<>(mModelData, this::getSearchTerm);
         mLock.writeLock().unlock();
 
         setScrollSpeed(0);
@@ -215,7 +231,13 @@ public abstract class GenericSectionAdapter<T extends GenericModel> extends Base
     private void createSections() {
         // Get write lock, to ensure count does not change during execution
         mLock.writeLock().lock();
-        mSectionCreator.createSections(mFilteredModelData.size() > 0 ? mFilteredModelData : mModelData);
+        if (mFilteredModelData.isEmpty() && mModelData instanceof CursorModelList) {
+            // use the precomputed section names, the default section chooser creates the same sections
+            final CursorModelList<T> cursorModelList = (CursorModelList<T>) mModelData;
+            mSectionCreator.createSections(cursorModelList.size(), cursorModelList::getSectionName);
+        } else {
+            mSectionCreator.createSections(mFilteredModelData.size() > 0 ? mFilteredModelData : mModelData);
+        }
         mLock.writeLock().unlock();
     }
 
@@ -273,13 +295,19 @@ public abstract class GenericSectionAdapter<T extends GenericModel> extends Base
     }
 
     private FilterTask<T> provideFilterTask() {
-        return new FilterTask<>(mModelData, mLock.readLock(),
-                provideFilter(),
+        if (mSearchIndex == null) {
+            mSearchIndex = new SearchIndex<>(mModelData, this::getSearchTerm);
+        }
+
+        return new FilterTask<>(mSearchIndex, mLock.readLock(),
                 this::updateAfterFiltering, this::filteringAborted);
     }
 
-    protected FilterTask.Filter<T> provideFilter() {
-        return (elem, filterString) -> elem.getSectionTitle().toLowerCase().contains(filterString.toLowerCase());
+    /**
+     * @return The text of the model that is matched by the filter.
+     */
+    protected String getSearchTerm(final T model) {
+        return model.getSectionTitle();
     }
 
     protected SectionCreator<T> provideSectionCreator() {
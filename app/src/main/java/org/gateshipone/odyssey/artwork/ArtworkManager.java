@@ -52,22 +52,20 @@ import org.gateshipone.odyssey.artwork.network.artprovider.FanartTVProvider;
 import org.gateshipone.odyssey.artwork.network.artprovider.LastFMProvider;
 import org.gateshipone.odyssey.artwork.network.artprovider.MusicBrainzProvider;
 import org.gateshipone.odyssey.artwork.storage.ArtworkDatabaseManager;
+import org.gateshipone.odyssey.artwork.storage.ArtworkMissPolicy;
+import org.gateshipone.odyssey.artwork.storage.ArtworkStoreReport;
 import org.gateshipone.odyssey.artwork.storage.ImageNotFoundException;
 import org.gateshipone.odyssey.models.AlbumModel;
 import org.gateshipone.odyssey.models.ArtistModel;
+import org.gateshipone.odyssey.models.GenericModel;
 import org.gateshipone.odyssey.models.TrackModel;
 import org.gateshipone.odyssey.utils.BitmapUtils;
 import org.gateshipone.odyssey.utils.MusicLibraryHelper;
 import org.gateshipone.odyssey.utils.NetworkUtils;
-import org.gateshipone.odyssey.utils.PermissionHelper;
 import org.json.JSONException;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Set;
 
 public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTask.ImageSavedCallback {
 
@@ -100,11 +98,6 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
 
     private static final String INTENT_EXTRA_KEY_ARTIST_NAME = "org.gateshipone.odyssey.extra.artist_name";
 
-    /**
-     * The list of supported artwork filenames. This will be used to check if a local cover exists.
-     */
-    private static final List<String> ALLOWED_ARTWORK_FILENAMES = new ArrayList<>(Arrays.asList("cover.jpg", "cover.jpeg", "cover.png", "folder.jpg", "folder.jpeg", "folder.png", "artwork.jpg", "artwork.jpeg", "artwork.png"));
-
     /**
      * Private static singleton instance that can be used by other classes via the
      * getInstance method.
@@ -136,6 +129,16 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
      */
     private final ArtworkDatabaseManager mDBManager;
 
+    /**
+     * Disk tier for pre-scaled artwork behind the {@link BitmapCache}
+     */
+    private final ThumbnailCache mThumbnailCache;
+
+    /**
+     * Index of the cover files in the folders of the music library
+     */
+    private final LocalArtworkIndex mLocalArtworkIndex;
+
     /**
      * List of observers that needs updating if a new ArtistImage is downloaded.
      */
@@ -159,6 +162,10 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
 
         mDBManager = ArtworkDatabaseManager.getInstance(mApplicationContext);
 
+        mThumbnailCache = ThumbnailCache.getInstance(mApplicationContext);
+
+        mLocalArtworkIndex = LocalArtworkIndex.getInstance(mApplicationContext);
+
         mArtistListeners = new ArrayList<>();
         mAlbumListeners = new ArrayList<>();
 
@@ -174,6 +181,60 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
         mUseLocalImages = sharedPref.getBoolean(mApplicationContext.getString(R.string.pref_artwork_use_local_images_key), mApplicationContext.getResources().getBoolean(R.bool.pref_artwork_use_local_images_default));
 
         mMinimumImageSizeValue = (int) mApplicationContext.getResources().getDimension(R.dimen.material_list_item_height);
+
+        if (mUseLocalImages) {
+            mLocalArtworkIndex.refresh();
+        }
+
+        prepareStorage(!sharedPref.getBoolean(mApplicationContext.getString(R.string.pref_artwork_content_addressed_key), false));
+    }
+
+    /**
+     * Loads the placeholder colors of all images and renames the existing artwork files to the hash
+     * of their content once. Hashing all files can take a while on large libraries so it is done
+     * in a low priority background thread.
+     *
+     * @param migrateFiles True if the artwork files were not migrated yet.
+     */
+    private void prepareStorage(final boolean migrateFiles) {
+        final Thread storageThread = new Thread(() -> {
+            mDBManager.loadPlaceholderColors();
+
+            if (!migrateFiles) {
+                return;
+            }
+
+            final ArtworkStoreReport report = mDBManager.migrateToContentAddressedFiles();
+
+            if (BuildConfig.DEBUG) {
+                Log.v(TAG, report.toString());
+            }
+
+            PreferenceManager.getDefaultSharedPreferences(mApplicationContext).edit()
+                    .putBoolean(mApplicationContext.getString(R.string.pref_artwork_content_addressed_key), true)
+                    .apply();
+        }, "ArtworkStorage");
+        storageThread.setPriority(Thread.MIN_PRIORITY);
+        storageThread.setDaemon(true);
+        storageThread.start();
+    }
+
+    /**
+     * Returns the average color of the image of the album, artist or the album of the track.
+     * Does not access the database, so it can be used to paint a placeholder while binding a view.
+     *
+     * @param model The album, artist or track
+     * @return The color or 0 if no color is known
+     */
+    public int getPlaceholderColor(final GenericModel model) {
+        if (model instanceof AlbumModel) {
+            return mDBManager.getAlbumPlaceholderColor(((AlbumModel) model).getAlbumId());
+        } else if (model instanceof ArtistModel) {
+            return mDBManager.getArtistPlaceholderColor((ArtistModel) model);
+        } else if (model instanceof TrackModel) {
+            return mDBManager.getAlbumPlaceholderColor(((TrackModel) model).getTrackAlbumId());
+        }
+        return 0;
     }
 
     public static synchronized ArtworkManager getInstance(Context context) {
@@ -200,6 +261,11 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
         mAlbumProvider = albumProvider;
         mWifiOnly = wifiOnly;
         mUseLocalImages = useLocalImages;
+
+        if (mUseLocalImages) {
+            // pick up folders that were changed since the last pass
+            mLocalArtworkIndex.refresh();
+        }
     }
 
     /**
@@ -215,7 +281,8 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
         // Clear the old image
         mDBManager.removeAlbumImage(album);
 
-        // Clear the old image from the cache
+        // Clear the old image from the caches
+        mThumbnailCache.remove(ThumbnailCache.getAlbumKey(album));
         BitmapCache.getInstance().removeAlbumBitmap(album);
 
         // Reload the image from the internet
@@ -235,13 +302,18 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
         // Clear the old image
         mDBManager.removeArtistImage(artist);
 
-        // Clear the old image from the cache
+        // Clear the old image from the caches
+        mThumbnailCache.remove(ThumbnailCache.getArtistKey(artist));
         BitmapCache.getInstance().removeArtistImage(artist);
 
         // Reload the image from the internet
         fetchImage(artist);
     }
 
+    /**
+     * Returns the image of an artist. The returned bitmap is acquired at the {@link BitmapPool}
+     * before it is visible in the {@link BitmapCache}, the caller must release it.
+     */
     public Bitmap getImage(final ArtistModel artist, int width, int height, boolean skipCache) throws ImageNotFoundException {
         if (null == artist) {
             return null;
@@ -254,25 +326,30 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
 
         if (!skipCache) {
             // Try cache first
-            Bitmap cacheImage = BitmapCache.getInstance().requestArtistImage(artist);
+            Bitmap cacheImage = BitmapCache.getInstance().acquireArtistImage(artist);
             if (cacheImage != null && requestedWidth <= cacheImage.getWidth() &&
                     requestedHeight <= cacheImage.getHeight()) {
                 return cacheImage;
             }
+            releaseBitmap(cacheImage);
         }
 
         final String image = mDBManager.getArtistImage(artist);
 
         // Checks if the database has an image for the requested artist
         if (null != image) {
-            // Create a bitmap from the data blob in the database
-            Bitmap bm = BitmapUtils.decodeSampledBitmapFromFile(image, requestedWidth, requestedHeight);
+            // Create a bitmap from the image file referenced by the database
+            Bitmap bm = decodeArtworkFile(ThumbnailCache.getArtistKey(artist), image, requestedWidth, requestedHeight);
             BitmapCache.getInstance().putArtistImage(artist, bm);
             return bm;
         }
         return null;
     }
 
+    /**
+     * Returns the image of an album. The returned bitmap is acquired at the {@link BitmapPool}
+     * before it is visible in the {@link BitmapCache}, the caller must release it.
+     */
     public Bitmap getImage(final AlbumModel album, int width, int height, boolean skipCache) throws ImageNotFoundException {
         if (null == album) {
             return null;
@@ -285,11 +362,12 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
 
         if (!skipCache) {
             // Try cache first
-            Bitmap cacheBitmap = BitmapCache.getInstance().requestAlbumBitmap(album);
+            Bitmap cacheBitmap = BitmapCache.getInstance().acquireAlbumBitmap(album);
             if (cacheBitmap != null && requestedWidth <= cacheBitmap.getWidth()
                     && requestedHeight <= cacheBitmap.getHeight()) {
                 return cacheBitmap;
             }
+            releaseBitmap(cacheBitmap);
         }
 
         // Check local artwork database
@@ -301,6 +379,7 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
                 final Uri imageUri = ContentUris.withAppendedId(MediaStore.Audio.Albums.EXTERNAL_CONTENT_URI, album.getAlbumId());
                 try {
                     bm = mApplicationContext.getContentResolver().loadThumbnail(imageUri, new Size(requestedWidth, requestedHeight), null);
+                    BitmapPool.getInstance().acquire(bm);
                     BitmapCache.getInstance().putAlbumBitmap(album, bm);
                     return bm;
                 } catch (IOException ignored) {
@@ -312,7 +391,7 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
 
                 if (albumURL != null && !albumURL.isEmpty()) {
                     // Local album art found (android database)
-                    Bitmap bm = BitmapUtils.decodeSampledBitmapFromFile(albumURL, requestedWidth, requestedHeight);
+                    Bitmap bm = decodeArtworkFile(ThumbnailCache.getAlbumKey(album), albumURL, requestedWidth, requestedHeight);
                     BitmapCache.getInstance().putAlbumBitmap(album, bm);
                     return bm;
                 }
@@ -323,14 +402,57 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
 
         // Checks if the database has an image for the requested album
         if (null != image) {
-            // Create a bitmap from the data blob in the database
-            Bitmap bm = BitmapUtils.decodeSampledBitmapFromFile(image, requestedWidth, requestedHeight);
+            // Create a bitmap from the image file referenced by the database
+            Bitmap bm = decodeArtworkFile(ThumbnailCache.getAlbumKey(album), image, requestedWidth, requestedHeight);
             BitmapCache.getInstance().putAlbumBitmap(album, bm);
             return bm;
         }
         return null;
     }
 
+    /**
+     * Decodes an artwork file. Uses an already decoded image of the same file or the pre-scaled
+     * thumbnail from the disk if possible, otherwise the file is decoded and a thumbnail is stored
+     * for the next request.
+     *
+     * @param key       Key of the image for the {@link ThumbnailCache}
+     * @param path      Path of the artwork file
+     * @param width     Requested width of the image
+     * @param height    Requested height of the image
+     * @return The decoded image, acquired at the {@link BitmapPool}, or null if the file could not be decoded
+     */
+    private Bitmap decodeArtworkFile(final String key, final String path, final int width, final int height) {
+        // artwork files are shared by all albums and artists with the same image
+        Bitmap bm = BitmapCache.getInstance().acquireFileBitmap(path);
+        if (bm != null && width <= bm.getWidth() && height <= bm.getHeight()) {
+            return bm;
+        }
+        releaseBitmap(bm);
+
+        bm = mThumbnailCache.get(key, path, width, height);
+        if (bm == null) {
+            bm = BitmapUtils.decodeSampledBitmapFromFile(path, width, height);
+            if (bm != null) {
+                bm = mThumbnailCache.put(key, width, height, bm);
+            }
+        }
+
+        if (bm != null) {
+            BitmapPool.getInstance().acquire(bm);
+        }
+        BitmapCache.getInstance().putFileBitmap(path, bm);
+        return bm;
+    }
+
+    /**
+     * Releases a bitmap that was acquired at the {@link BitmapPool} but is not returned.
+     */
+    private static void releaseBitmap(final Bitmap bitmap) {
+        if (bitmap != null) {
+            BitmapPool.getInstance().release(bitmap);
+        }
+    }
+
     public Bitmap getImage(final TrackModel track, int width, int height, boolean skipCache) throws ImageNotFoundException {
         if (null == track) {
             return null;
@@ -351,21 +473,33 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
      * @param artistModel        Artist to fetch an image for.
      * @param imageSavedCallback Callback if an image was saved.
      * @param errorCallback      Callback if an error occurred.
+     * @param userVisible        True if the image is requested for a visible view, these requests are sent first.
+     * @return False if the request was skipped, none of the callbacks is called in this case.
      */
-    void fetchImage(final ArtistModel artistModel,
+    boolean fetchImage(final ArtistModel artistModel,
                     final InsertImageTask.ImageSavedCallback imageSavedCallback,
-                    final ArtProvider.ArtFetchError errorCallback) {
+                    final ArtProvider.ArtFetchError errorCallback,
+                    final boolean userVisible) {
         if (!NetworkUtils.isDownloadAllowed(mApplicationContext, mWifiOnly)) {
-            return;
+            return false;
+        }
+
+        if (mDBManager.isArtistMissPending(artistModel, mArtistProvider)) {
+            // the last lookup failed, wait for the retry time of the negative cache
+            return false;
         }
 
         final ArtworkRequestModel requestModel = new ArtworkRequestModel(artistModel);
+        requestModel.setUserVisible(userVisible);
+        requestModel.setProvider(mArtistProvider);
 
         if (mArtistProvider.equals(mApplicationContext.getString(R.string.pref_artwork_provider_fanarttv_key))) {
             FanartTVProvider.getInstance(mApplicationContext).fetchImage(requestModel,
-                    response -> new InsertImageTask(mApplicationContext, imageSavedCallback).execute(response),
+                    response -> new InsertImageTask(mApplicationContext, imageSavedCallback).start(response),
                     errorCallback);
+            return true;
         }
+        return false;
     }
 
     /**
@@ -375,7 +509,7 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
      * @param artistModel Artist to fetch an image for.
      */
     public void fetchImage(final ArtistModel artistModel) {
-        fetchImage(artistModel, this, this);
+        fetchImage(artistModel, this, this, true);
     }
 
     /**
@@ -384,50 +518,56 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
      * @param albumModel         Album to fetch an image for.
      * @param imageSavedCallback Callback if an image was saved.
      * @param errorCallback      Callback if an error occurred.
+     * @param userVisible        True if the image is requested for a visible view, these requests are sent first.
+     * @return False if the request was skipped, none of the callbacks is called in this case.
      */
-    void fetchImage(final AlbumModel albumModel,
+    boolean fetchImage(final AlbumModel albumModel,
                     final InsertImageTask.ImageSavedCallback imageSavedCallback,
-                    final ArtProvider.ArtFetchError errorCallback) {
+                    final ArtProvider.ArtFetchError errorCallback,
+                    final boolean userVisible) {
         if (mUseLocalImages) {
-            final Set<String> storageLocations = MusicLibraryHelper.getTrackStorageLocationsForAlbum(albumModel.getAlbumId(), mApplicationContext);
-
-            for (final String location : storageLocations) {
-                final List<File> artworkFiles = PermissionHelper.getFilesForDirectory(mApplicationContext, location, (dir, name) -> ALLOWED_ARTWORK_FILENAMES.contains(name.toLowerCase()));
+            final String coverFile = mLocalArtworkIndex.getArtworkFile(albumModel.getAlbumId());
 
-                if (!artworkFiles.isEmpty()) {
-                    // use the first valid cover file
-                    final File coverFile = artworkFiles.get(0);
+            if (coverFile != null) {
+                final ArtworkRequestModel requestModel = new ArtworkRequestModel(albumModel);
 
-                    final ArtworkRequestModel requestModel = new ArtworkRequestModel(albumModel);
+                ImageResponse response = new ImageResponse();
+                response.model = requestModel;
+                response.image = null;
+                response.url = null;
+                response.localArtworkPath = coverFile;
 
-                    ImageResponse response = new ImageResponse();
-                    response.model = requestModel;
-                    response.image = null;
-                    response.url = null;
-                    response.localArtworkPath = coverFile.getAbsolutePath();
+                new InsertImageTask(mApplicationContext, imageSavedCallback).start(response);
 
-                    new InsertImageTask(mApplicationContext, imageSavedCallback).execute(response);
-
-                    return;
-                }
+                return true;
             }
         }
 
         if (!NetworkUtils.isDownloadAllowed(mApplicationContext, mWifiOnly)) {
-            return;
+            return false;
+        }
+
+        if (mDBManager.isAlbumMissPending(albumModel, mAlbumProvider)) {
+            // the last lookup failed, wait for the retry time of the negative cache
+            return false;
         }
 
         ArtworkRequestModel requestModel = new ArtworkRequestModel(albumModel);
+        requestModel.setUserVisible(userVisible);
+        requestModel.setProvider(mAlbumProvider);
 
         if (mAlbumProvider.equals(mApplicationContext.getString(R.string.pref_artwork_provider_musicbrainz_key))) {
             MusicBrainzProvider.getInstance(mApplicationContext).fetchImage(requestModel,
-                    response -> new InsertImageTask(mApplicationContext, imageSavedCallback).execute(response),
+                    response -> new InsertImageTask(mApplicationContext, imageSavedCallback).start(response),
                     errorCallback);
+            return true;
         } else if (mAlbumProvider.equals(mApplicationContext.getString(R.string.pref_artwork_provider_lastfm_key))) {
             LastFMProvider.getInstance(mApplicationContext).fetchImage(requestModel,
-                    response -> new InsertImageTask(mApplicationContext, imageSavedCallback).execute(response),
+                    response -> new InsertImageTask(mApplicationContext, imageSavedCallback).start(response),
                     errorCallback);
+            return true;
         }
+        return false;
     }
 
     /**
@@ -437,7 +577,7 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
      * @param albumModel Album to fetch an image for.
      */
     public void fetchImage(final AlbumModel albumModel) {
-        fetchImage(albumModel, this, this);
+        fetchImage(albumModel, this, this, true);
     }
 
     /**
@@ -534,11 +674,8 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
             Log.e(TAG, "JSONException fetching: " + model.getLoggingString());
         }
 
-        ImageResponse imageResponse = new ImageResponse();
-        imageResponse.model = model;
-        imageResponse.image = null;
-        imageResponse.url = null;
-        new InsertImageTask(mApplicationContext, this).execute(imageResponse);
+        // an invalid answer is most likely an error page of an overloaded server
+        insertMiss(mApplicationContext, model, true, this);
     }
 
     @Override
@@ -551,15 +688,10 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
             NetworkResponse networkResponse = error.networkResponse;
             if (networkResponse != null && networkResponse.statusCode == 503) {
                 cancelAllRequests();
-                return;
             }
         }
 
-        ImageResponse imageResponse = new ImageResponse();
-        imageResponse.model = model;
-        imageResponse.image = null;
-        imageResponse.url = null;
-        new InsertImageTask(mApplicationContext, this).execute(imageResponse);
+        insertMiss(mApplicationContext, model, isTransientError(error), this);
     }
 
     public void fetchError(ArtworkRequestModel model) {
@@ -567,11 +699,42 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
             Log.e(TAG, "Error fetching: " + model.getLoggingString());
         }
 
+        insertMiss(mApplicationContext, model, false, this);
+    }
+
+    /**
+     * Checks if a failed request should be retried soon or if the provider has no image.
+     *
+     * @param error The error of the request or null if the provider had no matching result.
+     * @return True if the request failed because of a temporary problem like a timeout or an overloaded server.
+     */
+    static boolean isTransientError(final VolleyError error) {
+        if (error == null) {
+            return false;
+        }
+
+        final NetworkResponse networkResponse = error.networkResponse;
+
+        // no response at all means a timeout or a missing connection
+        return networkResponse == null || ArtworkMissPolicy.isTransientStatus(networkResponse.statusCode);
+    }
+
+    /**
+     * Records a failed lookup in the negative cache. The callback is notified after the entry is written.
+     *
+     * @param context            The current context.
+     * @param model              The request that failed.
+     * @param transientFailure   True if the request failed because of a temporary problem.
+     * @param imageSavedCallback Callback that is notified when the failed lookup was recorded.
+     */
+    static void insertMiss(final Context context, final ArtworkRequestModel model, final boolean transientFailure,
+                           final InsertImageTask.ImageSavedCallback imageSavedCallback) {
         ImageResponse imageResponse = new ImageResponse();
         imageResponse.model = model;
         imageResponse.image = null;
         imageResponse.url = null;
-        new InsertImageTask(mApplicationContext, this).execute(imageResponse);
+        imageResponse.transientFailure = transientFailure;
+        new InsertImageTask(context, imageSavedCallback).start(imageResponse);
     }
 
     /**
@@ -25,17 +25,23 @@ package org.gateshipone.odyssey.artwork;
 import android.graphics.Bitmap;
 import android.util.Log;
 
-import androidx.annotation.NonNull;
-import androidx.collection.LruCache;
-
 import org.gateshipone.odyssey.models.AlbumModel;
 import org.gateshipone.odyssey.models.ArtistModel;
 
-import java.util.Map;
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Simple LRU-based caching for album & artist images. This could reduce CPU usage
- * for the cost of memory usage by caching decoded {@link Bitmap} objects in a {@link LruCache}.
+ * for the cost of memory usage by caching decoded {@link Bitmap} objects.
+ * <p>
+ * The images are keyed by the album or artist id without any key allocation. Only models without
+ * an id are keyed by their names. The entries are spread over independently locked stripes, each
+ * stripe keeps its own LRU order, all stripes share one memory budget.
+ * <p>
+ * Decoded artwork files are cached by their path as well, so albums and artists that share an
+ * image file share the decoded bitmap. A bitmap is only counted once against the budget and only
+ * given back to the {@link BitmapPool} when no entry references it anymore.
  */
 public class BitmapCache {
     private static final String TAG = BitmapCache.class.getSimpleName();
@@ -48,19 +54,32 @@ public class BitmapCache {
     private static final int mCacheSize = mMaxMemory / 4;
 
     /**
-     * Hash prefix for album images
+     * Number of independently locked stripes, must be a power of two
+     */
+    private static final int STRIPE_COUNT = 8;
+
+    private static final int TYPE_ALBUM = 1;
+
+    private static final int TYPE_ARTIST = 2;
+
+    private static final int TYPE_FILE = 3;
+
+    private final Stripe[] mStripes;
+
+    /**
+     * Size of all cached images in kilobytes
      */
-    private static final String ALBUM_PREFIX = "A_";
+    private final AtomicLong mSize = new AtomicLong();
 
     /**
-     * Hash prefix for artist images
+     * Number of entries that reference a bitmap, guarded by itself
      */
-    private static final String ARTIST_PREFIX = "B_";
+    private final IdentityHashMap<Bitmap, Integer> mReferenceCounts = new IdentityHashMap<>();
 
     /**
-     * Private cache instance
+     * Stripe that is checked first if the cache needs to evict an image of another stripe
      */
-    private final LruCache<String, Bitmap> mCache;
+    private int mNextEvictionStripe;
 
     /**
      * Singleton instance
@@ -68,15 +87,10 @@ public class BitmapCache {
     private static BitmapCache mInstance;
 
     private BitmapCache() {
-        mCache = new LruCache<String, Bitmap>(mCacheSize) {
-            @Override
-            protected int sizeOf(@NonNull String key, @NonNull Bitmap bitmap) {
-                // The cache size will be measured in kilobytes rather than
-                // number of items.
-                return bitmap.getByteCount() / 1024;
-            }
-
-        };
+        mStripes = new Stripe[STRIPE_COUNT];
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            mStripes[i] = new Stripe();
+        }
     }
 
     public static synchronized BitmapCache getInstance() {
@@ -92,53 +106,58 @@ public class BitmapCache {
      * @param album Album object to try
      * @return Bitmap if cache hit, null otherwise
      */
-    public synchronized Bitmap requestAlbumBitmap(AlbumModel album) {
-        return mCache.get(getAlbumHash(album));
+    public Bitmap requestAlbumBitmap(AlbumModel album) {
+        final long albumId = album.getAlbumId();
+        if (albumId != -1) {
+            return get(TYPE_ALBUM, albumId, null, null, false);
+        }
+        return get(TYPE_ALBUM, -1, album.getArtistName(), album.getAlbumName(), false);
     }
 
     /**
-     * Puts an album image to the cache
+     * Tries to get an album image from the cache. A found image is acquired at the {@link BitmapPool}
+     * before it can be evicted, the caller must release it.
      *
-     * @param album Album object to use for cache key
-     * @param bm    Bitmap to store in cache
+     * @param album Album object to try
+     * @return Bitmap if cache hit, null otherwise
      */
-    public synchronized void putAlbumBitmap(AlbumModel album, Bitmap bm) {
-        if (bm != null) {
-            mCache.put(getAlbumHash(album), bm);
+    public Bitmap acquireAlbumBitmap(AlbumModel album) {
+        final long albumId = album.getAlbumId();
+        if (albumId != -1) {
+            return get(TYPE_ALBUM, albumId, null, null, true);
         }
+        return get(TYPE_ALBUM, -1, album.getArtistName(), album.getAlbumName(), true);
     }
 
     /**
-     * Removes an album image from the cache
+     * Puts an album image to the cache
      *
      * @param album Album object to use for cache key
+     * @param bm    Bitmap to store in cache
      */
-    public synchronized void removeAlbumBitmap(AlbumModel album) {
-        mCache.remove(getAlbumHash(album));
+    public void putAlbumBitmap(AlbumModel album, Bitmap bm) {
+        if (bm != null) {
+            final long albumId = album.getAlbumId();
+            if (albumId != -1) {
+                put(TYPE_ALBUM, albumId, null, null, bm);
+            } else {
+                put(TYPE_ALBUM, -1, album.getArtistName(), album.getAlbumName(), bm);
+            }
+        }
     }
 
     /**
-     * Private hash method for cache key
+     * Removes an album image from the cache
      *
-     * @param album Album to calculate the key from
-     * @return Hash string for cache key
+     * @param album Album object to use for cache key
      */
-    private String getAlbumHash(AlbumModel album) {
-        String hashString = ALBUM_PREFIX;
+    public void removeAlbumBitmap(AlbumModel album) {
         final long albumId = album.getAlbumId();
-
-        // Use albumId as key if available
         if (albumId != -1) {
-            hashString += String.valueOf(albumId);
-            return hashString;
+            remove(TYPE_ALBUM, albumId, null, null);
+        } else {
+            remove(TYPE_ALBUM, -1, album.getArtistName(), album.getAlbumName());
         }
-
-        // Else use artist and album name
-        final String albumArtist = album.getArtistName();
-        final String albumName = album.getAlbumName();
-
-        hashString += albumArtist + '_' + albumName;
-        return hashString;
     }
 
     /*
@@ -151,8 +170,27 @@ public class BitmapCache {
      * @param artist Artist object to check in cache
      * @return Bitmap if cache hit, null otherwise
      */
-    public synchronized Bitmap requestArtistImage(ArtistModel artist) {
-        return mCache.get(getArtistHash(artist));
+    public Bitmap requestArtistImage(ArtistModel artist) {
+        final long artistId = artist.getArtistID();
+        if (artistId != -1) {
+            return get(TYPE_ARTIST, artistId, null, null, false);
+        }
+        return get(TYPE_ARTIST, -1, artist.getArtistName(), null, false);
+    }
+
+    /**
+     * Tries to get an artist image from the cache. A found image is acquired at the {@link BitmapPool}
+     * before it can be evicted, the caller must release it.
+     *
+     * @param artist Artist object to check in cache
+     * @return Bitmap if cache hit, null otherwise
+     */
+    public Bitmap acquireArtistImage(ArtistModel artist) {
+        final long artistId = artist.getArtistID();
+        if (artistId != -1) {
+            return get(TYPE_ARTIST, artistId, null, null, true);
+        }
+        return get(TYPE_ARTIST, -1, artist.getArtistName(), null, true);
     }
 
     /**
@@ -161,9 +199,14 @@ public class BitmapCache {
      * @param artist Artist object used as cache key
      * @param bm     Bitmap to store in cache
      */
-    public synchronized void putArtistImage(ArtistModel artist, Bitmap bm) {
+    public void putArtistImage(ArtistModel artist, Bitmap bm) {
         if (bm != null) {
-            mCache.put(getArtistHash(artist), bm);
+            final long artistId = artist.getArtistID();
+            if (artistId != -1) {
+                put(TYPE_ARTIST, artistId, null, null, bm);
+            } else {
+                put(TYPE_ARTIST, -1, artist.getArtistName(), null, bm);
+            }
         }
     }
 
@@ -172,52 +215,416 @@ public class BitmapCache {
      *
      * @param artist Artist object used as cache key
      */
-    public synchronized void removeArtistImage(ArtistModel artist) {
-        mCache.remove(getArtistHash(artist));
+    public void removeArtistImage(ArtistModel artist) {
+        final long artistId = artist.getArtistID();
+        if (artistId != -1) {
+            remove(TYPE_ARTIST, artistId, null, null);
+        } else {
+            remove(TYPE_ARTIST, -1, artist.getArtistName(), null);
+        }
     }
 
+    /*
+     * Begin of artwork file handling
+     */
+
     /**
-     * Private hash method for cache key
+     * Tries to get the decoded image of an artwork file from the cache
      *
-     * @param artist Artist used as cache key
-     * @return Hash string for cache key
+     * @param path Path of the artwork file
+     * @return Bitmap if cache hit, null otherwise
      */
-    private String getArtistHash(ArtistModel artist) {
-        String hashString = ARTIST_PREFIX;
+    public Bitmap requestFileBitmap(String path) {
+        return get(TYPE_FILE, -1, path, null, false);
+    }
 
-        final long artistId = artist.getArtistID();
+    /**
+     * Tries to get the decoded image of an artwork file from the cache. A found image is acquired
+     * at the {@link BitmapPool} before it can be evicted, the caller must release it.
+     *
+     * @param path Path of the artwork file
+     * @return Bitmap if cache hit, null otherwise
+     */
+    public Bitmap acquireFileBitmap(String path) {
+        return get(TYPE_FILE, -1, path, null, true);
+    }
 
-        // Use albumId as key if available
-        if (artistId != -1) {
-            hashString += String.valueOf(artistId);
-            return hashString;
+    /**
+     * Puts the decoded image of an artwork file to the cache
+     *
+     * @param path Path of the artwork file used as cache key
+     * @param bm   Bitmap to store in cache
+     */
+    public void putFileBitmap(String path, Bitmap bm) {
+        if (bm != null) {
+            put(TYPE_FILE, -1, path, null, bm);
+        }
+    }
+
+    /**
+     * @return The number of requests that found an image in the memory cache
+     */
+    public long getHitCount() {
+        long hitCount = 0;
+        for (Stripe stripe : mStripes) {
+            synchronized (stripe) {
+                hitCount += stripe.mHitCount;
+            }
+        }
+        return hitCount;
+    }
+
+    /**
+     * @return The number of requests that found no image in the memory cache
+     */
+    public long getMissCount() {
+        long missCount = 0;
+        for (Stripe stripe : mStripes) {
+            synchronized (stripe) {
+                missCount += stripe.mMissCount;
+            }
+        }
+        return missCount;
+    }
+
+    private Bitmap get(final int type, final long id, final String name, final String secondName, final boolean acquire) {
+        final int hash = hash(type, id, name, secondName);
+        final Stripe stripe = getStripe(hash);
+
+        synchronized (stripe) {
+            final Entry entry = stripe.find(type, id, name, secondName, hash);
+            if (entry == null) {
+                stripe.mMissCount++;
+                return null;
+            }
+
+            stripe.mHitCount++;
+            stripe.recordAccess(entry);
+
+            // acquired while the entry is locked, an eviction can only offer the bitmap afterwards
+            if (acquire) {
+                BitmapPool.getInstance().acquire(entry.mBitmap);
+            }
+            return entry.mBitmap;
+        }
+    }
+
+    private void put(final int type, final long id, final String name, final String secondName, final Bitmap bitmap) {
+        final int hash = hash(type, id, name, secondName);
+        final Stripe stripe = getStripe(hash);
+
+        // retain before the entry is visible so a concurrent eviction can not release the bitmap
+        retain(bitmap);
+
+        Bitmap oldBitmap = null;
+        Entry entry;
+        synchronized (stripe) {
+            entry = stripe.find(type, id, name, secondName, hash);
+            if (entry != null) {
+                oldBitmap = entry.mBitmap;
+                entry.mBitmap = bitmap;
+                stripe.recordAccess(entry);
+            } else {
+                entry = new Entry(type, id, name, secondName, hash, bitmap);
+                stripe.insert(entry);
+            }
+        }
+
+        if (oldBitmap != null) {
+            release(oldBitmap);
+        }
+
+        trimToSize(stripe, entry);
+    }
+
+    private void remove(final int type, final long id, final String name, final String secondName) {
+        final int hash = hash(type, id, name, secondName);
+        final Stripe stripe = getStripe(hash);
+
+        final Entry entry;
+        synchronized (stripe) {
+            entry = stripe.find(type, id, name, secondName, hash);
+            if (entry == null) {
+                return;
+            }
+            stripe.delete(entry);
+        }
+
+        release(entry.mBitmap);
+    }
+
+    /**
+     * Adds a reference to the bitmap. The first reference adds the bitmap to the cache size.
+     */
+    private void retain(final Bitmap bitmap) {
+        synchronized (mReferenceCounts) {
+            final Integer count = mReferenceCounts.get(bitmap);
+            if (count == null) {
+                // The cache size will be measured in kilobytes rather than number of items.
+                mSize.addAndGet(bitmap.getByteCount() / 1024);
+                mReferenceCounts.put(bitmap, 1);
+            } else {
+                mReferenceCounts.put(bitmap, count + 1);
+            }
+        }
+    }
+
+    /**
+     * Removes a reference to the bitmap. Once no entry references the bitmap anymore it is removed
+     * from the cache size and can be reused when no view shows it anymore.
+     */
+    private void release(final Bitmap bitmap) {
+        synchronized (mReferenceCounts) {
+            final Integer count = mReferenceCounts.get(bitmap);
+            if (count == null) {
+                return;
+            }
+
+            if (count > 1) {
+                mReferenceCounts.put(bitmap, count - 1);
+                return;
+            }
+
+            mReferenceCounts.remove(bitmap);
+            mSize.addAndGet(-(bitmap.getByteCount() / 1024));
         }
 
-        hashString += artist.getArtistName();
+        BitmapPool.getInstance().offer(bitmap);
+    }
+
+    /**
+     * Evicts the least recently used images until the cache fits into its budget. The stripe of the
+     * last insertion is trimmed first, the other stripes only if it is empty. The inserted entry
+     * itself is never evicted, its bitmap is about to be shown.
+     */
+    private void trimToSize(final Stripe preferredStripe, final Entry insertedEntry) {
+        Stripe stripe = preferredStripe;
+        int checkedStripes = 0;
+
+        while (mSize.get() > mCacheSize && checkedStripes <= STRIPE_COUNT) {
+            final Entry evicted;
+            synchronized (stripe) {
+                evicted = stripe.removeEldest(insertedEntry);
+            }
+
+            if (evicted != null) {
+                release(evicted.mBitmap);
+            } else {
+                // the stripe holds nothing to evict, continue with the next one
+                synchronized (this) {
+                    stripe = mStripes[mNextEvictionStripe];
+                    mNextEvictionStripe = (mNextEvictionStripe + 1) & (STRIPE_COUNT - 1);
+                }
+                checkedStripes++;
+            }
+        }
+    }
 
-        return hashString;
+    private Stripe getStripe(final int hash) {
+        return mStripes[(hash >>> 24) & (STRIPE_COUNT - 1)];
+    }
+
+    private static int hash(final int type, final long id, final String name, final String secondName) {
+        int hash;
+        if (id != -1) {
+            hash = (int) (id ^ (id >>> 32));
+        } else {
+            hash = (name == null ? 0 : name.hashCode()) * 31 + (secondName == null ? 0 : secondName.hashCode());
+        }
+        hash = (hash + type) * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
     }
 
     /**
      * Debug method to provide performance evaluation metrics
      */
     private void printUsage() {
-        Log.v(TAG, "Cache usage: " + ((mCache.size() * 100) / mCache.maxSize()) + '%');
-        int missCount = mCache.missCount();
-        int hitCount = mCache.hitCount();
-        if (missCount > 0) {
-            Log.v(TAG, "Cache hit count: " + hitCount + " miss count: " + missCount + " Miss rate: " + ((hitCount * 100) / missCount) + '%');
+        Log.v(TAG, "Cache usage: " + ((mSize.get() * 100) / mCacheSize) + '%');
+        long missCount = getMissCount();
+        long hitCount = getHitCount();
+        if (missCount + hitCount > 0) {
+            Log.v(TAG, "Cache hit count: " + hitCount + " miss count: " + missCount + " Miss rate: " + ((missCount * 100) / (missCount + hitCount)) + '%');
         }
         Log.v(TAG, "Memory usage: " + (getMemoryUsage() / (1024 * 1024)) + " MB");
     }
 
     private long getMemoryUsage() {
-        Map<String, Bitmap> snapShot = mCache.snapshot();
         long bytes = 0;
-        for (Bitmap bitmap : snapShot.values()) {
-            bytes += bitmap.getAllocationByteCount();
+        for (Stripe stripe : mStripes) {
+            synchronized (stripe) {
+                for (Entry entry = stripe.mHead.mAfter; entry != stripe.mHead; entry = entry.mAfter) {
+                    bytes += entry.mBitmap.getAllocationByteCount();
+                }
+            }
         }
 
         return bytes;
     }
+
+    /**
+     * A cached image. Linked into the hash chain and the LRU list of its stripe.
+     */
+    private static final class Entry {
+        final int mType;
+
+        /**
+         * Id of the album or artist, -1 if the entry is keyed by the names.
+         */
+        final long mId;
+
+        final String mName;
+
+        final String mSecondName;
+
+        final int mHash;
+
+        Bitmap mBitmap;
+
+        Entry mNext;
+
+        Entry mBefore;
+
+        Entry mAfter;
+
+        Entry(final int type, final long id, final String name, final String secondName, final int hash, final Bitmap bitmap) {
+            mType = type;
+            mId = id;
+            mName = name;
+            mSecondName = secondName;
+            mHash = hash;
+            mBitmap = bitmap;
+        }
+
+        boolean matches(final int type, final long id, final String name, final String secondName, final int hash) {
+            if (mHash != hash || mType != type || mId != id) {
+                return false;
+            }
+            return id != -1 || (equals(mName, name) && equals(mSecondName, secondName));
+        }
+
+        private static boolean equals(final String first, final String second) {
+            return first == null ? second == null : first.equals(second);
+        }
+    }
+
+    /**
+     * Hash table with an access ordered list of its entries. All methods must be called with the
+     * stripe locked.
+     */
+    private static final class Stripe {
+        private static final int INITIAL_CAPACITY = 64;
+
+        private Entry[] mTable = new Entry[INITIAL_CAPACITY];
+
+        private int mCount;
+
+        /**
+         * Sentinel of the circular LRU list, mHead.mAfter is the least recently used entry.
+         */
+        final Entry mHead = new Entry(0, 0, null, null, 0, null);
+
+        long mHitCount;
+
+        long mMissCount;
+
+        Stripe() {
+            mHead.mBefore = mHead;
+            mHead.mAfter = mHead;
+        }
+
+        Entry find(final int type, final long id, final String name, final String secondName, final int hash) {
+            for (Entry entry = mTable[hash & (mTable.length - 1)]; entry != null; entry = entry.mNext) {
+                if (entry.matches(type, id, name, secondName, hash)) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        void insert(final Entry entry) {
+            if (mCount >= mTable.length * 3 / 4) {
+                resize();
+            }
+
+            final int index = entry.mHash & (mTable.length - 1);
+            entry.mNext = mTable[index];
+            mTable[index] = entry;
+            mCount++;
+
+            linkLast(entry);
+        }
+
+        void delete(final Entry entry) {
+            final int index = entry.mHash & (mTable.length - 1);
+            Entry previous = null;
+            for (Entry current = mTable[index]; current != null; current = current.mNext) {
+                if (current == entry) {
+                    if (previous == null) {
+                        mTable[index] = current.mNext;
+                    } else {
+                        previous.mNext = current.mNext;
+                    }
+                    break;
+                }
+                previous = current;
+            }
+            entry.mNext = null;
+            mCount--;
+
+            unlink(entry);
+        }
+
+        /**
+         * Removes the least recently used entry.
+         *
+         * @param keep Entry that must not be removed, it is skipped
+         * @return The removed entry or null if there is no other entry
+         */
+        Entry removeEldest(final Entry keep) {
+            Entry eldest = mHead.mAfter;
+            if (eldest == keep) {
+                eldest = eldest.mAfter;
+            }
+            if (eldest == mHead) {
+                return null;
+            }
+            delete(eldest);
+            return eldest;
+        }
+
+        void recordAccess(final Entry entry) {
+            unlink(entry);
+            linkLast(entry);
+        }
+
+        private void linkLast(final Entry entry) {
+            entry.mBefore = mHead.mBefore;
+            entry.mAfter = mHead;
+            mHead.mBefore.mAfter = entry;
+            mHead.mBefore = entry;
+        }
+
+        private void unlink(final Entry entry) {
+            entry.mBefore.mAfter = entry.mAfter;
+            entry.mAfter.mBefore = entry.mBefore;
+            entry.mBefore = null;
+            entry.mAfter = null;
+        }
+
+        private void resize() {
+            final Entry[] oldTable = mTable;
+            mTable = new Entry[oldTable.length * 2];
+
+            for (Entry head : oldTable) {
+                Entry entry = head;
+                while (entry != null) {
+                    final Entry next = entry.mNext;
+                    final int index = entry.mHash & (mTable.length - 1);
+                    entry.mNext = mTable[index];
+                    mTable[index] = entry;
+                    entry = next;
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2020 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.artwork;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of unused bitmaps that can be reused as decode target with {@link android.graphics.BitmapFactory.Options#inBitmap}.
+ * <p>
+ * Bitmaps that are evicted from the {@link BitmapCache} are offered to this pool. As an evicted bitmap
+ * might still be shown, views that show cached bitmaps must report this with {@link #acquire(Bitmap)}
+ * and {@link #release(Bitmap)}. A bitmap only becomes reusable once it is evicted and no view shows it
+ * anymore. Bitmaps that are handed out to consumers that do not report their usage must be excluded
+ * with {@link #pin(Bitmap)}.
+ * <p>
+ * The free bitmaps are grouped in size classes by their allocation size.
+ */
+public class BitmapPool {
+    private static final String TAG = BitmapPool.class.getSimpleName();
+
+    /**
+     * Maximum size of all free bitmaps in bytes
+     */
+    private static final long MAX_POOL_SIZE = Runtime.getRuntime().maxMemory() / 16;
+
+    /**
+     * A free bitmap is only used for a decode if it is at most this factor larger than required
+     */
+    private static final int MAX_SIZE_FACTOR = 2;
+
+    /**
+     * Singleton instance
+     */
+    private static BitmapPool mInstance;
+
+    /**
+     * Free bitmaps by their allocation size
+     */
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> mFreeBitmaps = new TreeMap<>();
+
+    private long mPoolSize;
+
+    /**
+     * Number of views that show a bitmap
+     */
+    private final WeakHashMap<Bitmap, Integer> mDisplayCounts = new WeakHashMap<>();
+
+    /**
+     * Bitmaps that were evicted while they were shown
+     */
+    private final WeakHashMap<Bitmap, Boolean> mPendingBitmaps = new WeakHashMap<>();
+
+    /**
+     * Bitmaps that are used by consumers which do not report their usage
+     */
+    private final WeakHashMap<Bitmap, Boolean> mPinnedBitmaps = new WeakHashMap<>();
+
+    private final AtomicLong mReuseCount = new AtomicLong();
+
+    private final AtomicLong mAllocationCount = new AtomicLong();
+
+    private final AtomicLong mReusedBytes = new AtomicLong();
+
+    BitmapPool() {
+    }
+
+    public static synchronized BitmapPool getInstance() {
+        if (mInstance == null) {
+            mInstance = new BitmapPool();
+        }
+        return mInstance;
+    }
+
+    /**
+     * Takes a free bitmap that is large enough for the given decode size.
+     *
+     * @param width  Width of the decoded image
+     * @param height Height of the decoded image
+     * @param config Config of the decoded image
+     * @return A free bitmap or null if no suitable bitmap is available.
+     */
+    @Nullable
+    public synchronized Bitmap get(final int width, final int height, @NonNull final Bitmap.Config config) {
+        final int requiredBytes = width * height * getBytesPerPixel(config);
+
+        final Map.Entry<Integer, ArrayDeque<Bitmap>> entry = mFreeBitmaps.ceilingEntry(requiredBytes);
+        if (entry == null || entry.getKey() > (long) requiredBytes * MAX_SIZE_FACTOR) {
+            mAllocationCount.incrementAndGet();
+            return null;
+        }
+
+        final Bitmap bitmap = entry.getValue().poll();
+        if (entry.getValue().isEmpty()) {
+            mFreeBitmaps.remove(entry.getKey());
+        }
+        mPoolSize -= entry.getKey();
+
+        mReuseCount.incrementAndGet();
+        mReusedBytes.addAndGet(entry.getKey());
+        return bitmap;
+    }
+
+    /**
+     * Returns a bitmap that was taken with {@link #get(int, int, Bitmap.Config)} but could not be used.
+     */
+    public synchronized void putBack(@NonNull final Bitmap bitmap) {
+        mReuseCount.decrementAndGet();
+        mReusedBytes.addAndGet(-bitmap.getAllocationByteCount());
+        mAllocationCount.incrementAndGet();
+        addFree(bitmap);
+    }
+
+    /**
+     * Offers a bitmap that is not referenced by the cache anymore. It becomes free once no view shows it.
+     */
+    public synchronized void offer(@NonNull final Bitmap bitmap) {
+        if (!bitmap.isMutable() || bitmap.isRecycled() || mPinnedBitmaps.containsKey(bitmap)) {
+            return;
+        }
+
+        if (mDisplayCounts.containsKey(bitmap)) {
+            mPendingBitmaps.put(bitmap, Boolean.TRUE);
+        } else {
+            addFree(bitmap);
+        }
+    }
+
+    /**
+     * Reports that a view shows the bitmap.
+     */
+    public synchronized void acquire(@NonNull final Bitmap bitmap) {
+        final Integer count = mDisplayCounts.get(bitmap);
+        mDisplayCounts.put(bitmap, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Reports that a view does not show the bitmap anymore.
+     */
+    public synchronized void release(@NonNull final Bitmap bitmap) {
+        final Integer count = mDisplayCounts.get(bitmap);
+        if (count == null) {
+            return;
+        }
+
+        if (count > 1) {
+            mDisplayCounts.put(bitmap, count - 1);
+            return;
+        }
+
+        mDisplayCounts.remove(bitmap);
+        if (mPendingBitmaps.remove(bitmap) != null) {
+            addFree(bitmap);
+        }
+    }
+
+    /**
+     * Excludes the bitmap from reuse, used for bitmaps that are handed out to consumers that do not
+     * report their usage.
+     */
+    public synchronized void pin(@NonNull final Bitmap bitmap) {
+        mPinnedBitmaps.put(bitmap, Boolean.TRUE);
+        mPendingBitmaps.remove(bitmap);
+    }
+
+    /**
+     * @return The number of decodes that reused a pooled bitmap
+     */
+    public long getReuseCount() {
+        return mReuseCount.get();
+    }
+
+    /**
+     * @return The number of decodes that needed to allocate a new bitmap
+     */
+    public long getAllocationCount() {
+        return mAllocationCount.get();
+    }
+
+    /**
+     * @return The number of bytes that did not need to be allocated because of reused bitmaps
+     */
+    public long getReusedBytes() {
+        return mReusedBytes.get();
+    }
+
+    /**
+     * @return The number of bytes of all free bitmaps
+     */
+    public synchronized long getPoolSize() {
+        return mPoolSize;
+    }
+
+    /**
+     * Debug method to provide performance evaluation metrics
+     */
+    private void printUsage() {
+        Log.v(TAG, "Pool size: " + (getPoolSize() / 1024) + " kB reused: " + getReuseCount() + " allocated: " + getAllocationCount()
+                + " saved: " + (getReusedBytes() / 1024) + " kB");
+    }
+
+    private void addFree(final Bitmap bitmap) {
+        final int size = bitmap.getAllocationByteCount();
+        if (bitmap.isRecycled() || size > MAX_POOL_SIZE) {
+            return;
+        }
+
+        // drop the largest free bitmaps first, they are the least likely to fit a decode of a list or grid cover
+        while (mPoolSize + size > MAX_POOL_SIZE && !mFreeBitmaps.isEmpty()) {
+            final Map.Entry<Integer, ArrayDeque<Bitmap>> largest = mFreeBitmaps.lastEntry();
+            largest.getValue().poll();
+            if (largest.getValue().isEmpty()) {
+                mFreeBitmaps.remove(largest.getKey());
+            }
+            mPoolSize -= largest.getKey();
+        }
+
+        ArrayDeque<Bitmap> bitmaps = mFreeBitmaps.get(size);
+        if (bitmaps == null) {
+            bitmaps = new ArrayDeque<>();
+            mFreeBitmaps.put(size, bitmaps);
+        }
+        bitmaps.push(bitmap);
+        mPoolSize += size;
+    }
+
+    private static int getBytesPerPixel(final Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2020 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.artwork;
+
+/**
+ * Tracks the progress of one run of the bulk downloader and estimates the throughput and the
+ * remaining time. Only the items finished in the current run are used for the estimation, items
+ * that were finished before a resume do not distort the throughput.
+ */
+class BulkDownloadProgress {
+
+    /**
+     * Minimum runtime before an estimation is given. The first requests are dominated by the
+     * initial burst of the rate limits.
+     */
+    private static final long MIN_ESTIMATION_TIME_MS = 10000;
+
+    private static final long ONE_MINUTE_MS = 60 * 1000;
+
+    private final int mTotal;
+
+    private final long mStartTime;
+
+    private int mFinished;
+
+    /**
+     * @param total     Number of items that are pending at the start of this run
+     * @param startTime Start time of the run in ms
+     */
+    BulkDownloadProgress(final int total, final long startTime) {
+        mTotal = total;
+        mStartTime = startTime;
+    }
+
+    /**
+     * Marks one item as finished.
+     */
+    void onItemFinished() {
+        if (mFinished < mTotal) {
+            mFinished++;
+        }
+    }
+
+    int getTotal() {
+        return mTotal;
+    }
+
+    int getFinished() {
+        return mFinished;
+    }
+
+    int getRemaining() {
+        return mTotal - mFinished;
+    }
+
+    /**
+     * @param now The current time in ms
+     * @return True if enough items are finished to estimate the throughput and the remaining time
+     */
+    boolean hasEstimation(final long now) {
+        return mFinished > 0 && now - mStartTime >= MIN_ESTIMATION_TIME_MS;
+    }
+
+    /**
+     * @param now The current time in ms
+     * @return The average number of finished items per minute in this run
+     */
+    float getItemsPerMinute(final long now) {
+        final long elapsed = Math.max(1, now - mStartTime);
+        return (float) mFinished * ONE_MINUTE_MS / elapsed;
+    }
+
+    /**
+     * @param now The current time in ms
+     * @return The estimated time in ms until all items are finished or -1 if nothing is finished yet
+     */
+    long getRemainingTime(final long now) {
+        if (mFinished == 0) {
+            return -1;
+        }
+        final long elapsed = Math.max(1, now - mStartTime);
+        return elapsed * getRemaining() / mFinished;
+    }
+}
@@ -31,34 +31,39 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.IBinder;
 import android.os.PowerManager;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
+import androidx.preference.PreferenceManager;
 
-import com.android.volley.NetworkResponse;
 import com.android.volley.VolleyError;
 
 import org.gateshipone.odyssey.BuildConfig;
 import org.gateshipone.odyssey.R;
 import org.gateshipone.odyssey.artwork.network.ArtworkRequestModel;
-import org.gateshipone.odyssey.artwork.network.ImageResponse;
 import org.gateshipone.odyssey.artwork.network.InsertImageTask;
 import org.gateshipone.odyssey.artwork.network.artprovider.ArtProvider;
 import org.gateshipone.odyssey.artwork.storage.ArtworkDatabaseManager;
 import org.gateshipone.odyssey.artwork.storage.ImageNotFoundException;
 import org.gateshipone.odyssey.models.AlbumModel;
 import org.gateshipone.odyssey.models.ArtistModel;
+import org.gateshipone.odyssey.models.GenericModel;
+import org.gateshipone.odyssey.utils.FormatHelper;
 import org.gateshipone.odyssey.utils.MusicLibraryHelper;
 import org.gateshipone.odyssey.utils.NetworkUtils;
 import org.json.JSONException;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -81,6 +86,24 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
 
     public static final String BUNDLE_KEY_USE_LOCAL_IMAGES = "org.gateshipone.odyssey.use_local_images";
 
+    /**
+     * Maximum number of requests that are running at the same time. The limits of the single
+     * providers are enforced by the request queue of the {@link ArtworkManager}, running multiple
+     * requests keeps the providers for albums and artists busy at the same time.
+     */
+    private static final int MAX_RUNNING_REQUESTS = 4;
+
+    /**
+     * Number of transient failures in a row after which the download is stopped because the
+     * providers are overloaded. The remaining queue is resumed on the next start.
+     */
+    private static final int MAX_CONSECUTIVE_TRANSIENT_FAILURES = 5;
+
+    /**
+     * Minimum interval between two updates of the notification.
+     */
+    private static final long NOTIFICATION_UPDATE_INTERVAL_MS = 1000;
+
     private static final int PENDING_INTENT_UPDATE_CURRENT_FLAG =
             Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE : PendingIntent.FLAG_UPDATE_CURRENT;
 
@@ -88,7 +111,9 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
 
     private NotificationCompat.Builder mBuilder;
 
-    private int mSumArtworkRequests;
+    private BulkDownloadProgress mProgress;
+
+    private long mLastNotificationUpdate;
 
     private ActionReceiver mBroadcastReceiver;
 
@@ -100,8 +125,30 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
 
     private boolean mUseLocalImages;
 
+    private String mArtistProvider;
+
+    private String mAlbumProvider;
+
+    private boolean mFetchAlbums;
+
+    private boolean mFetchArtists;
+
+    private int mConsecutiveTransientFailures;
+
+    /**
+     * Pending requests of the current run. The queue is also persisted in the {@link ArtworkDatabaseManager}
+     * and every finished request is removed there, so a cancelled or killed download resumes
+     * with the remaining requests.
+     */
     final private LinkedList<ArtworkRequestModel> mArtworkRequestQueue = new LinkedList<>();
 
+    /**
+     * Number of requests that are started but not finished yet.
+     */
+    private int mRunningRequests;
+
+    private boolean mRunning;
+
     private ArtworkManager mArtworkManager;
 
     private ArtworkDatabaseManager mDatabaseManager;
@@ -122,7 +169,9 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
 
     @Override
     public void onDestroy() {
-        unregisterReceiver(mBroadcastReceiver);
+        if (mBroadcastReceiver != null) {
+            unregisterReceiver(mBroadcastReceiver);
+        }
         unregisterReceiver(mConnectionStateChangeReceiver);
 
         super.onDestroy();
@@ -136,14 +185,28 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        if (intent != null && ACTION_START_BULKDOWNLOAD.equals(intent.getAction())) {
+        if (mRunning) {
+            // a download is already running, it will continue with the persisted queue
+            return START_STICKY;
+        }
+
+        if (intent == null) {
+            // the service was restarted after it was killed, resume the persisted queue with the current settings
+            SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(this);
+            String artistProvider = sharedPref.getString(getString(R.string.pref_artist_provider_key), getString(R.string.pref_artwork_provider_artist_default));
+            String albumProvider = sharedPref.getString(getString(R.string.pref_album_provider_key), getString(R.string.pref_artwork_provider_album_default));
+            mWifiOnly = sharedPref.getBoolean(getString(R.string.pref_download_wifi_only_key), getResources().getBoolean(R.bool.pref_download_wifi_default));
+            mUseLocalImages = sharedPref.getBoolean(getString(R.string.pref_artwork_use_local_images_key), getResources().getBoolean(R.bool.pref_artwork_use_local_images_default));
+
+            if (!startDownload(artistProvider, albumProvider, true)) {
+                stopSelf();
+                return START_NOT_STICKY;
+            }
+        } else if (ACTION_START_BULKDOWNLOAD.equals(intent.getAction())) {
             if (BuildConfig.DEBUG) {
                 Log.v(TAG, "Starting bulk download in service with thread id: " + Thread.currentThread().getId());
             }
 
-            // reset counter
-            mSumArtworkRequests = 0;
-
             String artistProvider = getString(R.string.pref_artwork_provider_artist_default);
             String albumProvider = getString(R.string.pref_artwork_provider_album_default);
             mWifiOnly = true;
@@ -157,38 +220,94 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
                 mUseLocalImages = intent.getBooleanExtra(BUNDLE_KEY_USE_LOCAL_IMAGES, false);
             }
 
-            if (artistProvider.equals(getString(R.string.pref_artwork_provider_none_key)) && albumProvider.equals(getString(R.string.pref_artwork_provider_none_key))) {
+            if (!startDownload(artistProvider, albumProvider, false)) {
                 return START_NOT_STICKY;
             }
+        }
+        return START_STICKY;
+    }
 
-            if (!NetworkUtils.isDownloadAllowed(this, mWifiOnly)) {
-                return START_NOT_STICKY;
-            }
+    /**
+     * Starts the download with the persisted queue of a previous run. If no queue is persisted
+     * a new queue is created from the music library.
+     *
+     * @param artistProvider The provider for the artist images
+     * @param albumProvider  The provider for the album images
+     * @param resumeOnly     Only resume a persisted queue, never create a new one
+     * @return False if the download could not be started
+     */
+    private boolean startDownload(final String artistProvider, final String albumProvider, final boolean resumeOnly) {
+        mArtistProvider = artistProvider;
+        mAlbumProvider = albumProvider;
+        mFetchAlbums = !albumProvider.equals(getString(R.string.pref_artwork_provider_none_key));
+        mFetchArtists = !artistProvider.equals(getString(R.string.pref_artwork_provider_none_key));
+
+        if (!mFetchAlbums && !mFetchArtists) {
+            return false;
+        }
 
-            PowerManager powerManager = (PowerManager) getSystemService(POWER_SERVICE);
-            mWakelock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "odyssey:wakelock:bulkdownloader");
+        if (!NetworkUtils.isDownloadAllowed(this, mWifiOnly)) {
+            return false;
+        }
 
-            // FIXME do some timeout checking. e.g. 5 minutes no new image then cancel the process
-            mWakelock.acquire();
+        mDatabaseManager = ArtworkDatabaseManager.getInstance(getApplicationContext());
 
-            mArtworkManager = ArtworkManager.getInstance(getApplicationContext());
-            mArtworkManager.initialize(artistProvider, albumProvider, mWifiOnly, mUseLocalImages);
+        List<GenericModel> models = mDatabaseManager.readBulkDownloadQueue();
+        if (models.isEmpty()) {
+            if (resumeOnly) {
+                return false;
+            }
+        } else if (BuildConfig.DEBUG) {
+            Log.v(TAG, "Resuming bulk download with: " + models.size());
+        }
+
+        PowerManager powerManager = (PowerManager) getSystemService(POWER_SERVICE);
+        mWakelock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "odyssey:wakelock:bulkdownloader");
 
-            mDatabaseManager = ArtworkDatabaseManager.getInstance(getApplicationContext());
+        // FIXME do some timeout checking. e.g. 5 minutes no new image then cancel the process
+        mWakelock.acquire();
 
-            runAsForeground();
+        mArtworkManager = ArtworkManager.getInstance(getApplicationContext());
+        mArtworkManager.initialize(artistProvider, albumProvider, mWifiOnly, mUseLocalImages);
 
-            createArtworkRequestQueue(!albumProvider.equals(getApplicationContext().getString((R.string.pref_artwork_provider_none_key))),
-                    !artistProvider.equals(getApplicationContext().getString((R.string.pref_artwork_provider_none_key))));
+        runAsForeground();
+
+        if (models.isEmpty()) {
+            models = createArtworkRequestQueue(mFetchAlbums, mFetchArtists);
+            mDatabaseManager.createBulkDownloadQueue(models);
         }
-        return START_STICKY;
+
+        startBulkDownload(models);
+        return true;
     }
 
     @Override
     public void onImageSaved(final ArtworkRequestModel artworkRequestModel) {
+        onRequestFinished(artworkRequestModel, true);
+    }
+
+    /**
+     * Continues with the next requests after the image or the miss of a request was saved.
+     *
+     * @param artworkRequestModel The finished request
+     * @param done                False if the request failed transiently and stays in the persisted queue
+     */
+    private void onRequestFinished(final ArtworkRequestModel artworkRequestModel, final boolean done) {
         mArtworkManager.onImageSaved(artworkRequestModel);
 
-        performNextRequest();
+        if (done) {
+            // checkpoint the finished request, even if the download was stopped in the meantime
+            mDatabaseManager.removeFromBulkDownloadQueue(Collections.singletonList(artworkRequestModel.getGenericModel()));
+        }
+
+        if (!mRunning) {
+            return;
+        }
+
+        mRunningRequests--;
+        mProgress.onItemFinished();
+
+        performNextRequests();
     }
 
     @Override
@@ -197,11 +316,7 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
             Log.e(TAG, "JSONException fetching: " + model.getLoggingString());
         }
 
-        ImageResponse imageResponse = new ImageResponse();
-        imageResponse.model = model;
-        imageResponse.image = null;
-        imageResponse.url = null;
-        new InsertImageTask(getApplicationContext(), this).execute(imageResponse);
+        onRequestFailed(model, true);
     }
 
     @Override
@@ -210,19 +325,7 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
             Log.e(TAG, "VolleyError for request: " + model.getLoggingString());
         }
 
-        if (error != null) {
-            NetworkResponse networkResponse = error.networkResponse;
-            if (networkResponse != null && networkResponse.statusCode == 503) {
-                finishedLoading();
-                return;
-            }
-        }
-
-        ImageResponse imageResponse = new ImageResponse();
-        imageResponse.model = model;
-        imageResponse.image = null;
-        imageResponse.url = null;
-        new InsertImageTask(getApplicationContext(), this).execute(imageResponse);
+        onRequestFailed(model, ArtworkManager.isTransientError(error));
     }
 
     @Override
@@ -231,11 +334,31 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
             Log.e(TAG, "JSONException fetching: " + model.getLoggingString());
         }
 
-        ImageResponse imageResponse = new ImageResponse();
-        imageResponse.model = model;
-        imageResponse.image = null;
-        imageResponse.url = null;
-        new InsertImageTask(getApplicationContext(), this).execute(imageResponse);
+        onRequestFailed(model, false);
+    }
+
+    /**
+     * Records the failed request in the negative cache. Transient failures stay in the persisted
+     * queue and are retried after the backoff of the negative cache when the download is resumed,
+     * if too many of them occur in a row the download is stopped.
+     */
+    private void onRequestFailed(final ArtworkRequestModel model, final boolean transientFailure) {
+        if (transientFailure) {
+            mConsecutiveTransientFailures++;
+        } else {
+            mConsecutiveTransientFailures = 0;
+        }
+
+        ArtworkManager.insertMiss(getApplicationContext(), model, transientFailure,
+                artworkRequestModel -> onRequestFinished(artworkRequestModel, !transientFailure));
+
+        if (mRunning && mConsecutiveTransientFailures >= MAX_CONSECUTIVE_TRANSIENT_FAILURES) {
+            if (BuildConfig.DEBUG) {
+                Log.v(TAG, "Stopping bulk download because the providers are overloaded");
+            }
+
+            finishedLoading();
+        }
     }
 
 
@@ -274,70 +397,114 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
         mNotificationManager.notify(NOTIFICATION_ID, notification);
     }
 
-    private void createArtworkRequestQueue(final boolean fetchAlbums, final boolean fetchArtists) {
-        mArtworkRequestQueue.clear();
+    /**
+     * Creates the queue of all albums and artists of the music library. Albums and artists are
+     * interleaved because they are fetched from different providers with their own limits.
+     */
+    private List<GenericModel> createArtworkRequestQueue(final boolean fetchAlbums, final boolean fetchArtists) {
+        List<AlbumModel> albums = fetchAlbums ? MusicLibraryHelper.getAllAlbums(getApplicationContext()) : Collections.emptyList();
+        List<ArtistModel> artists = fetchArtists ? MusicLibraryHelper.getAllArtists(false, getApplicationContext()) : Collections.emptyList();
 
-        if (fetchAlbums) {
-            List<AlbumModel> albums = MusicLibraryHelper.getAllAlbums(getApplicationContext());
+        List<GenericModel> models = new ArrayList<>(albums.size() + artists.size());
 
-            for (AlbumModel album : albums) {
-                mArtworkRequestQueue.add(new ArtworkRequestModel(album));
+        for (int i = 0; i < Math.max(albums.size(), artists.size()); i++) {
+            if (i < albums.size()) {
+                models.add(albums.get(i));
             }
-        }
-
-        if (fetchArtists) {
-            List<ArtistModel> artists = MusicLibraryHelper.getAllArtists(false, getApplicationContext());
-
-            for (ArtistModel artist : artists) {
-                mArtworkRequestQueue.add(new ArtworkRequestModel(artist));
+            if (i < artists.size()) {
+                models.add(artists.get(i));
             }
         }
 
-        startBulkDownload();
+        return models;
     }
 
-    private void startBulkDownload() {
+    private void startBulkDownload(final List<GenericModel> models) {
         if (BuildConfig.DEBUG) {
-            Log.v(TAG, "Bulkloading started with: " + mArtworkRequestQueue.size());
+            Log.v(TAG, "Bulkloading started with: " + models.size());
+        }
+
+        mArtworkRequestQueue.clear();
+        for (GenericModel model : models) {
+            if (model instanceof AlbumModel) {
+                mArtworkRequestQueue.add(new ArtworkRequestModel((AlbumModel) model));
+            } else if (model instanceof ArtistModel) {
+                mArtworkRequestQueue.add(new ArtworkRequestModel((ArtistModel) model));
+            }
         }
 
-        mSumArtworkRequests = mArtworkRequestQueue.size();
+        mRunningRequests = 0;
+        mConsecutiveTransientFailures = 0;
+        mRunning = true;
+        mProgress = new BulkDownloadProgress(mArtworkRequestQueue.size(), SystemClock.elapsedRealtime());
+        mLastNotificationUpdate = 0;
 
         mBuilder.setContentTitle(getString(R.string.downloader_notification_remaining_images));
 
-        if (mArtworkRequestQueue.isEmpty()) {
-            finishedLoading();
-        } else {
-            performNextRequest();
-        }
+        performNextRequests();
     }
 
-    private void performNextRequest() {
-        ArtworkRequestModel requestModel;
-        while (true) {
-            synchronized (mArtworkRequestQueue) {
-                updateNotification(mArtworkRequestQueue.size());
+    /**
+     * Starts requests until the maximum number of running requests is reached. Requests that are
+     * not necessary anymore are skipped and removed from the persisted queue at once.
+     */
+    private void performNextRequests() {
+        final List<GenericModel> skippedModels = new ArrayList<>();
+
+        while (mRunningRequests < MAX_RUNNING_REQUESTS) {
+            final ArtworkRequestModel requestModel = mArtworkRequestQueue.pollFirst();
 
-                requestModel = mArtworkRequestQueue.pollFirst();
+            if (requestModel == null) {
+                break;
             }
 
-            if (requestModel != null) {
-                if (checkRequest(requestModel)) {
-                    createRequest(requestModel);
-                    return;
+            if (!checkRequest(requestModel)) {
+                skippedModels.add(requestModel.getGenericModel());
+                mProgress.onItemFinished();
+            } else if (createRequest(requestModel)) {
+                mRunningRequests++;
+            } else if (!NetworkUtils.isDownloadAllowed(this, mWifiOnly)) {
+                // the connection was lost, the request stays in the persisted queue
+                if (!skippedModels.isEmpty()) {
+                    mDatabaseManager.removeFromBulkDownloadQueue(skippedModels);
                 }
-            } else {
                 finishedLoading();
                 return;
+            } else {
+                // skipped by the artwork manager, e.g. a miss was recorded since the check
+                skippedModels.add(requestModel.getGenericModel());
+                mProgress.onItemFinished();
             }
         }
+
+        if (!skippedModels.isEmpty()) {
+            mDatabaseManager.removeFromBulkDownloadQueue(skippedModels);
+        }
+
+        if (mRunningRequests == 0 && mArtworkRequestQueue.isEmpty()) {
+            // all other requests are removed from the persisted queue already, only the transient
+            // failures are left for the next run
+            finishedLoading();
+        } else {
+            updateNotification();
+        }
     }
 
     private boolean checkRequest(@NonNull final ArtworkRequestModel requestModel) {
         switch (requestModel.getType()) {
             case ALBUM: {
+                if (!mFetchAlbums) {
+                    // the provider was disabled since the queue was created
+                    return false;
+                }
+
                 AlbumModel album = (AlbumModel) requestModel.getGenericModel();
 
+                if (mDatabaseManager.isAlbumMissPending(album, mAlbumProvider)) {
+                    // failed before, the negative cache decides when to retry
+                    return false;
+                }
+
                 if (mUseLocalImages) {
                     try {
                         mDatabaseManager.getAlbumImage(album);
@@ -367,8 +534,18 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
             }
             break;
             case ARTIST: {
+                if (!mFetchArtists) {
+                    return false;
+                }
+
+                ArtistModel artist = (ArtistModel) requestModel.getGenericModel();
+
+                if (mDatabaseManager.isArtistMissPending(artist, mArtistProvider)) {
+                    return false;
+                }
+
                 try {
-                    mDatabaseManager.getArtistImage((ArtistModel) requestModel.getGenericModel());
+                    mDatabaseManager.getArtistImage(artist);
                 } catch (ImageNotFoundException e) {
                     return true;
                 }
@@ -378,19 +555,26 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
         return false;
     }
 
-    private void createRequest(final ArtworkRequestModel requestModel) {
+    /**
+     * @return False if the artwork manager skipped the request (e.g. a miss was recorded since
+     * {@link #checkRequest(ArtworkRequestModel)}), no callback follows in this case.
+     */
+    private boolean createRequest(final ArtworkRequestModel requestModel) {
         switch (requestModel.getType()) {
             case ALBUM:
-                mArtworkManager.fetchImage((AlbumModel) requestModel.getGenericModel(), this, this);
-                break;
+                return mArtworkManager.fetchImage((AlbumModel) requestModel.getGenericModel(), this, this, false);
             case ARTIST:
-                mArtworkManager.fetchImage((ArtistModel) requestModel.getGenericModel(), this, this);
-                break;
+                return mArtworkManager.fetchImage((ArtistModel) requestModel.getGenericModel(), this, this, false);
         }
-
+        return false;
     }
 
+    /**
+     * Stops the download. Unfinished requests stay in the persisted queue and are resumed on the next start.
+     */
     private void finishedLoading() {
+        mRunning = false;
+        mRunningRequests = 0;
         mArtworkRequestQueue.clear();
 
         ArtworkManager.getInstance(getApplicationContext()).cancelAllRequests();
@@ -398,24 +582,35 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
         mNotificationManager.cancel(NOTIFICATION_ID);
         stopForeground(true);
         stopSelf();
-        if (mWakelock.isHeld()) {
+        if (mWakelock != null && mWakelock.isHeld()) {
             mWakelock.release();
         }
     }
 
-    private void updateNotification(final int pendingRequests) {
-        if (BuildConfig.DEBUG) {
-            Log.v(TAG, "Remaining requests: " + pendingRequests);
+    private void updateNotification() {
+        final long now = SystemClock.elapsedRealtime();
+
+        if (now - mLastNotificationUpdate < NOTIFICATION_UPDATE_INTERVAL_MS) {
+            return;
         }
+        mLastNotificationUpdate = now;
 
-        int finishedRequests = mSumArtworkRequests - pendingRequests;
+        final int finishedRequests = mProgress.getFinished();
+        final int sumRequests = mProgress.getTotal();
 
-        if (finishedRequests % 10 == 0) {
-            mBuilder.setProgress(mSumArtworkRequests, finishedRequests, false);
-            mBuilder.setStyle(new NotificationCompat.BigTextStyle()
-                    .bigText(getString(R.string.downloader_notification_remaining_images) + ' ' + finishedRequests + '/' + mSumArtworkRequests));
-            mNotificationManager.notify(NOTIFICATION_ID, mBuilder.build());
+        if (BuildConfig.DEBUG) {
+            Log.v(TAG, "Remaining requests: " + mProgress.getRemaining() + " running: " + mRunningRequests);
         }
+
+        String progressText = getString(R.string.downloader_notification_remaining_images) + ' ' + finishedRequests + '/' + sumRequests;
+        if (mProgress.hasEstimation(now)) {
+            progressText += '\n' + getString(R.string.downloader_notification_estimation, mProgress.getItemsPerMinute(now),
+                    FormatHelper.formatTracktimeFromMS(this, mProgress.getRemainingTime(now)));
+        }
+
+        mBuilder.setProgress(sumRequests, finishedRequests, false);
+        mBuilder.setStyle(new NotificationCompat.BigTextStyle().bigText(progressText));
+        mNotificationManager.notify(NOTIFICATION_ID, mBuilder.build());
     }
 
     /**
@@ -459,7 +654,7 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
 
         @Override
         public void onReceive(Context context, Intent intent) {
-            if (!NetworkUtils.isDownloadAllowed(context, mWifiOnly)) {
+            if (mRunning && !NetworkUtils.isDownloadAllowed(context, mWifiOnly)) {
                 if (BuildConfig.DEBUG) {
                     Log.v(TAG, "Cancel all downloads because of connection change");
                 }
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2020 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.artwork;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.gateshipone.odyssey.BuildConfig;
+import org.gateshipone.odyssey.utils.MusicLibraryHelper;
+import org.gateshipone.odyssey.utils.PermissionHelper;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Index of the artwork files in the folders of the music library. The index maps every album to the
+ * folders of its tracks and every folder to the cover file it contains, so a lookup does not need
+ * to query the media store or list any folder.
+ * <p>
+ * The index is built in one background pass. A refresh only lists the folders again that were
+ * modified since the last pass. Albums that are not indexed yet are looked up directly and added.
+ */
+public class LocalArtworkIndex {
+    private static final String TAG = LocalArtworkIndex.class.getSimpleName();
+
+    /**
+     * The list of supported artwork filenames, ordered by their priority if a folder contains more than one.
+     */
+    private static final List<String> ALLOWED_ARTWORK_FILENAMES = Arrays.asList("cover.jpg", "cover.jpeg", "cover.png", "folder.jpg", "folder.jpeg", "folder.png", "artwork.jpg", "artwork.jpeg", "artwork.png");
+
+    private static final int INDEX_KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Single thread for the index passes, queued refreshes are merged into one pass.
+     */
+    private static final ThreadPoolExecutor INDEX_EXECUTOR = new ThreadPoolExecutor(1, 1,
+            INDEX_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+        final Thread thread = new Thread(runnable, "LocalArtworkIndex");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    static {
+        INDEX_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Singleton instance
+     */
+    private static LocalArtworkIndex mInstance;
+
+    private final Context mApplicationContext;
+
+    /**
+     * Folders of the tracks of every album, replaced by every pass
+     */
+    private Map<Long, String[]> mAlbumFolders = new HashMap<>();
+
+    /**
+     * Cover file of every known folder
+     */
+    private Map<String, Folder> mFolders = new HashMap<>();
+
+    /**
+     * True if a pass is queued but not started yet
+     */
+    private final AtomicBoolean mRefreshQueued = new AtomicBoolean();
+
+    private LocalArtworkIndex(final Context context) {
+        mApplicationContext = context;
+    }
+
+    public static synchronized LocalArtworkIndex getInstance(final Context context) {
+        if (mInstance == null) {
+            mInstance = new LocalArtworkIndex(context.getApplicationContext());
+        }
+        return mInstance;
+    }
+
+    /**
+     * Queues a background pass over the music library. Does nothing if a pass is queued already.
+     */
+    public void refresh() {
+        if (mRefreshQueued.compareAndSet(false, true)) {
+            INDEX_EXECUTOR.execute(this::update);
+        }
+    }
+
+    /**
+     * Returns the cover file in the folders of the album. Albums that are not part of the index
+     * yet are looked up in the media store and added to the index.
+     *
+     * @param albumId The id of the album
+     * @return The absolute path of the cover file or null if the folders contain no artwork.
+     */
+    @Nullable
+    public String getArtworkFile(final long albumId) {
+        if (!PermissionHelper.hasStoragePermission(mApplicationContext)) {
+            return null;
+        }
+
+        String[] folders;
+        synchronized (this) {
+            folders = mAlbumFolders.get(albumId);
+        }
+
+        if (folders == null) {
+            final Set<String> locations = MusicLibraryHelper.getTrackStorageLocationsForAlbum(albumId, mApplicationContext);
+            folders = locations.toArray(new String[0]);
+
+            final Folder[] indexedFolders = new Folder[folders.length];
+            for (int i = 0; i < folders.length; i++) {
+                indexedFolders[i] = getFolder(folders[i]);
+            }
+
+            synchronized (this) {
+                mAlbumFolders.put(albumId, folders);
+                for (int i = 0; i < folders.length; i++) {
+                    mFolders.put(folders[i], indexedFolders[i]);
+                }
+            }
+        }
+
+        synchronized (this) {
+            for (String path : folders) {
+                final Folder folder = mFolders.get(path);
+                if (folder != null && folder.mArtworkFile != null) {
+                    return folder.mArtworkFile;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Builds the index for the whole library. Folders that were not modified since the last pass
+     * keep their cover file without listing them again.
+     */
+    private void update() {
+        mRefreshQueued.set(false);
+
+        if (!PermissionHelper.hasStoragePermission(mApplicationContext)) {
+            return;
+        }
+
+        final long startTime = System.currentTimeMillis();
+
+        final Map<Long, Set<String>> locations = MusicLibraryHelper.getTrackStorageLocationsForAllAlbums(mApplicationContext);
+
+        final Map<Long, String[]> albumFolders = new HashMap<>(locations.size());
+        final Map<String, Folder> folders = new HashMap<>();
+        int listedFolders = 0;
+
+        for (Map.Entry<Long, Set<String>> entry : locations.entrySet()) {
+            final String[] albumPaths = entry.getValue().toArray(new String[0]);
+            albumFolders.put(entry.getKey(), albumPaths);
+
+            for (String path : albumPaths) {
+                if (folders.containsKey(path)) {
+                    continue;
+                }
+
+                final Folder oldFolder;
+                synchronized (this) {
+                    oldFolder = mFolders.get(path);
+                }
+
+                // adding or removing a file changes the modification time of the folder
+                if (oldFolder != null && oldFolder.mLastModified == new File(path).lastModified()) {
+                    folders.put(path, oldFolder);
+                } else {
+                    folders.put(path, getFolder(path));
+                    listedFolders++;
+                }
+            }
+        }
+
+        synchronized (this) {
+            mAlbumFolders = albumFolders;
+            mFolders = folders;
+        }
+
+        if (BuildConfig.DEBUG) {
+            Log.v(TAG, "Indexed " + albumFolders.size() + " albums in " + folders.size() + " folders, listed "
+                    + listedFolders + " folders in " + (System.currentTimeMillis() - startTime) + " ms");
+        }
+    }
+
+    /**
+     * Lists the folder once and picks the cover file with the highest priority.
+     */
+    private Folder getFolder(final String path) {
+        final File directory = new File(path);
+
+        // read the modification time first, a file added while listing triggers another listing
+        final long lastModified = directory.lastModified();
+        final String[] fileNames = directory.list();
+
+        String artworkFile = null;
+        int artworkPriority = ALLOWED_ARTWORK_FILENAMES.size();
+
+        if (fileNames != null) {
+            for (String fileName : fileNames) {
+                final int priority = ALLOWED_ARTWORK_FILENAMES.indexOf(fileName.toLowerCase());
+                if (priority != -1 && priority < artworkPriority) {
+                    artworkPriority = priority;
+                    artworkFile = new File(directory, fileName).getAbsolutePath();
+                }
+            }
+        }
+
+        return new Folder(lastModified, artworkFile);
+    }
+
+    /**
+     * A listed folder of the music library.
+     */
+    private static final class Folder {
+        final long mLastModified;
+
+        final String mArtworkFile;
+
+        Folder(final long lastModified, final String artworkFile) {
+            mLastModified = lastModified;
+            mArtworkFile = artworkFile;
+        }
+    }
+}
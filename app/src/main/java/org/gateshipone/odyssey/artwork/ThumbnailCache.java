@@ -0,0 +1,377 @@
+/*
+ * Copyright (C) 2020 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.artwork;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.gateshipone.odyssey.R;
+import org.gateshipone.odyssey.models.AlbumModel;
+import org.gateshipone.odyssey.models.ArtistModel;
+import org.gateshipone.odyssey.utils.BitmapUtils;
+import org.gateshipone.odyssey.utils.FileUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Disk tier behind the {@link BitmapCache}. Decoded artwork is stored as small pre-scaled JPEG files
+ * in the cache directory of the app, so a miss in the memory cache does not need to decode the full
+ * artwork again.
+ * <p>
+ * The thumbnails are bucketed by the size of the list items and the grid items. Requests that are
+ * larger than the biggest bucket are not handled by this cache. A thumbnail is only valid if it is
+ * newer than the artwork file it was created from.
+ * <p>
+ * If the cache grows too large, the least recently used thumbnails are removed. The modification
+ * time of a thumbnail file is its last use, it is refreshed on a hit.
+ */
+public class ThumbnailCache {
+    private static final String TAG = ThumbnailCache.class.getSimpleName();
+
+    private static final String THUMBNAIL_DIR = "thumbnails";
+
+    /**
+     * Maximum size of all thumbnails on disk in bytes
+     */
+    private static final long MAX_DISK_SIZE = 32 * 1024 * 1024;
+
+    private static final int JPEG_QUALITY = 90;
+
+    /**
+     * Minimum time between two refreshes of the modification time of a thumbnail, so not every
+     * hit writes to the disk (ms)
+     */
+    private static final long TOUCH_INTERVAL = 60 * 60 * 1000;
+
+    /**
+     * Key prefix for album images
+     */
+    private static final String ALBUM_PREFIX = "A_";
+
+    /**
+     * Key prefix for artist images
+     */
+    private static final String ARTIST_PREFIX = "B_";
+
+    /**
+     * Singleton instance
+     */
+    private static ThumbnailCache mInstance;
+
+    private final File mCacheDir;
+
+    /**
+     * Edge lengths of the buckets in pixels, sorted ascending
+     */
+    private final int[] mBuckets;
+
+    /**
+     * Approximated size of all thumbnails on disk, -1 until the directory was measured once
+     */
+    private long mDiskSize = -1;
+
+    private final AtomicLong mHitCount = new AtomicLong();
+
+    private final AtomicLong mMissCount = new AtomicLong();
+
+    private ThumbnailCache(final Context context) {
+        mCacheDir = new File(context.getCacheDir(), THUMBNAIL_DIR);
+
+        final int listSize = context.getResources().getDimensionPixelSize(R.dimen.material_list_item_height);
+
+        // the grid uses at least two columns
+        final int screenWidth = context.getResources().getDisplayMetrics().widthPixels;
+        final int screenHeight = context.getResources().getDisplayMetrics().heightPixels;
+        final int gridSize = Math.max(context.getResources().getDimensionPixelSize(R.dimen.grid_item_height), Math.min(screenWidth, screenHeight) / 2);
+
+        mBuckets = gridSize > listSize ? new int[]{listSize, gridSize} : new int[]{listSize};
+    }
+
+    public static synchronized ThumbnailCache getInstance(final Context context) {
+        if (mInstance == null) {
+            mInstance = new ThumbnailCache(context.getApplicationContext());
+        }
+        return mInstance;
+    }
+
+    /**
+     * Tries to get a thumbnail from the disk.
+     *
+     * @param key        Key of the image, see {@link #getAlbumKey(AlbumModel)} and {@link #getArtistKey(ArtistModel)}
+     * @param sourcePath Path of the artwork file the thumbnail was created from
+     * @param reqWidth   Requested width of the image
+     * @param reqHeight  Requested height of the image
+     * @return The thumbnail with at least the requested size or null if no valid thumbnail exists.
+     */
+    @Nullable
+    public Bitmap get(@NonNull final String key, @NonNull final String sourcePath, final int reqWidth, final int reqHeight) {
+        final File file = getThumbnailFile(key, reqWidth, reqHeight);
+        if (file == null) {
+            return null;
+        }
+
+        // a missing thumbnail or artwork file returns 0
+        final long lastModified = file.lastModified();
+        final long sourceLastModified = new File(sourcePath).lastModified();
+        if (lastModified == 0 || sourceLastModified == 0 || lastModified < sourceLastModified) {
+            mMissCount.incrementAndGet();
+            return null;
+        }
+
+        final Bitmap bitmap = BitmapUtils.decodeSampledBitmapFromFile(file.getPath(), 0, 0);
+        if (bitmap == null) {
+            mMissCount.incrementAndGet();
+            return null;
+        }
+
+        // mark the thumbnail as recently used, this keeps it newer than its artwork file
+        final long now = System.currentTimeMillis();
+        if (now - lastModified > TOUCH_INTERVAL) {
+            file.setLastModified(now);
+        }
+
+        mHitCount.incrementAndGet();
+        return bitmap;
+    }
+
+    /**
+     * Scales the image down to the bucket of the requested size and stores it on the disk.
+     *
+     * @param key       Key of the image, see {@link #getAlbumKey(AlbumModel)} and {@link #getArtistKey(ArtistModel)}
+     * @param reqWidth  Requested width of the image
+     * @param reqHeight Requested height of the image
+     * @param bitmap    The decoded artwork
+     * @return The scaled thumbnail that should be used instead of the given bitmap.
+     */
+    @NonNull
+    public Bitmap put(@NonNull final String key, final int reqWidth, final int reqHeight, @NonNull final Bitmap bitmap) {
+        final File file = getThumbnailFile(key, reqWidth, reqHeight);
+        if (file == null) {
+            return bitmap;
+        }
+
+        final int bucket = getBucket(reqWidth, reqHeight);
+        final int shortEdge = Math.min(bitmap.getWidth(), bitmap.getHeight());
+
+        Bitmap thumbnail = bitmap;
+        if (shortEdge > bucket) {
+            // keep the short edge at the bucket size so the thumbnail still covers the requested size
+            final float scale = (float) bucket / shortEdge;
+            thumbnail = Bitmap.createScaledBitmap(bitmap, Math.max(bucket, Math.round(bitmap.getWidth() * scale)),
+                    Math.max(bucket, Math.round(bitmap.getHeight() * scale)), true);
+
+            // the full decode is not referenced anywhere else
+            if (thumbnail != bitmap) {
+                BitmapPool.getInstance().offer(bitmap);
+            }
+        }
+
+        final File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream outputStream = new FileOutputStream(tmpFile)) {
+            thumbnail.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, outputStream);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write thumbnail: " + e.getMessage());
+            tmpFile.delete();
+            return thumbnail;
+        }
+
+        if (tmpFile.renameTo(file)) {
+            addDiskSize(file.length());
+        } else {
+            tmpFile.delete();
+        }
+
+        return thumbnail;
+    }
+
+    /**
+     * Removes all thumbnails of an image.
+     *
+     * @param key Key of the image, see {@link #getAlbumKey(AlbumModel)} and {@link #getArtistKey(ArtistModel)}
+     */
+    public void remove(@NonNull final String key) {
+        final String fileName = getFileName(key);
+        if (fileName == null) {
+            return;
+        }
+
+        for (int bucket : mBuckets) {
+            new File(new File(mCacheDir, String.valueOf(bucket)), fileName).delete();
+        }
+    }
+
+    /**
+     * Creates the key of the thumbnails of an album.
+     *
+     * @param album Album to calculate the key from
+     * @return Key string of the album
+     */
+    public static String getAlbumKey(final AlbumModel album) {
+        final long albumId = album.getAlbumId();
+
+        // Use albumId as key if available
+        if (albumId != -1) {
+            return ALBUM_PREFIX + albumId;
+        }
+
+        // Else use artist and album name
+        return ALBUM_PREFIX + album.getArtistName() + '_' + album.getAlbumName();
+    }
+
+    /**
+     * Creates the key of the thumbnails of an artist.
+     *
+     * @param artist Artist to calculate the key from
+     * @return Key string of the artist
+     */
+    public static String getArtistKey(final ArtistModel artist) {
+        final long artistId = artist.getArtistID();
+
+        // Use artistId as key if available
+        if (artistId != -1) {
+            return ARTIST_PREFIX + artistId;
+        }
+
+        return ARTIST_PREFIX + artist.getArtistName();
+    }
+
+    /**
+     * @return The number of requests that were answered by a thumbnail
+     */
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    /**
+     * @return The number of requests within the bucket sizes that found no valid thumbnail
+     */
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    /**
+     * @return The smallest bucket that covers the requested size or -1 if the size is too large
+     */
+    private int getBucket(final int reqWidth, final int reqHeight) {
+        final int size = Math.max(reqWidth, reqHeight);
+        for (int bucket : mBuckets) {
+            if (size <= bucket) {
+                return bucket;
+            }
+        }
+        return -1;
+    }
+
+    @Nullable
+    private File getThumbnailFile(final String key, final int reqWidth, final int reqHeight) {
+        final int bucket = getBucket(reqWidth, reqHeight);
+        if (bucket == -1) {
+            return null;
+        }
+
+        final String fileName = getFileName(key);
+        if (fileName == null) {
+            return null;
+        }
+
+        return new File(new File(mCacheDir, String.valueOf(bucket)), fileName);
+    }
+
+    @Nullable
+    private static String getFileName(final String key) {
+        try {
+            return FileUtils.createSHA256HashForString(key) + ".jpg";
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Tracks the size of the cache directory and removes the least recently used thumbnails if it
+     * grows too large.
+     */
+    private synchronized void addDiskSize(final long bytes) {
+        if (mDiskSize == -1) {
+            mDiskSize = 0;
+            for (File file : listThumbnails()) {
+                mDiskSize += file.length();
+            }
+        } else {
+            mDiskSize += bytes;
+        }
+
+        if (mDiskSize <= MAX_DISK_SIZE) {
+            return;
+        }
+
+        final File[] files = listThumbnails();
+        final long[] lastModified = new long[files.length];
+        final Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            lastModified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, (o1, o2) -> Long.compare(lastModified[o1], lastModified[o2]));
+
+        // trim to three quarters to avoid trimming on every put
+        for (int i = 0; i < order.length && mDiskSize > MAX_DISK_SIZE * 3 / 4; i++) {
+            final File file = files[order[i]];
+            final long length = file.length();
+            if (file.delete()) {
+                mDiskSize -= length;
+            }
+        }
+    }
+
+    private File[] listThumbnails() {
+        int count = 0;
+        final File[][] bucketFiles = new File[mBuckets.length][];
+        for (int i = 0; i < mBuckets.length; i++) {
+            final File[] files = new File(mCacheDir, String.valueOf(mBuckets[i])).listFiles();
+            bucketFiles[i] = files != null ? files : new File[0];
+            count += bucketFiles[i].length;
+        }
+
+        final File[] result = new File[count];
+        int offset = 0;
+        for (File[] files : bucketFiles) {
+            System.arraycopy(files, 0, result, offset, files.length);
+            offset += files.length;
+        }
+        return result;
+    }
+}
@@ -24,6 +24,8 @@ package org.gateshipone.odyssey.artwork.network;
 
 import android.net.Uri;
 
+import com.android.volley.Request;
+
 import org.gateshipone.odyssey.models.AlbumModel;
 import org.gateshipone.odyssey.models.ArtistModel;
 import org.gateshipone.odyssey.models.GenericModel;
@@ -40,6 +42,16 @@ public class ArtworkRequestModel {
 
     private final ArtworkRequestType mType;
 
+    /**
+     * True if the image is requested for a view that is currently visible
+     */
+    private boolean mUserVisible;
+
+    /**
+     * Settings key of the provider that is asked for the image
+     */
+    private String mProvider;
+
     public ArtworkRequestModel(ArtistModel artistModel) {
         this(artistModel, ArtworkRequestType.ARTIST);
     }
@@ -57,6 +69,25 @@ public class ArtworkRequestModel {
         return mType;
     }
 
+    public void setUserVisible(final boolean userVisible) {
+        mUserVisible = userVisible;
+    }
+
+    /**
+     * @return The priority of the network requests for this image, images for visible views are requested first.
+     */
+    public Request.Priority getPriority() {
+        return mUserVisible ? Request.Priority.HIGH : Request.Priority.LOW;
+    }
+
+    public void setProvider(final String provider) {
+        mProvider = provider;
+    }
+
+    public String getProvider() {
+        return mProvider;
+    }
+
     public void setMBId(final String mbid) {
         switch (mType) {
             case ALBUM:
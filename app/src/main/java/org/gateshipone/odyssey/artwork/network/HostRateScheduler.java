@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2020 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.artwork.network;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forwards items to a dispatcher while keeping every host within its own rate limit. Each host has
+ * a token bucket, so requests to independent hosts are not delayed by each other. Pending items of
+ * a host are forwarded by priority, items with the same priority in the order they were added.
+ *
+ * @param <T> Type of the scheduled items
+ */
+public class HostRateScheduler<T> {
+
+    public interface Dispatcher<T> {
+        /**
+         * Called from the scheduler thread once the host of the item has a free token.
+         */
+        void dispatch(T item);
+    }
+
+    public interface Filter<T> {
+        boolean apply(T item);
+    }
+
+    public interface Clock {
+        /**
+         * @return The current time of a monotonic clock in ms
+         */
+        long now();
+    }
+
+    private static final Clock SYSTEM_CLOCK = () -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+
+    private final Dispatcher<T> mDispatcher;
+
+    /**
+     * Time source of the token buckets
+     */
+    private final Clock mClock;
+
+    private final int mDefaultCapacity;
+
+    private final long mDefaultRefillIntervalMs;
+
+    /**
+     * Rate limits of the known hosts, each entry is {capacity, refill interval in ms}
+     */
+    private final HashMap<String, long[]> mPolicies = new HashMap<>();
+
+    /**
+     * Pending items and token buckets by host, guarded by itself
+     */
+    private final HashMap<String, HostQueue<T>> mHostQueues = new HashMap<>();
+
+    private final ScheduledThreadPoolExecutor mScheduler;
+
+    private final Runnable mDispatchRunnable = this::dispatchPending;
+
+    private ScheduledFuture<?> mScheduledDispatch;
+
+    private long mScheduledDispatchTimeMs;
+
+    private long mSequence;
+
+    /**
+     * @param dispatcher              Receives the items once they may be sent
+     * @param defaultCapacity         Number of items a host without policy may receive at once
+     * @param defaultRefillIntervalMs Time in ms until a host without policy may receive another item
+     */
+    public HostRateScheduler(@NonNull final Dispatcher<T> dispatcher, final int defaultCapacity, final long defaultRefillIntervalMs) {
+        this(dispatcher, defaultCapacity, defaultRefillIntervalMs, SYSTEM_CLOCK);
+    }
+
+    /**
+     * @param dispatcher              Receives the items once they may be sent
+     * @param defaultCapacity         Number of items a host without policy may receive at once
+     * @param defaultRefillIntervalMs Time in ms until a host without policy may receive another item
+     * @param clock                   Time source of the rate limits, the dispatches are still
+     *                                delayed in real time
+     */
+    public HostRateScheduler(@NonNull final Dispatcher<T> dispatcher, final int defaultCapacity, final long defaultRefillIntervalMs,
+                             @NonNull final Clock clock) {
+        mDispatcher = dispatcher;
+        mClock = clock;
+        mDefaultCapacity = defaultCapacity;
+        mDefaultRefillIntervalMs = defaultRefillIntervalMs;
+
+        mScheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "HostRateScheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sets the rate limit of a host. Must be called before the first item for the host is added.
+     *
+     * @param host              Host name as it appears in the request url
+     * @param capacity          Number of items the host may receive at once
+     * @param refillIntervalMs  Time in ms until the host may receive another item
+     */
+    public void setPolicy(@NonNull final String host, final int capacity, final long refillIntervalMs) {
+        synchronized (mHostQueues) {
+            mPolicies.put(host, new long[]{capacity, refillIntervalMs});
+        }
+    }
+
+    /**
+     * Adds an item that is forwarded once its host has a free token.
+     *
+     * @param host     Host of the item
+     * @param priority Priority of the item, higher values are forwarded first
+     * @param item     The item to forward
+     */
+    public void add(@NonNull final String host, final int priority, @NonNull final T item) {
+        synchronized (mHostQueues) {
+            HostQueue<T> hostQueue = mHostQueues.get(host);
+            if (hostQueue == null) {
+                final long[] policy = mPolicies.get(host);
+                hostQueue = policy != null ? new HostQueue<>((int) policy[0], policy[1], mClock.now())
+                        : new HostQueue<>(mDefaultCapacity, mDefaultRefillIntervalMs, mClock.now());
+                mHostQueues.put(host, hostQueue);
+            }
+            hostQueue.mPending.add(new PendingItem<>(item, priority, mSequence++));
+        }
+
+        scheduleDispatch(0);
+    }
+
+    /**
+     * Removes all pending items for which the filter applies.
+     *
+     * @return The removed items
+     */
+    @NonNull
+    public List<T> remove(@NonNull final Filter<T> filter) {
+        final List<T> removed = new ArrayList<>();
+        synchronized (mHostQueues) {
+            for (HostQueue<T> hostQueue : mHostQueues.values()) {
+                final Iterator<PendingItem<T>> iterator = hostQueue.mPending.iterator();
+                while (iterator.hasNext()) {
+                    final PendingItem<T> pendingItem = iterator.next();
+                    if (filter.apply(pendingItem.mItem)) {
+                        iterator.remove();
+                        removed.add(pendingItem.mItem);
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return The number of items that wait for a token
+     */
+    public int getPendingCount() {
+        int count = 0;
+        synchronized (mHostQueues) {
+            for (HostQueue<T> hostQueue : mHostQueues.values()) {
+                count += hostQueue.mPending.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Stops the scheduler thread, pending items are not forwarded anymore.
+     */
+    public void shutdown() {
+        mScheduler.shutdownNow();
+    }
+
+    /**
+     * Forwards all items whose host has a free token and schedules the next run for the host that
+     * gets its next token first.
+     */
+    private void dispatchPending() {
+        final List<T> readyItems = new ArrayList<>();
+        long nextDelayMs = -1;
+
+        synchronized (mHostQueues) {
+            mScheduledDispatch = null;
+
+            final long now = mClock.now();
+            for (HostQueue<T> hostQueue : mHostQueues.values()) {
+                while (!hostQueue.mPending.isEmpty()) {
+                    final long waitMs = hostQueue.tryAcquire(now);
+                    if (waitMs > 0) {
+                        nextDelayMs = nextDelayMs == -1 ? waitMs : Math.min(nextDelayMs, waitMs);
+                        break;
+                    }
+                    readyItems.add(hostQueue.mPending.poll().mItem);
+                }
+            }
+        }
+
+        for (T item : readyItems) {
+            mDispatcher.dispatch(item);
+        }
+
+        if (nextDelayMs != -1) {
+            scheduleDispatch(nextDelayMs);
+        }
+    }
+
+    private void scheduleDispatch(final long delayMs) {
+        synchronized (mHostQueues) {
+            final long dispatchTime = mClock.now() + delayMs;
+
+            // an earlier run also handles this dispatch
+            if (mScheduledDispatch != null) {
+                if (mScheduledDispatchTimeMs <= dispatchTime) {
+                    return;
+                }
+                mScheduledDispatch.cancel(false);
+            }
+
+            if (mScheduler.isShutdown()) {
+                return;
+            }
+
+            mScheduledDispatchTimeMs = dispatchTime;
+            mScheduledDispatch = mScheduler.schedule(mDispatchRunnable, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Pending items and the token bucket of one host.
+     */
+    private static final class HostQueue<T> {
+        private final PriorityQueue<PendingItem<T>> mPending = new PriorityQueue<>();
+
+        private final int mCapacity;
+
+        private final long mRefillIntervalMs;
+
+        private int mTokens;
+
+        private long mLastRefillMs;
+
+        HostQueue(final int capacity, final long refillIntervalMs, final long now) {
+            mCapacity = Math.max(1, capacity);
+            mRefillIntervalMs = Math.max(1, refillIntervalMs);
+            mTokens = mCapacity;
+            mLastRefillMs = now;
+        }
+
+        /**
+         * Takes a token if available.
+         *
+         * @return 0 if a token was taken, otherwise the time in ms until the next token is available
+         */
+        long tryAcquire(final long now) {
+            final long refills = (now - mLastRefillMs) / mRefillIntervalMs;
+            if (refills > 0) {
+                mTokens = (int) Math.min(mCapacity, mTokens + refills);
+                mLastRefillMs += refills * mRefillIntervalMs;
+            }
+
+            if (mTokens == mCapacity) {
+                // a full bucket does not collect the time until the next refill
+                mLastRefillMs = now;
+            }
+
+            if (mTokens > 0) {
+                mTokens--;
+                return 0;
+            }
+            return Math.max(1, mLastRefillMs + mRefillIntervalMs - now);
+        }
+    }
+
+    private static final class PendingItem<T> implements Comparable<PendingItem<T>> {
+        private final T mItem;
+
+        private final int mPriority;
+
+        private final long mSequence;
+
+        PendingItem(final T item, final int priority, final long sequence) {
+            mItem = item;
+            mPriority = priority;
+            mSequence = sequence;
+        }
+
+        @Override
+        public int compareTo(final PendingItem<T> other) {
+            if (mPriority != other.mPriority) {
+                return other.mPriority - mPriority;
+            }
+            return Long.compare(mSequence, other.mSequence);
+        }
+    }
+}
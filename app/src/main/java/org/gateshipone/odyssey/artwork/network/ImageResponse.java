@@ -27,4 +27,8 @@ public class ImageResponse {
     public String url;
     public byte[] image;
     public String localArtworkPath;
+    /**
+     * True if no image was returned because of a temporary problem, only used if image and localArtworkPath are null
+     */
+    public boolean transientFailure;
 }
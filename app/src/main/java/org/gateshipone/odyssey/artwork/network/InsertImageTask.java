@@ -30,8 +30,11 @@ import android.os.AsyncTask;
 import org.gateshipone.odyssey.artwork.storage.ArtworkDatabaseManager;
 import org.gateshipone.odyssey.models.AlbumModel;
 import org.gateshipone.odyssey.models.ArtistModel;
+import org.gateshipone.odyssey.utils.BitmapUtils;
 
-import java.io.ByteArrayOutputStream;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class InsertImageTask extends AsyncTask<ImageResponse, Object, ArtworkRequestModel> {
 
@@ -45,14 +48,31 @@ public class InsertImageTask extends AsyncTask<ImageResponse, Object, ArtworkReq
     private static final int MAXIMUM_IMAGE_RESOLUTION = 500;
 
     /**
-     * Compression level if images are rescaled
+     * Maximum size of an image file that is saved without rescaling. (1MB)
      */
-    private static final int IMAGE_COMPRESSION_SETTING = 80;
+    private static final int MAXIMUM_IMAGE_SIZE = 1024 * 1024;
 
     /**
-     * Maximum size of an image blob to insert in SQLite database. (1MB)
+     * Number of images that are decoded and saved in parallel. Bounds the memory used for
+     * decoding while the bulk downloader delivers multiple images at once.
      */
-    private static final int MAXIMUM_IMAGE_SIZE = 1024 * 1024;
+    private static final int IMAGE_PROCESSING_THREADS = 3;
+
+    /**
+     * Time after which idle image processing threads are stopped.
+     */
+    private static final long IMAGE_PROCESSING_KEEP_ALIVE_SECONDS = 30;
+
+    private static final ThreadPoolExecutor IMAGE_PROCESSING_EXECUTOR = new ThreadPoolExecutor(IMAGE_PROCESSING_THREADS, IMAGE_PROCESSING_THREADS,
+            IMAGE_PROCESSING_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+        final Thread thread = new Thread(runnable, "InsertImageTask");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    static {
+        IMAGE_PROCESSING_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
 
     private final ArtworkDatabaseManager mArtworkDatabaseManager;
 
@@ -63,52 +83,119 @@ public class InsertImageTask extends AsyncTask<ImageResponse, Object, ArtworkReq
         mImageSavedCallback = imageSavedCallback;
     }
 
+    /**
+     * Starts the task on the image processing pool instead of the serial executor of {@link AsyncTask}.
+     *
+     * @param response The response that should be saved
+     */
+    public void start(final ImageResponse response) {
+        executeOnExecutor(IMAGE_PROCESSING_EXECUTOR, response);
+    }
+
     @Override
     protected ArtworkRequestModel doInBackground(ImageResponse... params) {
         ImageResponse response = params[0];
 
+        if (response.image == null && response.localArtworkPath == null) {
+            // Nothing found, remember the failed lookup in the negative cache
+            insertMiss(response.model, response.transientFailure);
+            return response.model;
+        }
+
         if (response.image == null) {
-            insertImage(response.model, null, response.localArtworkPath);
+            insertImage(response.model, null, response.localArtworkPath, BitmapUtils.getPlaceholderColor(response.localArtworkPath));
             return response.model;
         }
 
-        // Rescale them if to big
+        // Only read the dimensions, this does not allocate any pixels
         BitmapFactory.Options options = new BitmapFactory.Options();
         options.inJustDecodeBounds = true;
         BitmapFactory.decodeByteArray(response.image, 0, response.image.length, options);
-        if ((options.outHeight > MAXIMUM_IMAGE_RESOLUTION || options.outWidth > MAXIMUM_IMAGE_RESOLUTION)) {
-            // Calculate minimal scaling factor
-            float factor = Math.min((float) MAXIMUM_IMAGE_RESOLUTION / (float) options.outHeight, (float) MAXIMUM_IMAGE_RESOLUTION / (float) options.outWidth);
-            options.inJustDecodeBounds = false;
-            Bitmap bm = BitmapFactory.decodeByteArray(response.image, 0, response.image.length, options);
-            ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-            Bitmap.createScaledBitmap(bm, (int) (options.outWidth * factor), (int) (options.outHeight * factor), true)
-                    .compress(Bitmap.CompressFormat.JPEG, IMAGE_COMPRESSION_SETTING, byteStream);
-
-            if (byteStream.size() <= MAXIMUM_IMAGE_SIZE) {
-                insertImage(response.model, byteStream.toByteArray(), null);
-            }
-        } else {
+
+        if (options.outHeight <= MAXIMUM_IMAGE_RESOLUTION && options.outWidth <= MAXIMUM_IMAGE_RESOLUTION) {
+            // Small enough, save the downloaded file as it is
             if (response.image.length <= MAXIMUM_IMAGE_SIZE) {
-                insertImage(response.model, response.image, null);
+                insertImage(response.model, response.image, null, BitmapUtils.getPlaceholderColor(response.image));
             }
+            return response.model;
         }
 
+        // Decode straight to the target size and stream the jpeg into the artwork file
+        options.inJustDecodeBounds = false;
+        setTargetSize(options, MAXIMUM_IMAGE_RESOLUTION);
+
+        final Bitmap bitmap = BitmapFactory.decodeByteArray(response.image, 0, response.image.length, options);
+        if (bitmap == null) {
+            // The provider delivered something that is not an image
+            insertMiss(response.model, false);
+            return response.model;
+        }
+
+        insertImage(response.model, bitmap, BitmapUtils.getPlaceholderColor(bitmap));
+        bitmap.recycle();
+
         return response.model;
     }
 
+    /**
+     * Sets the decode options so the longer side of the decoded image is at most maxSize.
+     * The image is subsampled by the largest power of two that keeps it at least maxSize large,
+     * the remaining factor is scaled by the decoder itself, so no full size copy of the image is created.
+     *
+     * @param options Options with the dimensions of the image set
+     * @param maxSize Maximum size of the longer side of the decoded image
+     */
+    private static void setTargetSize(final BitmapFactory.Options options, final int maxSize) {
+        final int maxSide = Math.max(options.outWidth, options.outHeight);
+
+        int sampleSize = 1;
+        while (maxSide / (sampleSize * 2) >= maxSize) {
+            sampleSize *= 2;
+        }
+        options.inSampleSize = sampleSize;
+
+        final int sampledMaxSide = maxSide / sampleSize;
+        if (sampledMaxSide > maxSize) {
+            options.inScaled = true;
+            options.inDensity = sampledMaxSide;
+            options.inTargetDensity = maxSize;
+        }
+    }
+
     @Override
     protected void onPostExecute(ArtworkRequestModel artworkRequestModel) {
         mImageSavedCallback.onImageSaved(artworkRequestModel);
     }
 
-    private void insertImage(final ArtworkRequestModel model, final byte[] image, final String localArtworkPath) {
+    private void insertImage(final ArtworkRequestModel model, final byte[] image, final String localArtworkPath, final int placeholderColor) {
+        switch (model.getType()) {
+            case ALBUM:
+                mArtworkDatabaseManager.insertAlbumImage((AlbumModel) model.getGenericModel(), image, localArtworkPath, placeholderColor);
+                break;
+            case ARTIST:
+                mArtworkDatabaseManager.insertArtistImage((ArtistModel) model.getGenericModel(), image, placeholderColor);
+                break;
+        }
+    }
+
+    private void insertImage(final ArtworkRequestModel model, final Bitmap image, final int placeholderColor) {
+        switch (model.getType()) {
+            case ALBUM:
+                mArtworkDatabaseManager.insertAlbumImage((AlbumModel) model.getGenericModel(), image, placeholderColor);
+                break;
+            case ARTIST:
+                mArtworkDatabaseManager.insertArtistImage((ArtistModel) model.getGenericModel(), image, placeholderColor);
+                break;
+        }
+    }
+
+    private void insertMiss(final ArtworkRequestModel model, final boolean transientFailure) {
         switch (model.getType()) {
             case ALBUM:
-                mArtworkDatabaseManager.insertAlbumImage((AlbumModel) model.getGenericModel(), image, localArtworkPath);
+                mArtworkDatabaseManager.insertAlbumMiss((AlbumModel) model.getGenericModel(), model.getProvider(), transientFailure);
                 break;
             case ARTIST:
-                mArtworkDatabaseManager.insertArtistImage((ArtistModel) model.getGenericModel(), image);
+                mArtworkDatabaseManager.insertArtistMiss((ArtistModel) model.getGenericModel(), model.getProvider(), transientFailure);
                 break;
         }
     }
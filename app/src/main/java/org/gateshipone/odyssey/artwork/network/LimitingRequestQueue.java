@@ -25,6 +25,7 @@ package org.gateshipone.odyssey.artwork.network;
 import static com.android.volley.RequestQueue.RequestEvent.REQUEST_FINISHED;
 
 import android.content.Context;
+import android.net.Uri;
 import android.util.Log;
 
 import com.android.volley.Cache;
@@ -37,30 +38,38 @@ import com.android.volley.toolbox.HurlStack;
 
 import org.gateshipone.odyssey.BuildConfig;
 
-import java.util.Queue;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.LinkedBlockingQueue;
-
+/**
+ * Request queue that keeps every artwork host within its own rate limit. Requests to different hosts
+ * are sent in parallel, pending requests of a host are sent by their priority.
+ */
 public class LimitingRequestQueue extends RequestQueue implements RequestQueue.RequestEventListener {
 
     private static final String TAG = LimitingRequestQueue.class.getSimpleName();
 
-    private Timer mLimiterTimer;
-
     private static LimitingRequestQueue mInstance;
 
-    private final Queue<Request<?>> mLimitingRequestQueue;
+    /**
+     * Number of parallel network threads, one for every artwork host
+     */
+    private static final int NETWORK_THREAD_POOL_SIZE = 4;
 
     /**
-     * Wait 1000ms between every request
+     * Wait 1000ms between every request to hosts without an own policy
      */
     private static final int REQUEST_RATE = 1000;
 
+    private final HostRateScheduler<Request<?>> mScheduler;
+
     private LimitingRequestQueue(Cache cache, Network network) {
-        super(cache, network, 1);
-        mLimitingRequestQueue = new LinkedBlockingQueue<>();
-        mLimiterTimer = null;
+        super(cache, network, NETWORK_THREAD_POOL_SIZE);
+        mScheduler = new HostRateScheduler<>(this::realAddRequest, 1, REQUEST_RATE);
+
+        // MusicBrainz allows one request per second
+        mScheduler.setPolicy("musicbrainz.org", 1, 1000);
+        mScheduler.setPolicy("coverartarchive.org", 2, 500);
+        mScheduler.setPolicy("ws.audioscrobbler.com", 4, 250);
+        mScheduler.setPolicy("webservice.fanart.tv", 2, 500);
+
         addRequestEventListener(this);
     }
 
@@ -85,19 +94,22 @@ public class LimitingRequestQueue extends RequestQueue implements RequestQueue.R
             Log.v(TAG, "RATE LIMITING REQUEST ADDED");
         }
 
-        synchronized (mLimitingRequestQueue) {
-            mLimitingRequestQueue.add(request);
-            if (null == mLimiterTimer) {
-                // Timer currently not running
-                mLimiterTimer = new Timer();
-                mLimiterTimer.schedule(new LimitingRequestQueue.LimiterTask(), 0, REQUEST_RATE);
-            }
-        }
+        final String host = Uri.parse(request.getUrl()).getHost();
+        mScheduler.add(host != null ? host : "", request.getPriority().ordinal(), request);
+
         return request;
     }
 
-    private <T> void realAddRequest(Request<T> request) {
+    private void realAddRequest(Request<?> request) {
+        if (request.isCanceled()) {
+            return;
+        }
+
         super.add(request);
+
+        if (BuildConfig.DEBUG) {
+            Log.v(TAG, "RATE LIMITING FORWARED");
+        }
     }
 
     @Override
@@ -109,32 +121,6 @@ public class LimitingRequestQueue extends RequestQueue implements RequestQueue.R
         }
     }
 
-
-    private class LimiterTask extends TimerTask {
-        @Override
-        public void run() {
-            synchronized (mLimitingRequestQueue) {
-                Request<?> request = mLimitingRequestQueue.poll();
-                if (null != request) {
-                    realAddRequest(request);
-
-                    if (BuildConfig.DEBUG) {
-                        Log.v(TAG, "RATE LIMITING FORWARED");
-                    }
-                } else {
-                    // Stop the timer, no requests left
-                    mLimiterTimer.cancel();
-                    mLimiterTimer.purge();
-                    mLimiterTimer = null;
-
-                    if (BuildConfig.DEBUG) {
-                        Log.v(TAG, "RATE LIMITING EMPTY, STOPPING");
-                    }
-                }
-            }
-        }
-    }
-
     /**
      * Cancels all requests in this queue for which the given filter applies.
      *
@@ -142,19 +128,14 @@ public class LimitingRequestQueue extends RequestQueue implements RequestQueue.R
      */
     public void cancelAll(RequestFilter filter) {
         super.cancelAll(filter);
-        synchronized (mLimitingRequestQueue) {
-            for (Request<?> request : mLimitingRequestQueue) {
-                if (filter.apply(request)) {
-                    if (BuildConfig.DEBUG) {
-                        Log.v(TAG, "Canceling request: " + request);
-                    }
-
-                    request.cancel();
-                    mLimitingRequestQueue.remove(request);
-                }
+
+        for (Request<?> request : mScheduler.remove(filter::apply)) {
+            if (BuildConfig.DEBUG) {
+                Log.v(TAG, "Canceling request: " + request);
             }
+
+            request.cancel();
         }
     }
 
 }
-
@@ -120,7 +120,7 @@ public class LastFMProvider extends ArtProvider {
                 Log.v(TAG, url);
             }
 
-            OdysseyJsonObjectRequest jsonObjectRequest = new OdysseyJsonObjectRequest(url, null, listener, errorListener);
+            OdysseyJsonObjectRequest jsonObjectRequest = new OdysseyJsonObjectRequest(url, null, model.getPriority(), listener, errorListener);
 
             mRequestQueue.add(jsonObjectRequest);
         }
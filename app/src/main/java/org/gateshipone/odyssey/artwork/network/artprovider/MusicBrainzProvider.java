@@ -110,7 +110,7 @@ public class MusicBrainzProvider extends ArtProvider {
             Log.v(TAG, "Requesting release mbid for: " + url);
         }
 
-        OdysseyJsonObjectRequest jsonObjectRequest = new OdysseyJsonObjectRequest(url, null, listener, errorListener);
+        OdysseyJsonObjectRequest jsonObjectRequest = new OdysseyJsonObjectRequest(url, null, model.getPriority(), listener, errorListener);
 
         mRequestQueue.add(jsonObjectRequest);
     }
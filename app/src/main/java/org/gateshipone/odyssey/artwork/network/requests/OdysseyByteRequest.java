@@ -55,6 +55,11 @@ public class OdysseyByteRequest extends Request<ImageResponse> {
         return headers;
     }
 
+    @Override
+    public Priority getPriority() {
+        return mModel.getPriority();
+    }
+
     @Override
     protected Response<ImageResponse> parseNetworkResponse(NetworkResponse response) {
         ImageResponse imageResponse = new ImageResponse();
@@ -33,8 +33,17 @@ import java.util.Map;
 
 public class OdysseyJsonObjectRequest extends JsonObjectRequest {
 
-    public OdysseyJsonObjectRequest(String url, JSONObject jsonRequest, Response.Listener<JSONObject> listener, Response.ErrorListener errorListener) {
+    private final Priority mPriority;
+
+    public OdysseyJsonObjectRequest(String url, JSONObject jsonRequest, Priority priority, Response.Listener<JSONObject> listener, Response.ErrorListener errorListener) {
         super(Method.GET, url, jsonRequest, listener, errorListener);
+
+        mPriority = priority;
+    }
+
+    @Override
+    public Priority getPriority() {
+        return mPriority;
     }
 
     @Override
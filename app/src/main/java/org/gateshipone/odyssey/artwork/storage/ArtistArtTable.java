@@ -37,6 +37,8 @@ class ArtistArtTable {
 
     static final String COLUMN_IMAGE_NOT_FOUND = "image_not_found";
 
+    static final String COLUMN_PLACEHOLDER_COLOR = "placeholder_color";
+
     private static final String DATABASE_CREATE = "CREATE TABLE if not exists " +
             TABLE_NAME
             + " (" +
@@ -44,11 +46,15 @@ class ArtistArtTable {
             COLUMN_ARTIST_MBID + " text," +
             COLUMN_ARTIST_ID + " text primary key," +
             COLUMN_IMAGE_NOT_FOUND + " integer," +
-            COLUMN_IMAGE_FILE_PATH + " text" +
+            COLUMN_IMAGE_FILE_PATH + " text," +
+            COLUMN_PLACEHOLDER_COLOR + " integer" +
             ");";
 
     private static final String DATABASE_DROP = "DROP TABLE if exists " + TABLE_NAME;
 
+    private static final String FILE_PATH_INDEX_CREATE = "CREATE INDEX if not exists " +
+            TABLE_NAME + "_" + COLUMN_IMAGE_FILE_PATH + "_index ON " + TABLE_NAME + " (" + COLUMN_IMAGE_FILE_PATH + ");";
+
     static void createTable(SQLiteDatabase database) {
         // Create table if not already existing
         database.execSQL(DATABASE_CREATE);
@@ -58,4 +64,11 @@ class ArtistArtTable {
         // drop table if already existing
         database.execSQL(DATABASE_DROP);
     }
+
+    /**
+     * Image files are shared between entries, the index is used to count the references of a file.
+     */
+    static void createFilePathIndex(final SQLiteDatabase database) {
+        database.execSQL(FILE_PATH_INDEX_CREATE);
+    }
 }
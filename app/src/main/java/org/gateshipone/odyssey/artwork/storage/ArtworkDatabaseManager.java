@@ -25,18 +25,30 @@ package org.gateshipone.odyssey.artwork.storage;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
 
 import org.gateshipone.odyssey.BuildConfig;
 import org.gateshipone.odyssey.R;
 import org.gateshipone.odyssey.models.AlbumModel;
 import org.gateshipone.odyssey.models.ArtistModel;
+import org.gateshipone.odyssey.models.GenericModel;
 import org.gateshipone.odyssey.utils.FileUtils;
+import org.gateshipone.odyssey.utils.LatencyCounter;
 import org.gateshipone.odyssey.utils.MusicLibraryHelper;
 
 import java.io.IOException;
-import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
 
 public class ArtworkDatabaseManager extends SQLiteOpenHelper {
 
@@ -48,7 +60,7 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
     /**
      * The version of the database
      */
-    private static final int DATABASE_VERSION = 23;
+    private static final int DATABASE_VERSION = 27;
 
     private static ArtworkDatabaseManager mInstance;
 
@@ -56,12 +68,60 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
 
     private static final String DIRECTORY_ARTIST_IMAGES = "artistArt";
 
+    /**
+     * Quality of the jpeg files for images that are rescaled before they are saved
+     */
+    private static final int ARTWORK_JPEG_QUALITY = 80;
+
+    /**
+     * Maximum number of compiled lookup statement sets that are kept for reuse.
+     * Should be at least the number of threads that are loading images in parallel.
+     */
+    private static final int MAX_POOLED_LOOKUPS = 8;
+
     private final Context mApplicationContext;
 
+    /**
+     * Long living database connection. The database is opened in WAL mode, so lookups can run
+     * concurrently to each other and to the writes. The connection is never closed by this class.
+     */
+    private volatile SQLiteDatabase mDatabase;
+
+    /**
+     * Pool of compiled lookup statements. A {@link SQLiteStatement} holds its bindings, so a set
+     * of statements is only used by one thread at a time.
+     */
+    private final ArrayBlockingQueue<LookupStatements> mLookupPool = new ArrayBlockingQueue<>(MAX_POOLED_LOOKUPS);
+
+    private final LatencyCounter mAlbumLookupLatency = new LatencyCounter("Album image lookup");
+
+    private final LatencyCounter mArtistLookupLatency = new LatencyCounter("Artist image lookup");
+
+    /**
+     * Content addressed image files. Files can be shared by multiple entries, a file is only
+     * removed with its last reference. References are changed while holding the lock of this class.
+     */
+    private final ArtworkFileStore mAlbumFileStore;
+
+    private final ArtworkFileStore mArtistFileStore;
+
+    /**
+     * Placeholder colors of all images by the album or artist id. Read by the views while binding,
+     * so the maps are guarded by themselves and not by the lock of this class.
+     */
+    private final HashMap<Long, Integer> mAlbumPlaceholderColors = new HashMap<>();
+
+    private final HashMap<Long, Integer> mArtistPlaceholderColors = new HashMap<>();
+
     private ArtworkDatabaseManager(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
 
         mApplicationContext = context.getApplicationContext();
+
+        mAlbumFileStore = new ArtworkFileStore(FileUtils.getArtworkDirectory(mApplicationContext, DIRECTORY_ALBUM_IMAGES));
+        mArtistFileStore = new ArtworkFileStore(FileUtils.getArtworkDirectory(mApplicationContext, DIRECTORY_ARTIST_IMAGES));
+
+        setWriteAheadLoggingEnabled(true);
     }
 
     public static synchronized ArtworkDatabaseManager getInstance(Context context) {
@@ -81,6 +141,10 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
     public void onCreate(SQLiteDatabase db) {
         AlbumArtTable.createTable(db);
         ArtistArtTable.createTable(db);
+        BulkDownloadTable.createTable(db);
+        ArtworkMissTable.createTable(db);
+        AlbumArtTable.createFilePathIndex(db);
+        ArtistArtTable.createFilePathIndex(db);
     }
 
     @Override
@@ -98,118 +162,152 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
         if (oldVersion < 23) {
             db.execSQL("ALTER TABLE " + AlbumArtTable.TABLE_NAME + " ADD COLUMN " + AlbumArtTable.COLUMN_IMAGE_HAS_FULL_PATH + " integer default 0");
         }
+
+        // add the persisted bulk download queue with version 24
+        if (oldVersion < 24) {
+            BulkDownloadTable.createTable(db);
+        }
+
+        // add the negative cache with version 25. The old not_found flags can not be told apart
+        // from transient failures, so they are removed and the images are searched for again once.
+        if (oldVersion < 25) {
+            ArtworkMissTable.createTable(db);
+
+            db.delete(AlbumArtTable.TABLE_NAME, AlbumArtTable.COLUMN_IMAGE_NOT_FOUND + "=1", null);
+            db.delete(ArtistArtTable.TABLE_NAME, ArtistArtTable.COLUMN_IMAGE_NOT_FOUND + "=1", null);
+        }
+
+        // image files are content addressed and shared between entries with version 26,
+        // the existing files are renamed by migrateToContentAddressedFiles
+        if (oldVersion < 26) {
+            AlbumArtTable.createFilePathIndex(db);
+            ArtistArtTable.createFilePathIndex(db);
+        }
+
+        // add the placeholder colors with version 27, existing images have no color until they are replaced
+        if (oldVersion < 27) {
+            db.execSQL("ALTER TABLE " + AlbumArtTable.TABLE_NAME + " ADD COLUMN " + AlbumArtTable.COLUMN_PLACEHOLDER_COLOR + " integer");
+            db.execSQL("ALTER TABLE " + ArtistArtTable.TABLE_NAME + " ADD COLUMN " + ArtistArtTable.COLUMN_PLACEHOLDER_COLOR + " integer");
+        }
+    }
+
+    /**
+     * @return The latency of all album image lookups since the app start or the last reset.
+     */
+    public LatencyCounter getAlbumLookupLatency() {
+        return mAlbumLookupLatency;
+    }
+
+    /**
+     * @return The latency of all artist image lookups since the app start or the last reset.
+     */
+    public LatencyCounter getArtistLookupLatency() {
+        return mArtistLookupLatency;
     }
 
     /**
      * Tries to fetch an image for the album, by id (android album id), by album name and artist name or only by album name.
+     * This method is not synchronized and can be called from multiple threads at once.
      *
      * @param album The album to search for.
      * @return The byte[] containing the raw image file. This can be decoded with BitmapFactory.
      * @throws ImageNotFoundException If the image is not in the database and it was not searched for before.
      */
-    public synchronized String getAlbumImage(final AlbumModel album) throws ImageNotFoundException {
-        final SQLiteDatabase database = getReadableDatabase();
-
+    public String getAlbumImage(final AlbumModel album) throws ImageNotFoundException {
         final long albumId = album.getAlbumId();
         final String albumName = album.getAlbumName();
         final String artistName = album.getArtistName();
 
-        String selection;
-        String[] selectionArguments;
         if(albumName.equals("Save the album")){
             return "/sdcard/Android/data/org.gateshipone.odysseyAuto/files/save_the_album.png" ;
         }
-        if (albumId != -1) {
-            selection = AlbumArtTable.COLUMN_ALBUM_ID + "=?";
-            selectionArguments = new String[]{String.valueOf(albumId)};
-        } else if (!artistName.isEmpty()) {
-            selection = AlbumArtTable.COLUMN_ALBUM_NAME + "=? AND " + AlbumArtTable.COLUMN_ARTIST_NAME + "=?";
-            selectionArguments = new String[]{albumName, artistName};
-        } else {
-            selection = AlbumArtTable.COLUMN_ALBUM_NAME + "=?";
-            selectionArguments = new String[]{albumName};
-        }
 
-        final Cursor requestCursor = database.query(AlbumArtTable.TABLE_NAME, new String[]{AlbumArtTable.COLUMN_IMAGE_FILE_PATH, AlbumArtTable.COLUMN_IMAGE_NOT_FOUND, AlbumArtTable.COLUMN_IMAGE_HAS_FULL_PATH},
-                selection, selectionArguments, null, null, null);
-
-        // Check if an image was found
-        if (requestCursor.moveToFirst()) {
-            // If the not_found flag is set then return null here, to indicate that the image is not here but was searched for before.
-            if (requestCursor.getInt(requestCursor.getColumnIndexOrThrow(AlbumArtTable.COLUMN_IMAGE_NOT_FOUND)) == 1) {
-                requestCursor.close();
-                database.close();
-                return null;
+        final long startTime = System.nanoTime();
+        final LookupStatements lookup = acquireLookup();
+
+        LookupResult result;
+        try {
+            SQLiteStatement statement;
+            if (albumId != -1) {
+                statement = lookup.mAlbumById;
+                statement.bindString(1, String.valueOf(albumId));
+            } else if (!artistName.isEmpty()) {
+                statement = lookup.mAlbumByNameAndArtist;
+                statement.bindString(1, albumName);
+                statement.bindString(2, artistName);
+            } else {
+                statement = lookup.mAlbumByName;
+                statement.bindString(1, albumName);
             }
-            final String artworkFilename = requestCursor.getString(requestCursor.getColumnIndexOrThrow(AlbumArtTable.COLUMN_IMAGE_FILE_PATH));
 
-            final boolean hasFullImagePath = requestCursor.getInt(requestCursor.getColumnIndexOrThrow(AlbumArtTable.COLUMN_IMAGE_HAS_FULL_PATH)) == 1;
+            result = queryLookup(statement);
+        } finally {
+            releaseLookup(lookup);
+            mAlbumLookupLatency.addSince(startTime);
+        }
 
-            requestCursor.close();
-            database.close();
+        // If we reach this, no entry was found for the given request. Throw an exception
+        if (result == null) {
+            throw new ImageNotFoundException();
+        }
 
-            if (hasFullImagePath) {
-                return artworkFilename;
-            } else {
-                return FileUtils.getFullArtworkFilePath(mApplicationContext, artworkFilename, DIRECTORY_ALBUM_IMAGES);
-            }
+        // If the not_found flag is set then return null here, to indicate that the image is not here but was searched for before.
+        if (result.mNotFound) {
+            return null;
         }
 
-        // If we reach this, no entry was found for the given request. Throw an exception
-        requestCursor.close();
-        database.close();
-        throw new ImageNotFoundException();
+        final String artworkFilename = result.mPath;
+
+        if (result.mFullPath) {
+            return artworkFilename;
+        } else {
+            return FileUtils.getFullArtworkFilePath(mApplicationContext, artworkFilename, DIRECTORY_ALBUM_IMAGES);
+        }
     }
 
     /**
      * Tries to fetch an image for the artist, by id (android artist id) or by the artist name.
+     * This method is not synchronized and can be called from multiple threads at once.
      *
      * @param artist The artist to search for.
      * @return The byte[] containing the raw image file. This can be decoded with BitmapFactory.
      * @throws ImageNotFoundException If the image is not found and it was not searched for before.
      */
-    public synchronized String getArtistImage(ArtistModel artist) throws ImageNotFoundException {
-        final SQLiteDatabase database = getReadableDatabase();
-
+    public String getArtistImage(ArtistModel artist) throws ImageNotFoundException {
         final String artistName = artist.getArtistName();
         final long artistId = artist.getArtistID();
 
-        String selection;
-        String[] selectionArguments;
+        final long startTime = System.nanoTime();
+        final LookupStatements lookup = acquireLookup();
 
-        if (artistId != -1) {
-            selection = ArtistArtTable.COLUMN_ARTIST_ID + "=?";
-            selectionArguments = new String[]{String.valueOf(artistId)};
-        } else {
-            selection = ArtistArtTable.COLUMN_ARTIST_NAME + "=?";
-            selectionArguments = new String[]{artistName};
-        }
-
-        final Cursor requestCursor = database.query(ArtistArtTable.TABLE_NAME, new String[]{ArtistArtTable.COLUMN_IMAGE_FILE_PATH, ArtistArtTable.COLUMN_IMAGE_NOT_FOUND},
-                selection, selectionArguments, null, null, null);
-
-        // Check if an image was found
-        if (requestCursor.moveToFirst()) {
-            // If the not_found flag is set then return null here, to indicate that the image is not here but was searched for before.
-            if (requestCursor.getInt(requestCursor.getColumnIndexOrThrow(ArtistArtTable.COLUMN_IMAGE_NOT_FOUND)) == 1) {
-                requestCursor.close();
-                database.close();
-                return null;
+        LookupResult result;
+        try {
+            SQLiteStatement statement;
+            if (artistId != -1) {
+                statement = lookup.mArtistById;
+                statement.bindString(1, String.valueOf(artistId));
+            } else {
+                statement = lookup.mArtistByName;
+                statement.bindString(1, artistName);
             }
 
-            // get the filename for the image
-            final String artworkFilename = requestCursor.getString(requestCursor.getColumnIndexOrThrow(ArtistArtTable.COLUMN_IMAGE_FILE_PATH));
+            result = queryLookup(statement);
+        } finally {
+            releaseLookup(lookup);
+            mArtistLookupLatency.addSince(startTime);
+        }
 
-            requestCursor.close();
-            database.close();
+        // If we reach this, no entry was found for the given request. Throw an exception
+        if (result == null) {
+            throw new ImageNotFoundException();
+        }
 
-            return FileUtils.getFullArtworkFilePath(mApplicationContext, artworkFilename, DIRECTORY_ARTIST_IMAGES);
+        // If the not_found flag is set then return null here, to indicate that the image is not here but was searched for before.
+        if (result.mNotFound) {
+            return null;
         }
 
-        // If we reach this, no entry was found for the given request. Throw an exception
-        requestCursor.close();
-        database.close();
-        throw new ImageNotFoundException();
+        return FileUtils.getFullArtworkFilePath(mApplicationContext, result.mPath, DIRECTORY_ARTIST_IMAGES);
     }
 
     /**
@@ -218,10 +316,28 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
      * @param artist Artist for the associated image byte[].
      * @param image  byte[] containing the raw image that was downloaded. This can be null in which case
      *               the database entry will have the not_found flag set.
+     * @param placeholderColor Average color of the image or 0 if unknown.
      */
-    public synchronized void insertArtistImage(final ArtistModel artist, final byte[] image) {
-        final SQLiteDatabase database = getWritableDatabase();
+    public void insertArtistImage(final ArtistModel artist, final byte[] image, final int placeholderColor) {
+        insertArtistImage(artist, image, null, placeholderColor);
+    }
 
+    /**
+     * Saves the given artist image. The bitmap is encoded as jpeg directly into the artwork file.
+     *
+     * @param artist Artist for the associated image.
+     * @param image  The decoded image that was downloaded.
+     * @param placeholderColor Average color of the image or 0 if unknown.
+     */
+    public void insertArtistImage(final ArtistModel artist, @NonNull final Bitmap image, final int placeholderColor) {
+        insertArtistImage(artist, null, image, placeholderColor);
+    }
+
+    /**
+     * Saves the given artist image. The artwork file is written outside of the lock of this class,
+     * so multiple images can be encoded and written in parallel.
+     */
+    private void insertArtistImage(final ArtistModel artist, final byte[] image, final Bitmap bitmap, final int placeholderColor) {
         long artistId = artist.getArtistID();
         if (artistId == -1) {
             // Try to get the artistId manually because it seems to be missing
@@ -232,35 +348,57 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
         final String artistMBId = artist.getMBId();
         final String artistName = artist.getArtistName();
 
-        String artworkFilename = null;
-        if (image != null) {
-            try {
-                artworkFilename = FileUtils.createSHA256HashForString(artistIdString, artistMBId, artistName) + ".jpg";
-            } catch (NoSuchAlgorithmException e) {
-                e.printStackTrace();
-                return;
-            }
+        final boolean hasImage = image != null || bitmap != null;
 
+        ArtworkFileStore.PendingFile pendingFile = null;
+        if (hasImage) {
             try {
-                FileUtils.saveArtworkFile(mApplicationContext, artworkFilename, DIRECTORY_ARTIST_IMAGES, image);
+                pendingFile = writeArtworkFile(mArtistFileStore, image, bitmap);
             } catch (IOException e) {
                 e.printStackTrace();
                 return;
             }
         }
 
-        final ContentValues values = new ContentValues();
-        values.put(ArtistArtTable.COLUMN_ARTIST_ID, artistIdString);
-        values.put(ArtistArtTable.COLUMN_ARTIST_MBID, artistMBId);
-        values.put(ArtistArtTable.COLUMN_ARTIST_NAME, artistName);
-        values.put(ArtistArtTable.COLUMN_IMAGE_FILE_PATH, artworkFilename);
+        synchronized (this) {
+            final SQLiteDatabase database = getDatabase();
+
+            String artworkFilename = null;
+            if (pendingFile != null) {
+                try {
+                    artworkFilename = mArtistFileStore.commit(pendingFile);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return;
+                }
+            }
+
+            final String where = ArtistArtTable.COLUMN_ARTIST_ID + "=?";
+            final String[] whereArgs = {artistIdString};
+            final String oldFilename = queryFilename(database, ArtistArtTable.TABLE_NAME, ArtistArtTable.COLUMN_IMAGE_FILE_PATH, where, whereArgs);
+
+            final ContentValues values = new ContentValues();
+            values.put(ArtistArtTable.COLUMN_ARTIST_ID, artistIdString);
+            values.put(ArtistArtTable.COLUMN_ARTIST_MBID, artistMBId);
+            values.put(ArtistArtTable.COLUMN_ARTIST_NAME, artistName);
+            values.put(ArtistArtTable.COLUMN_IMAGE_FILE_PATH, artworkFilename);
+            values.put(ArtistArtTable.COLUMN_PLACEHOLDER_COLOR, getPlaceholderColorValue(hasImage, placeholderColor));
+
+            // If no image was given set the not_found flag for this entry.
+            values.put(ArtistArtTable.COLUMN_IMAGE_NOT_FOUND, hasImage ? 0 : 1);
 
-        // If null was given as byte[] set the not_found flag for this entry.
-        values.put(ArtistArtTable.COLUMN_IMAGE_NOT_FOUND, image == null ? 1 : 0);
+            database.replace(ArtistArtTable.TABLE_NAME, "", values);
+
+            if (oldFilename != null && !oldFilename.equals(artworkFilename)) {
+                releaseArtistFile(database, oldFilename);
+            }
 
-        database.replace(ArtistArtTable.TABLE_NAME, "", values);
+            setPlaceholderColor(mArtistPlaceholderColors, artistId, hasImage ? placeholderColor : 0);
 
-        database.close();
+            if (hasImage) {
+                removeArtworkMisses(database, getArtistMissKey(artist));
+            }
+        }
     }
 
     /**
@@ -271,57 +409,144 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
      *                             the database entry will have the not_found flag set if artworkFullImagePath is null as well.
      * @param artworkFullImagePath Optional path to an album image if local image support is active otherwise null. If this parameter is null
      *                             the not_found flag is set if image is null as well.
+     * @param placeholderColor     Average color of the image or 0 if unknown.
      */
-    public synchronized void insertAlbumImage(final AlbumModel album, final byte[] image, final String artworkFullImagePath) {
-        final SQLiteDatabase database = getWritableDatabase();
+    public void insertAlbumImage(final AlbumModel album, final byte[] image, final String artworkFullImagePath, final int placeholderColor) {
+        insertAlbumImage(album, image, null, artworkFullImagePath, placeholderColor);
+    }
 
+    /**
+     * Saves the given album image. The bitmap is encoded as jpeg directly into the artwork file.
+     *
+     * @param album Album for the associated image.
+     * @param image The decoded image that was downloaded.
+     * @param placeholderColor Average color of the image or 0 if unknown.
+     */
+    public void insertAlbumImage(final AlbumModel album, @NonNull final Bitmap image, final int placeholderColor) {
+        insertAlbumImage(album, null, image, null, placeholderColor);
+    }
+
+    /**
+     * Saves the given album image. The artwork file is written outside of the lock of this class,
+     * so multiple images can be encoded and written in parallel.
+     */
+    private void insertAlbumImage(final AlbumModel album, final byte[] image, final Bitmap bitmap, final String artworkFullImagePath, final int placeholderColor) {
         final String albumId = String.valueOf(album.getAlbumId());
         final String albumMBId = album.getMBId();
         final String albumName = album.getAlbumName();
         final String albumArtistName = album.getArtistName();
 
-        String artworkFilename = null;
-        if (image != null) {
-            try {
-                artworkFilename = FileUtils.createSHA256HashForString(albumId, albumMBId, albumName, albumArtistName) + ".jpg";
-            } catch (NoSuchAlgorithmException e) {
-                e.printStackTrace();
-                return;
-            }
+        final boolean hasImage = image != null || bitmap != null;
 
+        ArtworkFileStore.PendingFile pendingFile = null;
+        if (hasImage) {
             try {
-                FileUtils.saveArtworkFile(mApplicationContext, artworkFilename, DIRECTORY_ALBUM_IMAGES, image);
+                pendingFile = writeArtworkFile(mAlbumFileStore, image, bitmap);
             } catch (IOException e) {
                 e.printStackTrace();
                 return;
             }
         }
 
-        final ContentValues values = new ContentValues();
-        values.put(AlbumArtTable.COLUMN_ALBUM_ID, albumId);
-        values.put(AlbumArtTable.COLUMN_ALBUM_MBID, albumMBId);
-        values.put(AlbumArtTable.COLUMN_ALBUM_NAME, albumName);
-        values.put(AlbumArtTable.COLUMN_ARTIST_NAME, albumArtistName);
-        values.put(AlbumArtTable.COLUMN_IMAGE_FILE_PATH, artworkFilename == null ? artworkFullImagePath : artworkFilename);
-        values.put(AlbumArtTable.COLUMN_IMAGE_HAS_FULL_PATH, artworkFullImagePath == null ? 0 : 1);
+        synchronized (this) {
+            final SQLiteDatabase database = getDatabase();
+
+            String artworkFilename = null;
+            if (pendingFile != null) {
+                try {
+                    artworkFilename = mAlbumFileStore.commit(pendingFile);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return;
+                }
+            }
+
+            final String where = AlbumArtTable.COLUMN_ALBUM_ID + "=? AND " + AlbumArtTable.COLUMN_IMAGE_HAS_FULL_PATH + "=0";
+            final String[] whereArgs = {albumId};
+            final String oldFilename = queryFilename(database, AlbumArtTable.TABLE_NAME, AlbumArtTable.COLUMN_IMAGE_FILE_PATH, where, whereArgs);
+
+            final ContentValues values = new ContentValues();
+            values.put(AlbumArtTable.COLUMN_ALBUM_ID, albumId);
+            values.put(AlbumArtTable.COLUMN_ALBUM_MBID, albumMBId);
+            values.put(AlbumArtTable.COLUMN_ALBUM_NAME, albumName);
+            values.put(AlbumArtTable.COLUMN_ARTIST_NAME, albumArtistName);
+            values.put(AlbumArtTable.COLUMN_IMAGE_FILE_PATH, artworkFilename == null ? artworkFullImagePath : artworkFilename);
+            values.put(AlbumArtTable.COLUMN_IMAGE_HAS_FULL_PATH, artworkFullImagePath == null ? 0 : 1);
+            values.put(AlbumArtTable.COLUMN_PLACEHOLDER_COLOR, getPlaceholderColorValue(hasImage || artworkFullImagePath != null, placeholderColor));
+
+            // If no image was given set the not_found flag for this entry.
+            values.put(AlbumArtTable.COLUMN_IMAGE_NOT_FOUND, (!hasImage && artworkFullImagePath == null) ? 1 : 0);
+
+            database.replace(AlbumArtTable.TABLE_NAME, "", values);
+
+            if (oldFilename != null && !oldFilename.equals(artworkFilename)) {
+                releaseAlbumFile(database, oldFilename);
+            }
+
+            setPlaceholderColor(mAlbumPlaceholderColors, album.getAlbumId(), (hasImage || artworkFullImagePath != null) ? placeholderColor : 0);
+
+            if (hasImage || artworkFullImagePath != null) {
+                removeArtworkMisses(database, getAlbumMissKey(album));
+            }
+        }
+    }
+
+    /**
+     * Writes either the raw image or the encoded bitmap to a pending file of the store.
+     */
+    private static ArtworkFileStore.PendingFile writeArtworkFile(final ArtworkFileStore fileStore, final byte[] image, final Bitmap bitmap) throws IOException {
+        if (bitmap != null) {
+            return fileStore.write(bitmap, ARTWORK_JPEG_QUALITY);
+        } else {
+            return fileStore.write(image);
+        }
+    }
+
+    /**
+     * Removes the album image file if no other album uses it anymore.
+     */
+    private void releaseAlbumFile(final SQLiteDatabase database, final String fileName) {
+        final String where = AlbumArtTable.COLUMN_IMAGE_FILE_PATH + "=? AND " + AlbumArtTable.COLUMN_IMAGE_HAS_FULL_PATH + "=0";
+        if (DatabaseUtils.queryNumEntries(database, AlbumArtTable.TABLE_NAME, where, new String[]{fileName}) == 0) {
+            mAlbumFileStore.delete(fileName);
+        }
+    }
+
+    /**
+     * Removes the artist image file if no other artist uses it anymore.
+     */
+    private void releaseArtistFile(final SQLiteDatabase database, final String fileName) {
+        final String where = ArtistArtTable.COLUMN_IMAGE_FILE_PATH + "=?";
+        if (DatabaseUtils.queryNumEntries(database, ArtistArtTable.TABLE_NAME, where, new String[]{fileName}) == 0) {
+            mArtistFileStore.delete(fileName);
+        }
+    }
 
-        // If null was given as byte[] set the not_found flag for this entry.
-        values.put(AlbumArtTable.COLUMN_IMAGE_NOT_FOUND, (image == null && artworkFullImagePath == null) ? 1 : 0);
+    private static String queryFilename(final SQLiteDatabase database, final String table, final String column, final String where, final String[] whereArgs) {
+        final Cursor cursor = database.query(table, new String[]{column}, where, whereArgs, null, null, null);
+
+        String fileName = null;
+        if (cursor.moveToFirst()) {
+            fileName = cursor.getString(0);
+        }
 
-        database.replace(AlbumArtTable.TABLE_NAME, "", values);
+        cursor.close();
 
-        database.close();
+        return fileName;
     }
 
     /**
      * Removes all lines from the artists table
      */
     public synchronized void clearArtistImages() {
-        final SQLiteDatabase database = getWritableDatabase();
+        final SQLiteDatabase database = getDatabase();
 
         database.delete(ArtistArtTable.TABLE_NAME, null, null);
+        clearArtworkMisses(database, ArtworkMissTable.TYPE_ARTIST);
 
-        database.close();
+        synchronized (mArtistPlaceholderColors) {
+            mArtistPlaceholderColors.clear();
+        }
 
         FileUtils.removeArtworkDirectory(mApplicationContext, DIRECTORY_ARTIST_IMAGES);
     }
@@ -330,11 +555,14 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
      * Removes all lines from the albums table
      */
     public synchronized void clearAlbumImages() {
-        final SQLiteDatabase database = getWritableDatabase();
+        final SQLiteDatabase database = getDatabase();
 
         database.delete(AlbumArtTable.TABLE_NAME, null, null);
+        clearArtworkMisses(database, ArtworkMissTable.TYPE_ALBUM);
 
-        database.close();
+        synchronized (mAlbumPlaceholderColors) {
+            mAlbumPlaceholderColors.clear();
+        }
 
         FileUtils.removeArtworkDirectory(mApplicationContext, DIRECTORY_ALBUM_IMAGES);
     }
@@ -343,28 +571,26 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
      * Reset the state of all artist images that was not found before
      */
     public synchronized void clearBlockedArtistImages() {
-        final SQLiteDatabase database = getWritableDatabase();
+        final SQLiteDatabase database = getDatabase();
 
         final String where = ArtistArtTable.COLUMN_IMAGE_NOT_FOUND + "=?";
         final String[] whereArgs = {"1"};
 
         database.delete(ArtistArtTable.TABLE_NAME, where, whereArgs);
-
-        database.close();
+        clearArtworkMisses(database, ArtworkMissTable.TYPE_ARTIST);
     }
 
     /**
      * Reset the state of all album images that was not found before
      */
     public synchronized void clearBlockedAlbumImages() {
-        final SQLiteDatabase database = getWritableDatabase();
+        final SQLiteDatabase database = getDatabase();
 
         final String where = AlbumArtTable.COLUMN_IMAGE_NOT_FOUND + "=?";
         final String[] whereArgs = {"1"};
 
         database.delete(AlbumArtTable.TABLE_NAME, where, whereArgs);
-
-        database.close();
+        clearArtworkMisses(database, ArtworkMissTable.TYPE_ALBUM);
     }
 
     /**
@@ -373,26 +599,23 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
      * @param artist The {@link ArtistModel} representing the artist.
      */
     public synchronized void removeArtistImage(final ArtistModel artist) {
-        final SQLiteDatabase database = getWritableDatabase();
+        final SQLiteDatabase database = getDatabase();
 
         final String where = ArtistArtTable.COLUMN_ARTIST_ID + "=? OR " + ArtistArtTable.COLUMN_ARTIST_NAME + "=?";
         final String[] whereArgs = {String.valueOf(artist.getArtistID()), artist.getArtistName()};
 
-        final Cursor requestCursor = database.query(ArtistArtTable.TABLE_NAME, new String[]{ArtistArtTable.COLUMN_IMAGE_FILE_PATH},
-                where, whereArgs, null, null, null);
-
-        if (requestCursor.moveToFirst()) {
+        final String artworkFilename = queryFilename(database, ArtistArtTable.TABLE_NAME, ArtistArtTable.COLUMN_IMAGE_FILE_PATH, where, whereArgs);
 
-            final String artworkFilename = requestCursor.getString(requestCursor.getColumnIndexOrThrow(ArtistArtTable.COLUMN_IMAGE_FILE_PATH));
+        database.delete(ArtistArtTable.TABLE_NAME, where, whereArgs);
 
-            FileUtils.removeArtworkFile(mApplicationContext, artworkFilename, DIRECTORY_ARTIST_IMAGES);
+        // the file is shared with all artists that have the same image
+        if (artworkFilename != null) {
+            releaseArtistFile(database, artworkFilename);
         }
 
-        requestCursor.close();
+        removeArtworkMisses(database, getArtistMissKey(artist));
 
-        database.delete(ArtistArtTable.TABLE_NAME, where, whereArgs);
-
-        database.close();
+        setPlaceholderColor(mArtistPlaceholderColors, artist.getArtistID(), 0);
     }
 
     /**
@@ -401,7 +624,7 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
      * @param album The {@link AlbumModel} representing the album.
      */
     public synchronized void removeAlbumImage(final AlbumModel album) {
-        final SQLiteDatabase database = getWritableDatabase();
+        final SQLiteDatabase database = getDatabase();
 
         final long albumId = album.getAlbumId();
         final String albumName = album.getAlbumName();
@@ -421,24 +644,580 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
             whereArgs = new String[]{albumName};
         }
 
-        final Cursor requestCursor = database.query(AlbumArtTable.TABLE_NAME, new String[]{AlbumArtTable.COLUMN_IMAGE_FILE_PATH, AlbumArtTable.COLUMN_IMAGE_HAS_FULL_PATH},
-                where, whereArgs, null, null, null);
+        final String storedWhere = "(" + where + ") AND " + AlbumArtTable.COLUMN_IMAGE_HAS_FULL_PATH + "=0";
+        final String artworkFilename = queryFilename(database, AlbumArtTable.TABLE_NAME, AlbumArtTable.COLUMN_IMAGE_FILE_PATH, storedWhere, whereArgs);
+
+        database.delete(AlbumArtTable.TABLE_NAME, where, whereArgs);
+
+        // images with a full path are files of the music library and are never removed,
+        // stored files are shared with all albums that have the same image
+        if (artworkFilename != null) {
+            releaseAlbumFile(database, artworkFilename);
+        }
+
+        removeArtworkMisses(database, getAlbumMissKey(album));
 
-        if (requestCursor.moveToFirst()) {
+        setPlaceholderColor(mAlbumPlaceholderColors, album.getAlbumId(), 0);
+    }
 
-            final String artworkFilename = requestCursor.getString(requestCursor.getColumnIndexOrThrow(AlbumArtTable.COLUMN_IMAGE_FILE_PATH));
+    /**
+     * Returns the average color of the album image. This method is not synchronized and does not
+     * access the database, so it can be called while binding a view.
+     *
+     * @param albumId The id of the album to get the color for.
+     * @return The color or 0 if the album has no image or the color is unknown.
+     */
+    public int getAlbumPlaceholderColor(final long albumId) {
+        return getPlaceholderColor(mAlbumPlaceholderColors, albumId);
+    }
 
-            final boolean hasFullImagePath = requestCursor.getInt(requestCursor.getColumnIndexOrThrow(AlbumArtTable.COLUMN_IMAGE_HAS_FULL_PATH)) == 1;
+    /**
+     * Returns the average color of the artist image. This method is not synchronized and does not
+     * access the database, so it can be called while binding a view.
+     *
+     * @param artist The artist to get the color for.
+     * @return The color or 0 if the artist has no image or the color is unknown.
+     */
+    public int getArtistPlaceholderColor(final ArtistModel artist) {
+        return getPlaceholderColor(mArtistPlaceholderColors, artist.getArtistID());
+    }
 
-            if (!hasFullImagePath) {
-                FileUtils.removeArtworkFile(mApplicationContext, artworkFilename, DIRECTORY_ALBUM_IMAGES);
+    /**
+     * Reads the placeholder colors of all images into memory. Colors that were set in the meantime are kept.
+     */
+    public void loadPlaceholderColors() {
+        final HashMap<Long, Integer> albumColors = new HashMap<>();
+        final HashMap<Long, Integer> artistColors = new HashMap<>();
+
+        synchronized (this) {
+            final SQLiteDatabase database = getDatabase();
+
+            readPlaceholderColors(database, AlbumArtTable.TABLE_NAME, AlbumArtTable.COLUMN_ALBUM_ID, AlbumArtTable.COLUMN_PLACEHOLDER_COLOR, albumColors);
+            readPlaceholderColors(database, ArtistArtTable.TABLE_NAME, ArtistArtTable.COLUMN_ARTIST_ID, ArtistArtTable.COLUMN_PLACEHOLDER_COLOR, artistColors);
+        }
+
+        addPlaceholderColors(mAlbumPlaceholderColors, albumColors);
+        addPlaceholderColors(mArtistPlaceholderColors, artistColors);
+    }
+
+    private static void readPlaceholderColors(final SQLiteDatabase database, final String table, final String idColumn, final String colorColumn,
+                                              final HashMap<Long, Integer> colors) {
+        final Cursor cursor = database.query(table, new String[]{idColumn, colorColumn}, colorColumn + " IS NOT NULL", null, null, null, null);
+
+        while (cursor.moveToNext()) {
+            colors.put(cursor.getLong(0), cursor.getInt(1));
+        }
+
+        cursor.close();
+    }
+
+    private static void addPlaceholderColors(final HashMap<Long, Integer> colors, final HashMap<Long, Integer> loadedColors) {
+        synchronized (colors) {
+            for (Map.Entry<Long, Integer> entry : loadedColors.entrySet()) {
+                if (!colors.containsKey(entry.getKey())) {
+                    colors.put(entry.getKey(), entry.getValue());
+                }
             }
         }
+    }
 
-        requestCursor.close();
+    private static int getPlaceholderColor(final HashMap<Long, Integer> colors, final long id) {
+        if (id == -1) {
+            return 0;
+        }
 
-        database.delete(AlbumArtTable.TABLE_NAME, where, whereArgs);
+        synchronized (colors) {
+            final Integer color = colors.get(id);
+            return color == null ? 0 : color;
+        }
+    }
 
-        database.close();
+    /**
+     * Updates the color of an image in memory, 0 removes the color.
+     */
+    private static void setPlaceholderColor(final HashMap<Long, Integer> colors, final long id, final int color) {
+        if (id == -1) {
+            return;
+        }
+
+        synchronized (colors) {
+            if (color != 0) {
+                colors.put(id, color);
+            } else {
+                colors.remove(id);
+            }
+        }
+    }
+
+    /**
+     * @return The value of the placeholder color column, null if there is no image or the color is unknown.
+     */
+    private static Integer getPlaceholderColorValue(final boolean hasImage, final int placeholderColor) {
+        return hasImage && placeholderColor != 0 ? placeholderColor : null;
+    }
+
+    /**
+     * Renames the image files that are named after their album or artist to the hash of their
+     * content. Duplicate files are removed and all entries with the same image share one file.
+     * The hashes are computed without holding the lock so the migration can run while images are loaded.
+     *
+     * @return The state of the artwork storage after the migration.
+     */
+    public ArtworkStoreReport migrateToContentAddressedFiles() {
+        migrateFiles(mAlbumFileStore, AlbumArtTable.TABLE_NAME, AlbumArtTable.COLUMN_IMAGE_FILE_PATH, AlbumArtTable.COLUMN_IMAGE_HAS_FULL_PATH + "=0");
+        migrateFiles(mArtistFileStore, ArtistArtTable.TABLE_NAME, ArtistArtTable.COLUMN_IMAGE_FILE_PATH, null);
+
+        return getArtworkStoreReport();
+    }
+
+    /**
+     * Counts the stored image files and the references to them.
+     *
+     * @return The current state of the artwork storage.
+     */
+    public synchronized ArtworkStoreReport getArtworkStoreReport() {
+        final SQLiteDatabase database = getDatabase();
+
+        final ArtworkStoreReport report = new ArtworkStoreReport();
+        addToReport(report, database, mAlbumFileStore, AlbumArtTable.TABLE_NAME, AlbumArtTable.COLUMN_IMAGE_FILE_PATH, AlbumArtTable.COLUMN_IMAGE_HAS_FULL_PATH + "=0");
+        addToReport(report, database, mArtistFileStore, ArtistArtTable.TABLE_NAME, ArtistArtTable.COLUMN_IMAGE_FILE_PATH, null);
+
+        return report;
+    }
+
+    private void migrateFiles(final ArtworkFileStore fileStore, final String table, final String column, final String storedWhere) {
+        final List<String> fileNames = new ArrayList<>();
+
+        synchronized (this) {
+            fileStore.removePendingFiles();
+
+            final String where = column + " IS NOT NULL" + (storedWhere != null ? " AND " + storedWhere : "");
+            final Cursor cursor = getDatabase().query(true, table, new String[]{column}, where, null, null, null, null, null);
+
+            while (cursor.moveToNext()) {
+                fileNames.add(cursor.getString(0));
+            }
+
+            cursor.close();
+        }
+
+        for (String fileName : fileNames) {
+            final String contentName;
+            try {
+                contentName = fileStore.getContentName(fileName);
+            } catch (IOException e) {
+                e.printStackTrace();
+                continue;
+            }
+
+            if (contentName == null || contentName.equals(fileName)) {
+                continue;
+            }
+
+            synchronized (this) {
+                if (!fileStore.move(fileName, contentName)) {
+                    continue;
+                }
+
+                final ContentValues values = new ContentValues();
+                values.put(column, contentName);
+
+                final String where = column + "=?" + (storedWhere != null ? " AND " + storedWhere : "");
+                getDatabase().update(table, values, where, new String[]{fileName});
+            }
+        }
+    }
+
+    private static void addToReport(final ArtworkStoreReport report, final SQLiteDatabase database, final ArtworkFileStore fileStore,
+                                    final String table, final String column, final String storedWhere) {
+        final String where = column + " IS NOT NULL" + (storedWhere != null ? " AND " + storedWhere : "");
+        final Cursor cursor = database.query(table, new String[]{column, "COUNT(*)"}, where, null, column, null, null);
+
+        while (cursor.moveToNext()) {
+            report.addFile(fileStore.getSize(cursor.getString(0)), cursor.getInt(1));
+        }
+
+        cursor.close();
+    }
+
+    /**
+     * Checks the negative cache for the album. This method is not synchronized and can be called from multiple threads at once.
+     *
+     * @param album    The album to check.
+     * @param provider The provider that would be asked for the image.
+     * @return True if the last lookup of the album with the provider failed and should not be repeated yet.
+     */
+    public boolean isAlbumMissPending(final AlbumModel album, final String provider) {
+        return isArtworkMissPending(getAlbumMissKey(album), provider);
+    }
+
+    /**
+     * Checks the negative cache for the artist. This method is not synchronized and can be called from multiple threads at once.
+     *
+     * @param artist   The artist to check.
+     * @param provider The provider that would be asked for the image.
+     * @return True if the last lookup of the artist with the provider failed and should not be repeated yet.
+     */
+    public boolean isArtistMissPending(final ArtistModel artist, final String provider) {
+        return isArtworkMissPending(getArtistMissKey(artist), provider);
+    }
+
+    /**
+     * Records a failed lookup of the album in the negative cache. The image state of the album is not changed.
+     *
+     * @param album            The album that was searched for.
+     * @param provider         The provider that was asked for the image.
+     * @param transientFailure True if the lookup failed because of a temporary problem, false if the provider has no image.
+     */
+    public synchronized void insertAlbumMiss(final AlbumModel album, final String provider, final boolean transientFailure) {
+        insertArtworkMiss(getAlbumMissKey(album), ArtworkMissTable.TYPE_ALBUM, provider, transientFailure);
+    }
+
+    /**
+     * Records a failed lookup of the artist in the negative cache. The image state of the artist is not changed.
+     *
+     * @param artist           The artist that was searched for.
+     * @param provider         The provider that was asked for the image.
+     * @param transientFailure True if the lookup failed because of a temporary problem, false if the provider has no image.
+     */
+    public synchronized void insertArtistMiss(final ArtistModel artist, final String provider, final boolean transientFailure) {
+        insertArtworkMiss(getArtistMissKey(artist), ArtworkMissTable.TYPE_ARTIST, provider, transientFailure);
+    }
+
+    /**
+     * Replaces the persisted bulk download queue with the given albums and artists.
+     * The queue is written in one transaction, albums and artists are kept in the given order.
+     *
+     * @param models The albums and artists that should be processed by the bulk downloader.
+     */
+    public synchronized void createBulkDownloadQueue(final List<GenericModel> models) {
+        final SQLiteDatabase database = getDatabase();
+
+        database.beginTransaction();
+        try {
+            database.delete(BulkDownloadTable.TABLE_NAME, null, null);
+
+            final SQLiteStatement insert = database.compileStatement("INSERT OR IGNORE INTO " + BulkDownloadTable.TABLE_NAME + " ("
+                    + BulkDownloadTable.COLUMN_TYPE + ", " + BulkDownloadTable.COLUMN_MODEL_ID + ", " + BulkDownloadTable.COLUMN_NAME + ", "
+                    + BulkDownloadTable.COLUMN_ARTIST_NAME + ", " + BulkDownloadTable.COLUMN_ALBUM_ART_URL + ") VALUES (?, ?, ?, ?, ?)");
+            try {
+                for (GenericModel model : models) {
+                    insert.clearBindings();
+                    if (model instanceof AlbumModel) {
+                        final AlbumModel album = (AlbumModel) model;
+                        insert.bindLong(1, BulkDownloadTable.TYPE_ALBUM);
+                        insert.bindLong(2, album.getAlbumId());
+                        insert.bindString(3, getKeyString(album.getAlbumName()));
+                        if (album.getArtistName() != null) {
+                            insert.bindString(4, album.getArtistName());
+                        }
+                        if (album.getAlbumArtURL() != null) {
+                            insert.bindString(5, album.getAlbumArtURL());
+                        }
+                    } else if (model instanceof ArtistModel) {
+                        final ArtistModel artist = (ArtistModel) model;
+                        insert.bindLong(1, BulkDownloadTable.TYPE_ARTIST);
+                        insert.bindLong(2, artist.getArtistID());
+                        insert.bindString(3, getKeyString(artist.getArtistName()));
+                    } else {
+                        continue;
+                    }
+                    insert.executeInsert();
+                }
+            } finally {
+                insert.close();
+            }
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Reads the remaining items of the persisted bulk download queue.
+     *
+     * @return The albums and artists that are not processed yet, in the order of the queue.
+     */
+    public synchronized List<GenericModel> readBulkDownloadQueue() {
+        final SQLiteDatabase database = getDatabase();
+
+        final Cursor cursor = database.query(BulkDownloadTable.TABLE_NAME,
+                new String[]{BulkDownloadTable.COLUMN_TYPE, BulkDownloadTable.COLUMN_MODEL_ID, BulkDownloadTable.COLUMN_NAME,
+                        BulkDownloadTable.COLUMN_ARTIST_NAME, BulkDownloadTable.COLUMN_ALBUM_ART_URL},
+                null, null, null, null, "rowid");
+
+        final List<GenericModel> models = new ArrayList<>(cursor.getCount());
+
+        if (cursor.moveToFirst()) {
+            do {
+                final int type = cursor.getInt(0);
+                final long modelId = cursor.getLong(1);
+                final String name = cursor.getString(2);
+
+                if (type == BulkDownloadTable.TYPE_ALBUM) {
+                    models.add(new AlbumModel(name, cursor.getString(4), cursor.getString(3), modelId));
+                } else {
+                    models.add(new ArtistModel(name, modelId));
+                }
+            } while (cursor.moveToNext());
+        }
+
+        cursor.close();
+
+        return models;
+    }
+
+    /**
+     * Removes the given albums and artists from the persisted bulk download queue in one transaction.
+     * This is the checkpoint of the bulk downloader, removed items are not processed again after a restart.
+     *
+     * @param models The finished albums and artists.
+     */
+    public synchronized void removeFromBulkDownloadQueue(final List<GenericModel> models) {
+        final SQLiteDatabase database = getDatabase();
+
+        database.beginTransaction();
+        try {
+            final SQLiteStatement delete = database.compileStatement("DELETE FROM " + BulkDownloadTable.TABLE_NAME + " WHERE "
+                    + BulkDownloadTable.COLUMN_TYPE + "=? AND " + BulkDownloadTable.COLUMN_MODEL_ID + "=? AND " + BulkDownloadTable.COLUMN_NAME + "=?");
+            try {
+                for (GenericModel model : models) {
+                    if (model instanceof AlbumModel) {
+                        final AlbumModel album = (AlbumModel) model;
+                        delete.bindLong(1, BulkDownloadTable.TYPE_ALBUM);
+                        delete.bindLong(2, album.getAlbumId());
+                        delete.bindString(3, getKeyString(album.getAlbumName()));
+                    } else if (model instanceof ArtistModel) {
+                        final ArtistModel artist = (ArtistModel) model;
+                        delete.bindLong(1, BulkDownloadTable.TYPE_ARTIST);
+                        delete.bindLong(2, artist.getArtistID());
+                        delete.bindString(3, getKeyString(artist.getArtistName()));
+                    } else {
+                        continue;
+                    }
+                    delete.executeUpdateDelete();
+                }
+            } finally {
+                delete.close();
+            }
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Strings that are part of a primary key are stored as empty strings instead of null.
+     */
+    private static String getKeyString(final String name) {
+        return name == null ? "" : name;
+    }
+
+    private boolean isArtworkMissPending(final String key, final String provider) {
+        final Cursor cursor = getDatabase().query(ArtworkMissTable.TABLE_NAME, new String[]{ArtworkMissTable.COLUMN_RETRY_AFTER},
+                ArtworkMissTable.COLUMN_ARTWORK_KEY + "=? AND " + ArtworkMissTable.COLUMN_PROVIDER + "=?",
+                new String[]{key, getKeyString(provider)}, null, null, null);
+
+        final boolean pending = cursor.moveToFirst() && cursor.getLong(0) > System.currentTimeMillis();
+
+        cursor.close();
+
+        return pending;
+    }
+
+    private void insertArtworkMiss(final String key, final int type, final String provider, final boolean transientFailure) {
+        final SQLiteDatabase database = getDatabase();
+
+        final String where = ArtworkMissTable.COLUMN_ARTWORK_KEY + "=? AND " + ArtworkMissTable.COLUMN_PROVIDER + "=?";
+        final String[] whereArgs = {key, getKeyString(provider)};
+
+        database.beginTransaction();
+        try {
+            final Cursor cursor = database.query(ArtworkMissTable.TABLE_NAME, new String[]{ArtworkMissTable.COLUMN_FAILURE_COUNT},
+                    where, whereArgs, null, null, null);
+
+            final int failureCount = (cursor.moveToFirst() ? cursor.getInt(0) : 0) + 1;
+
+            cursor.close();
+
+            final ContentValues values = new ContentValues();
+            values.put(ArtworkMissTable.COLUMN_ARTWORK_KEY, key);
+            values.put(ArtworkMissTable.COLUMN_TYPE, type);
+            values.put(ArtworkMissTable.COLUMN_PROVIDER, whereArgs[1]);
+            values.put(ArtworkMissTable.COLUMN_FAILURE_COUNT, failureCount);
+            values.put(ArtworkMissTable.COLUMN_RETRY_AFTER, System.currentTimeMillis() + ArtworkMissPolicy.getRetryDelay(transientFailure, failureCount));
+
+            database.replace(ArtworkMissTable.TABLE_NAME, "", values);
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    private static void removeArtworkMisses(final SQLiteDatabase database, final String key) {
+        database.delete(ArtworkMissTable.TABLE_NAME, ArtworkMissTable.COLUMN_ARTWORK_KEY + "=?", new String[]{key});
+    }
+
+    private static void clearArtworkMisses(final SQLiteDatabase database, final int type) {
+        database.delete(ArtworkMissTable.TABLE_NAME, ArtworkMissTable.COLUMN_TYPE + "=?", new String[]{String.valueOf(type)});
+    }
+
+    /**
+     * Key of the album in the negative cache, the name is only used if the album has no id.
+     */
+    private static String getAlbumMissKey(final AlbumModel album) {
+        final long albumId = album.getAlbumId();
+        if (albumId != -1) {
+            return String.valueOf(albumId);
+        }
+        return album.getArtistName() + '_' + album.getAlbumName();
+    }
+
+    /**
+     * Key of the artist in the negative cache, the name is only used if the artist has no id.
+     */
+    private static String getArtistMissKey(final ArtistModel artist) {
+        final long artistId = artist.getArtistID();
+        if (artistId != -1) {
+            return String.valueOf(artistId);
+        }
+        return artist.getArtistName();
+    }
+
+    /**
+     * Returns the long living database connection and opens it if necessary.
+     *
+     * @return The {@link SQLiteDatabase} used for all reads and writes.
+     */
+    private SQLiteDatabase getDatabase() {
+        SQLiteDatabase database = mDatabase;
+        if (database == null) {
+            synchronized (this) {
+                database = mDatabase;
+                if (database == null) {
+                    database = getWritableDatabase();
+                    mDatabase = database;
+                }
+            }
+        }
+        return database;
+    }
+
+    /**
+     * Gets a set of compiled lookup statements from the pool or compiles a new one.
+     */
+    private LookupStatements acquireLookup() {
+        final LookupStatements lookup = mLookupPool.poll();
+        if (lookup != null) {
+            return lookup;
+        }
+        return new LookupStatements(getDatabase());
+    }
+
+    /**
+     * Returns the set of lookup statements to the pool. If the pool is full the statements are closed.
+     */
+    private void releaseLookup(final LookupStatements lookup) {
+        lookup.clearBindings();
+        if (!mLookupPool.offer(lookup)) {
+            lookup.close();
+        }
+    }
+
+    /**
+     * Runs one of the lookup statements.
+     *
+     * @return The decoded lookup result or null if no row exists.
+     */
+    private static LookupResult queryLookup(final SQLiteStatement statement) {
+        try {
+            return new LookupResult(statement.simpleQueryForString());
+        } catch (SQLiteDoneException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Columns of an image row as returned by the {@link LookupStatements}.
+     */
+    private static class LookupResult {
+
+        private final boolean mNotFound;
+
+        private final boolean mFullPath;
+
+        private final String mPath;
+
+        /**
+         * @param result The single string of a lookup, see {@link LookupStatements#ALBUM_RESULT}.
+         */
+        LookupResult(final String result) {
+            mNotFound = result.charAt(0) == '1';
+            mFullPath = result.charAt(1) == '1';
+            mPath = result.substring(2);
+        }
+    }
+
+    /**
+     * Set of compiled statements for the image lookups.
+     */
+    private static class LookupStatements {
+
+        /**
+         * A {@link SQLiteStatement} can only return a single value, so the lookups avoid a cursor
+         * by packing the columns into one string that is decoded by {@link LookupResult}:
+         * <ol>
+         * <li>one character for the not_found flag (0 or 1)</li>
+         * <li>one character for the has_full_path flag (0 or 1, always 0 for artists)</li>
+         * <li>the stored image path, empty if it is null</li>
+         * </ol>
+         * The flags are compared with 0 so each of them is exactly one character.
+         */
+        private static final String ALBUM_RESULT = "SELECT (ifnull(" + AlbumArtTable.COLUMN_IMAGE_NOT_FOUND + ",0)<>0) || (ifnull("
+                + AlbumArtTable.COLUMN_IMAGE_HAS_FULL_PATH + ",0)<>0) || ifnull(" + AlbumArtTable.COLUMN_IMAGE_FILE_PATH + ",'') FROM "
+                + AlbumArtTable.TABLE_NAME + " WHERE ";
+
+        /**
+         * Same encoding as {@link #ALBUM_RESULT}.
+         */
+        private static final String ARTIST_RESULT = "SELECT (ifnull(" + ArtistArtTable.COLUMN_IMAGE_NOT_FOUND + ",0)<>0) || '0' || ifnull("
+                + ArtistArtTable.COLUMN_IMAGE_FILE_PATH + ",'') FROM " + ArtistArtTable.TABLE_NAME + " WHERE ";
+
+        private final SQLiteStatement mAlbumById;
+
+        private final SQLiteStatement mAlbumByNameAndArtist;
+
+        private final SQLiteStatement mAlbumByName;
+
+        private final SQLiteStatement mArtistById;
+
+        private final SQLiteStatement mArtistByName;
+
+        LookupStatements(final SQLiteDatabase database) {
+            mAlbumById = database.compileStatement(ALBUM_RESULT + AlbumArtTable.COLUMN_ALBUM_ID + "=? LIMIT 1");
+            mAlbumByNameAndArtist = database.compileStatement(ALBUM_RESULT + AlbumArtTable.COLUMN_ALBUM_NAME + "=? AND " + AlbumArtTable.COLUMN_ARTIST_NAME + "=? LIMIT 1");
+            mAlbumByName = database.compileStatement(ALBUM_RESULT + AlbumArtTable.COLUMN_ALBUM_NAME + "=? LIMIT 1");
+            mArtistById = database.compileStatement(ARTIST_RESULT + ArtistArtTable.COLUMN_ARTIST_ID + "=? LIMIT 1");
+            mArtistByName = database.compileStatement(ARTIST_RESULT + ArtistArtTable.COLUMN_ARTIST_NAME + "=? LIMIT 1");
+        }
+
+        void clearBindings() {
+            mAlbumById.clearBindings();
+            mAlbumByNameAndArtist.clearBindings();
+            mAlbumByName.clearBindings();
+            mArtistById.clearBindings();
+            mArtistByName.clearBindings();
+        }
+
+        void close() {
+            mAlbumById.close();
+            mAlbumByNameAndArtist.close();
+            mAlbumByName.close();
+            mArtistById.close();
+            mArtistByName.close();
+        }
     }
 }
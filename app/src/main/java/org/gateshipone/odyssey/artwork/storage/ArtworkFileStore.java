@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2020 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.artwork.storage;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.gateshipone.odyssey.utils.FileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content addressed storage for artwork files. Every file is named after the SHA-256 hash of its
+ * content, so an image that is used by multiple albums (e.g. all discs of a release) is stored once.
+ * <p>
+ * Files are written to a pending file first and moved into the store by {@link #commit(PendingFile)}.
+ * The caller must commit and delete files under the same lock it uses to track the references to
+ * the files, otherwise a file could be deleted while a new reference to it is created.
+ */
+public class ArtworkFileStore {
+
+    private static final String FILE_EXTENSION = ".jpg";
+
+    private static final String PENDING_FILE_PREFIX = "pending_";
+
+    private static final String PENDING_FILE_EXTENSION = ".tmp";
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final File mDirectory;
+
+    /**
+     * Pending files modified before this time were left behind by an earlier process (ms). Rounded
+     * down to full seconds because file systems may store the modification time in seconds.
+     */
+    private final long mPendingFilesTimeLimit;
+
+    public ArtworkFileStore(final File directory) {
+        mDirectory = directory;
+
+        final long now = System.currentTimeMillis();
+        mPendingFilesTimeLimit = now - now % 1000;
+    }
+
+    /**
+     * Writes the raw image to a pending file.
+     *
+     * @param image The image file content
+     * @return The pending file that must be committed or discarded
+     * @throws IOException If the file could not be written
+     */
+    public PendingFile write(@NonNull final byte[] image) throws IOException {
+        return write(outputStream -> outputStream.write(image));
+    }
+
+    /**
+     * Encodes the image as jpeg and streams it to a pending file.
+     *
+     * @param image   The image to encode
+     * @param quality Jpeg quality of the file (0 - 100)
+     * @return The pending file that must be committed or discarded
+     * @throws IOException If the file could not be written
+     */
+    public PendingFile write(@NonNull final Bitmap image, final int quality) throws IOException {
+        return write(outputStream -> {
+            if (!image.compress(Bitmap.CompressFormat.JPEG, quality, outputStream)) {
+                throw new IOException("Could not encode image");
+            }
+        });
+    }
+
+    /**
+     * Moves the pending file into the store. If a file with the same content exists already the
+     * pending file is removed and the existing file is used.
+     *
+     * @param pendingFile A file returned by one of the write methods
+     * @return The name of the file in the store
+     * @throws IOException If the file could not be moved, the pending file is removed in this case
+     */
+    public String commit(@NonNull final PendingFile pendingFile) throws IOException {
+        final File file = new File(mDirectory, pendingFile.mFileName);
+
+        if (file.exists()) {
+            pendingFile.mFile.delete();
+        } else if (!pendingFile.mFile.renameTo(file)) {
+            pendingFile.mFile.delete();
+            throw new IOException("Could not move " + pendingFile.mFile + " to " + file);
+        }
+
+        return pendingFile.mFileName;
+    }
+
+    /**
+     * Removes a pending file that is not needed anymore.
+     */
+    public void discard(@NonNull final PendingFile pendingFile) {
+        pendingFile.mFile.delete();
+    }
+
+    /**
+     * Removes a file of the store. The caller must make sure that the file is not referenced anymore.
+     */
+    public void delete(@NonNull final String fileName) {
+        new File(mDirectory, fileName).delete();
+    }
+
+    /**
+     * @return The size of the file in bytes or 0 if the file does not exist
+     */
+    public long getSize(@NonNull final String fileName) {
+        return new File(mDirectory, fileName).length();
+    }
+
+    /**
+     * Computes the content addressed name of an existing file, used to migrate files that are
+     * named after their album or artist.
+     *
+     * @param fileName Name of the existing file in the directory of the store
+     * @return The name the file should have or null if the file does not exist
+     * @throws IOException If the file could not be read
+     */
+    @Nullable
+    public String getContentName(@NonNull final String fileName) throws IOException {
+        final File file = new File(mDirectory, fileName);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        final MessageDigest digest = createDigest();
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        return FileUtils.toHexString(digest.digest()) + FILE_EXTENSION;
+    }
+
+    /**
+     * Renames an existing file to its content addressed name. If a file with this name exists
+     * already the file is a duplicate and removed.
+     *
+     * @param fileName    Name of the existing file
+     * @param contentName Name returned by {@link #getContentName(String)}
+     * @return True if the file is available under the content name afterwards
+     */
+    public boolean move(@NonNull final String fileName, @NonNull final String contentName) {
+        final File file = new File(mDirectory, fileName);
+        final File contentFile = new File(mDirectory, contentName);
+
+        if (contentFile.exists()) {
+            file.delete();
+            return true;
+        }
+
+        return file.renameTo(contentFile);
+    }
+
+    /**
+     * Removes pending files that were left behind when the process was killed while writing.
+     * Pending files written since this store was created belong to running writes and are kept.
+     */
+    public void removePendingFiles() {
+        final File[] files = mDirectory.listFiles((dir, name) -> name.startsWith(PENDING_FILE_PREFIX) && name.endsWith(PENDING_FILE_EXTENSION));
+        if (files != null) {
+            for (File file : files) {
+                if (file.lastModified() < mPendingFilesTimeLimit) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    private PendingFile write(final ContentWriter writer) throws IOException {
+        mDirectory.mkdirs();
+
+        final MessageDigest digest = createDigest();
+        final File file = File.createTempFile(PENDING_FILE_PREFIX, PENDING_FILE_EXTENSION, mDirectory);
+
+        try (OutputStream outputStream = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE), digest)) {
+            writer.write(outputStream);
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        }
+
+        return new PendingFile(file, FileUtils.toHexString(digest.digest()) + FILE_EXTENSION);
+    }
+
+    private static MessageDigest createDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private interface ContentWriter {
+        void write(OutputStream outputStream) throws IOException;
+    }
+
+    /**
+     * A written file that is not part of the store yet.
+     */
+    public static class PendingFile {
+        private final File mFile;
+
+        private final String mFileName;
+
+        private PendingFile(final File file, final String fileName) {
+            mFile = file;
+            mFileName = fileName;
+        }
+
+        /**
+         * @return The name the file will have in the store
+         */
+        public String getFileName() {
+            return mFileName;
+        }
+    }
+}
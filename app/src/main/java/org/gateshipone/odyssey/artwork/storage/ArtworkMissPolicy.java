@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2020 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.artwork.storage;
+
+/**
+ * Retry policy for failed artwork lookups. The delay until the next lookup doubles with every
+ * failure of the same item. Transient failures (overloaded server, timeouts, no connection) are
+ * retried soon, a provider that had no image for the item is only asked again after days.
+ */
+public class ArtworkMissPolicy {
+
+    private static final long ONE_MINUTE_MS = 60 * 1000;
+
+    private static final long ONE_DAY_MS = 24 * 60 * ONE_MINUTE_MS;
+
+    static final long TRANSIENT_BASE_DELAY_MS = 5 * ONE_MINUTE_MS;
+
+    static final long TRANSIENT_MAX_DELAY_MS = ONE_DAY_MS;
+
+    static final long NOT_FOUND_BASE_DELAY_MS = 7 * ONE_DAY_MS;
+
+    static final long NOT_FOUND_MAX_DELAY_MS = 90 * ONE_DAY_MS;
+
+    private ArtworkMissPolicy() {
+    }
+
+    /**
+     * @param transientFailure True if the lookup failed because of a temporary problem
+     * @param failureCount     Number of failed lookups of the item including this one, starting with 1
+     * @return The delay in ms until the item should be looked up again
+     */
+    public static long getRetryDelay(final boolean transientFailure, final int failureCount) {
+        final long baseDelay = transientFailure ? TRANSIENT_BASE_DELAY_MS : NOT_FOUND_BASE_DELAY_MS;
+        final long maxDelay = transientFailure ? TRANSIENT_MAX_DELAY_MS : NOT_FOUND_MAX_DELAY_MS;
+
+        // limit the shift, the maximum delay is reached long before an overflow
+        final int shift = Math.min(Math.max(failureCount, 1) - 1, 16);
+        return Math.min(baseDelay << shift, maxDelay);
+    }
+
+    /**
+     * @param statusCode The http status code of a failed request
+     * @return True if the request failed because of a temporary problem of the server
+     */
+    public static boolean isTransientStatus(final int statusCode) {
+        return statusCode == 408 || statusCode == 429 || statusCode >= 500;
+    }
+}
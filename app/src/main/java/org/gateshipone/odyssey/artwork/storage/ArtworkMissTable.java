@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2020 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.artwork.storage;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Negative cache for the artwork providers. Every row is a failed lookup of an album or artist
+ * for one provider, the lookup is not repeated before the retry time is reached.
+ */
+class ArtworkMissTable {
+    static final String TABLE_NAME = "odyssey_artwork_misses";
+
+    static final String COLUMN_ARTWORK_KEY = "artwork_key";
+
+    static final String COLUMN_TYPE = "type";
+
+    static final String COLUMN_PROVIDER = "provider";
+
+    static final String COLUMN_FAILURE_COUNT = "failure_count";
+
+    static final String COLUMN_RETRY_AFTER = "retry_after";
+
+    static final int TYPE_ALBUM = 0;
+
+    static final int TYPE_ARTIST = 1;
+
+    private static final String DATABASE_CREATE = "CREATE TABLE if not exists " +
+            TABLE_NAME
+            + " (" +
+            COLUMN_ARTWORK_KEY + " text," +
+            COLUMN_TYPE + " integer," +
+            COLUMN_PROVIDER + " text," +
+            COLUMN_FAILURE_COUNT + " integer," +
+            COLUMN_RETRY_AFTER + " integer," +
+            "primary key (" + COLUMN_ARTWORK_KEY + ", " + COLUMN_PROVIDER + ")" +
+            ");";
+
+    private static final String DATABASE_DROP = "DROP TABLE if exists " + TABLE_NAME;
+
+    static void createTable(SQLiteDatabase database) {
+        // Create table if not already existing
+        database.execSQL(DATABASE_CREATE);
+    }
+
+    static void dropTable(final SQLiteDatabase database) {
+        // drop table if already existing
+        database.execSQL(DATABASE_DROP);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2020 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.artwork.storage;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Usage of the content addressed artwork files. Every album or artist that uses an image
+ * references a file, shared files are only stored once.
+ */
+public class ArtworkStoreReport {
+
+    private int mReferenceCount;
+
+    private int mFileCount;
+
+    private long mStoredBytes;
+
+    private long mSavedBytes;
+
+    /**
+     * Adds a file of the store.
+     *
+     * @param size           Size of the file in bytes
+     * @param referenceCount Number of albums or artists that use the file
+     */
+    void addFile(final long size, final int referenceCount) {
+        mFileCount++;
+        mReferenceCount += referenceCount;
+        mStoredBytes += size;
+        mSavedBytes += size * Math.max(0, referenceCount - 1);
+    }
+
+    /**
+     * @return The number of albums and artists with an image file
+     */
+    public int getReferenceCount() {
+        return mReferenceCount;
+    }
+
+    /**
+     * @return The number of distinct image files
+     */
+    public int getFileCount() {
+        return mFileCount;
+    }
+
+    /**
+     * @return The size of all image files in bytes
+     */
+    public long getStoredBytes() {
+        return mStoredBytes;
+    }
+
+    /**
+     * @return The bytes that would be needed additionally if every album and artist had its own file
+     */
+    public long getSavedBytes() {
+        return mSavedBytes;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "Artwork files: " + mFileCount + " for " + mReferenceCount + " images, stored: " + (mStoredBytes / 1024)
+                + " KB, saved by deduplication: " + (mSavedBytes / 1024) + " KB";
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2020 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.artwork.storage;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Persisted work queue of the bulk downloader. Every row is one album or artist that still needs
+ * to be processed, rows are removed as soon as the request for the item is finished.
+ * The rowid keeps the order in which the queue was created.
+ */
+class BulkDownloadTable {
+    static final String TABLE_NAME = "odyssey_bulk_download_queue";
+
+    static final String COLUMN_TYPE = "type";
+
+    static final String COLUMN_MODEL_ID = "model_id";
+
+    static final String COLUMN_NAME = "name";
+
+    static final String COLUMN_ARTIST_NAME = "artist_name";
+
+    static final String COLUMN_ALBUM_ART_URL = "album_art_url";
+
+    static final int TYPE_ALBUM = 0;
+
+    static final int TYPE_ARTIST = 1;
+
+    private static final String DATABASE_CREATE = "CREATE TABLE if not exists " +
+            TABLE_NAME
+            + " (" +
+            COLUMN_TYPE + " integer," +
+            COLUMN_MODEL_ID + " integer," +
+            COLUMN_NAME + " text," +
+            COLUMN_ARTIST_NAME + " text," +
+            COLUMN_ALBUM_ART_URL + " text," +
+            "primary key (" + COLUMN_TYPE + ", " + COLUMN_MODEL_ID + ", " + COLUMN_NAME + ")" +
+            ");";
+
+    private static final String DATABASE_DROP = "DROP TABLE if exists " + TABLE_NAME;
+
+    static void createTable(SQLiteDatabase database) {
+        // Create table if not already existing
+        database.execSQL(DATABASE_CREATE);
+    }
+
+    static void dropTable(final SQLiteDatabase database) {
+        // drop table if already existing
+        database.execSQL(DATABASE_DROP);
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2020 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.mediascanner;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.gateshipone.odyssey.models.FileModel;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Walks a directory tree in parallel and reports all media files that are not known to the MediaStore
+ * while the walk is still running. After the walk all MediaStore files that were not found on
+ * the filesystem are reported as well.
+ * <p>
+ * Directories that contain a .nomedia file are skipped with all their subdirectories.
+ * <p>
+ * If the {@link ScanManifest} of a previous walk is given, directories with an unchanged modification
+ * time are not listed again, their content is taken from the manifest. The modification time of a
+ * directory only changes with its direct entries, so all subdirectories are still checked.
+ * Files in listed directories whose size changed since the previous walk are reported even if
+ * they are known to the MediaStore.
+ */
+public class MediaFileWalker {
+
+    public interface Listener {
+        /**
+         * Called from the walker threads with a batch of files that need to be scanned.
+         */
+        void onFilesFound(@NonNull List<String> paths);
+
+        /**
+         * Called once after the walk finished and all files were reported or after the walk was cancelled.
+         */
+        void onWalkFinished();
+    }
+
+    /**
+     * Number of threads that list directories in parallel.
+     */
+    private static final int WALKER_THREADS = 4;
+
+    private final Set<String> mDatabaseFiles;
+
+    @Nullable
+    private final ScanManifest mPreviousManifest;
+
+    private final ScanManifest mManifest = new ScanManifest();
+
+    private final Listener mListener;
+
+    private final int mBatchSize;
+
+    private final AtomicBoolean mCancelled = new AtomicBoolean(false);
+
+    /**
+     * Found files that are not reported yet, guarded by itself.
+     */
+    private final List<String> mPendingFiles = new ArrayList<>();
+
+    /**
+     * @param databaseFiles    The paths of the files in the MediaStore below the walked directory.
+     * @param previousManifest The manifest of the previous walk or null to list all directories.
+     * @param batchSize        The number of files that are reported together.
+     * @param listener         Listener for the found files.
+     */
+    public MediaFileWalker(@NonNull final Set<String> databaseFiles, @Nullable final ScanManifest previousManifest, final int batchSize, @NonNull final Listener listener) {
+        mDatabaseFiles = Collections.newSetFromMap(new ConcurrentHashMap<>(databaseFiles.size() * 4 / 3 + 16));
+        mDatabaseFiles.addAll(databaseFiles);
+        mPreviousManifest = previousManifest;
+        mBatchSize = batchSize;
+        mListener = listener;
+    }
+
+    /**
+     * Walks the given directory, blocks until the walk finished or was cancelled.
+     */
+    public void walk(@NonNull final File directory) {
+        final ForkJoinPool pool = new ForkJoinPool(WALKER_THREADS);
+
+        try {
+            if (directory.isDirectory()) {
+                pool.invoke(new DirectoryTask(directory));
+            } else {
+                onFileFound(directory.getPath(), false);
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        if (mCancelled.get()) {
+            mListener.onWalkFinished();
+            return;
+        }
+
+        // files in the MediaStore that were not found need to be scanned to be removed
+        synchronized (mPendingFiles) {
+            mPendingFiles.addAll(mDatabaseFiles);
+        }
+        flush(true);
+
+        mListener.onWalkFinished();
+    }
+
+    /**
+     * Stops the walk, directories that are not listed yet are skipped.
+     */
+    public void cancel() {
+        mCancelled.set(true);
+    }
+
+    /**
+     * @return True if the walk was cancelled, the manifest is incomplete then.
+     */
+    public boolean isCancelled() {
+        return mCancelled.get();
+    }
+
+    /**
+     * @return The manifest of all directories found by the walk.
+     */
+    @NonNull
+    public ScanManifest getManifest() {
+        return mManifest;
+    }
+
+    private void onFileFound(final String path, final boolean changed) {
+        // files that are on the filesystem and in the MediaStore do not need to be scanned unless they changed
+        if (mDatabaseFiles.remove(path) && !changed) {
+            return;
+        }
+
+        synchronized (mPendingFiles) {
+            mPendingFiles.add(path);
+        }
+        flush(false);
+    }
+
+    private void flush(final boolean all) {
+        while (true) {
+            final List<String> batch;
+            synchronized (mPendingFiles) {
+                if (mPendingFiles.isEmpty() || (!all && mPendingFiles.size() < mBatchSize)) {
+                    return;
+                }
+
+                final int batchSize = Math.min(mBatchSize, mPendingFiles.size());
+                final List<String> batchView = mPendingFiles.subList(0, batchSize);
+                batch = new ArrayList<>(batchView);
+                batchView.clear();
+            }
+
+            mListener.onFilesFound(batch);
+        }
+    }
+
+    private class DirectoryTask extends RecursiveAction {
+
+        private final File mDirectory;
+
+        DirectoryTask(final File directory) {
+            mDirectory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            if (mCancelled.get()) {
+                return;
+            }
+
+            final String path = mDirectory.getPath();
+            final long lastModified = mDirectory.lastModified();
+            final ScanManifest.DirectoryEntry previousEntry = mPreviousManifest != null ? mPreviousManifest.getDirectory(path) : null;
+
+            if (previousEntry != null && lastModified != 0 && previousEntry.mLastModified == lastModified) {
+                walkUnchanged(previousEntry);
+            } else {
+                walkChanged(lastModified, previousEntry);
+            }
+        }
+
+        /**
+         * Takes the content of the directory from the previous manifest.
+         */
+        private void walkUnchanged(final ScanManifest.DirectoryEntry entry) {
+            mManifest.putDirectory(mDirectory.getPath(), entry);
+
+            if (entry.mNoMedia) {
+                return;
+            }
+
+            for (String name : entry.mFileNames) {
+                onFileFound(new File(mDirectory, name).getPath(), false);
+            }
+
+            final List<DirectoryTask> subdirectories = new ArrayList<>(entry.mSubdirectories.length);
+            for (String name : entry.mSubdirectories) {
+                subdirectories.add(new DirectoryTask(new File(mDirectory, name)));
+            }
+
+            invokeAll(subdirectories);
+        }
+
+        /**
+         * Lists the directory and records its content in the new manifest.
+         */
+        private void walkChanged(final long lastModified, @Nullable final ScanManifest.DirectoryEntry previousEntry) {
+            final String[] names = mDirectory.list();
+            if (names == null) {
+                return;
+            }
+
+            for (String name : names) {
+                if (name.equals(".nomedia")) {
+                    // skip the directory and all subdirectories
+                    mManifest.putDirectory(mDirectory.getPath(), new ScanManifest.DirectoryEntry(lastModified, new String[0], new String[0], new long[0], true));
+                    return;
+                }
+            }
+
+            final List<DirectoryTask> subdirectories = new ArrayList<>();
+            final List<String> subdirectoryNames = new ArrayList<>();
+            final List<String> fileNames = new ArrayList<>();
+            final long[] fileSizes = new long[names.length];
+
+            for (String name : names) {
+                final File file = new File(mDirectory, name);
+
+                if (file.isDirectory()) {
+                    subdirectories.add(new DirectoryTask(file));
+                    subdirectoryNames.add(name);
+                } else if (FileModel.isMediaFileName(name)) {
+                    final long size = file.length();
+                    final long previousSize = previousEntry != null ? previousEntry.getFileSize(name) : -1;
+
+                    fileSizes[fileNames.size()] = size;
+                    fileNames.add(name);
+
+                    onFileFound(file.getPath(), previousSize != -1 && previousSize != size);
+                }
+            }
+
+            mManifest.putDirectory(mDirectory.getPath(), new ScanManifest.DirectoryEntry(lastModified,
+                    subdirectoryNames.toArray(new String[0]), fileNames.toArray(new String[0]),
+                    Arrays.copyOf(fileSizes, fileNames.size()), false));
+
+            invokeAll(subdirectories);
+        }
+    }
+}
@@ -40,18 +40,22 @@ import android.os.IBinder;
 import android.os.PowerManager;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 
 import org.gateshipone.odyssey.BuildConfig;
 import org.gateshipone.odyssey.R;
 import org.gateshipone.odyssey.models.FileModel;
-import org.gateshipone.odyssey.utils.FileExplorerHelper;
+import org.gateshipone.odyssey.utils.MusicLibraryHelper;
+import org.gateshipone.odyssey.utils.PermissionHelper;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -73,13 +77,38 @@ public class MediaScannerService extends Service {
      */
     private static final int MEDIASCANNER_BUNCH_SIZE = 100;
 
+    /**
+     * Name of the file in the app files directory that stores the {@link ScanManifest} of the last scan.
+     */
+    private static final String SCAN_MANIFEST_FILE = "scan_manifest.bin";
+
     private static final int PENDING_INTENT_UPDATE_CURRENT_FLAG =
             Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE : PendingIntent.FLAG_UPDATE_CURRENT;
 
     private NotificationManager mNotificationManager;
     private NotificationCompat.Builder mBuilder;
 
-    private List<FileModel> mRemainingFiles;
+    /**
+     * Lock for the state shared between the walker threads and the MediaScanner callbacks.
+     */
+    private final Object mScanLock = new Object();
+
+    /**
+     * Files that were found by the walker but not sent to the MediaScanner yet, guarded by mScanLock.
+     */
+    private ArrayDeque<String> mRemainingFiles;
+
+    /**
+     * True while a bunch is scanned by the MediaScanner, guarded by mScanLock.
+     */
+    private boolean mBunchInProgress;
+
+    /**
+     * True once the walker reported all files, guarded by mScanLock.
+     */
+    private boolean mWalkFinished;
+
+    private volatile MediaFileWalker mWalker;
 
     private int mFilesToScan;
     private int mScannedFiles;
@@ -111,7 +140,13 @@ public class MediaScannerService extends Service {
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         if (intent != null && intent.getAction().equals(ACTION_START_MEDIASCANNING)) {
-            mRemainingFiles = new ArrayList<>();
+            synchronized (mScanLock) {
+                mRemainingFiles = new ArrayDeque<>();
+                mBunchInProgress = false;
+                mWalkFinished = false;
+                mFilesToScan = 0;
+                mScannedFiles = 0;
+            }
 
             mAbort = false;
             FileModel directory = null;
@@ -177,7 +212,8 @@ public class MediaScannerService extends Service {
     private void updateNotification() {
         //  Updates the notification but only every 10 elements to reduce load on the notification view
         if (mScannedFiles % 10 == 0 && !mAbort) {
-            mBuilder.setProgress(mFilesToScan, mScannedFiles, false);
+            // the total is only known once the walk finished
+            mBuilder.setProgress(mFilesToScan, mScannedFiles, !mWalkFinished);
             mBuilder.setStyle(new NotificationCompat.BigTextStyle()
                     .bigText(getString(R.string.mediascanner_notification_text, mScannedFiles, mFilesToScan)));
             mNotificationManager.notify(NOTIFICATION_ID, mBuilder.build());
@@ -188,34 +224,72 @@ public class MediaScannerService extends Service {
         new ListCreationTask(this).execute(basePath);
     }
 
-    private void scanFileList(List<FileModel> files) {
-        mFilesToScan = files.size();
+    /**
+     * Called by the walker with files that need to be scanned. Starts scanning if the MediaScanner is idle.
+     */
+    private void onFilesFound(List<String> files) {
+        final boolean startScan;
+        synchronized (mScanLock) {
+            mRemainingFiles.addAll(files);
+            mFilesToScan += files.size();
+            startScan = !mBunchInProgress;
+            mBunchInProgress = true;
+        }
 
-        mRemainingFiles = files;
+        if (startScan) {
+            scanNextBunch();
+        }
+    }
+
+    /**
+     * Called by the walker after all files were reported.
+     */
+    private void onWalkFinished() {
+        final boolean startScan;
+        synchronized (mScanLock) {
+            mWalkFinished = true;
+            startScan = !mBunchInProgress;
+            mBunchInProgress = true;
+        }
 
-        scanNextBunch();
+        if (BuildConfig.DEBUG) {
+            Log.v(TAG, "Got missing tracks: " + mFilesToScan);
+        }
+
+        if (startScan) {
+            scanNextBunch();
+        }
     }
 
     /**
      * Proceeds to the next bunch of files to scan if any available.
+     * If the walker is still running and no files are available, the next bunch is started by the walker.
      */
     private void scanNextBunch() {
-        if (mRemainingFiles.isEmpty() || mAbort) {
-            // No files left to scan, stop service (delayed to allow the ServiceConnection to the MediaScanner to close itself)
-            Timer delayedStopTimer = new Timer();
-            delayedStopTimer.schedule(new DelayedStopTask(), 100);
-            return;
-        }
+        final String[] bunch;
+        synchronized (mScanLock) {
+            if (mAbort || (mRemainingFiles.isEmpty() && mWalkFinished)) {
+                mBunchInProgress = false;
+
+                // No files left to scan, stop service (delayed to allow the ServiceConnection to the MediaScanner to close itself)
+                Timer delayedStopTimer = new Timer();
+                delayedStopTimer.schedule(new DelayedStopTask(), 100);
+                return;
+            }
 
-        String[] bunch = new String[Math.min(MEDIASCANNER_BUNCH_SIZE, mRemainingFiles.size())];
-        int i = 0;
+            if (mRemainingFiles.isEmpty()) {
+                // wait for the walker
+                mBunchInProgress = false;
+                return;
+            }
 
-        ListIterator<FileModel> listIterator = mRemainingFiles.listIterator();
-        while (listIterator.hasNext() && i < MEDIASCANNER_BUNCH_SIZE) {
-            bunch[i] = listIterator.next().getPath();
-            listIterator.remove();
-            i++;
+            bunch = new String[Math.min(MEDIASCANNER_BUNCH_SIZE, mRemainingFiles.size())];
+            for (int i = 0; i < bunch.length; i++) {
+                bunch[i] = mRemainingFiles.poll();
+            }
+            mBunchInProgress = true;
         }
+
         MediaScannerConnection.scanFile(getApplicationContext(), bunch, null, new MediaScanCompletedCallback(bunch.length));
     }
 
@@ -297,8 +371,11 @@ public class MediaScannerService extends Service {
                     Log.e(TAG, "Cancel requested");
                 }
 
-                // abort scan after finish scanning current folder
+                // abort scan after finish scanning current bunch
                 mAbort = true;
+                if (mWalker != null) {
+                    mWalker.cancel();
+                }
                 // cancel notification
                 mNotificationManager.cancel(NOTIFICATION_ID);
                 stopForeground(true);
@@ -306,7 +383,7 @@ public class MediaScannerService extends Service {
         }
     }
 
-    private static class ListCreationTask extends AsyncTask<FileModel, Integer, List<FileModel>> {
+    private static class ListCreationTask extends AsyncTask<FileModel, Integer, Void> {
 
         private final WeakReference<MediaScannerService> mMediaScannerService;
 
@@ -315,22 +392,48 @@ public class MediaScannerService extends Service {
         }
 
         @Override
-        protected List<FileModel> doInBackground(FileModel... params) {
+        protected Void doInBackground(FileModel... params) {
             final MediaScannerService mediaScannerService = mMediaScannerService.get();
 
-            final List<FileModel> files = new ArrayList<>();
-
             if (mediaScannerService != null) {
-
-                files.addAll(FileExplorerHelper.getInstance().getMissingDBFiles(mediaScannerService.getApplicationContext(), params[0]));
-                if (BuildConfig.DEBUG) {
-                    Log.v(TAG, "Got missing tracks: " + files.size());
+                final Set<String> databaseFiles = MusicLibraryHelper.getMediaFilePathsForPath(params[0].getPath(), mediaScannerService.getApplicationContext());
+
+                final File manifestFile = new File(mediaScannerService.getFilesDir(), SCAN_MANIFEST_FILE);
+                final ScanManifest manifest = ScanManifest.load(manifestFile);
+
+                final MediaFileWalker walker = new MediaFileWalker(databaseFiles, manifest, MEDIASCANNER_BUNCH_SIZE, new MediaFileWalker.Listener() {
+                    @Override
+                    public void onFilesFound(@NonNull List<String> paths) {
+                        mediaScannerService.onFilesFound(paths);
+                    }
+
+                    @Override
+                    public void onWalkFinished() {
+                        mediaScannerService.onWalkFinished();
+                    }
+                });
+
+                mediaScannerService.mWalker = walker;
+
+                if (PermissionHelper.hasStoragePermission(mediaScannerService.getApplicationContext())) {
+                    final File directory = new File(params[0].getPath());
+                    walker.walk(directory);
+
+                    // an incomplete manifest would hide the skipped directories from the next scan
+                    if (!walker.isCancelled()) {
+                        manifest.replaceTree(directory.getPath(), walker.getManifest());
+                        try {
+                            manifest.save(manifestFile);
+                        } catch (IOException e) {
+                            Log.e(TAG, "Failed to save the scan manifest: " + e.getMessage());
+                        }
+                    }
+                } else {
+                    mediaScannerService.onWalkFinished();
                 }
-
-                mediaScannerService.scanFileList(files);
             }
 
-            return files;
+            return null;
         }
     }
 
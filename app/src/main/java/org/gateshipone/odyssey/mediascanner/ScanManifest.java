@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2020 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.mediascanner;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Snapshot of the scanned directories: the modification time of every directory with the names
+ * of its subdirectories and the names and sizes of its media files.
+ * <p>
+ * The {@link MediaFileWalker} uses the manifest of the previous scan to skip the listing of
+ * directories whose modification time did not change. The manifest is persisted in a compact
+ * binary format.
+ */
+public class ScanManifest {
+
+    private static final int FILE_MAGIC = 0x4f44534d;
+
+    private static final int FILE_VERSION = 1;
+
+    /**
+     * A scanned directory.
+     */
+    public static class DirectoryEntry {
+
+        final long mLastModified;
+
+        final String[] mSubdirectories;
+
+        /**
+         * Sorted, so the size of a file can be found with a binary search.
+         */
+        final String[] mFileNames;
+
+        final long[] mFileSizes;
+
+        /**
+         * True if the directory contains a .nomedia file, no content is stored then.
+         */
+        final boolean mNoMedia;
+
+        DirectoryEntry(final long lastModified, @NonNull final String[] subdirectories, @NonNull final String[] fileNames, @NonNull final long[] fileSizes, final boolean noMedia) {
+            mLastModified = lastModified;
+            mSubdirectories = subdirectories;
+            mFileNames = fileNames;
+            mFileSizes = fileSizes;
+            mNoMedia = noMedia;
+
+            sortFiles();
+        }
+
+        public long getLastModified() {
+            return mLastModified;
+        }
+
+        public boolean isNoMedia() {
+            return mNoMedia;
+        }
+
+        /**
+         * @return The size of the file with the given name or -1 if the file is not part of this directory.
+         */
+        long getFileSize(final String name) {
+            final int index = Arrays.binarySearch(mFileNames, name);
+            return index >= 0 ? mFileSizes[index] : -1;
+        }
+
+        /**
+         * Sorts the files by their names together with their sizes.
+         */
+        private void sortFiles() {
+            boolean sorted = true;
+            for (int i = 1; i < mFileNames.length && sorted; i++) {
+                sorted = mFileNames[i - 1].compareTo(mFileNames[i]) <= 0;
+            }
+            if (sorted) {
+                return;
+            }
+
+            final Integer[] order = new Integer[mFileNames.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> mFileNames[a].compareTo(mFileNames[b]));
+
+            final String[] names = mFileNames.clone();
+            final long[] sizes = mFileSizes.clone();
+            for (int i = 0; i < order.length; i++) {
+                mFileNames[i] = names[order[i]];
+                mFileSizes[i] = sizes[order[i]];
+            }
+        }
+    }
+
+    /**
+     * The difference between two manifests.
+     */
+    public static class Diff {
+
+        private final List<String> mAddedFiles = new ArrayList<>();
+
+        private final List<String> mRemovedFiles = new ArrayList<>();
+
+        private final List<String> mChangedFiles = new ArrayList<>();
+
+        /**
+         * @return The paths of the files that are only part of the newer manifest.
+         */
+        public List<String> getAddedFiles() {
+            return mAddedFiles;
+        }
+
+        /**
+         * @return The paths of the files that are only part of the older manifest.
+         */
+        public List<String> getRemovedFiles() {
+            return mRemovedFiles;
+        }
+
+        /**
+         * @return The paths of the files whose size changed.
+         */
+        public List<String> getChangedFiles() {
+            return mChangedFiles;
+        }
+
+        public boolean isEmpty() {
+            return mAddedFiles.isEmpty() && mRemovedFiles.isEmpty() && mChangedFiles.isEmpty();
+        }
+    }
+
+    private final Map<String, DirectoryEntry> mDirectories = new ConcurrentHashMap<>();
+
+    /**
+     * @param path The path of the directory as returned by {@link File#getPath()}.
+     * @return The entry of the directory or null if the directory is not part of the manifest.
+     */
+    @Nullable
+    public DirectoryEntry getDirectory(@NonNull final String path) {
+        return mDirectories.get(path);
+    }
+
+    /**
+     * @return All directories of the manifest mapped by their path.
+     */
+    public Map<String, DirectoryEntry> getDirectories() {
+        return Collections.unmodifiableMap(mDirectories);
+    }
+
+    void putDirectory(@NonNull final String path, @NonNull final DirectoryEntry entry) {
+        mDirectories.put(path, entry);
+    }
+
+    /**
+     * Replaces all directories of the tree with the given root by the directories of the other manifest.
+     *
+     * @param rootPath The root of the replaced tree.
+     * @param tree     The manifest of the new tree.
+     */
+    public void replaceTree(@NonNull final String rootPath, @NonNull final ScanManifest tree) {
+        final String prefix = rootPath.endsWith(File.separator) ? rootPath : rootPath + File.separator;
+
+        final Iterator<String> paths = mDirectories.keySet().iterator();
+        while (paths.hasNext()) {
+            final String path = paths.next();
+            if (path.equals(rootPath) || path.startsWith(prefix)) {
+                paths.remove();
+            }
+        }
+        mDirectories.putAll(tree.mDirectories);
+    }
+
+    /**
+     * Creates the difference between an older manifest and this manifest.
+     *
+     * @param older The older manifest.
+     * @return The files that were added, removed or changed since the older manifest.
+     */
+    @NonNull
+    public Diff diff(@NonNull final ScanManifest older) {
+        final Diff diff = new Diff();
+
+        for (Map.Entry<String, DirectoryEntry> entry : mDirectories.entrySet()) {
+            final DirectoryEntry oldDirectory = older.mDirectories.get(entry.getKey());
+            final DirectoryEntry directory = entry.getValue();
+
+            for (int i = 0; i < directory.mFileNames.length; i++) {
+                final String path = entry.getKey() + File.separator + directory.mFileNames[i];
+                final long oldSize = oldDirectory == null ? -1 : oldDirectory.getFileSize(directory.mFileNames[i]);
+
+                if (oldSize == -1) {
+                    diff.mAddedFiles.add(path);
+                } else if (oldSize != directory.mFileSizes[i]) {
+                    diff.mChangedFiles.add(path);
+                }
+            }
+        }
+
+        for (Map.Entry<String, DirectoryEntry> entry : older.mDirectories.entrySet()) {
+            final DirectoryEntry directory = mDirectories.get(entry.getKey());
+            final DirectoryEntry oldDirectory = entry.getValue();
+
+            for (String name : oldDirectory.mFileNames) {
+                if (directory == null || directory.getFileSize(name) == -1) {
+                    diff.mRemovedFiles.add(entry.getKey() + File.separator + name);
+                }
+            }
+        }
+
+        return diff;
+    }
+
+    /**
+     * Reads a manifest from a file.
+     *
+     * @param file The file of the manifest.
+     * @return The manifest or an empty manifest if the file does not exist or could not be read.
+     */
+    @NonNull
+    public static ScanManifest load(@NonNull final File file) {
+        final ScanManifest manifest = new ScanManifest();
+
+        if (!file.exists()) {
+            return manifest;
+        }
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != FILE_MAGIC || input.readInt() != FILE_VERSION) {
+                return manifest;
+            }
+
+            final int directoryCount = input.readInt();
+            for (int i = 0; i < directoryCount; i++) {
+                final String path = input.readUTF();
+                final long lastModified = input.readLong();
+                final boolean noMedia = input.readBoolean();
+
+                final String[] subdirectories = new String[input.readInt()];
+                for (int j = 0; j < subdirectories.length; j++) {
+                    subdirectories[j] = input.readUTF();
+                }
+
+                final int fileCount = input.readInt();
+                final String[] fileNames = new String[fileCount];
+                final long[] fileSizes = new long[fileCount];
+                for (int j = 0; j < fileCount; j++) {
+                    fileNames[j] = input.readUTF();
+                    fileSizes[j] = input.readLong();
+                }
+
+                manifest.mDirectories.put(path, new DirectoryEntry(lastModified, subdirectories, fileNames, fileSizes, noMedia));
+            }
+        } catch (IOException e) {
+            // a damaged manifest only means a full scan
+            return new ScanManifest();
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Writes the manifest to a file. The file is replaced atomically.
+     *
+     * @param file The file of the manifest.
+     * @throws IOException If the manifest could not be written.
+     */
+    public void save(@NonNull final File file) throws IOException {
+        final File tempFile = new File(file.getPath() + ".tmp");
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            output.writeInt(FILE_MAGIC);
+            output.writeInt(FILE_VERSION);
+
+            final List<Map.Entry<String, DirectoryEntry>> entries = new ArrayList<>(mDirectories.entrySet());
+            output.writeInt(entries.size());
+
+            for (Map.Entry<String, DirectoryEntry> entry : entries) {
+                final DirectoryEntry directory = entry.getValue();
+
+                output.writeUTF(entry.getKey());
+                output.writeLong(directory.mLastModified);
+                output.writeBoolean(directory.mNoMedia);
+
+                output.writeInt(directory.mSubdirectories.length);
+                for (String subdirectory : directory.mSubdirectories) {
+                    output.writeUTF(subdirectory);
+                }
+
+                output.writeInt(directory.mFileNames.length);
+                for (int i = 0; i < directory.mFileNames.length; i++) {
+                    output.writeUTF(directory.mFileNames[i]);
+                    output.writeLong(directory.mFileSizes[i]);
+                }
+            }
+        }
+
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("could not replace " + file);
+        }
+    }
+}
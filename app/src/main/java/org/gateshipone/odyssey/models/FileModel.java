@@ -146,6 +146,15 @@ public class FileModel implements GenericModel, Comparable<FileModel> {
         return mFile.getParent();
     }
 
+    /**
+     * Return if a file with the given name is a supported media or playlist file.
+     */
+    public static boolean isMediaFileName(final String filename) {
+        final String ext = FileExtensionFilter.getFileExtension(filename);
+
+        return ext != null && !ext.equals("nomedia") && fileExtensions.contains(ext);
+    }
+
     /**
      * Return a list of the files in the directory represented by the file object.
      * This list will contain FileModel objects sorted by the filename and the filetype.
@@ -287,7 +296,7 @@ public class FileModel implements GenericModel, Comparable<FileModel> {
             return false;
         }
 
-        private String getFileExtension(String filename) {
+        private static String getFileExtension(String filename) {
             // get the extension of the given filename
 
             String ext = null;
@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2020 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Two level bucket structure (group -> subgroup -> indices) over the positions of an original list.
+ * All data is kept in primitive int arrays. Every index knows its slot inside its group and its
+ * subgroup so removing an index is a constant time swap-remove. Empty subgroups and groups are
+ * dropped with the same swap-remove so random access to the remaining buckets stays O(1).
+ * <p>
+ * The layout is computed once in the constructor, {@link #reset()} restores it without any
+ * hashing or allocation.
+ */
+final class IndexBuckets {
+
+    /**
+     * Group and subgroup id for every index of the original list.
+     */
+    private final int[] mElementGroup;
+    private final int[] mElementSub;
+
+    /**
+     * Group id of every subgroup.
+     */
+    private final int[] mSubGroup;
+
+    /**
+     * Static start offsets of the groups (and subgroups) inside the flat element arrays.
+     */
+    private final int[] mGroupStart;
+    private final int[] mSubStart;
+    private final int[] mGroupSubStart;
+
+    /**
+     * Flat element storage, laid out contiguous by group (and subgroup).
+     */
+    private final int[] mGroupElements;
+    private final int[] mSubElements;
+
+    /**
+     * Current slot of every index inside the flat storage, -1 if already removed.
+     */
+    private final int[] mElementGroupSlot;
+    private final int[] mElementSubSlot;
+
+    /**
+     * Remaining sizes of the groups and subgroups.
+     */
+    private final int[] mGroupSize;
+    private final int[] mSubSize;
+
+    /**
+     * Active subgroups of every group, laid out contiguous by group.
+     */
+    private final int[] mGroupSubs;
+    private final int[] mGroupSubCount;
+    private final int[] mSubSlotInGroup;
+
+    /**
+     * Groups that still contain indices.
+     */
+    private final int[] mActiveGroups;
+    private final int[] mGroupActiveSlot;
+    private int mActiveGroupCount;
+
+    private int mRemaining;
+
+    /**
+     * Creates the bucket structure.
+     *
+     * @param elementGroup Group id (0 until groupCount) for every index of the original list
+     * @param elementSub   Subgroup id (0 until subCount) for every index of the original list.
+     *                     A subgroup must only contain indices of one group.
+     * @param groupCount   Number of distinct groups
+     * @param subCount     Number of distinct subgroups
+     */
+    IndexBuckets(int[] elementGroup, int[] elementSub, int groupCount, int subCount) {
+        final int size = elementGroup.length;
+
+        mElementGroup = elementGroup;
+        mElementSub = elementSub;
+
+        mSubGroup = new int[subCount];
+        mGroupStart = new int[groupCount];
+        mSubStart = new int[subCount];
+        mGroupSubStart = new int[groupCount];
+        mGroupElements = new int[size];
+        mSubElements = new int[size];
+        mElementGroupSlot = new int[size];
+        mElementSubSlot = new int[size];
+        mGroupSize = new int[groupCount];
+        mSubSize = new int[subCount];
+        mGroupSubs = new int[subCount];
+        mGroupSubCount = new int[groupCount];
+        mSubSlotInGroup = new int[subCount];
+        mActiveGroups = new int[groupCount];
+        mGroupActiveSlot = new int[groupCount];
+
+        // Count sizes to compute the static offsets
+        Arrays.fill(mSubGroup, -1);
+        int[] groupTotal = new int[groupCount];
+        int[] subTotal = new int[subCount];
+        int[] groupSubTotal = new int[groupCount];
+        for (int i = 0; i < size; i++) {
+            int group = elementGroup[i];
+            int sub = elementSub[i];
+            groupTotal[group]++;
+            subTotal[sub]++;
+            if (mSubGroup[sub] == -1) {
+                mSubGroup[sub] = group;
+                groupSubTotal[group]++;
+            }
+        }
+
+        int offset = 0;
+        int subOffset = 0;
+        for (int group = 0; group < groupCount; group++) {
+            mGroupStart[group] = offset;
+            mGroupSubStart[group] = subOffset;
+            offset += groupTotal[group];
+            subOffset += groupSubTotal[group];
+        }
+
+        offset = 0;
+        for (int sub = 0; sub < subCount; sub++) {
+            mSubStart[sub] = offset;
+            offset += subTotal[sub];
+        }
+
+        reset();
+    }
+
+    /**
+     * Puts all indices of the original list back into their buckets.
+     */
+    void reset() {
+        Arrays.fill(mGroupSize, 0);
+        Arrays.fill(mSubSize, 0);
+        Arrays.fill(mGroupSubCount, 0);
+
+        // Keep the subgroup order stable by registering them in order of their first index
+        for (int sub = 0; sub < mSubGroup.length; sub++) {
+            int group = mSubGroup[sub];
+            if (group == -1) {
+                continue;
+            }
+            int slot = mGroupSubStart[group] + mGroupSubCount[group]++;
+            mGroupSubs[slot] = sub;
+            mSubSlotInGroup[sub] = slot;
+        }
+
+        for (int i = 0; i < mElementGroup.length; i++) {
+            int group = mElementGroup[i];
+            int groupSlot = mGroupStart[group] + mGroupSize[group]++;
+            mGroupElements[groupSlot] = i;
+            mElementGroupSlot[i] = groupSlot;
+
+            int sub = mElementSub[i];
+            int subSlot = mSubStart[sub] + mSubSize[sub]++;
+            mSubElements[subSlot] = i;
+            mElementSubSlot[i] = subSlot;
+        }
+
+        mActiveGroupCount = 0;
+        for (int group = 0; group < mGroupSize.length; group++) {
+            if (mGroupSize[group] > 0) {
+                mActiveGroups[mActiveGroupCount] = group;
+                mGroupActiveSlot[group] = mActiveGroupCount;
+                mActiveGroupCount++;
+            }
+        }
+
+        mRemaining = mElementGroup.length;
+    }
+
+    /**
+     * @return The number of groups that still contain indices
+     */
+    int getGroupCount() {
+        return mActiveGroupCount;
+    }
+
+    /**
+     * @return The number of indices left in all buckets
+     */
+    int getRemaining() {
+        return mRemaining;
+    }
+
+    boolean isEmpty() {
+        return mRemaining == 0;
+    }
+
+    /**
+     * @param groupPosition Position of the group within the active groups
+     * @return The number of indices left in the group
+     */
+    int getGroupSize(int groupPosition) {
+        return mGroupSize[mActiveGroups[groupPosition]];
+    }
+
+    /**
+     * @param groupPosition Position of the group within the active groups
+     * @param position      Position of the index within the group
+     * @return The index of the original list
+     */
+    int getGroupElement(int groupPosition, int position) {
+        int group = mActiveGroups[groupPosition];
+        return mGroupElements[mGroupStart[group] + position];
+    }
+
+    /**
+     * @param groupPosition Position of the group within the active groups
+     * @return The number of subgroups of the group that still contain indices
+     */
+    int getSubCount(int groupPosition) {
+        return mGroupSubCount[mActiveGroups[groupPosition]];
+    }
+
+    /**
+     * @param groupPosition Position of the group within the active groups
+     * @param subPosition   Position of the subgroup within the active subgroups of the group
+     * @return The number of indices left in the subgroup
+     */
+    int getSubSize(int groupPosition, int subPosition) {
+        return mSubSize[getSub(groupPosition, subPosition)];
+    }
+
+    /**
+     * @param groupPosition Position of the group within the active groups
+     * @param subPosition   Position of the subgroup within the active subgroups of the group
+     * @param position      Position of the index within the subgroup
+     * @return The index of the original list
+     */
+    int getSubElement(int groupPosition, int subPosition, int position) {
+        int sub = getSub(groupPosition, subPosition);
+        return mSubElements[mSubStart[sub] + position];
+    }
+
+    /**
+     * Removes the index of the original list from all buckets.
+     *
+     * @param element Index of the original list
+     * @return True if the index was removed, false if it was not part of the buckets anymore
+     */
+    boolean remove(int element) {
+        int groupSlot = mElementGroupSlot[element];
+        if (groupSlot == -1) {
+            return false;
+        }
+
+        int group = mElementGroup[element];
+        int lastGroupSlot = mGroupStart[group] + --mGroupSize[group];
+        int moved = mGroupElements[lastGroupSlot];
+        mGroupElements[groupSlot] = moved;
+        mElementGroupSlot[moved] = groupSlot;
+        mElementGroupSlot[element] = -1;
+
+        int sub = mElementSub[element];
+        int subSlot = mElementSubSlot[element];
+        int lastSubSlot = mSubStart[sub] + --mSubSize[sub];
+        moved = mSubElements[lastSubSlot];
+        mSubElements[subSlot] = moved;
+        mElementSubSlot[moved] = subSlot;
+        mElementSubSlot[element] = -1;
+
+        if (mSubSize[sub] == 0) {
+            // Drop the empty subgroup from its group
+            int slot = mSubSlotInGroup[sub];
+            int lastSlot = mGroupSubStart[group] + --mGroupSubCount[group];
+            int movedSub = mGroupSubs[lastSlot];
+            mGroupSubs[slot] = movedSub;
+            mSubSlotInGroup[movedSub] = slot;
+        }
+
+        if (mGroupSize[group] == 0) {
+            // Drop the empty group from the active groups
+            int slot = mGroupActiveSlot[group];
+            int movedGroup = mActiveGroups[--mActiveGroupCount];
+            mActiveGroups[slot] = movedGroup;
+            mGroupActiveSlot[movedGroup] = slot;
+        }
+
+        mRemaining--;
+        return true;
+    }
+
+    /**
+     * Creates a copy of the remaining groups. Only meant for inspection, the copy is not backed
+     * by the buckets.
+     *
+     * @return A list of all active groups with their remaining indices
+     */
+    List<List<Integer>> copyGroups() {
+        List<List<Integer>> groups = new ArrayList<>(mActiveGroupCount);
+        for (int groupPosition = 0; groupPosition < mActiveGroupCount; groupPosition++) {
+            int groupSize = getGroupSize(groupPosition);
+            List<Integer> elements = new ArrayList<>(groupSize);
+            for (int position = 0; position < groupSize; position++) {
+                elements.add(getGroupElement(groupPosition, position));
+            }
+            groups.add(elements);
+        }
+        return groups;
+    }
+
+    /**
+     * Creates a copy of the remaining subgroups of all groups. Only meant for inspection, the copy
+     * is not backed by the buckets.
+     *
+     * @return A list of all active subgroups with their remaining indices
+     */
+    List<List<Integer>> copySubgroups() {
+        List<List<Integer>> subgroups = new ArrayList<>();
+        for (int groupPosition = 0; groupPosition < mActiveGroupCount; groupPosition++) {
+            int subCount = getSubCount(groupPosition);
+            for (int subPosition = 0; subPosition < subCount; subPosition++) {
+                int subSize = getSubSize(groupPosition, subPosition);
+                List<Integer> elements = new ArrayList<>(subSize);
+                for (int position = 0; position < subSize; position++) {
+                    elements.add(getSubElement(groupPosition, subPosition, position));
+                }
+                subgroups.add(elements);
+            }
+        }
+        return subgroups;
+    }
+
+    private int getSub(int groupPosition, int subPosition) {
+        int group = mActiveGroups[groupPosition];
+        return mGroupSubs[mGroupSubStart[group] + subPosition];
+    }
+}
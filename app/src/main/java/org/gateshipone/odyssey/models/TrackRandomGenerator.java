@@ -23,53 +23,53 @@
 package org.gateshipone.odyssey.models;
 
 
-import android.annotation.SuppressLint;
 import android.util.Log;
 
-
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Random;
 
 /**
- * This class keeps a HashMap of all artists that are part of a track list (e.g. playlist)
- * and their belonging tracks with the original list position as a pair. This can be used to
+ * This class keeps buckets of all artists (and their albums) that are part of a track list
+ * (e.g. playlist) with the original list position of their tracks. This can be used to
  * randomize the playback of the playback equally distributed over all artists of the original
  * track list.
+ * <p>
+ * The buckets are built once per list as primitive {@link IndexBuckets}, picking and removing
+ * a track is a constant time operation. Refilling exhausted buckets does not rehash the list.
  */
 public class TrackRandomGenerator {
     private static final String TAG = TrackRandomGenerator.class.getSimpleName();
 
     /**
-     * Underlying data structure for artist-track buckets used to randomize by artists
+     * Buckets with no entries, used if no list is set.
      */
-    private final ArrayList<List<Integer>> mDataArtists;
+    private static final IndexBuckets EMPTY_BUCKETS = new IndexBuckets(new int[0], new int[0], 0, 0);
 
     /**
-     * Underlying data structure for artist-album buckets used for save the album
+     * Underlying data structure for artist-album-track buckets used to randomize by artists
+     * (and by artists AND album)
      */
-    private final ArrayList<List<Integer>> mDataAlbum;
+    private IndexBuckets mDataArtists;
 
     /**
-     * Underlying data structure for albums-tracks buckets used to randomize by album
+     * Underlying data structure for artist-album buckets used for save the album
      */
-    private final ArrayList<List<Integer>> mDataAlbumTracks;
+    private IndexBuckets mDataAlbum;
 
     /**
-     * Underlying data structure for albums-tracks buckets used to randomize by artists AND album
+     * Underlying data structure for albums-tracks buckets used to randomize by album
      */
-    private final ArrayList<List<Integer>> mDataSelectedAlbumTracks;
+    private IndexBuckets mDataAlbumTracks;
 
     /**
      * Creates an empty data structure
      */
     public TrackRandomGenerator() {
-        mDataArtists = new ArrayList<>();
-        mDataAlbum = new ArrayList<>();
-        mDataAlbumTracks = new ArrayList<>();
-        mDataSelectedAlbumTracks = new ArrayList<>();
+        mDataArtists = EMPTY_BUCKETS;
+        mDataAlbum = EMPTY_BUCKETS;
+        mDataAlbumTracks = EMPTY_BUCKETS;
     }
 
     private final BetterPseudoRandomGenerator mRandomGenerator = new BetterPseudoRandomGenerator();
@@ -81,115 +81,106 @@ public class TrackRandomGenerator {
     private int mIntelligenceFactor;
 
     /**
-     * Creates a list of artists and their tracks with position in the original playlist.
-     * Also creates a list of albums and tehir tracks with position in the original playlist.
+     * Creates the buckets of artists, their albums and their tracks with position in the original playlist.
+     * Also creates the buckets of albums and their tracks with position in the original playlist.
      * @param tracks List of tracks
      */
-    @SuppressLint("NewApi")
     public synchronized void fillFromList(List<TrackModel> tracks) {
-
-
-        // Clear all entries
-        mDataArtists.clear();
-        mDataAlbumTracks.clear();
-
         mOriginalList = tracks;
         mOriginalListAlbumTracks = tracks;
 
-        LinkedHashMap<String, List<Integer>> hashMap = new LinkedHashMap<>();
-        LinkedHashMap<String, List<Integer>> hashMapAlbums = new LinkedHashMap<>();
-
         if (tracks == null || tracks.isEmpty()) {
             // Abort for empty data structures
+            mDataArtists = EMPTY_BUCKETS;
+            mDataAlbumTracks = EMPTY_BUCKETS;
             return;
         }
 
-        // Iterate over the list and add all tracks to their artist lists
+        final int size = tracks.size();
+        int[] trackArtist = new int[size];
+        int[] trackArtistAlbum = new int[size];
+        int[] trackAlbum = new int[size];
+
+        HashMap<String, Integer> artists = new HashMap<>();
+        HashMap<String, Integer> albums = new HashMap<>();
+        // Albums are separated per artist for the artist-album-track buckets
+        List<HashMap<String, Integer>> artistAlbums = new ArrayList<>();
+        int artistAlbumCount = 0;
+
+        // Iterate over the list and assign all tracks to their artist and album buckets
         int trackNo = 0;
         for (TrackModel track : tracks) {
             String artistName = track.getTrackArtistName();
             String albumName = track.getTrackAlbumName();
 
-            List<Integer> list = hashMap.computeIfAbsent(artistName,k-> new ArrayList<>());
-            List<Integer> listAlbum = hashMapAlbums.computeIfAbsent(albumName, k-> new ArrayList<>());
-            list.add(trackNo);
-            listAlbum.add(trackNo);
+            Integer artist = artists.get(artistName);
+            if (artist == null) {
+                artist = artists.size();
+                artists.put(artistName, artist);
+                artistAlbums.add(new HashMap<>());
+            }
+
+            HashMap<String, Integer> albumsOfArtist = artistAlbums.get(artist);
+            Integer artistAlbum = albumsOfArtist.get(albumName);
+            if (artistAlbum == null) {
+                artistAlbum = artistAlbumCount++;
+                albumsOfArtist.put(albumName, artistAlbum);
+            }
+
+            Integer album = albums.get(albumName);
+            if (album == null) {
+                album = albums.size();
+                albums.put(albumName, album);
+            }
+
+            trackArtist[trackNo] = artist;
+            trackArtistAlbum[trackNo] = artistAlbum;
+            trackAlbum[trackNo] = album;
 
             // Increase the track number (index) of the original playlist
             trackNo++;
         }
-        mDataArtists.addAll(hashMap.values());
-        Collections.shuffle(mDataArtists);
-        mDataAlbumTracks.addAll(hashMapAlbums.values());
-        Collections.shuffle(mDataAlbumTracks);
+
+        mDataArtists = new IndexBuckets(trackArtist, trackArtistAlbum, artists.size(), artistAlbumCount);
+        // Albums have no subgroups, so every album is its own subgroup
+        mDataAlbumTracks = new IndexBuckets(trackAlbum, trackAlbum, albums.size(), albums.size());
     }
+
     /**
-     * Creates a list of artists and their albums with position in the original playlist used
+     * Creates the buckets of artists and their albums with position in the original playlist used
      * for save the album functionality
      *
      * @param albums List of albums
      */
-    @SuppressLint("NewApi")
     public synchronized void fillAlbumFromList(List<AlbumModel> albums) {
-        // Clear all entries
-        mDataAlbum.clear();
-
         mOriginalListAlbum = albums;
 
-        LinkedHashMap<String, List<Integer>> artistAlbumsMap = new LinkedHashMap<>();
-
         if (albums == null || albums.isEmpty()) {
             // Abort for empty data structures
+            mDataAlbum = EMPTY_BUCKETS;
             return;
         }
 
-        // Iterate over the list and add all albums to their artist lists
+        int[] albumArtist = new int[albums.size()];
+        HashMap<String, Integer> artists = new HashMap<>();
+
+        // Iterate over the list and assign all albums to their artist buckets
         int albumNo = 0;
         for (AlbumModel album : albums) {
             String artistName = album.getArtistName();
-            //If the artists doesn't exist in the map we create it, else we add the new value
-            List<Integer> list = artistAlbumsMap.computeIfAbsent(artistName, k-> new ArrayList<>());
 
-            // Add pair of position in original list and track itself to artists bucket list
-            list.add(albumNo);
+            Integer artist = artists.get(artistName);
+            if (artist == null) {
+                artist = artists.size();
+                artists.put(artistName, artist);
+            }
+            albumArtist[albumNo] = artist;
 
             // Increase the album number (index) of the original list
             albumNo++;
         }
-        //Add values
-        mDataAlbum.addAll(artistAlbumsMap.values());
-        Collections.shuffle(mDataAlbum);
-    }
 
-    /**
-     * Creates a list of albums and their tracks
-     *
-     * @param tracks List of tracks
-     */
-    @SuppressLint("NewApi")
-    private synchronized void fillArtistsAlbumfromList(List<TrackModel> tracks) {
-        LinkedHashMap<String, List<Integer>> hashMap = new LinkedHashMap<>();
-        // Clear all entries
-        mDataSelectedAlbumTracks.clear();
-        if (tracks == null || tracks.isEmpty()) {
-            // Abort for empty data structures
-            return;
-        }
-
-        // Iterate over the list and add all track position to their artist lists
-        for (TrackModel track : tracks) {
-            String albumName = track.getTrackAlbumName();
-            List<Integer> list = hashMap.computeIfAbsent(albumName,k-> new ArrayList<>());
-
-
-            // Add pair of position in original playlist and track itself to artists bucket list
-            list.add(mOriginalList.indexOf(track));
-
-        }
-
-
-        mDataSelectedAlbumTracks.addAll(hashMap.values());
-        Collections.shuffle(mDataSelectedAlbumTracks);
+        mDataAlbum = new IndexBuckets(albumArtist, albumArtist, artists.size(), artists.size());
     }
 
     /**
@@ -200,7 +191,7 @@ public class TrackRandomGenerator {
      */
     public synchronized int getRandomTrackNumber() {
         // Randomize if we randomize by artists or by album
-        Integer songNumber;
+        int songNumber;
 
         if(mIntelligenceFactor >= 40  && mIntelligenceFactor <= 60 ){
             songNumber = randomizeByArtistAndAlbum();
@@ -225,55 +216,36 @@ public class TrackRandomGenerator {
         return songNumber;
     }
 
+    /**
+     * Generates a randomized track number by first selecting a random artist, then a random album
+     * of this artist and then a random track of this album.
+     * @return the number of a random track inside the buckets artist-album-tracks
+     */
     private int randomizeByArtistAndAlbum(){
-        int songNumber;
-        //First randomize by artist then by album
+        if (mDataArtists.isEmpty()) {
+            // Refill buckets from original list
+            mDataArtists.reset();
+        }
 
+        // Check if an artist is left at all
         if (mDataArtists.isEmpty()) {
-            // Refill list from original list
-            fillFromList(mOriginalList);
+            return 0;
         }
 
         // First level random, get artist
-        int randomArtistNumber = mRandomGenerator.getLimitedRandomNumber(mDataArtists.size());
-
-        // Get artists bucket list to artist number
-        List<Integer> artistsTracks;
-
-        // Get the list of tracks belonging to the selected artist
-        artistsTracks = mDataArtists.get(randomArtistNumber);
-        List<TrackModel> tracks = new ArrayList<>();
-        for(Integer i:artistsTracks) {
-            tracks.add( mOriginalList.get(i));
-        }
-        //Divide all the albums from the artist
-        fillArtistsAlbumfromList(tracks);
+        int randomArtistNumber = mRandomGenerator.getLimitedRandomNumber(mDataArtists.getGroupCount());
 
-        //Select a random album
-        int randomAlbumNumber = mRandomGenerator.getLimitedRandomNumber(mDataSelectedAlbumTracks.size());
-        // Get a random album bucket list
-        List<Integer> albumTracks = mDataSelectedAlbumTracks.get(randomAlbumNumber);
+        //Select a random album of the artist
+        int randomAlbumNumber = mRandomGenerator.getLimitedRandomNumber(mDataArtists.getSubCount(randomArtistNumber));
 
-        // Check if an album was found
-        if (albumTracks == null) {
-            return 0;
-        }
         //get random track
-        int randomTrackNo = mRandomGenerator.getLimitedRandomNumber(albumTracks.size());
-
-        songNumber = albumTracks.get(randomTrackNo);
+        int randomTrackNo = mRandomGenerator.getLimitedRandomNumber(mDataArtists.getSubSize(randomArtistNumber, randomAlbumNumber));
 
-        // Remove track to prevent double plays
-        //first we save it to remove it from the artistsTracks cause there it has another order
-        artistsTracks.remove(albumTracks.get(randomTrackNo));
-        //albumTracks.remove(randomTrackNo);
+        int songNumber = mDataArtists.getSubElement(randomArtistNumber, randomAlbumNumber, randomTrackNo);
 
-        // Check if tracks from this artist are left, otherwise remove the artist
-        if (artistsTracks.isEmpty()) {
-            // No tracks left from artist, remove from map
-            mDataArtists.remove(randomArtistNumber);
+        // Remove track to prevent double plays, empty albums and artists are removed as well
+        mDataArtists.remove(songNumber);
 
-        }
         return songNumber;
     }
 
@@ -282,40 +254,25 @@ public class TrackRandomGenerator {
      * @return the number of a track inside the buckets album-tracks
      */
     private synchronized int getAlbumSongNumber(){
-        int songNumber = 0;
-
         if (mDataAlbumTracks.isEmpty()) {
-            // Refill list from original list
-            fillFromList(mOriginalListAlbumTracks);
+            // Refill buckets from original list
+            mDataAlbumTracks.reset();
         }
 
-        // First level random, get album
-        int randomAlbumNumber = mRandomGenerator.getLimitedRandomNumber(mDataAlbumTracks.size());
-
-        // Get artist bucket to album number
-        List<Integer> albumTracks;
-
-        // Get the list of tracks belonging to the selected album
-        albumTracks = mDataAlbumTracks.get(randomAlbumNumber);
-
-        // Check if an album was found
-        if (albumTracks == null) {
+        // Check if an album is left at all
+        if (mDataAlbumTracks.isEmpty()) {
             return 0;
         }
 
-        int randomTrackNo = mRandomGenerator.getLimitedRandomNumber(albumTracks.size());
-
-        songNumber = albumTracks.get(randomTrackNo);
+        // First level random, get album
+        int randomAlbumNumber = mRandomGenerator.getLimitedRandomNumber(mDataAlbumTracks.getGroupCount());
 
-        // Remove track to prevent double plays
-        albumTracks.remove(randomTrackNo);
+        int randomTrackNo = mRandomGenerator.getLimitedRandomNumber(mDataAlbumTracks.getGroupSize(randomAlbumNumber));
 
-        // Check if tracks from this artist are left, otherwise remove the artist
-        if (albumTracks.isEmpty()) {
-            // No tracks left from artist, remove from map
-            mDataAlbumTracks.remove(randomAlbumNumber);
+        int songNumber = mDataAlbumTracks.getGroupElement(randomAlbumNumber, randomTrackNo);
 
-        }
+        // Remove track to prevent double plays, empty albums are removed as well
+        mDataAlbumTracks.remove(songNumber);
 
         return songNumber;
     }
@@ -325,42 +282,25 @@ public class TrackRandomGenerator {
      * @return the number of a random track inside the buckets artist-tracks
      */
     private synchronized int getArtistSongNumber(){
-        int songNumber = 0;
-
         if (mDataArtists.isEmpty()) {
-            // Refill list from original list
-            fillFromList(mOriginalList);
+            // Refill buckets from original list
+            mDataArtists.reset();
         }
 
-        // First level random, get artist
-        int randomArtistNumber = mRandomGenerator.getLimitedRandomNumber(mDataArtists.size());
-
-        // Get artists bucket list to artist number
-        List<Integer> artistsTracks;
-
-
-        // Get the list of tracks belonging to the selected artist
-        artistsTracks = mDataArtists.get(randomArtistNumber);
-
-        // Check if an artist was found
-        if (artistsTracks == null) {
+        // Check if an artist is left at all
+        if (mDataArtists.isEmpty()) {
             return 0;
         }
 
-        int randomTrackNo = mRandomGenerator.getLimitedRandomNumber(artistsTracks.size());
-
-        songNumber = artistsTracks.get(randomTrackNo);
-
-        // Remove track to prevent double plays
-        artistsTracks.remove(randomTrackNo);
+        // First level random, get artist
+        int randomArtistNumber = mRandomGenerator.getLimitedRandomNumber(mDataArtists.getGroupCount());
 
+        int randomTrackNo = mRandomGenerator.getLimitedRandomNumber(mDataArtists.getGroupSize(randomArtistNumber));
 
-        // Check if tracks from this artist are left, otherwise remove the artist
-        if (artistsTracks.isEmpty()) {
-            // No tracks left from artist, remove from map
-            mDataArtists.remove(randomArtistNumber);
+        int songNumber = mDataArtists.getGroupElement(randomArtistNumber, randomTrackNo);
 
-        }
+        // Remove track to prevent double plays, empty artists are removed as well
+        mDataArtists.remove(songNumber);
 
         return songNumber;
     }
@@ -372,42 +312,25 @@ public class TrackRandomGenerator {
      * @return A random number of a track of the original track list
      */
     public synchronized int getRandomAlbumNumber() {
-
-
         if (mDataAlbum.isEmpty()) {
-            // Refill list from original list
-            fillAlbumFromList(mOriginalListAlbum);
+            // Refill buckets from original list
+            mDataAlbum.reset();
         }
 
-        // First level random, get artist
-        int randomArtistNumber = mRandomGenerator.getLimitedRandomNumber(mDataAlbum.size());
-
-        // Get artists bucket list to artist number
-        List<Integer> artistsAlbums;
-
-
-        // Get the list of albums belonging to the selected artist
-        artistsAlbums = mDataAlbum.get(randomArtistNumber);
-
-        // Check if an artist was found
-        if (artistsAlbums == null) {
+        // Check if an artist is left at all
+        if (mDataAlbum.isEmpty()) {
             return 0;
         }
 
-        int randomAlbumNo = mRandomGenerator.getLimitedRandomNumber(artistsAlbums.size());
-
-        Integer albumNumber = artistsAlbums.get(randomAlbumNo);
-
-        // Remove album to prevent double plays
-        artistsAlbums.remove(randomAlbumNo);
+        // First level random, get artist
+        int randomArtistNumber = mRandomGenerator.getLimitedRandomNumber(mDataAlbum.getGroupCount());
 
+        int randomAlbumNo = mRandomGenerator.getLimitedRandomNumber(mDataAlbum.getGroupSize(randomArtistNumber));
 
-        // Check if albums from this artist are left, otherwise remove the artist
-        if (artistsAlbums.isEmpty()) {
-            // No albums left from artist, remove from map
-            mDataAlbum.remove(randomArtistNumber);
+        int albumNumber = mDataAlbum.getGroupElement(randomArtistNumber, randomAlbumNo);
 
-        }
+        // Remove album to prevent double plays, empty artists are removed as well
+        mDataAlbum.remove(albumNumber);
 
         // Get random album number
         return albumNumber;
@@ -426,20 +349,39 @@ public class TrackRandomGenerator {
         mIntelligenceFactor = factor;
     }
 
-    public List<List<Integer>> getmDataArtists() {
-        return mDataArtists;
+    /**
+     * @return A copy of the remaining artist-track buckets
+     */
+    public synchronized List<List<Integer>> getmDataArtists() {
+        return mDataArtists.copyGroups();
+    }
+
+    /**
+     * @return A copy of the remaining artist-album buckets
+     */
+    public synchronized List<List<Integer>> getmDataAlbum() {
+        return mDataAlbum.copyGroups();
     }
 
-    public List<List<Integer>> getmDataAlbum() {
-        return mDataAlbum;
+    /**
+     * @return A copy of the remaining album-track buckets
+     */
+    public synchronized List<List<Integer>> getmDataAlbumTracks() {
+        return mDataAlbumTracks.copyGroups();
     }
 
-    public List<List<Integer>> getmDataAlbumTracks() {
-        return mDataAlbumTracks;
+    /**
+     * @return A copy of the remaining album-track buckets of all artists
+     */
+    public synchronized List<List<Integer>> getmDataSelectedAlbumTracks() {
+        return mDataArtists.copySubgroups();
     }
 
-    public List<List<Integer>> getmDataSelectedAlbumTracks() {
-        return mDataSelectedAlbumTracks;
+    /**
+     * @return True if no album is left in the artist-album buckets
+     */
+    public synchronized boolean isAlbumDataEmpty() {
+        return mDataAlbum.isEmpty();
     }
 
     public BetterPseudoRandomGenerator getmRandomGenerator() {
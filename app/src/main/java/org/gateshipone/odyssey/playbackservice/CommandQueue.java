@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2020 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.playbackservice;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+
+/**
+ * Pending commands of the {@link PlaybackServiceHandler}.
+ * <p>
+ * Transport controls (pause, next, previous, seek) are kept in their own lane that is always
+ * handled before the other commands, so they are not stuck behind long running library
+ * operations. They only overtake these bulk library operations, if any other command is
+ * waiting they keep their order because that command may change the playlist or start a new
+ * playback the control refers to. All other commands always keep their order.
+ * <p>
+ * Redundant transport controls are merged when they are added: consecutive next commands become
+ * one jump over several tracks and a seek replaces a directly preceding seek.
+ */
+public final class CommandQueue {
+
+    private final ArrayDeque<ControlObject> mTransportCommands = new ArrayDeque<>();
+
+    private final ArrayDeque<ControlObject> mCommands = new ArrayDeque<>();
+
+    /**
+     * Adds a command to its lane.
+     *
+     * @param command The command to add
+     * @return False if the command was merged into a command that is already waiting
+     */
+    public synchronized boolean offer(final ControlObject command) {
+        if (!isTransportCommand(command.getAction())) {
+            mCommands.add(command);
+            return true;
+        }
+
+        final ArrayDeque<ControlObject> lane = onlyBulkCommandsWaiting() ? mTransportCommands : mCommands;
+
+        final ControlObject last = lane.peekLast();
+        if (last != null && last.getAction() == command.getAction()) {
+            switch (command.getAction()) {
+                case ODYSSEY_NEXT:
+                    lane.pollLast();
+                    lane.add(new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_NEXT,
+                            getSkipCount(last) + getSkipCount(command)));
+                    return false;
+                case ODYSSEY_SEEKTO:
+                    lane.pollLast();
+                    lane.add(command);
+                    return false;
+            }
+        }
+
+        lane.add(command);
+        return true;
+    }
+
+    /**
+     * @return The next command to handle or null if no command is waiting
+     */
+    @Nullable
+    public synchronized ControlObject poll() {
+        final ControlObject command = mTransportCommands.poll();
+        return command != null ? command : mCommands.poll();
+    }
+
+    /**
+     * @return The next waiting transport control or null if none is waiting
+     */
+    @Nullable
+    public synchronized ControlObject pollTransportCommand() {
+        return mTransportCommands.poll();
+    }
+
+    public synchronized int size() {
+        return mTransportCommands.size() + mCommands.size();
+    }
+
+    /**
+     * @param command A {@link ControlObject.PLAYBACK_ACTION#ODYSSEY_NEXT} command
+     * @return The number of tracks to skip, at least one
+     */
+    public static int getSkipCount(final ControlObject command) {
+        return Math.max(1, command.getIntParam());
+    }
+
+    private boolean onlyBulkCommandsWaiting() {
+        for (ControlObject command : mCommands) {
+            if (!isBulkCommand(command.getAction())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return True if the command adds the tracks of a library lookup to the playlist
+     */
+    private static boolean isBulkCommand(final ControlObject.PLAYBACK_ACTION action) {
+        switch (action) {
+            case ODYSSEY_PLAYALLTRACKS:
+            case ODYSSEY_ENQUEUEPLAYLIST:
+            case ODYSSEY_ENQUEUEDIRECTORYANDSUBDIRECTORIES:
+            case ODYSSEY_ENQUEUEALBUM:
+            case ODYSSEY_ENQUEUERECENTALBUMS:
+            case ODYSSEY_ENQUEUEARTIST:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isTransportCommand(final ControlObject.PLAYBACK_ACTION action) {
+        switch (action) {
+            case ODYSSEY_TOGGLEPAUSE:
+            case ODYSSEY_NEXT:
+            case ODYSSEY_PREVIOUS:
+            case ODYSSEY_SEEKTO:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
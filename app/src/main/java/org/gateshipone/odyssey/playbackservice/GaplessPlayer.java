@@ -23,6 +23,7 @@
 package org.gateshipone.odyssey.playbackservice;
 
 import android.content.Intent;
+import android.content.res.AssetFileDescriptor;
 
 import android.media.AudioManager;
 import android.media.MediaPlayer;
@@ -36,11 +37,13 @@ import org.gateshipone.odyssey.BuildConfig;
 
 import org.gateshipone.odyssey.models.TrackRandomGenerator;
 import org.gateshipone.odyssey.playbackservice.storage.OdysseyDatabaseManager;
+import org.gateshipone.odyssey.utils.LatencyCounter;
 
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.Semaphore;
@@ -61,6 +64,11 @@ public class GaplessPlayer {
      */
     private static final int RELEASE_PLAYER_TIMEOUT = 30 * 1000;
 
+    /**
+     * Maximum number of reset {@link MediaPlayer} objects that are kept for reuse
+     */
+    private static final int MAX_IDLE_PLAYERS = 2;
+
     public enum REASON {
         IOError, SecurityError, StateError, ArgumentError
     }
@@ -136,6 +144,25 @@ public class GaplessPlayer {
      */
     private ReleaseGaplessPlayerTask mReleasePlayerTask;
 
+    /**
+     * Reset {@link MediaPlayer} objects that can be reused for the next tracks, so skipping does
+     * not create and destroy a native player for every track.
+     */
+    private final ArrayDeque<MediaPlayer> mIdlePlayers = new ArrayDeque<>();
+
+    /**
+     * Opens the files of the tracks that will likely be played next
+     */
+    private final TrackLookAhead mTrackLookAhead;
+
+    /**
+     * Time of the last {@link #play(Uri, int)} call to measure the time until the audio starts
+     * ({@link System#nanoTime()}), 0 if no measurement is pending.
+     */
+    private long mPlayStartTime;
+
+    private final LatencyCounter mSkipLatency = new LatencyCounter("Skip to audio");
+
     /**
      * Public constructor.
      *
@@ -152,6 +179,7 @@ public class GaplessPlayer {
         }
 
         mReleasePlayerTimer = new Timer();
+        mTrackLookAhead = new TrackLookAhead(service.getContentResolver());
     }
 
     /**
@@ -173,31 +201,21 @@ public class GaplessPlayer {
      */
     public synchronized void play(final Uri uri, int jumpTime) throws PlaybackException {
         stopReleaseTask();
+        mPlayStartTime = System.nanoTime();
+
         // Another player currently exists, remove it.
         if (mCurrentMediaPlayer != null) {
-            mCurrentMediaPlayer.reset();
-            mCurrentMediaPlayer.release();
+            recyclePlayer(mCurrentMediaPlayer);
             mCurrentMediaPlayer = null;
         }
 
-        // Create new MediaPlayer object.
-        mCurrentMediaPlayer = new MediaPlayer();
+        // Get a reset MediaPlayer object.
+        mCurrentMediaPlayer = obtainPlayer();
         mCurrentPrepared = false;
 
         // Set the type of the stream to music.
         mCurrentMediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
-        try {
-            mCurrentMediaPlayer.setDataSource(mPlaybackService.getApplicationContext(),
-                    uri);
-        } catch (IllegalArgumentException e) {
-            throw new PlaybackException(REASON.ArgumentError, uri, e);
-        } catch (SecurityException e) {
-            throw new PlaybackException(REASON.SecurityError, uri, e);
-        } catch (IllegalStateException e) {
-            throw new PlaybackException(REASON.StateError, uri, e);
-        } catch (IOException e) {
-            throw new PlaybackException(REASON.IOError, uri, e);
-        }
+        setDataSource(mCurrentMediaPlayer, uri);
 
         // Save parameters for later usage
         mPrimarySource = uri;
@@ -249,8 +267,8 @@ public class GaplessPlayer {
             if (mNextMediaPlayer != null) {
                 // Remove the next player from the currently playing one.
                 mCurrentMediaPlayer.setNextMediaPlayer(null);
-                // Release the MediaPlayer, not usable after this command
-                mNextMediaPlayer.release();
+                // Give the MediaPlayer back for reuse
+                recyclePlayer(mNextMediaPlayer);
 
                 // Reset variables to clean internal state
                 mNextMediaPlayer = null;
@@ -272,8 +290,8 @@ public class GaplessPlayer {
                     Log.v(TAG, "Closing effect for session: " + mCurrentMediaPlayer.getAudioSessionId());
                 }
             }
-            // Release the current player
-            mCurrentMediaPlayer.release();
+            // Give the current player back for reuse
+            recyclePlayer(mCurrentMediaPlayer);
 
             // Reset variables to clean internal state
             mCurrentMediaPlayer = null;
@@ -389,8 +407,8 @@ public class GaplessPlayer {
         if (mNextMediaPlayer != null) {
             // Remove this player from the currently active one as a next one
             mCurrentMediaPlayer.setNextMediaPlayer(null);
-            // Release the player that is not needed any longer
-            mNextMediaPlayer.release();
+            // Give the player that is not needed any longer back for reuse
+            recyclePlayer(mNextMediaPlayer);
 
             // Reset internal state variables
             mNextMediaPlayer = null;
@@ -400,8 +418,8 @@ public class GaplessPlayer {
 
         // Check if the uri contains something
         if (uri != null) {
-            // Create a new MediaPlayer to prepare as next song playback
-            mNextMediaPlayer = new MediaPlayer();
+            // Get a reset MediaPlayer to prepare as next song playback
+            mNextMediaPlayer = obtainPlayer();
 
             // Set the old audio session ID to reuse the opened audio effect session
             mNextMediaPlayer.setAudioSessionId(mCurrentMediaPlayer.getAudioSessionId());
@@ -412,18 +430,8 @@ public class GaplessPlayer {
             // Set the playback type to music again
             mNextMediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
 
-            try {
-                // Try setting the data source
-                mNextMediaPlayer.setDataSource(mPlaybackService.getApplicationContext(), uri);
-            } catch (IllegalArgumentException e) {
-                throw new PlaybackException(REASON.ArgumentError, uri, e);
-            } catch (SecurityException e) {
-                throw new PlaybackException(REASON.SecurityError, uri, e);
-            } catch (IllegalStateException e) {
-                throw new PlaybackException(REASON.StateError, uri, e);
-            } catch (IOException e) {
-                throw new PlaybackException(REASON.IOError, uri, e);
-            }
+            // Try setting the data source
+            setDataSource(mNextMediaPlayer, uri);
 
             // Save the uri for latter usage
             mSecondarySource = uri;
@@ -480,6 +488,7 @@ public class GaplessPlayer {
                     mPrepareTime = 0;
                 }
                 mp.start();
+                finishSkipMeasurement();
 
 
                 // Notify connected listeners
@@ -540,6 +549,7 @@ public class GaplessPlayer {
 
                     // Playback start
                     mCurrentMediaPlayer.start();
+                    finishSkipMeasurement();
 
 
                     // Notify connected listeners that playback has started
@@ -643,8 +653,8 @@ public class GaplessPlayer {
                 }
 
                 int audioSessionID = mp.getAudioSessionId();
-                // Release old MediaPlayer
-                mp.release();
+                // Give the old MediaPlayer back for reuse
+                recyclePlayer(mp);
 
 
                 // Set current MP to next MP if one is ready
@@ -728,6 +738,121 @@ public class GaplessPlayer {
         return -1;
     }
 
+    /**
+     * Sets the tracks that will likely be played next. Their files are opened in the background
+     * so {@link #play(Uri, int)} and {@link #setNextTrack(Uri)} do not wait for the content provider.
+     *
+     * @param uris Uris of the next tracks in the order they will likely be played
+     */
+    void setLookAheadTracks(final List<Uri> uris) {
+        mTrackLookAhead.setCandidates(uris);
+    }
+
+    /**
+     * Stops the playback and releases all {@link MediaPlayer} objects and opened files.
+     * This object must not be used afterwards.
+     */
+    synchronized void release() {
+        stop();
+        mReleasePlayerTimer.cancel();
+        mTrackLookAhead.release();
+
+        while (!mIdlePlayers.isEmpty()) {
+            mIdlePlayers.poll().release();
+        }
+    }
+
+    /**
+     * @return The time from {@link #play(Uri, int)} until the playback started.
+     */
+    LatencyCounter getSkipLatency() {
+        return mSkipLatency;
+    }
+
+    /**
+     * @return A {@link MediaPlayer} in the idle state, reused if possible.
+     */
+    private MediaPlayer obtainPlayer() {
+        final MediaPlayer player = mIdlePlayers.poll();
+        return player != null ? player : new MediaPlayer();
+    }
+
+    /**
+     * Resets the {@link MediaPlayer} and keeps it for reuse. The player is released if enough
+     * players are kept already.
+     *
+     * @param player The player that is not used anymore
+     */
+    private void recyclePlayer(final MediaPlayer player) {
+        if (mIdlePlayers.size() >= MAX_IDLE_PLAYERS) {
+            player.release();
+            return;
+        }
+
+        try {
+            // Resetting also drops pending callbacks of the old track
+            player.reset();
+        } catch (IllegalStateException e) {
+            player.release();
+            return;
+        }
+        player.setOnPreparedListener(null);
+        player.setOnCompletionListener(null);
+        mIdlePlayers.push(player);
+    }
+
+    /**
+     * Sets the data source of the player. A file that was opened in advance by the look ahead is
+     * used if available.
+     *
+     * @param player The player in the idle state
+     * @param uri    Uri of the track
+     * @throws PlaybackException If the track could not be opened
+     */
+    private void setDataSource(final MediaPlayer player, final Uri uri) throws PlaybackException {
+        final AssetFileDescriptor file = mTrackLookAhead.take(uri);
+        try {
+            if (file == null) {
+                player.setDataSource(mPlaybackService.getApplicationContext(), uri);
+            } else if (file.getDeclaredLength() < 0) {
+                player.setDataSource(file.getFileDescriptor());
+            } else {
+                player.setDataSource(file.getFileDescriptor(), file.getStartOffset(), file.getDeclaredLength());
+            }
+        } catch (IllegalArgumentException e) {
+            throw new PlaybackException(REASON.ArgumentError, uri, e);
+        } catch (SecurityException e) {
+            throw new PlaybackException(REASON.SecurityError, uri, e);
+        } catch (IllegalStateException e) {
+            throw new PlaybackException(REASON.StateError, uri, e);
+        } catch (IOException e) {
+            throw new PlaybackException(REASON.IOError, uri, e);
+        } finally {
+            // The player keeps its own duplicate of the file descriptor
+            TrackLookAhead.closeQuietly(file);
+        }
+
+        if (BuildConfig.DEBUG) {
+            Log.v(TAG, "Data source set for: " + uri + " opened in advance: " + (file != null));
+        }
+    }
+
+    /**
+     * Adds the time since the last {@link #play(Uri, int)} call to the skip latency if the
+     * playback of that track just started.
+     */
+    private void finishSkipMeasurement() {
+        if (mPlayStartTime == 0) {
+            return;
+        }
+        mSkipLatency.addSince(mPlayStartTime);
+        mPlayStartTime = 0;
+
+        if (BuildConfig.DEBUG) {
+            Log.v(TAG, mSkipLatency.toString());
+        }
+    }
+
     /**
      * Schedule a timeout to release the {@link MediaPlayer} object
      */
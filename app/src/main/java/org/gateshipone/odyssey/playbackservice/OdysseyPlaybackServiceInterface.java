@@ -141,6 +141,17 @@ public class OdysseyPlaybackServiceInterface extends IOdysseyPlaybackService.Stu
         return mService.get().isBusy();
     }
 
+    @Override
+    public boolean isLoadingTracks() {
+        return mService.get().isLoadingTracks();
+    }
+
+    @Override
+    public void cancelLoadingTracks() {
+        // Not queued in the handler, the loading runs in the background and is stopped directly
+        mService.get().cancelLoadingTracks();
+    }
+
     @Override
     public void seekTo(int position) {
         ControlObject obj = new ControlObject(ControlObject.PLAYBACK_ACTION.ODYSSEY_SEEKTO, position);
@@ -224,6 +235,11 @@ public class OdysseyPlaybackServiceInterface extends IOdysseyPlaybackService.Stu
         return mService.get().getPlaylistTrack(index);
     }
 
+    @Override
+    public PlaylistWindow getPlaylistWindow(int offset, int count) {
+        return mService.get().getPlaylistWindow(offset, count);
+    }
+
     @Override
     public int getPlaylistSize() {
         return mService.get().getPlaylistSize();
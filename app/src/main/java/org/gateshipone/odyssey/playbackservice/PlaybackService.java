@@ -43,6 +43,7 @@ import android.os.Process;
 import android.util.Log;
 import android.widget.Toast;
 
+import androidx.annotation.Nullable;
 import androidx.preference.PreferenceManager;
 
 import org.gateshipone.odyssey.BuildConfig;
@@ -54,17 +55,24 @@ import org.gateshipone.odyssey.models.TrackModel;
 import org.gateshipone.odyssey.models.TrackRandomGenerator;
 import org.gateshipone.odyssey.playbackservice.managers.PlaybackServiceStatusHelper;
 import org.gateshipone.odyssey.playbackservice.storage.OdysseyDatabaseManager;
+import org.gateshipone.odyssey.playbackservice.storage.QueueJournal;
 import org.gateshipone.odyssey.utils.FileExplorerHelper;
+import org.gateshipone.odyssey.utils.LatencyCounter;
 import org.gateshipone.odyssey.utils.MetaDataLoader;
 import org.gateshipone.odyssey.utils.MusicLibraryHelper;
 import org.gateshipone.odyssey.utils.PlaylistParser;
 import org.gateshipone.odyssey.utils.PlaylistParserFactory;
+import org.gateshipone.odyssey.utils.TrackConsumer;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 public class PlaybackService extends Service implements AudioManager.OnAudioFocusChangeListener, MetaDataLoader.MetaDataLoaderListener {
 
@@ -146,6 +154,39 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
      */
     private static final int SERVICE_CANCEL_TIME = 5 * 60 * 1000;
 
+    /**
+     * Maximum number of tracks that are returned in one {@link PlaylistWindow} to stay well
+     * below the binder transaction size limit
+     */
+    private static final int MAX_PLAYLIST_WINDOW_SIZE = 500;
+
+    /**
+     * Number of tracks before and after the current track that are restored while the service is
+     * created. The rest of the saved queue is restored in the background.
+     */
+    private static final int QUEUE_RESTORE_RADIUS = 50;
+
+    /**
+     * Number of tracks whose files are opened in advance, so skipping to them starts faster.
+     */
+    private static final int LOOK_AHEAD_TRACKS = 3;
+
+    /**
+     * Number of tracks that are added to the playlist at once by {@link #enqueueTracks(List)}.
+     * Waiting transport controls are handled between the chunks.
+     */
+    private static final int ENQUEUE_CHUNK_SIZE = 500;
+
+    /**
+     * Time from the creation of the service until the current track can be played.
+     */
+    private static final LatencyCounter START_LATENCY = new LatencyCounter("Service start");
+
+    /**
+     * Time from the creation of the service until the complete saved queue is restored.
+     */
+    private static final LatencyCounter QUEUE_RESTORE_LATENCY = new LatencyCounter("Queue restore");
+
     private static final int PENDING_INTENT_UPDATE_CURRENT_FLAG =
             Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE : PendingIntent.FLAG_UPDATE_CURRENT;
 
@@ -154,6 +195,11 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
      */
     private PlaybackServiceHandler mHandler;
 
+    /**
+     * Looks up the tracks of folders and playlists in the background and adds them in chunks
+     */
+    private QueueProducer mQueueProducer;
+
     /**
      * Saves if the audiofocus was lost for some reason. If it is set the playback will resume,
      * when the audiofocus gets back to this class.
@@ -167,9 +213,15 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
     private GaplessPlayer mPlayer;
 
     /**
-     * Currently active playlist.
+     * Currently active playlist. Only the handler thread replaces it, binder threads read it.
      */
-    private List<TrackModel> mCurrentList;
+    private volatile TrackQueue mCurrentList;
+
+    /**
+     * Restores the complete saved queue in the background. As long as it is set, only the tracks
+     * around the restored track are set in mCurrentList, all other entries are null.
+     */
+    private volatile Future<List<TrackModel>> mQueueRestore;
 
     /**
      * Index of the currently active track.
@@ -224,6 +276,11 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
      */
     private OdysseyDatabaseManager mDatabaseManager = null;
 
+    /**
+     * Records all changes of mCurrentList for the next autosave
+     */
+    private QueueJournal mQueueJournal = null;
+
     /**
      * BroadcastReceiver that handles all control intents
      */
@@ -231,6 +288,12 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
     private boolean mBusy = false;
 
+    /**
+     * Number of background enqueues that did not add their first tracks yet. The service is
+     * reported as busy meanwhile. Only changed on the handler thread.
+     */
+    private volatile int mStartingEnqueues = 0;
+
     private MetaDataLoader mMetaDataLoader;
 
     private OdysseyComponentCallback mComponentCallback;
@@ -285,12 +348,15 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
      */
     @Override
     public void onCreate() {
+        final long startTime = System.nanoTime();
+
         super.onCreate();
 
         // Start Handlerthread which is used for the asynchronous handler.
         HandlerThread handlerThread = new HandlerThread(HANDLER_THREAD_NAME, Process.THREAD_PRIORITY_DEFAULT);
         handlerThread.start();
         mHandler = new PlaybackServiceHandler(handlerThread.getLooper(), this);
+        mQueueProducer = new QueueProducer(mHandler::post);
 
         // Create MediaPlayer object used throughout the complete runtime of this service
         mPlayer = new GaplessPlayer(this);
@@ -302,13 +368,7 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
         // set up the OdysseyDatabaseManager
         mDatabaseManager = OdysseyDatabaseManager.getInstance(getApplicationContext());
-
-        // read a possible saved playlist from the database
-        mCurrentList = mDatabaseManager.readBookmarkTracks();
-
-        // Create empty bucket list
-        mTrackRandomGenerator = new TrackRandomGenerator();
-        updateTrackRandomGenerator();
+        mQueueJournal = mDatabaseManager.getQueueJournal();
 
         // read a possible saved state from database
         OdysseyServiceState state = mDatabaseManager.getState();
@@ -319,6 +379,12 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         mRandom = state.mRandomState;
         mRepeat = state.mRepeatState;
 
+        // read only the tracks around the saved track, the complete playlist is read in the background
+        mCurrentList = new TrackQueue(mDatabaseManager.readBookmarkTracksWindow(mCurrentPlayingIndex, QUEUE_RESTORE_RADIUS));
+
+        // Create empty bucket list
+        mTrackRandomGenerator = new TrackRandomGenerator();
+
         // Check if saved state is within bounds of resumed playlist
         int playlistSize = mCurrentList.size();
         if (mCurrentPlayingIndex > playlistSize || mCurrentPlayingIndex < 0) {
@@ -375,7 +441,28 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
         mAutoBackwardsAmount = (sharedPreferences.getInt(this.getString(R.string.pref_seek_backwards_key), this.getResources().getInteger(R.integer.pref_seek_backwards_default)) * 1000);
 
-        setSmartRandom(sharedPreferences.getInt(getString(R.string.pref_smart_random_key_int), getResources().getInteger(R.integer.pref_smart_random_default)));
+        // the bucket list is filled as soon as the complete playlist is restored
+        mTrackRandomGenerator.setEnabled(sharedPreferences.getInt(getString(R.string.pref_smart_random_key_int), getResources().getInteger(R.integer.pref_smart_random_default)));
+        restoreQueue(startTime);
+
+        START_LATENCY.addSince(startTime);
+        if (BuildConfig.DEBUG) {
+            Log.v(TAG, "service ready after " + ((System.nanoTime() - startTime) / 1000000) + " ms, tracks: " + mCurrentList.size());
+        }
+    }
+
+    /**
+     * @return The time from the creation of the service until the current track can be played.
+     */
+    public static LatencyCounter getStartLatency() {
+        return START_LATENCY;
+    }
+
+    /**
+     * @return The time from the creation of the service until the complete saved queue is restored.
+     */
+    public static LatencyCounter getQueueRestoreLatency() {
+        return QUEUE_RESTORE_LATENCY;
     }
 
     /**
@@ -439,6 +526,9 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
         // Stop myself
         stopService();
+
+        mQueueProducer.release();
+        mPlayer.release();
     }
 
 
@@ -637,14 +727,15 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         // clear the playlist before adding all tracks
         clearPlaylist();
 
+        final int transportCommandCount = mHandler.getInlineTransportCommandCount();
 
         // Get a list of all available tracks from the MusicLibraryHelper
         List<TrackModel> allTracks = MusicLibraryHelper.getAllTracks(filterString, getApplicationContext());
 
-        mCurrentList.addAll(allTracks);
+        enqueueTracks(allTracks);
 
         // Start playing the first item in the list
-        jumpToIndex(0);
+        jumpToAddedTrack(0, transportCommandCount);
 
         // Notify the user that the operation is now finished
         mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.IDLE);
@@ -655,6 +746,8 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
      * Shuffles the current playlist
      */
     public void shufflePlaylist() {
+        ensureQueueRestored();
+
         final PLAYSTATE state = getPlaybackState();
 
         if (mCurrentList.size() > 0 && mCurrentPlayingIndex >= 0 && (mCurrentPlayingIndex < mCurrentList.size())) {
@@ -663,8 +756,9 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
             mCurrentList.remove(mCurrentPlayingIndex);
 
             // shuffle playlist and set currentitem as first element
-            Collections.shuffle(mCurrentList);
+            mCurrentList.shuffle(new Random());
             mCurrentList.add(0, currentItem);
+            mQueueJournal.recordSnapshot();
 
             // reset index
             mCurrentPlayingIndex = 0;
@@ -685,7 +779,8 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
             }
         } else if (mCurrentList.size() > 0 && mCurrentPlayingIndex < 0) {
             // service stopped just shuffle playlist
-            Collections.shuffle(mCurrentList);
+            mCurrentList.shuffle(new Random());
+            mQueueJournal.recordSnapshot();
 
             // sent broadcast
             mPlaybackServiceStatusHelper.updateStatus();
@@ -706,6 +801,40 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         jumpToIndex(mNextPlayingIndex);
     }
 
+    /**
+     * Skips the given number of tracks forward in one jump. This is used for next commands that
+     * were merged while waiting, so only the target track is prepared.
+     *
+     * @param count Number of tracks to skip
+     */
+    public void skipTracks(int count) {
+        // Random playback has no order to skip in and stopped playback has no position
+        if (count <= 1 || mRandom == RANDOMSTATE.RANDOM_ON || mCurrentPlayingIndex < 0) {
+            setNextTrack();
+            return;
+        }
+
+        // Keep device at least for 5 seconds turned on
+        mSongTransitionWakelock.acquire(5000);
+
+        // Save the last playing index, to allow the user to jump back
+        mLastPlayingIndex = mCurrentPlayingIndex;
+
+        int index;
+        if (mRepeat == REPEATSTATE.REPEAT_TRACK) {
+            // The user is stuck to the current song
+            index = mCurrentPlayingIndex;
+        } else {
+            index = mCurrentPlayingIndex + count;
+            if (index >= mCurrentList.size()) {
+                // Wrap around in repeat mode, stop otherwise like single next commands would
+                index = mRepeat == REPEATSTATE.REPEAT_ALL ? index % mCurrentList.size() : -1;
+            }
+        }
+
+        jumpToIndex(index);
+    }
+
     /**
      * Sets nextplayback track to preceding on in playlist
      */
@@ -772,18 +901,59 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
      * @return Valid track if position within bounds, empty track otherwise
      */
     public TrackModel getPlaylistTrack(int index) {
-        if ((index >= 0) && (index < mCurrentList.size())) {
-            return mCurrentList.get(index);
+        final TrackModel track = readTrack(index);
+        return track != null ? track : new TrackModel();
+    }
+
+    /**
+     * Getter to retrieve a continuous part of the playlist
+     *
+     * @param offset Position of the first track to return
+     * @param count  Number of tracks to return, limited to {@link #MAX_PLAYLIST_WINDOW_SIZE}
+     * @return Window of the tracks within the bounds of the playlist, empty window if offset is out of bounds
+     */
+    public PlaylistWindow getPlaylistWindow(int offset, int count) {
+        // Copy the tracks here, the binder thread writes them after this method returned
+        TrackQueue currentList = mCurrentList;
+        synchronized (currentList) {
+            final int size = currentList.size();
+            if (offset < 0 || offset >= size || count <= 0) {
+                return new PlaylistWindow();
+            }
+
+            final int end = Math.min(size, offset + Math.min(count, MAX_PLAYLIST_WINDOW_SIZE));
+            if (!currentList.containsNull(offset, end)) {
+                return new PlaylistWindow(offset, currentList.copyRange(offset, end));
+            }
+        }
+
+        // serve the window from the complete playlist as soon as it is read in the background
+        final List<TrackModel> restoredQueue = waitForRestoredQueue();
+        if (restoredQueue != null) {
+            final int end = Math.min(restoredQueue.size(), offset + Math.min(count, MAX_PLAYLIST_WINDOW_SIZE));
+            return new PlaylistWindow(offset, new ArrayList<>(restoredQueue.subList(Math.min(offset, end), end)));
+        }
+
+        // the handler thread replaced the playlist meanwhile
+        currentList = mCurrentList;
+        synchronized (currentList) {
+            final int end = Math.min(currentList.size(), offset + Math.min(count, MAX_PLAYLIST_WINDOW_SIZE));
+            return new PlaylistWindow(offset, currentList.copyRange(Math.min(offset, end), end));
         }
-        return new TrackModel();
     }
 
     /**
      * Clears the current playlist and stops playback afterwards. Also resets repeat, random state
      */
     public void clearPlaylist() {
+        // Tracks that are still looked up belong to the old playlist
+        mQueueProducer.cancel();
+
+        ensureQueueRestored();
+
         // Clear the list
         mCurrentList.clear();
+        mQueueJournal.recordClear();
 
         updateTrackRandomGenerator();
 
@@ -819,6 +989,8 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         // Cancel possible alerts registered within the AlarmManager
         cancelQuitAlert();
 
+        ensureTrackRestored(index);
+
         // Stop playback before starting a new song. This ensures state safety
         mPlayer.stop();
 
@@ -864,6 +1036,8 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
             // set the mCurrentPlayingIndex to the mNextPlayingIndex. This ensures that no additional code
             // is necessary to handle playback start
             mNextPlayingIndex = index;
+
+            updateLookAhead();
         } else if (index < 0 || index > mCurrentList.size()) {
             // Invalid index
             stop();
@@ -918,16 +1092,67 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         return mPlayer.getDuration();
     }
 
+    /**
+     * Stores the duration of a track in the current playlist, e.g. if it is only known by the player.
+     *
+     * @param index    Position of the track in the current playlist
+     * @param duration The duration of the track in ms
+     */
+    public void setTrackDuration(final int index, final long duration) {
+        if (index >= 0 && index < mCurrentList.size() && !mCurrentList.isNull(index)) {
+            mCurrentList.setDuration(index, duration);
+            mQueueJournal.recordSet(index, mCurrentList.get(index));
+        }
+    }
+
     /**
      * Enqueue all given tracks.
      * Prepare the next track for playback if needed.
      */
     public void enqueueTracks(List<TrackModel> tracklist) {
+        if (mQueueProducer.isLoading()) {
+            // Keep the order, the tracks belong behind the tracks that are still looked up
+            enqueueKnownTracksAsync(tracklist, -1);
+            return;
+        }
+
+        appendTracks(tracklist);
+
+        // update trackRandomGenerator
+        updateTrackRandomGenerator();
+    }
+
+    /**
+     * Adds the given tracks to the end of the playlist without updating the random generator.
+     * Prepare the next track for playback if needed.
+     */
+    private void appendTracks(List<TrackModel> tracklist) {
+        ensureQueueRestored();
+
+        // Add large lists in chunks so waiting transport controls can be handled in between
+        int start = 0;
+        do {
+            if (start > 0) {
+                mHandler.runTransportCommands();
+            }
+
+            final int end = Math.min(start + ENQUEUE_CHUNK_SIZE, tracklist.size());
+            enqueueTrackChunk(tracklist.subList(start, end));
+            start = end;
+        } while (start < tracklist.size());
+    }
+
+    /**
+     * Enqueue the tracks of one chunk.
+     * Prepare the next track for playback if needed.
+     */
+    private void enqueueTrackChunk(List<TrackModel> tracklist) {
         // Saved to check if we played the last song of the list
         int oldSize = mCurrentList.size();
 
         // Add the tracks to the actual list
         mCurrentList.addAll(tracklist);
+        mQueueJournal.recordAdd(oldSize, tracklist);
 
         // If track is the first to be added, set playing index to 0
         if (mCurrentPlayingIndex == INDEX_NO_TRACKS_AVAILABLE) {
@@ -946,9 +1171,6 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
         // Inform the helper that the state has changed
         mPlaybackServiceStatusHelper.updateStatus();
-
-        // update trackRandomGenerator
-        updateTrackRandomGenerator();
     }
 
     /**
@@ -982,9 +1204,11 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
     public void playAlbum(long albumId, String orderKey, int position) {
         clearPlaylist();
 
+        final int transportCommandCount = mHandler.getInlineTransportCommandCount();
+
         enqueueAlbum(albumId, orderKey);
 
-        jumpToIndex(position);
+        jumpToAddedTrack(position, transportCommandCount);
     }
 
     /**
@@ -1009,9 +1233,11 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
     public void playRecentAlbums() {
         clearPlaylist();
 
+        final int transportCommandCount = mHandler.getInlineTransportCommandCount();
+
         enqueueRecentAlbums();
 
-        jumpToIndex(0);
+        jumpToAddedTrack(0, transportCommandCount);
     }
 
     /**
@@ -1046,9 +1272,24 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
     public void playArtist(long artistId, String albumOrderKey, String trackOrderKey) {
         clearPlaylist();
 
+        final int transportCommandCount = mHandler.getInlineTransportCommandCount();
+
         enqueueArtist(artistId, albumOrderKey, trackOrderKey);
 
-        jumpToIndex(0);
+        jumpToAddedTrack(0, transportCommandCount);
+    }
+
+    /**
+     * Starts the playback of the just added tracks, unless transport controls were handled while
+     * they were added. The playback is already where the user wanted it in this case.
+     *
+     * @param index                 Position of the song to play
+     * @param transportCommandCount The inline transport command count before the tracks were added
+     */
+    private void jumpToAddedTrack(int index, int transportCommandCount) {
+        if (mHandler.getInlineTransportCommandCount() == transportCommandCount) {
+            jumpToIndex(index);
+        }
     }
 
     /**
@@ -1075,6 +1316,12 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
             clearPlaylist();
         }
 
+        if (mQueueProducer.isLoading()) {
+            // Play the track once it is added behind the tracks that are still looked up
+            enqueueKnownTracksAsync(Collections.singletonList(track), 0);
+            return;
+        }
+
         enqueueTrack(track);
         jumpToIndex(mCurrentList.size() - 1);
     }
@@ -1085,11 +1332,20 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
      * @param track the current trackmodel
      */
     private void enqueueTrack(TrackModel track) {
+        if (mQueueProducer.isLoading()) {
+            // Keep the order, the track belongs behind the tracks that are still looked up
+            enqueueKnownTracksAsync(Collections.singletonList(track), -1);
+            return;
+        }
+
+        ensureQueueRestored();
+
         // Check if the current song is the old last one, if so set the next song to MP for
         // gapless playback
         int oldSize = mCurrentList.size();
 
         mCurrentList.add(track);
+        mQueueJournal.recordAdd(oldSize, track);
 
         // If track is the first to be added, set playing index to 0
         if (mCurrentPlayingIndex == INDEX_NO_TRACKS_AVAILABLE) {
@@ -1118,17 +1374,20 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
      * @param track the current trackmodel
      */
     private void enqueueAsNextTrack(TrackModel track) {
+        ensureQueueRestored();
 
         // Check if currently playing index is set to a valid value
         if (mCurrentPlayingIndex >= 0) {
             // Enqueue in list structure
             mCurrentList.add(mCurrentPlayingIndex + 1, track);
+            mQueueJournal.recordAdd(mCurrentPlayingIndex + 1, track);
             mNextPlayingIndex = mCurrentPlayingIndex + 1;
             // Set next track to new one
             setNextTrackForMP();
         } else {
             // If not playing just add it to the beginning of the playlist
             mCurrentList.add(0, track);
+            mQueueJournal.recordAdd(0, track);
             // Start playback which is probably intended
             jumpToIndex(0);
         }
@@ -1146,11 +1405,14 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
      * @param index Position of the track to remove
      */
     public void dequeueTrack(int index) {
+        ensureQueueRestored();
+
         PLAYSTATE state = getPlaybackState();
         // Check if track is currently playing, if so stop it
         if (mCurrentPlayingIndex == index) {
             // Delete song at index
             mCurrentList.remove(index);
+            mQueueJournal.recordRemove(index);
 
             // Check if a next track exists and jump to it if player was playing before
             if (state == PLAYSTATE.PLAYING && index < mCurrentList.size()) {
@@ -1162,9 +1424,11 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
             // Deletion of next song which requires extra handling
             // because of gapless playback, set next song to next one
             mCurrentList.remove(index);
+            mQueueJournal.recordRemove(index);
             setNextTrackForMP();
         } else if (index >= 0 && index < mCurrentList.size()) {
             mCurrentList.remove(index);
+            mQueueJournal.recordRemove(index);
             // mCurrentIndex and mNextPlayingIndex is now moved one position up so update variables
             if (index < mCurrentPlayingIndex) {
                 mCurrentPlayingIndex--;
@@ -1195,15 +1459,17 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.WORKING);
         mBusy = true;
 
+        ensureQueueRestored();
+
         PLAYSTATE state = getPlaybackState();
 
         int endIndex = index + 1;
 
-        long albumId = mCurrentList.get(index).getTrackAlbumId();
+        long albumId = mCurrentList.getTrackAlbumId(index);
 
         // get endindex for section
         while (endIndex < mCurrentList.size()) {
-            if (albumId == mCurrentList.get(endIndex).getTrackAlbumId()) {
+            if (albumId == mCurrentList.getTrackAlbumId(endIndex)) {
                 endIndex++;
             } else {
                 break;
@@ -1219,6 +1485,7 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
                 if (albumId == track.getTrackAlbumId()) {
                     iterator.remove();
+                    mQueueJournal.recordRemove(index);
                     endIndex--;
                 } else {
                     break;
@@ -1242,6 +1509,7 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
                 if (albumId == track.getTrackAlbumId()) {
                     iterator.remove();
+                    mQueueJournal.recordRemove(index);
                 } else {
                     break;
                 }
@@ -1259,6 +1527,7 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
                 if (albumId == track.getTrackAlbumId()) {
                     iterator.remove();
+                    mQueueJournal.recordRemove(index);
                     if (beforeCurrentTrack) {
                         // if section is before current song update mCurrentPlayingIndex and mNextPlayingIndex
                         mCurrentPlayingIndex--;
@@ -1305,6 +1574,7 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         }
 
         // Save the state of the PBS at once
+        ensureQueueRestored();
         OdysseyServiceState serviceState = new OdysseyServiceState();
 
         serviceState.mTrackNumber = mCurrentPlayingIndex;
@@ -1408,10 +1678,7 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
      * Returns current track if any is playing/paused at the moment.
      */
     public TrackModel getCurrentTrack() {
-        if (mCurrentPlayingIndex >= 0 && mCurrentList.size() > mCurrentPlayingIndex) {
-            return mCurrentList.get(mCurrentPlayingIndex);
-        }
-        return null;
+        return readTrack(mCurrentPlayingIndex);
     }
 
     /**
@@ -1424,9 +1691,14 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         if (state == PLAYSTATE.STOPPED) {
             return new NowPlayingInformation();
         } else {
-            TrackModel currentTrack = mCurrentList.get(mCurrentPlayingIndex);
+            final int currentPlayingIndex = mCurrentPlayingIndex;
+            final TrackModel currentTrack = readTrack(currentPlayingIndex);
+            if (currentTrack == null) {
+                // the playlist changed since the playback state was read
+                return new NowPlayingInformation();
+            }
 
-            return new NowPlayingInformation(state, mCurrentPlayingIndex, mRepeat, mRandom, mCurrentList.size(), currentTrack);
+            return new NowPlayingInformation(state, currentPlayingIndex, mRepeat, mRandom, mCurrentList.size(), currentTrack);
         }
     }
 
@@ -1437,6 +1709,7 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.WORKING);
         mBusy = true;
 
+        ensureQueueRestored();
         mDatabaseManager.savePlaylist(name, mCurrentList);
 
         mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.IDLE);
@@ -1449,32 +1722,34 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
      * @param playlist the {@link PlaylistModel} that represents the playlist
      */
     public void enqueuePlaylist(PlaylistModel playlist) {
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.WORKING);
-        mBusy = true;
-
-        final List<TrackModel> playlistTracks = new ArrayList<>();
-
-        switch (playlist.getPlaylistType()) {
-            case MEDIASTORE:
-                playlistTracks.addAll(MusicLibraryHelper.getTracksForPlaylist(playlist.getPlaylistId(), getApplicationContext()));
-                break;
-            case ODYSSEY_LOCAL:
-                playlistTracks.addAll(mDatabaseManager.getTracksForPlaylist(playlist.getPlaylistId()));
-                break;
-            case FILE:
-                PlaylistParser parser = PlaylistParserFactory.getParser(new FileModel(playlist.getPlaylistPath()));
-                if (parser == null) {
-                    return;
-                }
-                playlistTracks.addAll(parser.parseList(this));
-                break;
-        }
+        enqueuePlaylist(playlist, -1);
+    }
 
-        // add tracks to current playlist
-        enqueueTracks(playlistTracks);
+    /**
+     * Enqueue a playlist from mediastore/odyssey db/file. The tracks are looked up in the background.
+     *
+     * @param playlist     the {@link PlaylistModel} that represents the playlist
+     * @param playPosition the position in the enqueued tracks to start the playback or -1
+     */
+    private void enqueuePlaylist(PlaylistModel playlist, int playPosition) {
+        final Context context = getApplicationContext();
 
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.IDLE);
-        mBusy = false;
+        enqueueTracksAsync(consumer -> {
+            switch (playlist.getPlaylistType()) {
+                case MEDIASTORE:
+                    consumeTracks(MusicLibraryHelper.getTracksForPlaylist(playlist.getPlaylistId(), context), consumer);
+                    break;
+                case ODYSSEY_LOCAL:
+                    consumeTracks(mDatabaseManager.getTracksForPlaylist(playlist.getPlaylistId()), consumer);
+                    break;
+                case FILE:
+                    PlaylistParser parser = PlaylistParserFactory.getParser(new FileModel(playlist.getPlaylistPath()));
+                    if (parser != null) {
+                        parser.parseList(context, consumer);
+                    }
+                    break;
+            }
+        }, playPosition, false);
     }
 
     /**
@@ -1487,9 +1762,7 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
     public void playPlaylist(PlaylistModel playlist, int position) {
         clearPlaylist();
 
-        enqueuePlaylist(playlist);
-
-        jumpToIndex(position);
+        enqueuePlaylist(playlist, position);
     }
 
     /**
@@ -1503,7 +1776,9 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         clearPlaylist();
 
         // get playlist from database
-        mCurrentList = mDatabaseManager.readBookmarkTracks(timestamp);
+        final List<TrackModel> bookmarkTracks = mDatabaseManager.readBookmarkTracks(timestamp);
+        mCurrentList = new TrackQueue(bookmarkTracks);
+        mQueueJournal.recordSnapshot();
 
         // get state from database
         OdysseyServiceState state = mDatabaseManager.getState(timestamp);
@@ -1554,6 +1829,7 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         mBusy = true;
 
         // grab the current state and playlist and save this as a new bookmark with the given title
+        ensureQueueRestored();
         OdysseyServiceState serviceState = new OdysseyServiceState();
 
         // Move internal state to the new created state object
@@ -1601,10 +1877,17 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
         final FileModel currentFile = new FileModel(filePath);
 
-        final int enqueuedFiles = enqueueFile(currentFile, false);
+        if (mQueueProducer.isLoading()) {
+            // Play the file once it is added behind the tracks that are still looked up
+            enqueueFileAsync(currentFile, 0);
+        } else {
+            final int transportCommandCount = mHandler.getInlineTransportCommandCount();
+
+            final int enqueuedFiles = enqueueFile(currentFile, false);
 
-        if (enqueuedFiles > 0) {
-            jumpToIndex(mCurrentList.size() - enqueuedFiles);
+            if (enqueuedFiles > 0) {
+                jumpToAddedTrack(mCurrentList.size() - enqueuedFiles, transportCommandCount);
+            }
         }
 
         mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.IDLE);
@@ -1616,9 +1899,15 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
      *
      * @param currentFile the current {@link FileModel} that should be enqueued
      * @param asNext      Flag if the file should be enqueued as next. This will only used for single files not playlist files.
-     * @return the number of enqueued files or -1 if nothing was enqueued
+     * @return the number of enqueued files, 0 if they are enqueued in the background or -1 if nothing was enqueued
      */
     private int enqueueFile(final FileModel currentFile, final boolean asNext) {
+        if (!asNext && mQueueProducer.isLoading()) {
+            // Keep the order, the file belongs behind the tracks that are still looked up
+            enqueueFileAsync(currentFile, -1);
+            return 0;
+        }
+
         if (currentFile.isPlaylist()) {
             // Parse the playlist file with a parser
             PlaylistParser parser = PlaylistParserFactory.getParser(currentFile);
@@ -1646,6 +1935,29 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         }
     }
 
+    /**
+     * Creates one or multiple {@link TrackModel} for a given {@link FileModel} in the background and
+     * then enqueue them.
+     *
+     * @param currentFile  the current {@link FileModel} that should be enqueued
+     * @param playPosition the position in the enqueued tracks to start the playback or -1
+     */
+    private void enqueueFileAsync(final FileModel currentFile, final int playPosition) {
+        final Context context = getApplicationContext();
+
+        // a single file is known already, only the lookup of a playlist file can be stopped
+        enqueueTracksAsync(consumer -> {
+            if (currentFile.isPlaylist()) {
+                PlaylistParser parser = PlaylistParserFactory.getParser(currentFile);
+                if (parser != null) {
+                    parser.parseList(context, consumer);
+                }
+            } else {
+                consumer.onTrackFound(FileExplorerHelper.getInstance().getDummyTrackModelForFile(currentFile));
+            }
+        }, currentFile.isPlaylist(), playPosition, true);
+    }
+
     /**
      * Creates trackmodels for a given directorypath and plays the tracks.
      * A previous playlist will be cleared.
@@ -1656,23 +1968,11 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
     public void playDirectory(String directoryPath, int position) {
         clearPlaylist();
 
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.WORKING);
-        mBusy = true;
-
         final FileModel currentDirectory = new FileModel(directoryPath);
+        final Context context = getApplicationContext();
 
-        List<TrackModel> tracks = FileExplorerHelper.getInstance().getTrackModelsForFolder(getApplicationContext(), currentDirectory);
-
-        // add tracks to current playlist
-        enqueueTracks(tracks);
-
-        // start meta data extraction for new tracks
-        mMetaDataLoader.getTrackListMetaData(getApplicationContext(), tracks);
-
-        jumpToIndex(position);
-
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.IDLE);
-        mBusy = false;
+        enqueueTracksAsync(consumer -> FileExplorerHelper.getInstance().getTrackModelsForFolder(context, currentDirectory, consumer),
+                position, true);
     }
 
     /**
@@ -1682,21 +1982,22 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
      * @param filterString  A filter that is used to exclude folders/files that didn't contain this String.
      */
     public void enqueueDirectoryAndSubDirectories(String directoryPath, String filterString) {
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.WORKING);
-        mBusy = true;
+        enqueueDirectoryAndSubDirectories(directoryPath, filterString, -1);
+    }
 
+    /**
+     * Creates trackmodels for a given directorypath (inclusive all subdirectories) in the background and adds the tracks to the playlist
+     *
+     * @param directoryPath the path to the selected directory
+     * @param filterString  A filter that is used to exclude folders/files that didn't contain this String.
+     * @param playPosition  the position in the enqueued tracks to start the playback or -1
+     */
+    private void enqueueDirectoryAndSubDirectories(String directoryPath, String filterString, int playPosition) {
         final FileModel currentDirectory = new FileModel(directoryPath);
+        final Context context = getApplicationContext();
 
-        List<TrackModel> tracks = FileExplorerHelper.getInstance().getTrackModelsForFolderAndSubFolders(getApplicationContext(), currentDirectory, filterString);
-
-        // add tracks to current playlist
-        enqueueTracks(tracks);
-
-        // start meta data extraction for new tracks
-        mMetaDataLoader.getTrackListMetaData(getApplicationContext(), tracks);
-
-        mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.IDLE);
-        mBusy = false;
+        enqueueTracksAsync(consumer -> FileExplorerHelper.getInstance().getTrackModelsForFolderAndSubFolders(context, currentDirectory, filterString, consumer),
+                playPosition, true);
     }
 
     /**
@@ -1709,9 +2010,152 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
     public void playDirectoryAndSubDirectories(String directoryPath, String filterString) {
         clearPlaylist();
 
-        enqueueDirectoryAndSubDirectories(directoryPath, filterString);
+        enqueueDirectoryAndSubDirectories(directoryPath, filterString, 0);
+    }
 
-        jumpToIndex(0);
+    /**
+     * Adds already known tracks behind the tracks that are still looked up. Unlike the looked up
+     * tracks they are not dropped by {@link #cancelLoadingTracks()}.
+     *
+     * @param tracks       The tracks to add
+     * @param playPosition The position in the added tracks to start the playback or -1
+     */
+    private void enqueueKnownTracksAsync(final List<TrackModel> tracks, final int playPosition) {
+        enqueueTracksAsync(consumer -> consumeTracks(tracks, consumer), false, playPosition, false);
+    }
+
+    /**
+     * Adds the tracks of a lookup that is stopped by {@link #cancelLoadingTracks()}, see
+     * {@link #enqueueTracksAsync(QueueProducer.TrackSource, boolean, int, boolean)}.
+     */
+    private void enqueueTracksAsync(final QueueProducer.TrackSource source, final int playPosition, final boolean loadMetaData) {
+        enqueueTracksAsync(source, true, playPosition, loadMetaData);
+    }
+
+    /**
+     * Adds the tracks of the source to the playlist in chunks while they are looked up in the
+     * background. The playback starts as soon as the track at the play position is available.
+     * The random generator and the meta data are updated once all tracks are added.
+     *
+     * @param source       Looks up the tracks on the background thread
+     * @param stoppable    False if the tracks of the source are already known and must not be
+     *                     dropped by {@link #cancelLoadingTracks()}
+     * @param playPosition The position in the added tracks to start the playback or -1
+     * @param loadMetaData True if the meta data of the tracks must be read from their files
+     */
+    private void enqueueTracksAsync(final QueueProducer.TrackSource source, final boolean stoppable, final int playPosition, final boolean loadMetaData) {
+        // Report the service as busy until the first tracks are added. Jobs that wait behind other
+        // jobs don't block the user meanwhile.
+        final boolean reportBusy = !mQueueProducer.isLoading();
+        if (reportBusy) {
+            setEnqueueStarting(true);
+        }
+
+        mQueueProducer.start(source, stoppable, new QueueProducer.TrackSink() {
+            private boolean mStarting = reportBusy;
+
+            private boolean mPlaybackStarted = playPosition < 0;
+
+            /**
+             * Position of the first added track in the playlist, -1 until it is added
+             */
+            private int mStartIndex = -1;
+
+            private final List<TrackModel> mMetaDataTracks = new ArrayList<>();
+
+            @Override
+            public void onTracksLoaded(List<TrackModel> tracks) {
+                if (mStartIndex < 0) {
+                    mStartIndex = mCurrentList.size();
+                }
+
+                // add tracks to current playlist
+                appendTracks(tracks);
+
+                if (loadMetaData) {
+                    mMetaDataTracks.addAll(tracks);
+                }
+
+                if (!mPlaybackStarted && mStartIndex + playPosition < mCurrentList.size()) {
+                    mPlaybackStarted = true;
+                    jumpToIndex(mStartIndex + playPosition);
+                }
+
+                finishStarting();
+            }
+
+            @Override
+            public void onLoadingFinished(boolean cancelled) {
+                finishStarting();
+
+                if (cancelled) {
+                    // The playlist was cleared meanwhile
+                    return;
+                }
+
+                updateTrackRandomGenerator();
+
+                if (!mMetaDataTracks.isEmpty()) {
+                    // start meta data extraction for new tracks
+                    mMetaDataLoader.getTrackListMetaData(getApplicationContext(), mMetaDataTracks);
+                }
+
+                if (!mPlaybackStarted && mStartIndex >= 0) {
+                    // The position is not part of the added tracks, let jumpToIndex handle it as before
+                    jumpToIndex(mStartIndex + playPosition);
+                }
+
+                // Inform the helper that no more tracks are added
+                mPlaybackServiceStatusHelper.updateStatus();
+            }
+
+            private void finishStarting() {
+                if (mStarting) {
+                    mStarting = false;
+                    setEnqueueStarting(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Counts the background enqueues that did not add their first tracks yet and notifies the
+     * user about the first one that starts and the last one that ends.
+     */
+    private void setEnqueueStarting(final boolean starting) {
+        if (starting) {
+            if (mStartingEnqueues++ == 0) {
+                mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.WORKING);
+            }
+        } else if (--mStartingEnqueues == 0) {
+            mPlaybackServiceStatusHelper.broadcastPlaybackServiceState(PLAYBACKSERVICESTATE.IDLE);
+        }
+    }
+
+    /**
+     * Passes already loaded tracks to a consumer.
+     */
+    private static void consumeTracks(final List<TrackModel> tracks, final TrackConsumer consumer) {
+        for (TrackModel track : tracks) {
+            if (!consumer.onTrackFound(track)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return True if tracks of folders or playlists are still looked up and added to the playlist
+     */
+    public boolean isLoadingTracks() {
+        return mQueueProducer.isLoading();
+    }
+
+    /**
+     * Stops adding the tracks of the folder or playlist that is looked up at the moment. The tracks
+     * that were added already stay in the playlist, waiting enqueues are still added.
+     */
+    public void cancelLoadingTracks() {
+        mQueueProducer.stop();
     }
 
     /**
@@ -1738,6 +2182,11 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
     }
 
     private void updateTrackRandomGenerator() {
+        // The generator is filled as soon as the complete playlist is restored
+        if (mQueueRestore != null) {
+            return;
+        }
+
         // Redo smart random list
         if (mRandom == RANDOMSTATE.RANDOM_ON) {
             mTrackRandomGenerator.fillFromList(mCurrentList);
@@ -1746,13 +2195,142 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         }
     }
 
+    /**
+     * Reads the complete saved playlist in the background. As soon as it is read, it replaces
+     * the partially restored mCurrentList on the handler thread.
+     *
+     * @param startTime Creation time of the service as returned by {@link System#nanoTime()}
+     */
+    private void restoreQueue(final long startTime) {
+        if (!mCurrentList.contains(null)) {
+            // the window already contains the complete playlist
+            updateTrackRandomGenerator();
+            return;
+        }
+
+        final FutureTask<List<TrackModel>> queueRestore = new FutureTask<>(() -> {
+            final List<TrackModel> queue = mDatabaseManager.readBookmarkTracks();
+
+            QUEUE_RESTORE_LATENCY.addSince(startTime);
+            if (BuildConfig.DEBUG) {
+                Log.v(TAG, "queue restored after " + ((System.nanoTime() - startTime) / 1000000) + " ms, tracks: " + queue.size());
+            }
+
+            return queue;
+        });
+        mQueueRestore = queueRestore;
+
+        final Thread restoreThread = new Thread(() -> {
+            queueRestore.run();
+            mHandler.post(this::ensureQueueRestored);
+        }, "QueueRestore");
+        restoreThread.setPriority(Thread.MIN_PRIORITY);
+        restoreThread.start();
+    }
+
+    /**
+     * Waits until the complete saved playlist is restored and replaces the partially restored
+     * mCurrentList with it. Must be called on the handler thread before any change of the playlist
+     * and before any access to a track that is not around the restored track. Binder threads use
+     * {@link #readTrack(int)} and {@link #waitForRestoredQueue()} instead.
+     */
+    private void ensureQueueRestored() {
+        if (mQueueRestore == null) {
+            return;
+        }
+
+        List<TrackModel> queue;
+        try {
+            queue = mQueueRestore.get();
+        } catch (ExecutionException | InterruptedException e) {
+            Log.e(TAG, "Restoring the playlist in the background failed", e);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            queue = mDatabaseManager.readBookmarkTracks();
+        }
+
+        // the size of the complete playlist is already known, so all indices stay valid
+        mCurrentList = new TrackQueue(queue);
+        mQueueRestore = null;
+
+        updateTrackRandomGenerator();
+    }
+
+    /**
+     * Waits until the complete saved playlist is restored if the track at the index is not
+     * restored yet.
+     *
+     * @param index Position of the track in the playlist
+     */
+    private void ensureTrackRestored(final int index) {
+        final TrackQueue currentList = mCurrentList;
+        if (index >= 0 && index < currentList.size() && currentList.isNull(index)) {
+            ensureQueueRestored();
+        }
+    }
+
+    /**
+     * Waits until the complete saved playlist is read in the background without replacing
+     * mCurrentList, so binder threads can serve tracks that are not restored yet. As long as
+     * the restore is running, the playlist is not changed, so the indices of both lists match.
+     *
+     * @return The complete playlist, null if it is already restored or the restore failed
+     */
+    @Nullable
+    private List<TrackModel> waitForRestoredQueue() {
+        final Future<List<TrackModel>> queueRestore = mQueueRestore;
+        if (queueRestore == null) {
+            return null;
+        }
+
+        try {
+            return queueRestore.get();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Restoring the playlist in the background failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    /**
+     * Reads a track of the playlist without changing it, so it can be called from binder threads.
+     *
+     * @param index Position of the track in the playlist
+     * @return The track, null if the index is out of bounds
+     */
+    @Nullable
+    private TrackModel readTrack(final int index) {
+        TrackQueue currentList = mCurrentList;
+        synchronized (currentList) {
+            if (index < 0 || index >= currentList.size()) {
+                return null;
+            }
+            if (!currentList.isNull(index)) {
+                return currentList.get(index);
+            }
+        }
+
+        final List<TrackModel> restoredQueue = waitForRestoredQueue();
+        if (restoredQueue != null) {
+            return index < restoredQueue.size() ? restoredQueue.get(index) : null;
+        }
+
+        // the handler thread replaced the playlist meanwhile
+        currentList = mCurrentList;
+        synchronized (currentList) {
+            return index < currentList.size() ? currentList.get(index) : null;
+        }
+    }
+
     /**
      * Returns the working state of the service
      *
      * @return true if the service is busy else false
      */
     public boolean isBusy() {
-        return mBusy;
+        return mBusy || mStartingEnqueues > 0;
     }
 
     /**
@@ -1793,6 +2371,9 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
      * Sets the index, of the track to play next,to a random generated one.
      */
     private void randomizeNextTrack() {
+        // A random track can only be chosen from the complete playlist
+        ensureQueueRestored();
+
         // Set next index to random one
         if (mCurrentList.size() > 0) {
             mNextPlayingIndex = mTrackRandomGenerator.getRandomTrackNumber();
@@ -1808,6 +2389,7 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
         // If player is not running or at least prepared, this makes no sense
         if (mPlayer.isPrepared() || mPlayer.isRunning()) {
             // Sets the next track for gapless playing
+            ensureTrackRestored(mNextPlayingIndex);
             if (mNextPlayingIndex >= 0 && mNextPlayingIndex < mCurrentList.size()) {
                 try {
                     mPlayer.setNextTrack(mCurrentList.get(mNextPlayingIndex).getTrackUri());
@@ -1826,6 +2408,39 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
                 }
             }
         }
+
+        updateLookAhead();
+    }
+
+    /**
+     * Lets the GaplessPlayer open the files of the tracks that will likely be played next. These
+     * are the chosen next track and, without random playback, the following tracks of the queue.
+     */
+    private void updateLookAhead() {
+        final List<Uri> uris = new ArrayList<>(LOOK_AHEAD_TRACKS);
+
+        if (mNextPlayingIndex != mCurrentPlayingIndex) {
+            addLookAheadTrack(uris, mNextPlayingIndex);
+        }
+        if (mRandom == RANDOMSTATE.RANDOM_OFF) {
+            for (int i = mCurrentPlayingIndex + 1; i < mCurrentList.size() && uris.size() < LOOK_AHEAD_TRACKS; i++) {
+                addLookAheadTrack(uris, i);
+            }
+        }
+
+        mPlayer.setLookAheadTracks(uris);
+    }
+
+    private void addLookAheadTrack(final List<Uri> uris, final int index) {
+        // Tracks that are not restored yet are skipped instead of waiting for them
+        if (index < 0 || index >= mCurrentList.size() || mCurrentList.isNull(index)) {
+            return;
+        }
+
+        final Uri uri = mCurrentList.get(index).getTrackUri();
+        if (uri != null && !uris.contains(uri)) {
+            uris.add(uri);
+        }
     }
 
     public void setSmartRandom(int intelligenceFactor) {
@@ -1995,6 +2610,18 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
      */
     @Override
     public void metaDataLoaderFinished(Map<String, TrackModel> parsedTracks) {
+        // the loader runs on its own thread, the playlist is only changed on the handler thread
+        mHandler.post(() -> updateParsedTracks(parsedTracks));
+    }
+
+    /**
+     * Replaces all unknown tracks in the current playlist with their parsed versions.
+     *
+     * @param parsedTracks A Map of parsed tracks.
+     */
+    private void updateParsedTracks(Map<String, TrackModel> parsedTracks) {
+        ensureQueueRestored();
+
         ListIterator<TrackModel> iterator = mCurrentList.listIterator();
 
         boolean updatedNeeded = false;
@@ -2004,7 +2631,9 @@ public class PlaybackService extends Service implements AudioManager.OnAudioFocu
 
             if (parsedTracks.containsKey(track.getTrackUriString())) {
                 // if the track is in the map replace it in the playlist
-                iterator.set(parsedTracks.get(track.getTrackUriString()));
+                final TrackModel parsedTrack = parsedTracks.get(track.getTrackUriString());
+                iterator.set(parsedTrack);
+                mQueueJournal.recordSet(iterator.previousIndex(), parsedTrack);
                 updatedNeeded = true;
             }
         }
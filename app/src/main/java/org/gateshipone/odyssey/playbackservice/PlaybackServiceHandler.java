@@ -26,142 +26,207 @@ import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import java.lang.ref.WeakReference;
 import java.util.concurrent.Semaphore;
 
+/**
+ * Handles the {@link ControlObject} commands of the {@link PlaybackService} on its handler thread.
+ * <p>
+ * Sent commands are collected in a {@link CommandQueue} and every message only triggers the
+ * handling of the most important waiting command. This way transport controls overtake waiting bulk
+ * library operations and long running enqueues can handle them between chunks
+ * ({@link #runTransportCommands()}).
+ */
 public class PlaybackServiceHandler extends Handler {
     private final WeakReference<PlaybackService> mService;
 
     private final Semaphore mLock;
 
+    private final CommandQueue mCommands;
+
+    /**
+     * Number of transport controls that were handled between the chunks of other commands
+     */
+    private int mInlineTransportCommands;
+
     public PlaybackServiceHandler(Looper looper, PlaybackService service) {
         super(looper);
         mService = new WeakReference<>(service);
         mLock = new Semaphore(1);
+        mCommands = new CommandQueue();
+    }
+
+    @Override
+    public boolean sendMessageAtTime(@NonNull Message msg, long uptimeMillis) {
+        if (msg.obj instanceof ControlObject && !mCommands.offer((ControlObject) msg.obj)) {
+            // Merged into a waiting command that already has its message
+            msg.recycle();
+            return true;
+        }
+        return super.sendMessageAtTime(msg, uptimeMillis);
     }
 
     @Override
     public void handleMessage(@Nullable Message msg) {
-        if (msg == null) {
+        if (msg == null || !(msg.obj instanceof ControlObject)) {
             return;
         }
 
-        ControlObject msgObj = (ControlObject) msg.obj;
-
-        // Check if object is received
-        if (msgObj != null && mLock.tryAcquire()) {
-            // Parse message
-            switch (msgObj.getAction()) {
-                case ODYSSEY_PLAY:
-                    mService.get().playURI(msgObj.getStringParam());
-                    break;
-                case ODYSSEY_TOGGLEPAUSE:
-                    mService.get().togglePause();
-                    break;
-                case ODYSSEY_NEXT:
-                    mService.get().setNextTrack();
-                    break;
-                case ODYSSEY_PREVIOUS:
-                    mService.get().setPreviousTrack();
-                    break;
-                case ODYSSEY_SEEKTO:
-                    mService.get().seekTo(msgObj.getIntParam());
-                    break;
-                case ODYSSEY_JUMPTO:
-                    mService.get().jumpToIndex(msgObj.getIntParam());
-                    break;
-                case ODYSSEY_REPEAT:
-                    mService.get().toggleRepeat();
-                    break;
-                case ODYSSEY_RANDOM:
-                    mService.get().toggleRandom();
-                    break;
-                case ODYSSEY_ENQUEUETRACK:
-                    mService.get().enqueueTrack(msgObj.getTrack(), msgObj.getBoolParam());
-                    break;
-                case ODYSSEY_PLAYTRACK:
-                    mService.get().playTrack(msgObj.getTrack(), msgObj.getBoolParam());
-                    break;
-                case ODYSSEY_DEQUEUETRACK:
-                    mService.get().dequeueTrack(msgObj.getIntParam());
-                    break;
-                case ODYSSEY_DEQUEUETRACKS:
-                    mService.get().dequeueTracks(msgObj.getIntParam());
-                    break;
-                case ODYSSEY_CLEARPLAYLIST:
-                    mService.get().clearPlaylist();
-                    break;
-                case ODYSSEY_SHUFFLEPLAYLIST:
-                    mService.get().shufflePlaylist();
-                    break;
-                case ODYSSEY_PLAYALLTRACKS:
-                    mService.get().playAllTracks(msgObj.getStringParam());
-                    break;
-                case ODYSSEY_SAVEPLAYLIST:
-                    mService.get().savePlaylist(msgObj.getStringParam());
-                    break;
-                case ODYSSEY_ENQUEUEPLAYLIST:
-                    mService.get().enqueuePlaylist(msgObj.getPlaylist());
-                    break;
-                case ODYSSEY_PLAYPLAYLIST:
-                    mService.get().playPlaylist(msgObj.getPlaylist(), msgObj.getIntParam());
-                    break;
-                case ODYSSEY_RESUMEBOOKMARK:
-                    mService.get().resumeBookmark(msgObj.getLongParam());
-                    break;
-                case ODYSSEY_DELETEBOOKMARK:
-                    mService.get().deleteBookmark(msgObj.getLongParam());
-                    break;
-                case ODYSSEY_CREATEBOOKMARK:
-                    mService.get().createBookmark(msgObj.getStringParam());
-                    break;
-                case ODYSSEY_ENQUEUEFILE:
-                    mService.get().enqueueFile(msgObj.getStringParam(), msgObj.getBoolParam());
-                    break;
-                case ODYSSEY_PLAYFILE:
-                    mService.get().playFile(msgObj.getStringParam(), msgObj.getBoolParam());
-                    break;
-                case ODYSSEY_PLAYDIRECTORY:
-                    mService.get().playDirectory(msgObj.getStringParam(), msgObj.getIntParam());
-                    break;
-                case ODYSSEY_ENQUEUEDIRECTORYANDSUBDIRECTORIES:
-                    mService.get().enqueueDirectoryAndSubDirectories(msgObj.getStringParam(), msgObj.getSecondStringParam());
-                    break;
-                case ODYSSEY_PLAYDIRECTORYANDSUBDIRECTORIES:
-                    mService.get().playDirectoryAndSubDirectories(msgObj.getStringParam(), msgObj.getSecondStringParam());
-                    break;
-                case ODYSSEY_ENQUEUEALBUM:
-                    mService.get().enqueueAlbum(msgObj.getLongParam(), msgObj.getStringParam());
-                    break;
-                case ODYSSEY_PLAYALBUM:
-                    mService.get().playAlbum(msgObj.getLongParam(), msgObj.getStringParam(), msgObj.getIntParam());
-                    break;
-                case ODYSSEY_ENQUEUEARTIST:
-                    mService.get().enqueueArtist(msgObj.getLongParam(), msgObj.getStringParam(), msgObj.getSecondStringParam());
-                    break;
-                case ODYSSEY_PLAYARTIST:
-                    mService.get().playArtist(msgObj.getLongParam(), msgObj.getStringParam(), msgObj.getSecondStringParam());
-                    break;
-                case ODYSSEY_ENQUEUERECENTALBUMS:
-                    mService.get().enqueueRecentAlbums();
-                    break;
-                case ODYSSEY_PLAYRECENTALBUMS:
-                    mService.get().playRecentAlbums();
-                    break;
-                case ODYSSEY_START_SLEEPTIMER:
-                    mService.get().startSleepTimer(msgObj.getLongParam(), msgObj.getBoolParam());
-                    break;
-                case ODYSSEY_CANCEL_SLEEPTIMER:
-                    mService.get().cancelSleepTimer();
-                    break;
-                case ODYSSEY_SET_SMARTRANDOM:
-                    mService.get().setSmartRandom(msgObj.getIntParam());
-                    break;
+        if (mLock.tryAcquire()) {
+            // The command of this message could have been merged or handled during an enqueue
+            // already, so just take the most important waiting one
+            final ControlObject command = mCommands.poll();
+            if (command != null) {
+                handleCommand(command);
             }
 
             mLock.release();
         }
     }
+
+    /**
+     * Handles the waiting transport controls immediately. Long running commands call this between
+     * their steps, so pause and skip do not wait until they are finished. Does nothing if called
+     * outside of the handler thread.
+     */
+    void runTransportCommands() {
+        if (Looper.myLooper() != getLooper()) {
+            return;
+        }
+
+        ControlObject command;
+        while ((command = mCommands.pollTransportCommand()) != null) {
+            mInlineTransportCommands++;
+            handleCommand(command);
+        }
+    }
+
+    /**
+     * Commands that start the playback after adding their tracks compare this before and after
+     * the adding, so they don't override the transport controls that were handled meanwhile.
+     *
+     * @return The number of transport controls handled by {@link #runTransportCommands()}
+     */
+    int getInlineTransportCommandCount() {
+        return mInlineTransportCommands;
+    }
+
+    private void handleCommand(final ControlObject msgObj) {
+        final PlaybackService service = mService.get();
+        if (service == null) {
+            return;
+        }
+
+        // Parse message
+        switch (msgObj.getAction()) {
+            case ODYSSEY_PLAY:
+                service.playURI(msgObj.getStringParam());
+                break;
+            case ODYSSEY_TOGGLEPAUSE:
+                service.togglePause();
+                break;
+            case ODYSSEY_NEXT:
+                service.skipTracks(CommandQueue.getSkipCount(msgObj));
+                break;
+            case ODYSSEY_PREVIOUS:
+                service.setPreviousTrack();
+                break;
+            case ODYSSEY_SEEKTO:
+                service.seekTo(msgObj.getIntParam());
+                break;
+            case ODYSSEY_JUMPTO:
+                service.jumpToIndex(msgObj.getIntParam());
+                break;
+            case ODYSSEY_REPEAT:
+                service.toggleRepeat();
+                break;
+            case ODYSSEY_RANDOM:
+                service.toggleRandom();
+                break;
+            case ODYSSEY_ENQUEUETRACK:
+                service.enqueueTrack(msgObj.getTrack(), msgObj.getBoolParam());
+                break;
+            case ODYSSEY_PLAYTRACK:
+                service.playTrack(msgObj.getTrack(), msgObj.getBoolParam());
+                break;
+            case ODYSSEY_DEQUEUETRACK:
+                service.dequeueTrack(msgObj.getIntParam());
+                break;
+            case ODYSSEY_DEQUEUETRACKS:
+                service.dequeueTracks(msgObj.getIntParam());
+                break;
+            case ODYSSEY_CLEARPLAYLIST:
+                service.clearPlaylist();
+                break;
+            case ODYSSEY_SHUFFLEPLAYLIST:
+                service.shufflePlaylist();
+                break;
+            case ODYSSEY_PLAYALLTRACKS:
+                service.playAllTracks(msgObj.getStringParam());
+                break;
+            case ODYSSEY_SAVEPLAYLIST:
+                service.savePlaylist(msgObj.getStringParam());
+                break;
+            case ODYSSEY_ENQUEUEPLAYLIST:
+                service.enqueuePlaylist(msgObj.getPlaylist());
+                break;
+            case ODYSSEY_PLAYPLAYLIST:
+                service.playPlaylist(msgObj.getPlaylist(), msgObj.getIntParam());
+                break;
+            case ODYSSEY_RESUMEBOOKMARK:
+                service.resumeBookmark(msgObj.getLongParam());
+                break;
+            case ODYSSEY_DELETEBOOKMARK:
+                service.deleteBookmark(msgObj.getLongParam());
+                break;
+            case ODYSSEY_CREATEBOOKMARK:
+                service.createBookmark(msgObj.getStringParam());
+                break;
+            case ODYSSEY_ENQUEUEFILE:
+                service.enqueueFile(msgObj.getStringParam(), msgObj.getBoolParam());
+                break;
+            case ODYSSEY_PLAYFILE:
+                service.playFile(msgObj.getStringParam(), msgObj.getBoolParam());
+                break;
+            case ODYSSEY_PLAYDIRECTORY:
+                service.playDirectory(msgObj.getStringParam(), msgObj.getIntParam());
+                break;
+            case ODYSSEY_ENQUEUEDIRECTORYANDSUBDIRECTORIES:
+                service.enqueueDirectoryAndSubDirectories(msgObj.getStringParam(), msgObj.getSecondStringParam());
+                break;
+            case ODYSSEY_PLAYDIRECTORYANDSUBDIRECTORIES:
+                service.playDirectoryAndSubDirectories(msgObj.getStringParam(), msgObj.getSecondStringParam());
+                break;
+            case ODYSSEY_ENQUEUEALBUM:
+                service.enqueueAlbum(msgObj.getLongParam(), msgObj.getStringParam());
+                break;
+            case ODYSSEY_PLAYALBUM:
+                service.playAlbum(msgObj.getLongParam(), msgObj.getStringParam(), msgObj.getIntParam());
+                break;
+            case ODYSSEY_ENQUEUEARTIST:
+                service.enqueueArtist(msgObj.getLongParam(), msgObj.getStringParam(), msgObj.getSecondStringParam());
+                break;
+            case ODYSSEY_PLAYARTIST:
+                service.playArtist(msgObj.getLongParam(), msgObj.getStringParam(), msgObj.getSecondStringParam());
+                break;
+            case ODYSSEY_ENQUEUERECENTALBUMS:
+                service.enqueueRecentAlbums();
+                break;
+            case ODYSSEY_PLAYRECENTALBUMS:
+                service.playRecentAlbums();
+                break;
+            case ODYSSEY_START_SLEEPTIMER:
+                service.startSleepTimer(msgObj.getLongParam(), msgObj.getBoolParam());
+                break;
+            case ODYSSEY_CANCEL_SLEEPTIMER:
+                service.cancelSleepTimer();
+                break;
+            case ODYSSEY_SET_SMARTRANDOM:
+                service.setSmartRandom(msgObj.getIntParam());
+                break;
+        }
+    }
 }
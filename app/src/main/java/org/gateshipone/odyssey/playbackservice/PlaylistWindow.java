@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2020 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.playbackservice;
+
+import android.net.Uri;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import androidx.annotation.NonNull;
+
+import org.gateshipone.odyssey.models.TrackModel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * This class is the parcelable that transfers a continuous part of the current playlist
+ * from the PlaybackService to the GUI in one binder transaction.
+ * <p/>
+ * The tracks are written in a compact format: artist and album names are written once into a
+ * string table and referenced by index, the uri is written as a plain string.
+ */
+public final class PlaylistWindow implements Parcelable {
+
+    /**
+     * Index of the first track of this window in the playlist
+     */
+    private final int mOffset;
+
+    @NonNull
+    private final List<TrackModel> mTracks;
+
+    public static final Parcelable.Creator<PlaylistWindow> CREATOR = new Parcelable.Creator<PlaylistWindow>() {
+
+        @Override
+        public PlaylistWindow createFromParcel(Parcel source) {
+            final int offset = source.readInt();
+
+            final int stringCount = source.readInt();
+            final String[] strings = new String[stringCount];
+            for (int i = 0; i < stringCount; i++) {
+                strings[i] = source.readString();
+            }
+
+            final int trackCount = source.readInt();
+            final List<TrackModel> tracks = new ArrayList<>(trackCount);
+            for (int i = 0; i < trackCount; i++) {
+                final String name = source.readString();
+                final String artistName = strings[source.readInt()];
+                final long artistId = source.readLong();
+                final String albumName = strings[source.readInt()];
+                final long albumId = source.readLong();
+                final long duration = source.readLong();
+                final int trackNumber = source.readInt();
+                final String uri = source.readString();
+                final long trackId = source.readLong();
+                final int dateAdded = source.readInt();
+
+                tracks.add(new TrackModel(name, artistName, artistId, albumName, albumId, duration, trackNumber,
+                        uri == null ? null : Uri.parse(uri), trackId, dateAdded));
+            }
+
+            return new PlaylistWindow(offset, tracks);
+        }
+
+        @Override
+        public PlaylistWindow[] newArray(int size) {
+            return new PlaylistWindow[size];
+        }
+    };
+
+    public PlaylistWindow(int offset, @NonNull List<TrackModel> tracks) {
+        mOffset = offset;
+        mTracks = tracks;
+    }
+
+    /**
+     * Creates an empty window.
+     */
+    public PlaylistWindow() {
+        this(0, Collections.emptyList());
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(mOffset);
+
+        // Build the string table for the artist and album names
+        final HashMap<String, Integer> stringIndices = new HashMap<>();
+        final List<String> strings = new ArrayList<>();
+        final int[] artistIndices = new int[mTracks.size()];
+        final int[] albumIndices = new int[mTracks.size()];
+
+        for (int i = 0; i < mTracks.size(); i++) {
+            final TrackModel track = mTracks.get(i);
+            artistIndices[i] = getStringIndex(track.getTrackArtistName(), stringIndices, strings);
+            albumIndices[i] = getStringIndex(track.getTrackAlbumName(), stringIndices, strings);
+        }
+
+        dest.writeInt(strings.size());
+        for (String string : strings) {
+            dest.writeString(string);
+        }
+
+        dest.writeInt(mTracks.size());
+        for (int i = 0; i < mTracks.size(); i++) {
+            final TrackModel track = mTracks.get(i);
+            final Uri uri = track.getTrackUri();
+
+            dest.writeString(track.getTrackName());
+            dest.writeInt(artistIndices[i]);
+            dest.writeLong(track.getTrackArtistId());
+            dest.writeInt(albumIndices[i]);
+            dest.writeLong(track.getTrackAlbumId());
+            dest.writeLong(track.getTrackDuration());
+            dest.writeInt(track.getTrackNumber());
+            dest.writeString(uri == null ? null : uri.toString());
+            dest.writeLong(track.getTrackId());
+            dest.writeInt(track.getDateAdded());
+        }
+    }
+
+    /**
+     * @return The index of the first track of this window in the playlist
+     */
+    public int getOffset() {
+        return mOffset;
+    }
+
+    /**
+     * @return The number of tracks in this window
+     */
+    public int getCount() {
+        return mTracks.size();
+    }
+
+    @NonNull
+    public List<TrackModel> getTracks() {
+        return mTracks;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "offset: " + mOffset + " count: " + mTracks.size();
+    }
+
+    private static int getStringIndex(final String string, final HashMap<String, Integer> stringIndices, final List<String> strings) {
+        Integer index = stringIndices.get(string);
+        if (index == null) {
+            index = strings.size();
+            stringIndices.put(string, index);
+            strings.add(string);
+        }
+        return index;
+    }
+}
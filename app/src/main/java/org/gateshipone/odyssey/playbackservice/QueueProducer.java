@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2020 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.playbackservice;
+
+import org.gateshipone.odyssey.models.TrackModel;
+import org.gateshipone.odyssey.utils.TrackConsumer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Looks up the tracks of long running enqueue operations (folders and playlists) on a background
+ * thread and hands them over in chunks. The first track is handed over as soon as it is found, so
+ * playback can start while the rest is looked up.
+ * <p>
+ * Jobs run one after another in the order they were started. {@link #cancel()} stops the running
+ * and all waiting jobs and drops their chunks that were not handled yet. {@link #stop()} only stops
+ * the lookup of the running job, the already found tracks are still handed over.
+ */
+public final class QueueProducer {
+
+    /**
+     * Maximum number of tracks in one chunk
+     */
+    private static final int CHUNK_SIZE = 500;
+
+    /**
+     * Maximum time a found track waits until its chunk is handed over (ns)
+     */
+    private static final long CHUNK_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(250);
+
+    /**
+     * Looks up the tracks of a job. This is called on the background thread.
+     */
+    public interface TrackSource {
+
+        /**
+         * @param consumer Receives the found tracks, returns false if the job was cancelled
+         */
+        void loadTracks(TrackConsumer consumer);
+    }
+
+    /**
+     * Receives the tracks of a job on the thread of the result executor.
+     */
+    public interface TrackSink {
+
+        void onTracksLoaded(List<TrackModel> tracks);
+
+        /**
+         * Called after the last chunk of the job, also if the job was stopped or cancelled.
+         *
+         * @param cancelled True if the job was cancelled and its remaining chunks were dropped
+         */
+        void onLoadingFinished(boolean cancelled);
+    }
+
+    /**
+     * Runs the callbacks of the {@link TrackSink}s, usually the handler of the PlaybackService
+     */
+    private final Executor mResultExecutor;
+
+    private final ExecutorService mLoadExecutor;
+
+    /**
+     * Increased on every cancel, jobs and chunks of older generations are dropped.
+     */
+    private final AtomicInteger mGeneration = new AtomicInteger();
+
+    /**
+     * Increased on every stop, a running job whose stop generation is older does not look up
+     * further tracks.
+     */
+    private final AtomicInteger mStopGeneration = new AtomicInteger();
+
+    /**
+     * Number of started jobs of the current generation whose last callback did not run yet.
+     * Guarded by this object together with the changes of {@link #mGeneration}.
+     */
+    private int mPendingJobs;
+
+    public QueueProducer(final Executor resultExecutor) {
+        mResultExecutor = resultExecutor;
+        mLoadExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "QueueProducer");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts a job after all jobs that were started before.
+     *
+     * @param source Looks up the tracks on the background thread
+     * @param sink   Receives the tracks in chunks
+     */
+    public void start(final TrackSource source, final TrackSink sink) {
+        start(source, true, sink);
+    }
+
+    /**
+     * Starts a job after all jobs that were started before.
+     *
+     * @param source    Looks up the tracks on the background thread
+     * @param stoppable False if the tracks of the source are already known and must be handed
+     *                  over completely even if {@link #stop()} is called
+     * @param sink      Receives the tracks in chunks
+     */
+    public void start(final TrackSource source, final boolean stoppable, final TrackSink sink) {
+        if (mLoadExecutor.isShutdown()) {
+            return;
+        }
+
+        final int generation;
+        synchronized (this) {
+            generation = mGeneration.get();
+            mPendingJobs++;
+        }
+
+        mLoadExecutor.execute(() -> {
+            // only stops while the job is running affect it
+            final ChunkConsumer consumer = new ChunkConsumer(generation, stoppable, sink);
+            if (consumer.isRunning()) {
+                source.loadTracks(consumer);
+            }
+            consumer.flush();
+
+            mResultExecutor.execute(() -> {
+                final boolean cancelled;
+                synchronized (this) {
+                    cancelled = !isCurrent(generation);
+                    if (!cancelled) {
+                        mPendingJobs--;
+                    }
+                }
+                sink.onLoadingFinished(cancelled);
+            });
+        });
+    }
+
+    /**
+     * Cancels the running and all waiting jobs. Their chunks that were not handed over yet are
+     * dropped.
+     */
+    public synchronized void cancel() {
+        mGeneration.incrementAndGet();
+        mPendingJobs = 0;
+    }
+
+    /**
+     * Stops the lookup of the running job. The tracks that were found already are still handed
+     * over and the job finishes normally. Waiting jobs and jobs that are not stoppable are not
+     * affected.
+     */
+    public void stop() {
+        mStopGeneration.incrementAndGet();
+    }
+
+    /**
+     * @return True if a job is running or waiting and was not cancelled
+     */
+    public synchronized boolean isLoading() {
+        return mPendingJobs > 0;
+    }
+
+    /**
+     * Cancels all jobs and stops the background thread. Must not be used afterwards.
+     */
+    public void release() {
+        cancel();
+        mLoadExecutor.shutdown();
+    }
+
+    private boolean isCurrent(final int generation) {
+        return generation == mGeneration.get();
+    }
+
+    /**
+     * Collects the found tracks of a job and hands them over in chunks.
+     */
+    private class ChunkConsumer implements TrackConsumer {
+
+        private final int mJobGeneration;
+
+        private final int mJobStopGeneration;
+
+        private final boolean mStoppable;
+
+        private final TrackSink mSink;
+
+        private List<TrackModel> mChunk = new ArrayList<>();
+
+        private long mChunkStartTime;
+
+        private boolean mFirstChunk = true;
+
+        ChunkConsumer(final int generation, final boolean stoppable, final TrackSink sink) {
+            mJobGeneration = generation;
+            mJobStopGeneration = mStopGeneration.get();
+            mStoppable = stoppable;
+            mSink = sink;
+        }
+
+        /**
+         * @return True if the job was neither cancelled nor stopped
+         */
+        boolean isRunning() {
+            return isCurrent(mJobGeneration) && (!mStoppable || mJobStopGeneration == mStopGeneration.get());
+        }
+
+        @Override
+        public boolean onTrackFound(final TrackModel track) {
+            if (!isRunning()) {
+                return false;
+            }
+
+            if (mChunk.isEmpty()) {
+                mChunkStartTime = System.nanoTime();
+            }
+            mChunk.add(track);
+
+            // The first track is handed over alone to start the playback as early as possible
+            if (mFirstChunk || mChunk.size() >= CHUNK_SIZE || System.nanoTime() - mChunkStartTime >= CHUNK_TIMEOUT) {
+                flush();
+            }
+            return true;
+        }
+
+        void flush() {
+            if (mChunk.isEmpty()) {
+                return;
+            }
+
+            final List<TrackModel> chunk = mChunk;
+            mChunk = new ArrayList<>();
+            mFirstChunk = false;
+
+            mResultExecutor.execute(() -> {
+                if (isCurrent(mJobGeneration)) {
+                    mSink.onTracksLoaded(chunk);
+                }
+            });
+        }
+    }
+}
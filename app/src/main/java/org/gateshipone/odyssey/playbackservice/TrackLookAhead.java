@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2020 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.playbackservice;
+
+import android.content.ContentResolver;
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.gateshipone.odyssey.BuildConfig;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Opens the files of the tracks that are likely played next on a background thread. When one of
+ * them is played, the {@link GaplessPlayer} gets the already opened file instead of waiting for
+ * the content provider.
+ */
+class TrackLookAhead {
+    private static final String TAG = "OdysseyTrackLookAhead";
+
+    private final ContentResolver mContentResolver;
+
+    private final ExecutorService mOpenExecutor;
+
+    /**
+     * Uris of the tracks that should be opened, in the order they are likely played.
+     */
+    private List<Uri> mCandidates = Collections.emptyList();
+
+    /**
+     * Opened files of the candidates.
+     */
+    private final Map<Uri, AssetFileDescriptor> mOpenFiles = new LinkedHashMap<>();
+
+    private boolean mReleased;
+
+    TrackLookAhead(final ContentResolver contentResolver) {
+        mContentResolver = contentResolver;
+        mOpenExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    /**
+     * Replaces the tracks that should be opened. Files of tracks that are no candidates anymore
+     * are closed.
+     *
+     * @param candidates Uris of the tracks that are likely played next.
+     */
+    synchronized void setCandidates(final List<Uri> candidates) {
+        if (mReleased) {
+            return;
+        }
+        mCandidates = new ArrayList<>(candidates);
+
+        final Iterator<Map.Entry<Uri, AssetFileDescriptor>> iterator = mOpenFiles.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Uri, AssetFileDescriptor> entry = iterator.next();
+            if (!mCandidates.contains(entry.getKey())) {
+                closeQuietly(entry.getValue());
+                iterator.remove();
+            }
+        }
+
+        if (mOpenFiles.size() < mCandidates.size()) {
+            mOpenExecutor.execute(this::openCandidates);
+        }
+    }
+
+    /**
+     * Removes the opened file of the track. The caller must close it.
+     *
+     * @param uri Uri of the track.
+     * @return The opened file or null if the file was not opened in advance.
+     */
+    @Nullable
+    synchronized AssetFileDescriptor take(final Uri uri) {
+        return mOpenFiles.remove(uri);
+    }
+
+    /**
+     * Closes all opened files and stops the background thread. Later candidates are ignored.
+     */
+    synchronized void release() {
+        mReleased = true;
+        mCandidates = Collections.emptyList();
+        for (AssetFileDescriptor file : mOpenFiles.values()) {
+            closeQuietly(file);
+        }
+        mOpenFiles.clear();
+
+        mOpenExecutor.shutdown();
+    }
+
+    static void closeQuietly(@Nullable final AssetFileDescriptor file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            file.close();
+        } catch (IOException e) {
+            if (BuildConfig.DEBUG) {
+                Log.w(TAG, "Could not close file", e);
+            }
+        }
+    }
+
+    private void openCandidates() {
+        final List<Uri> candidates;
+        synchronized (this) {
+            candidates = mCandidates;
+        }
+
+        for (Uri uri : candidates) {
+            synchronized (this) {
+                if (mOpenFiles.containsKey(uri) || !mCandidates.contains(uri)) {
+                    continue;
+                }
+            }
+
+            AssetFileDescriptor file;
+            try {
+                file = mContentResolver.openAssetFileDescriptor(uri, "r");
+            } catch (FileNotFoundException | SecurityException | IllegalArgumentException e) {
+                // the player reports the error if the track is actually played
+                if (BuildConfig.DEBUG) {
+                    Log.v(TAG, "Could not open " + uri + ": " + e.getMessage());
+                }
+                continue;
+            }
+
+            synchronized (this) {
+                // the candidates could have changed while the file was opened
+                if (file != null && !mOpenFiles.containsKey(uri) && mCandidates.contains(uri)) {
+                    mOpenFiles.put(uri, file);
+                    file = null;
+                }
+            }
+            closeQuietly(file);
+        }
+    }
+}
@@ -0,0 +1,468 @@
+/*
+ * Copyright (C) 2020 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.playbackservice;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+
+import org.gateshipone.odyssey.models.TrackModel;
+
+import java.lang.reflect.Array;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.RandomAccess;
+
+/**
+ * Play queue of the PlaybackService that stores its tracks in columns of primitive arrays instead
+ * of one {@link TrackModel} per track. Artist and album names are shared in a string pool and the
+ * uri is kept as a plain string. A {@link TrackModel} is only created when a track is requested.
+ * <p/>
+ * The columns are a gap buffer: the free capacity is kept at the position of the last change, so
+ * inserting or removing tracks around the same position (e.g. the playing track) does not shift
+ * the rest of the queue.
+ * <p/>
+ * Like the {@link java.util.ArrayList} it replaces, the queue may contain null entries. All
+ * methods lock the queue, because binder threads read it while the handler thread of the
+ * PlaybackService changes it. Reads that combine several calls (e.g. a bounds check and a get)
+ * must hold the lock of the queue themselves.
+ */
+public final class TrackQueue extends AbstractList<TrackModel> implements RandomAccess {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] mTrackIds;
+
+    private long[] mArtistIds;
+
+    private long[] mAlbumIds;
+
+    private long[] mDurations;
+
+    private int[] mTrackNumbers;
+
+    private int[] mDatesAdded;
+
+    /**
+     * References into the string pool.
+     */
+    private int[] mArtistNames;
+
+    private int[] mAlbumNames;
+
+    /**
+     * Track names are mostly unique, so they are not pooled. A null name marks a null entry.
+     */
+    private String[] mTrackNames;
+
+    private String[] mUris;
+
+    /**
+     * All columns of the queue to move and grow them together.
+     */
+    private Object[] mColumns;
+
+    /**
+     * Physical range of the gap. Logical positions before the gap are stored at the same index,
+     * positions after the gap are shifted by the length of the gap.
+     */
+    private int mGapStart;
+
+    private int mGapEnd;
+
+    private final StringPool mStringPool = new StringPool();
+
+    public TrackQueue() {
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a queue with the given tracks.
+     *
+     * @param tracks The initial tracks, may contain null entries.
+     */
+    public TrackQueue(@NonNull final Collection<? extends TrackModel> tracks) {
+        allocate(Math.max(DEFAULT_CAPACITY, tracks.size()));
+        addAll(tracks);
+    }
+
+    @Override
+    public synchronized int size() {
+        return mTrackIds.length - (mGapEnd - mGapStart);
+    }
+
+    @Override
+    public synchronized TrackModel get(final int index) {
+        final int position = physicalIndex(index);
+
+        final String name = mTrackNames[position];
+        if (name == null) {
+            return null;
+        }
+
+        final String uri = mUris[position];
+        return new TrackModel(name, mStringPool.get(mArtistNames[position]), mArtistIds[position],
+                mStringPool.get(mAlbumNames[position]), mAlbumIds[position], mDurations[position],
+                mTrackNumbers[position], uri == null ? null : Uri.parse(uri), mTrackIds[position], mDatesAdded[position]);
+    }
+
+    @Override
+    public synchronized TrackModel set(final int index, final TrackModel track) {
+        final TrackModel oldTrack = get(index);
+        write(physicalIndex(index), track);
+        return oldTrack;
+    }
+
+    @Override
+    public synchronized void add(final int index, final TrackModel track) {
+        checkPositionIndex(index);
+        ensureGap(1);
+        moveGap(index);
+
+        write(mGapStart++, track);
+        modCount++;
+    }
+
+    @Override
+    public synchronized boolean addAll(final Collection<? extends TrackModel> tracks) {
+        return addAll(size(), tracks);
+    }
+
+    @Override
+    public synchronized boolean addAll(final int index, final Collection<? extends TrackModel> tracks) {
+        checkPositionIndex(index);
+        if (tracks.isEmpty()) {
+            return false;
+        }
+
+        ensureGap(tracks.size());
+        moveGap(index);
+
+        for (TrackModel track : tracks) {
+            write(mGapStart++, track);
+        }
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public synchronized TrackModel remove(final int index) {
+        final TrackModel track = get(index);
+        removeRange(index, index + 1);
+        return track;
+    }
+
+    @Override
+    protected synchronized void removeRange(final int fromIndex, final int toIndex) {
+        if (fromIndex >= toIndex) {
+            return;
+        }
+        checkIndex(fromIndex);
+        checkPositionIndex(toIndex);
+
+        moveGap(toIndex);
+        mGapStart = fromIndex;
+        clearReferences(mGapStart, mGapStart + toIndex - fromIndex);
+        modCount++;
+    }
+
+    @Override
+    public synchronized void clear() {
+        allocate(DEFAULT_CAPACITY);
+        mStringPool.clear();
+        modCount++;
+    }
+
+    @Override
+    public synchronized boolean contains(final Object track) {
+        return indexOf(track) >= 0;
+    }
+
+    @Override
+    public synchronized int indexOf(final Object track) {
+        if (track == null) {
+            for (int i = 0; i < size(); i++) {
+                if (mTrackNames[physicalIndex(i)] == null) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        return super.indexOf(track);
+    }
+
+    /**
+     * @param index Position of the track
+     * @return True if the entry at the position is null, without creating the track.
+     */
+    public synchronized boolean isNull(final int index) {
+        return mTrackNames[physicalIndex(index)] == null;
+    }
+
+    /**
+     * @param fromIndex First position to check (inclusive)
+     * @param toIndex   Last position to check (exclusive)
+     * @return True if any entry in the range is null, without creating the tracks.
+     */
+    public synchronized boolean containsNull(final int fromIndex, final int toIndex) {
+        for (int i = fromIndex; i < toIndex; i++) {
+            if (isNull(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param fromIndex First position to copy (inclusive)
+     * @param toIndex   Last position to copy (exclusive)
+     * @return A copy of the tracks in the range.
+     */
+    @NonNull
+    public synchronized List<TrackModel> copyRange(final int fromIndex, final int toIndex) {
+        checkPositionIndex(toIndex);
+        final List<TrackModel> tracks = new ArrayList<>(Math.max(0, toIndex - fromIndex));
+        for (int i = fromIndex; i < toIndex; i++) {
+            tracks.add(get(i));
+        }
+        return tracks;
+    }
+
+    /**
+     * Sets the duration of a track. The tracks returned by {@link #get(int)} are copies, so changes
+     * of a returned track are not stored in the queue.
+     *
+     * @param index    Position of the track
+     * @param duration The duration of the track in ms
+     */
+    public synchronized void setDuration(final int index, final long duration) {
+        mDurations[physicalIndex(index)] = duration;
+    }
+
+    /**
+     * @param index Position of the track
+     * @return The album id of the track, without creating the track.
+     */
+    public synchronized long getTrackAlbumId(final int index) {
+        return mAlbumIds[physicalIndex(index)];
+    }
+
+    /**
+     * Shuffles the queue without creating any track.
+     *
+     * @param random The source of randomness.
+     */
+    public synchronized void shuffle(@NonNull final Random random) {
+        // collapse the gap at the end so logical and physical positions are the same
+        moveGap(size());
+
+        for (int i = mGapStart - 1; i > 0; i--) {
+            swap(i, random.nextInt(i + 1));
+        }
+        modCount++;
+    }
+
+    private int physicalIndex(final int index) {
+        checkIndex(index);
+        return index < mGapStart ? index : index + (mGapEnd - mGapStart);
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+    }
+
+    private void checkPositionIndex(final int index) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+    }
+
+    private void write(final int position, final TrackModel track) {
+        if (track == null) {
+            mTrackNames[position] = null;
+            mUris[position] = null;
+            return;
+        }
+
+        final Uri uri = track.getTrackUri();
+
+        mTrackIds[position] = track.getTrackId();
+        mArtistIds[position] = track.getTrackArtistId();
+        mAlbumIds[position] = track.getTrackAlbumId();
+        mDurations[position] = track.getTrackDuration();
+        mTrackNumbers[position] = track.getTrackNumber();
+        mDatesAdded[position] = track.getDateAdded();
+        mArtistNames[position] = mStringPool.add(track.getTrackArtistName());
+        mAlbumNames[position] = mStringPool.add(track.getTrackAlbumName());
+        mTrackNames[position] = track.getTrackName();
+        mUris[position] = uri == null ? null : uri.toString();
+    }
+
+    private void swap(final int first, final int second) {
+        swap(mTrackIds, first, second);
+        swap(mArtistIds, first, second);
+        swap(mAlbumIds, first, second);
+        swap(mDurations, first, second);
+        swap(mTrackNumbers, first, second);
+        swap(mDatesAdded, first, second);
+        swap(mArtistNames, first, second);
+        swap(mAlbumNames, first, second);
+        swap(mTrackNames, first, second);
+        swap(mUris, first, second);
+    }
+
+    private static void swap(final long[] column, final int first, final int second) {
+        final long value = column[first];
+        column[first] = column[second];
+        column[second] = value;
+    }
+
+    private static void swap(final int[] column, final int first, final int second) {
+        final int value = column[first];
+        column[first] = column[second];
+        column[second] = value;
+    }
+
+    private static void swap(final String[] column, final int first, final int second) {
+        final String value = column[first];
+        column[first] = column[second];
+        column[second] = value;
+    }
+
+    /**
+     * Moves the gap so it starts at the given logical position.
+     */
+    private void moveGap(final int index) {
+        if (index < mGapStart) {
+            final int count = mGapStart - index;
+            for (Object column : mColumns) {
+                System.arraycopy(column, index, column, mGapEnd - count, count);
+            }
+            mGapStart -= count;
+            mGapEnd -= count;
+            clearReferences(index, Math.min(index + count, mGapEnd));
+        } else if (index > mGapStart) {
+            final int count = index - mGapStart;
+            for (Object column : mColumns) {
+                System.arraycopy(column, mGapEnd, column, mGapStart, count);
+            }
+            final int oldGapEnd = mGapEnd;
+            mGapStart += count;
+            mGapEnd += count;
+            clearReferences(Math.max(oldGapEnd, mGapStart), mGapEnd);
+        }
+    }
+
+    /**
+     * Grows all columns if the gap is smaller than the given number of tracks.
+     */
+    private void ensureGap(final int count) {
+        if (mGapEnd - mGapStart >= count) {
+            return;
+        }
+
+        final int size = size();
+        final int capacity = Math.max(size + count, mTrackIds.length + (mTrackIds.length >> 1));
+        final int tailLength = mTrackIds.length - mGapEnd;
+
+        final Object[] columns = new Object[mColumns.length];
+        for (int i = 0; i < mColumns.length; i++) {
+            final Object column = mColumns[i];
+            columns[i] = Array.newInstance(column.getClass().getComponentType(), capacity);
+            System.arraycopy(column, 0, columns[i], 0, mGapStart);
+            System.arraycopy(column, mGapEnd, columns[i], capacity - tailLength, tailLength);
+        }
+        assign(columns);
+
+        mGapEnd = capacity - tailLength;
+    }
+
+    /**
+     * Removes the references of the string columns in the given physical range, so the strings of
+     * removed tracks can be collected.
+     */
+    private void clearReferences(final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            mTrackNames[i] = null;
+            mUris[i] = null;
+        }
+    }
+
+    private void allocate(final int capacity) {
+        assign(new Object[]{new long[capacity], new long[capacity], new long[capacity], new long[capacity],
+                new int[capacity], new int[capacity], new int[capacity], new int[capacity],
+                new String[capacity], new String[capacity]});
+        mGapStart = 0;
+        mGapEnd = capacity;
+    }
+
+    private void assign(final Object[] columns) {
+        mColumns = columns;
+        mTrackIds = (long[]) columns[0];
+        mArtistIds = (long[]) columns[1];
+        mAlbumIds = (long[]) columns[2];
+        mDurations = (long[]) columns[3];
+        mTrackNumbers = (int[]) columns[4];
+        mDatesAdded = (int[]) columns[5];
+        mArtistNames = (int[]) columns[6];
+        mAlbumNames = (int[]) columns[7];
+        mTrackNames = (String[]) columns[8];
+        mUris = (String[]) columns[9];
+    }
+
+    /**
+     * Pool of the artist and album names. Every distinct name is stored once. The pool only grows
+     * until the queue is cleared.
+     */
+    private static final class StringPool {
+
+        private final HashMap<String, Integer> mIndices = new HashMap<>();
+
+        private final List<String> mStrings = new ArrayList<>();
+
+        int add(final String string) {
+            Integer index = mIndices.get(string);
+            if (index == null) {
+                index = mStrings.size();
+                mIndices.put(string, index);
+                mStrings.add(string);
+            }
+            return index;
+        }
+
+        String get(final int index) {
+            return mStrings.get(index);
+        }
+
+        void clear() {
+            mIndices.clear();
+            mStrings.clear();
+        }
+    }
+}
@@ -140,6 +140,8 @@ public class PlaybackServiceStatusHelper {
         // Get duration from PBS if no duration was set before
         if (currentTrack.getTrackDuration() == 0) {
             currentTrack.setTrackDuration(mPlaybackService.getTrackDuration());
+            // the current track is a copy, store the duration in the playlist as well
+            mPlaybackService.setTrackDuration(info.getPlayingIndex(), currentTrack.getTrackDuration());
         }
 
         PlaybackService.PLAYSTATE currentState = info.getPlayState();
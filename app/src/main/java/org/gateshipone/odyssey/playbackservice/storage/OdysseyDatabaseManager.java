@@ -25,8 +25,10 @@ package org.gateshipone.odyssey.playbackservice.storage;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
 import android.util.Log;
 
@@ -38,7 +40,12 @@ import org.gateshipone.odyssey.playbackservice.OdysseyServiceState;
 import org.gateshipone.odyssey.playbackservice.PlaybackService;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class OdysseyDatabaseManager extends SQLiteOpenHelper {
     public static final String TAG = "OdysseyDatabaseManager";
@@ -51,10 +58,33 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
     /**
      * The version of the database
      */
-    private static final int DATABASE_VERSION = 23;
+    private static final int DATABASE_VERSION = 25;
+
+    /**
+     * Timestamp under which the tracks of the autosaved queue are stored in the StateTracks table.
+     * The autosaved queue is this base list with all deltas of the {@link QueueJournalTable} applied.
+     */
+    private static final long AUTOSAVE_TRACKS_TIMESTAMP = 0;
+
+    /**
+     * Number of deltas in the {@link QueueJournalTable} after which the journal is merged into the base list.
+     */
+    private static final int JOURNAL_COMPACTION_THRESHOLD = 1000;
 
     private static OdysseyDatabaseManager mInstance;
 
+    /**
+     * Changes of the play queue that are not yet written to the database.
+     */
+    private final QueueJournal mQueueJournal;
+
+    /**
+     * Executor for the background compaction of the queue journal.
+     */
+    private final ExecutorService mCompactionExecutor;
+
+    private boolean mCompactionPending;
+
     /**
      * Array of returned columns from the StateTracks table
      */
@@ -109,6 +139,9 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
 
     private OdysseyDatabaseManager(final Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+
+        mQueueJournal = new QueueJournal();
+        mCompactionExecutor = Executors.newSingleThreadExecutor();
     }
 
     public static synchronized OdysseyDatabaseManager getInstance(Context context) {
@@ -128,6 +161,7 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
         StateTable.createTable(db);
         PlaylistsTracksTable.createTable(db);
         PlaylistsTable.createTable(db);
+        QueueJournalTable.createTable(db);
     }
 
     /**
@@ -155,11 +189,34 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
             PlaylistsTracksTable.createTable(db);
             PlaylistsTable.createTable(db);
         }
+        // queue journal introduced with version 24
+        // tracks of the autosaved state are moved to the fixed autosave timestamp
+        if (oldVersion < 24) {
+            QueueJournalTable.createTable(db);
+
+            db.execSQL("UPDATE " + StateTracksTable.TABLE_NAME + " SET " + StateTracksTable.COLUMN_BOOKMARK_TIMESTAMP + "=" + AUTOSAVE_TRACKS_TIMESTAMP +
+                    " WHERE " + StateTracksTable.COLUMN_BOOKMARK_TIMESTAMP + " IN (SELECT " + StateTable.COLUMN_BOOKMARK_TIMESTAMP +
+                    " FROM " + StateTable.TABLE_NAME + " WHERE " + StateTable.COLUMN_AUTOSAVE + "=1)");
+        }
+        // indexes and an explicit track position introduced with version 25
+        // tables that were recreated above already have the new scheme
+        if (oldVersion >= 23 && oldVersion < 25) {
+            StateTracksTable.upgradeToIndexedPositions(db);
+            PlaylistsTracksTable.createIndex(db);
+        }
+    }
+
+    /**
+     * @return The journal that collects all changes of the play queue for the next autosave.
+     */
+    public QueueJournal getQueueJournal() {
+        return mQueueJournal;
     }
 
     /**
      * Save a given state in the database, including the related playlist.
-     * If an auto generated state is saved, all previous auto states will be deleted.
+     * If an auto generated state is saved, all previous auto states will be deleted and only
+     * the changes recorded in the {@link QueueJournal} since the last autosave are written.
      *
      * @param playList The list of tracks for the current state
      * @param state    The current state
@@ -167,12 +224,24 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
      * @param autosave True if it's an auto generated state
      */
     public void saveState(List<TrackModel> playList, OdysseyServiceState state, String title, boolean autosave) {
+        saveState(playList, state, title, autosave, System.currentTimeMillis());
+    }
+
+    /**
+     * Save a given state with the given timestamp, see {@link #saveState(List, OdysseyServiceState, String, boolean)}.
+     * The newest state is restored on the next start.
+     *
+     * @param playList       The list of tracks for the current state
+     * @param state          The current state
+     * @param title          The title of this state
+     * @param autosave       True if it's an auto generated state
+     * @param stateTimeStamp The time the state was saved (ms), identifies the state
+     */
+    public void saveState(List<TrackModel> playList, OdysseyServiceState state, String title, boolean autosave, long stateTimeStamp) {
         if (BuildConfig.DEBUG) {
             Log.v(TAG, "save state");
         }
 
-        final long stateTimeStamp = System.currentTimeMillis();
-
         final ContentValues values = new ContentValues();
 
         final SQLiteDatabase odysseyDB = getWritableDatabase();
@@ -181,36 +250,14 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
 
         if (autosave) {
             // delete previous auto saved states if this save is an auto generated save
-            final Cursor stateCursor = odysseyDB.query(
+            // the tracks of the autosave are kept, only the changes are written
+            odysseyDB.delete(
                     StateTable.TABLE_NAME,
-                    new String[]{StateTable.COLUMN_BOOKMARK_TIMESTAMP, StateTable.COLUMN_AUTOSAVE},
                     StateTable.COLUMN_AUTOSAVE + "=?",
-                    new String[]{"1"},
-                    "",
-                    "",
-                    StateTable.COLUMN_BOOKMARK_TIMESTAMP + " DESC");
-
-            if (stateCursor.moveToFirst()) {
-                do {
-                    final long timeStamp = stateCursor.getLong(stateCursor.getColumnIndexOrThrow(StateTable.COLUMN_BOOKMARK_TIMESTAMP));
-
-                    // delete playlist
-                    odysseyDB.delete(
-                            StateTracksTable.TABLE_NAME,
-                            StateTracksTable.COLUMN_BOOKMARK_TIMESTAMP + "=?",
-                            new String[]{Long.toString(timeStamp)}
-                    );
-
-                    // delete state
-                    odysseyDB.delete(
-                            StateTable.TABLE_NAME,
-                            StateTable.COLUMN_BOOKMARK_TIMESTAMP + "=?",
-                            new String[]{Long.toString(timeStamp)}
-                    );
-                } while (stateCursor.moveToNext());
-            }
+                    new String[]{"1"}
+            );
 
-            stateCursor.close();
+            writeJournal(odysseyDB, mQueueJournal.drain(), playList);
         } else {
             // delete the state with the same name from the database if exists
             final Cursor stateCursor = odysseyDB.query(
@@ -242,26 +289,9 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
             }
 
             stateCursor.close();
-        }
-
-        // save the playlist
-        for (TrackModel item : playList) {
-
-            values.clear();
-
-            // set TrackModel parameters
-            values.put(StateTracksTable.COLUMN_TRACK_TITLE, item.getTrackName());
-            values.put(StateTracksTable.COLUMN_TRACK_DURATION, item.getTrackDuration());
-            values.put(StateTracksTable.COLUMN_TRACK_NUMBER, item.getTrackNumber());
-            values.put(StateTracksTable.COLUMN_TRACK_ARTIST, item.getTrackArtistName());
-            values.put(StateTracksTable.COLUMN_TRACK_ALBUM, item.getTrackAlbumName());
-            values.put(StateTracksTable.COLUMN_TRACK_URL, item.getTrackUriString());
-            values.put(StateTracksTable.COLUMN_TRACK_ALBUM_ID, item.getTrackAlbumId());
-            values.put(StateTracksTable.COLUMN_TRACK_ARTIST_ID, item.getTrackArtistId());
-            values.put(StateTracksTable.COLUMN_TRACK_ID, item.getTrackId());
-            values.put(StateTracksTable.COLUMN_BOOKMARK_TIMESTAMP, stateTimeStamp);
 
-            odysseyDB.insert(StateTracksTable.TABLE_NAME, null, values);
+            // save the playlist
+            insertStateTracks(odysseyDB, playList, stateTimeStamp);
         }
 
         // save the current state
@@ -282,8 +312,9 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
         odysseyDB.setTransactionSuccessful();
         odysseyDB.endTransaction();
 
-        // close the connection
-
+        if (autosave && DatabaseUtils.queryNumEntries(odysseyDB, QueueJournalTable.TABLE_NAME) > JOURNAL_COMPACTION_THRESHOLD) {
+            scheduleJournalCompaction();
+        }
     }
 
     /**
@@ -296,58 +327,75 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
 
         final SQLiteDatabase odysseyDB = getReadableDatabase();
 
-        final List<TrackModel> playList = new ArrayList<>();
+        return readStateTracks(odysseyDB, timeStamp);
+    }
 
-        final Cursor cursor = odysseyDB.query(
-                StateTracksTable.TABLE_NAME,
-                projectionTrackModels,
-                StateTracksTable.COLUMN_BOOKMARK_TIMESTAMP + "=?",
-                new String[]{Long.toString(timeStamp)},
-                "",
-                "",
-                StateTracksTable.COLUMN_ID);
+    /**
+     * Return all tracks from the most recent bookmark.
+     * If the most recent bookmark is not the autosaved queue, the returned tracks will replace the
+     * autosaved queue with the next autosave.
+     *
+     * @return All tracks for the bookmark as list of {@link TrackModel}.
+     */
+    public List<TrackModel> readBookmarkTracks() {
 
-        if (cursor.moveToFirst()) {
-            do {
-                final String trackName = cursor.getString(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_TITLE));
-                final long duration = cursor.getLong(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_DURATION));
-                final int number = cursor.getInt(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_NUMBER));
-                final String artistName = cursor.getString(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_ARTIST));
-                final String albumName = cursor.getString(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_ALBUM));
-                final String url = cursor.getString(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_URL));
-                final long albumId = cursor.getLong(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_ALBUM_ID));
-                final long artistId = cursor.getLong(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_ARTIST_ID));
-                final long id = cursor.getLong(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_ID));
+        final SQLiteDatabase odysseyDB = getReadableDatabase();
 
-                TrackModel item = new TrackModel(trackName, artistName, artistId, albumName, albumId, duration, number, Uri.parse(url), id);
+        List<TrackModel> playList = new ArrayList<>();
 
-                playList.add(item);
+        // query the most recent timestamp
+        final Cursor stateCursor = odysseyDB.query(
+                StateTable.TABLE_NAME,
+                new String[]{StateTable.COLUMN_BOOKMARK_TIMESTAMP, StateTable.COLUMN_AUTOSAVE},
+                "",
+                null,
+                "",
+                "",
+                StateTable.COLUMN_BOOKMARK_TIMESTAMP + " DESC",
+                "1");
 
-            } while (cursor.moveToNext());
-        }
+        if (stateCursor.moveToFirst()) {
+            final long timeStamp = stateCursor.getLong(stateCursor.getColumnIndexOrThrow(StateTable.COLUMN_BOOKMARK_TIMESTAMP));
+            final boolean autosave = stateCursor.getInt(stateCursor.getColumnIndexOrThrow(StateTable.COLUMN_AUTOSAVE)) == 1;
 
-        cursor.close();
+            if (autosave) {
+                // get the autosaved tracks and apply all changes since then
+                playList = readJournaledQueue(odysseyDB);
+            } else {
+                // get the playlist tracks for the queried timestamp
+                playList = readStateTracks(odysseyDB, timeStamp);
 
+                // the autosaved queue is replaced by this list
+                mQueueJournal.recordSnapshot();
+            }
+        }
 
+        stateCursor.close();
 
         return playList;
     }
 
     /**
-     * Return all tracks from the most recent bookmark
+     * Return only the tracks around the given position of the most recent bookmark. For the rest
+     * of the queue only the position keys are read and the journal is replayed, so the cost still
+     * grows linearly with the length of the queue, but the columns of the tracks outside the
+     * radius are neither read nor turned into objects. If not all tracks are within the radius,
+     * the complete queue must be read afterwards with {@link #readBookmarkTracks()}.
      *
-     * @return All tracks for the bookmark as list of {@link TrackModel}.
+     * @param position Position of the track around which the tracks are read.
+     * @param radius   Number of tracks that are read before and after the position.
+     * @return A list with the size of the complete queue. Only the tracks around the position are set, all other entries are null.
      */
-    public List<TrackModel> readBookmarkTracks() {
+    public List<TrackModel> readBookmarkTracksWindow(final int position, final int radius) {
 
         final SQLiteDatabase odysseyDB = getReadableDatabase();
 
-        final List<TrackModel> playList = new ArrayList<>();
+        List<TrackModel> playList = new ArrayList<>();
 
         // query the most recent timestamp
         final Cursor stateCursor = odysseyDB.query(
                 StateTable.TABLE_NAME,
-                new String[]{StateTable.COLUMN_BOOKMARK_TIMESTAMP},
+                new String[]{StateTable.COLUMN_BOOKMARK_TIMESTAMP, StateTable.COLUMN_AUTOSAVE},
                 "",
                 null,
                 "",
@@ -357,43 +405,20 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
 
         if (stateCursor.moveToFirst()) {
             final long timeStamp = stateCursor.getLong(stateCursor.getColumnIndexOrThrow(StateTable.COLUMN_BOOKMARK_TIMESTAMP));
+            final boolean autosave = stateCursor.getInt(stateCursor.getColumnIndexOrThrow(StateTable.COLUMN_AUTOSAVE)) == 1;
 
-            // get the playlist tracks for the queried timestamp
-            final Cursor cursor = odysseyDB.query(
-                    StateTracksTable.TABLE_NAME,
-                    projectionTrackModels,
-                    StateTracksTable.COLUMN_BOOKMARK_TIMESTAMP + "=?",
-                    new String[]{Long.toString(timeStamp)},
-                    "",
-                    "",
-                    StateTracksTable.COLUMN_ID);
-
-            if (cursor.moveToFirst()) {
-                do {
-                    final String trackName = cursor.getString(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_TITLE));
-                    final long duration = cursor.getLong(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_DURATION));
-                    final int number = cursor.getInt(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_NUMBER));
-                    final String artistName = cursor.getString(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_ARTIST));
-                    final String albumName = cursor.getString(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_ALBUM));
-                    final String url = cursor.getString(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_URL));
-                    final long albumId = cursor.getLong(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_ALBUM_ID));
-                    final long artistId = cursor.getLong(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_ARTIST_ID));
-                    final long id = cursor.getLong(cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_ID));
+            if (autosave) {
+                playList = readQueueWindow(odysseyDB, AUTOSAVE_TRACKS_TIMESTAMP, true, position, radius);
+            } else {
+                playList = readQueueWindow(odysseyDB, timeStamp, false, position, radius);
 
-                    TrackModel item = new TrackModel(trackName, artistName, artistId, albumName, albumId, duration, number, Uri.parse(url), id);
-
-                    playList.add(item);
-
-                } while (cursor.moveToNext());
+                // the autosaved queue is replaced by this list
+                mQueueJournal.recordSnapshot();
             }
-
-            cursor.close();
         }
 
         stateCursor.close();
 
-
-
         return playList;
     }
 
@@ -735,26 +760,16 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
         );
 
         if (result > 0) {
-            // update track positions
-            final ContentValues values = new ContentValues();
-            final List<TrackModel> tracks = getTracksForPlaylist(playlistId, odysseyDB);
-
-            int index = 1;
-
-            for (TrackModel track : tracks) {
-                values.clear();
-
-                // set TrackModel parameters
-                values.put(PlaylistsTracksTable.COLUMN_PLAYLIST_POSITION, index);
-
-                odysseyDB.update(PlaylistsTracksTable.TABLE_NAME, values, PlaylistsTracksTable.COLUMN_TRACK_ID + "=?", new String[]{Long.toString(track.getTrackId())});
-
-                index++;
-            }
+            // move all following tracks one position up
+            odysseyDB.execSQL("UPDATE " + PlaylistsTracksTable.TABLE_NAME + " SET " + PlaylistsTracksTable.COLUMN_PLAYLIST_POSITION + "=" +
+                            PlaylistsTracksTable.COLUMN_PLAYLIST_POSITION + "-1 WHERE " + PlaylistsTracksTable.COLUMN_PLAYLIST_ID + "=? AND " +
+                            PlaylistsTracksTable.COLUMN_PLAYLIST_POSITION + ">?",
+                    new Object[]{playlistId, trackPosition + 1});
 
             // update number of tracks
-            values.clear();
-            values.put(PlaylistsTable.COLUMN_TRACKS, tracks.size());
+            final ContentValues values = new ContentValues();
+            values.put(PlaylistsTable.COLUMN_TRACKS, DatabaseUtils.queryNumEntries(odysseyDB, PlaylistsTracksTable.TABLE_NAME,
+                    PlaylistsTracksTable.COLUMN_PLAYLIST_ID + "=?", new String[]{Long.toString(playlistId)}));
 
             odysseyDB.update(PlaylistsTable.TABLE_NAME, values, PlaylistsTable.COLUMN_ID + "=?", new String[]{Long.toString(playlistId)});
         }
@@ -808,4 +823,430 @@ public class OdysseyDatabaseManager extends SQLiteOpenHelper {
 
         return tracks;
     }
+
+    /**
+     * Private method to return all tracks of the state for the given timestamp
+     *
+     * @param database  A reference to the already opened @{@link SQLiteDatabase} instance
+     * @param timeStamp The timestamp which identifies the state.
+     * @return A list of @{@link TrackModel} for all tracks of the state
+     */
+    private List<TrackModel> readStateTracks(final SQLiteDatabase database, final long timeStamp) {
+        final List<TrackModel> playList = new ArrayList<>();
+
+        final Cursor cursor = database.query(
+                StateTracksTable.TABLE_NAME,
+                projectionTrackModels,
+                StateTracksTable.COLUMN_BOOKMARK_TIMESTAMP + "=?",
+                new String[]{Long.toString(timeStamp)},
+                "",
+                "",
+                StateTracksTable.COLUMN_TRACK_POSITION);
+
+        if (cursor.moveToFirst()) {
+            final int trackNameIndex = cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_TITLE);
+            final int durationIndex = cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_DURATION);
+            final int numberIndex = cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_NUMBER);
+            final int artistNameIndex = cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_ARTIST);
+            final int albumNameIndex = cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_ALBUM);
+            final int urlIndex = cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_URL);
+            final int albumIdIndex = cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_ALBUM_ID);
+            final int artistIdIndex = cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_ARTIST_ID);
+            final int idIndex = cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_ID);
+
+            do {
+                final String trackName = cursor.getString(trackNameIndex);
+                final long duration = cursor.getLong(durationIndex);
+                final int number = cursor.getInt(numberIndex);
+                final String artistName = cursor.getString(artistNameIndex);
+                final String albumName = cursor.getString(albumNameIndex);
+                final String url = cursor.getString(urlIndex);
+                final long albumId = cursor.getLong(albumIdIndex);
+                final long artistId = cursor.getLong(artistIdIndex);
+                final long id = cursor.getLong(idIndex);
+
+                TrackModel item = new TrackModel(trackName, artistName, artistId, albumName, albumId, duration, number, Uri.parse(url), id);
+
+                playList.add(item);
+
+            } while (cursor.moveToNext());
+        }
+
+        cursor.close();
+
+        return playList;
+    }
+
+    /**
+     * Inserts the given tracks for the state with the given timestamp.
+     *
+     * @param database  A reference to the already opened @{@link SQLiteDatabase} instance, a transaction must be active
+     * @param tracks    The tracks to insert
+     * @param timeStamp The timestamp which identifies the state.
+     */
+    private void insertStateTracks(final SQLiteDatabase database, final List<TrackModel> tracks, final long timeStamp) {
+        final SQLiteStatement insertStatement = database.compileStatement("INSERT INTO " + StateTracksTable.TABLE_NAME + " (" +
+                StateTracksTable.COLUMN_TRACK_TITLE + "," +
+                StateTracksTable.COLUMN_TRACK_DURATION + "," +
+                StateTracksTable.COLUMN_TRACK_NUMBER + "," +
+                StateTracksTable.COLUMN_TRACK_ARTIST + "," +
+                StateTracksTable.COLUMN_TRACK_ALBUM + "," +
+                StateTracksTable.COLUMN_TRACK_URL + "," +
+                StateTracksTable.COLUMN_TRACK_ALBUM_ID + "," +
+                StateTracksTable.COLUMN_TRACK_ARTIST_ID + "," +
+                StateTracksTable.COLUMN_TRACK_ID + "," +
+                StateTracksTable.COLUMN_BOOKMARK_TIMESTAMP + "," +
+                StateTracksTable.COLUMN_TRACK_POSITION +
+                ") VALUES (?,?,?,?,?,?,?,?,?,?,?)");
+
+        int position = 0;
+        for (TrackModel track : tracks) {
+            bindTrack(insertStatement, 1, track);
+            insertStatement.bindLong(10, timeStamp);
+            insertStatement.bindLong(11, position++);
+
+            insertStatement.executeInsert();
+        }
+
+        insertStatement.close();
+    }
+
+    /**
+     * Binds the values of the track to 9 consecutive parameters of the statement in the order:
+     * title, duration, track number, artist, album, url, album id, artist id, track id
+     *
+     * @param statement  The statement to bind the values to.
+     * @param firstIndex The index of the first parameter (1 based).
+     * @param track      The track to bind.
+     */
+    private static void bindTrack(final SQLiteStatement statement, final int firstIndex, final TrackModel track) {
+        bindStringOrNull(statement, firstIndex, track.getTrackName());
+        statement.bindLong(firstIndex + 1, track.getTrackDuration());
+        statement.bindLong(firstIndex + 2, track.getTrackNumber());
+        bindStringOrNull(statement, firstIndex + 3, track.getTrackArtistName());
+        bindStringOrNull(statement, firstIndex + 4, track.getTrackAlbumName());
+        bindStringOrNull(statement, firstIndex + 5, track.getTrackUriString());
+        statement.bindLong(firstIndex + 6, track.getTrackAlbumId());
+        statement.bindLong(firstIndex + 7, track.getTrackArtistId());
+        statement.bindLong(firstIndex + 8, track.getTrackId());
+    }
+
+    private static void bindStringOrNull(final SQLiteStatement statement, final int index, final String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    /**
+     * Writes the given deltas of the play queue to the journal. If the deltas contain a clear
+     * operation all autosaved tracks and older deltas are removed instead. A snapshot replaces the
+     * autosaved tracks with the given queue.
+     *
+     * @param database A reference to the already opened @{@link SQLiteDatabase} instance, a transaction must be active
+     * @param deltas   The deltas as returned by {@link QueueJournal#drain()}
+     * @param playList The current queue that is written for a snapshot
+     */
+    private void writeJournal(final SQLiteDatabase database, final List<QueueJournal.Delta> deltas, final List<TrackModel> playList) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        final SQLiteStatement insertStatement = database.compileStatement("INSERT INTO " + QueueJournalTable.TABLE_NAME + " (" +
+                QueueJournalTable.COLUMN_OPERATION + "," +
+                QueueJournalTable.COLUMN_POSITION + "," +
+                QueueJournalTable.COLUMN_TARGET_POSITION + "," +
+                QueueJournalTable.COLUMN_TRACK_TITLE + "," +
+                QueueJournalTable.COLUMN_TRACK_DURATION + "," +
+                QueueJournalTable.COLUMN_TRACK_NUMBER + "," +
+                QueueJournalTable.COLUMN_TRACK_ARTIST + "," +
+                QueueJournalTable.COLUMN_TRACK_ALBUM + "," +
+                QueueJournalTable.COLUMN_TRACK_URL + "," +
+                QueueJournalTable.COLUMN_TRACK_ALBUM_ID + "," +
+                QueueJournalTable.COLUMN_TRACK_ARTIST_ID + "," +
+                QueueJournalTable.COLUMN_TRACK_ID +
+                ") VALUES (?,?,?,?,?,?,?,?,?,?,?,?)");
+
+        for (QueueJournal.Delta delta : deltas) {
+            if (delta.mOperation == QueueJournal.OPERATION_SNAPSHOT) {
+                clearJournaledQueue(database);
+                insertStateTracks(database, playList, AUTOSAVE_TRACKS_TIMESTAMP);
+            } else if (delta.mOperation == QueueJournal.OPERATION_CLEAR) {
+                // nothing before a clear is needed anymore
+                clearJournaledQueue(database);
+            } else if (delta.mOperation == QueueJournal.OPERATION_ADD || delta.mOperation == QueueJournal.OPERATION_SET) {
+                int position = delta.mPosition;
+                for (TrackModel track : delta.mTracks) {
+                    insertStatement.clearBindings();
+                    insertStatement.bindLong(1, delta.mOperation);
+                    insertStatement.bindLong(2, position++);
+                    insertStatement.bindLong(3, 0);
+                    bindTrack(insertStatement, 4, track);
+
+                    insertStatement.executeInsert();
+                }
+            } else {
+                insertStatement.clearBindings();
+                insertStatement.bindLong(1, delta.mOperation);
+                insertStatement.bindLong(2, delta.mPosition);
+                insertStatement.bindLong(3, delta.mTargetPosition);
+
+                insertStatement.executeInsert();
+            }
+        }
+
+        insertStatement.close();
+    }
+
+    /**
+     * Removes all autosaved tracks and all deltas of the journal.
+     *
+     * @param database A reference to the already opened @{@link SQLiteDatabase} instance
+     */
+    private void clearJournaledQueue(final SQLiteDatabase database) {
+        database.delete(
+                StateTracksTable.TABLE_NAME,
+                StateTracksTable.COLUMN_BOOKMARK_TIMESTAMP + "=?",
+                new String[]{Long.toString(AUTOSAVE_TRACKS_TIMESTAMP)}
+        );
+
+        database.delete(QueueJournalTable.TABLE_NAME, null, null);
+    }
+
+    /**
+     * Reads the autosaved tracks and applies all deltas of the journal in their order.
+     *
+     * @param database A reference to the already opened @{@link SQLiteDatabase} instance
+     * @return The autosaved queue as a list of @{@link TrackModel}
+     */
+    private List<TrackModel> readJournaledQueue(final SQLiteDatabase database) {
+        final List<TrackModel> queue = readStateTracks(database, AUTOSAVE_TRACKS_TIMESTAMP);
+
+        final Cursor cursor = database.query(
+                QueueJournalTable.TABLE_NAME,
+                null,
+                "",
+                null,
+                "",
+                "",
+                QueueJournalTable.COLUMN_ID);
+
+        if (cursor.moveToFirst()) {
+            final int operationIndex = cursor.getColumnIndexOrThrow(QueueJournalTable.COLUMN_OPERATION);
+            final int positionIndex = cursor.getColumnIndexOrThrow(QueueJournalTable.COLUMN_POSITION);
+            final int targetPositionIndex = cursor.getColumnIndexOrThrow(QueueJournalTable.COLUMN_TARGET_POSITION);
+            final int trackNameIndex = cursor.getColumnIndexOrThrow(QueueJournalTable.COLUMN_TRACK_TITLE);
+            final int durationIndex = cursor.getColumnIndexOrThrow(QueueJournalTable.COLUMN_TRACK_DURATION);
+            final int numberIndex = cursor.getColumnIndexOrThrow(QueueJournalTable.COLUMN_TRACK_NUMBER);
+            final int artistNameIndex = cursor.getColumnIndexOrThrow(QueueJournalTable.COLUMN_TRACK_ARTIST);
+            final int albumNameIndex = cursor.getColumnIndexOrThrow(QueueJournalTable.COLUMN_TRACK_ALBUM);
+            final int urlIndex = cursor.getColumnIndexOrThrow(QueueJournalTable.COLUMN_TRACK_URL);
+            final int albumIdIndex = cursor.getColumnIndexOrThrow(QueueJournalTable.COLUMN_TRACK_ALBUM_ID);
+            final int artistIdIndex = cursor.getColumnIndexOrThrow(QueueJournalTable.COLUMN_TRACK_ARTIST_ID);
+            final int idIndex = cursor.getColumnIndexOrThrow(QueueJournalTable.COLUMN_TRACK_ID);
+
+            do {
+                final int operation = cursor.getInt(operationIndex);
+
+                TrackModel track = null;
+                if (operation == QueueJournal.OPERATION_ADD || operation == QueueJournal.OPERATION_SET) {
+                    final String url = cursor.getString(urlIndex);
+                    track = new TrackModel(cursor.getString(trackNameIndex), cursor.getString(artistNameIndex), cursor.getLong(artistIdIndex),
+                            cursor.getString(albumNameIndex), cursor.getLong(albumIdIndex), cursor.getLong(durationIndex), cursor.getInt(numberIndex),
+                            Uri.parse(url), cursor.getLong(idIndex));
+                }
+
+                QueueJournal.apply(queue, operation, cursor.getInt(positionIndex), cursor.getInt(targetPositionIndex), track);
+            } while (cursor.moveToNext());
+        }
+
+        cursor.close();
+
+        return queue;
+    }
+
+    /**
+     * Reads the tracks around the given position of a state. The queue is first built from keys
+     * only: the position of a stored track or the negated id of the journal row that added the
+     * track. Afterwards only the tracks of the keys around the position are read.
+     *
+     * @param database  A reference to the already opened @{@link SQLiteDatabase} instance
+     * @param timeStamp The timestamp which identifies the state.
+     * @param journaled True if all deltas of the journal must be applied to the tracks of the state.
+     * @param position  Position of the track around which the tracks are read.
+     * @param radius    Number of tracks that are read before and after the position.
+     * @return A list with the size of the complete queue. Only the tracks around the position are set, all other entries are null.
+     */
+    private List<TrackModel> readQueueWindow(final SQLiteDatabase database, final long timeStamp, final boolean journaled, final int position, final int radius) {
+        final List<Long> keys = new ArrayList<>();
+
+        final Cursor positionCursor = database.query(
+                StateTracksTable.TABLE_NAME,
+                new String[]{StateTracksTable.COLUMN_TRACK_POSITION},
+                StateTracksTable.COLUMN_BOOKMARK_TIMESTAMP + "=?",
+                new String[]{Long.toString(timeStamp)},
+                "",
+                "",
+                StateTracksTable.COLUMN_TRACK_POSITION);
+
+        while (positionCursor.moveToNext()) {
+            keys.add(positionCursor.getLong(0));
+        }
+
+        positionCursor.close();
+
+        if (journaled) {
+            final Cursor journalCursor = database.query(
+                    QueueJournalTable.TABLE_NAME,
+                    new String[]{QueueJournalTable.COLUMN_ID, QueueJournalTable.COLUMN_OPERATION, QueueJournalTable.COLUMN_POSITION, QueueJournalTable.COLUMN_TARGET_POSITION},
+                    "",
+                    null,
+                    "",
+                    "",
+                    QueueJournalTable.COLUMN_ID);
+
+            while (journalCursor.moveToNext()) {
+                final int operation = journalCursor.getInt(1);
+
+                QueueJournal.apply(keys, operation, journalCursor.getInt(2), journalCursor.getInt(3),
+                        operation == QueueJournal.OPERATION_ADD || operation == QueueJournal.OPERATION_SET ? -journalCursor.getLong(0) : null);
+            }
+
+            journalCursor.close();
+        }
+
+        final List<TrackModel> queue = new ArrayList<>(Collections.nCopies(keys.size(), (TrackModel) null));
+        if (keys.isEmpty()) {
+            return queue;
+        }
+
+        // an invalid position is reset to the first track by the PlaybackService
+        final int center = position >= 0 && position < keys.size() ? position : 0;
+        final int start = Math.max(0, center - radius);
+        final int end = Math.min(keys.size(), center + radius + 1);
+
+        final StringBuilder positions = new StringBuilder();
+        final StringBuilder journalIds = new StringBuilder();
+        for (int i = start; i < end; i++) {
+            final long key = keys.get(i);
+            final StringBuilder ids = key >= 0 ? positions : journalIds;
+            if (ids.length() > 0) {
+                ids.append(',');
+            }
+            ids.append(Math.abs(key));
+        }
+
+        final Map<Long, TrackModel> tracks = new HashMap<>();
+
+        if (positions.length() > 0) {
+            final Cursor cursor = database.query(
+                    StateTracksTable.TABLE_NAME,
+                    null,
+                    StateTracksTable.COLUMN_BOOKMARK_TIMESTAMP + "=? AND " + StateTracksTable.COLUMN_TRACK_POSITION + " IN (" + positions + ")",
+                    new String[]{Long.toString(timeStamp)},
+                    "",
+                    "",
+                    "");
+
+            readWindowTracks(cursor, StateTracksTable.COLUMN_TRACK_POSITION, 1, tracks);
+        }
+
+        if (journalIds.length() > 0) {
+            final Cursor cursor = database.query(
+                    QueueJournalTable.TABLE_NAME,
+                    null,
+                    QueueJournalTable.COLUMN_ID + " IN (" + journalIds + ")",
+                    null,
+                    "",
+                    "",
+                    "");
+
+            readWindowTracks(cursor, QueueJournalTable.COLUMN_ID, -1, tracks);
+        }
+
+        for (int i = start; i < end; i++) {
+            queue.set(i, tracks.get(keys.get(i)));
+        }
+
+        return queue;
+    }
+
+    /**
+     * Reads all tracks of the cursor and closes it. The StateTracks and the QueueJournal table
+     * share the names of the track columns.
+     *
+     * @param cursor    The cursor over the track rows.
+     * @param keyColumn The column that identifies a track within its table.
+     * @param keySign   Sign of the key under which the track is stored in the map.
+     * @param tracks    The map the tracks are added to.
+     */
+    private static void readWindowTracks(final Cursor cursor, final String keyColumn, final int keySign, final Map<Long, TrackModel> tracks) {
+        if (cursor.moveToFirst()) {
+            final int keyIndex = cursor.getColumnIndexOrThrow(keyColumn);
+            final int trackNameIndex = cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_TITLE);
+            final int durationIndex = cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_DURATION);
+            final int numberIndex = cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_NUMBER);
+            final int artistNameIndex = cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_ARTIST);
+            final int albumNameIndex = cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_ALBUM);
+            final int urlIndex = cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_URL);
+            final int albumIdIndex = cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_ALBUM_ID);
+            final int artistIdIndex = cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_ARTIST_ID);
+            final int idIndex = cursor.getColumnIndexOrThrow(StateTracksTable.COLUMN_TRACK_ID);
+
+            do {
+                final String url = cursor.getString(urlIndex);
+
+                tracks.put(keySign * cursor.getLong(keyIndex), new TrackModel(cursor.getString(trackNameIndex), cursor.getString(artistNameIndex),
+                        cursor.getLong(artistIdIndex), cursor.getString(albumNameIndex), cursor.getLong(albumIdIndex), cursor.getLong(durationIndex),
+                        cursor.getInt(numberIndex), Uri.parse(url), cursor.getLong(idIndex)));
+            } while (cursor.moveToNext());
+        }
+
+        cursor.close();
+    }
+
+    /**
+     * Merges the journal into the autosaved tracks on a background thread.
+     */
+    private synchronized void scheduleJournalCompaction() {
+        if (mCompactionPending) {
+            return;
+        }
+        mCompactionPending = true;
+
+        mCompactionExecutor.execute(() -> {
+            compactJournal();
+
+            synchronized (OdysseyDatabaseManager.this) {
+                mCompactionPending = false;
+            }
+        });
+    }
+
+    /**
+     * Replaces the autosaved tracks with the result of all deltas and clears the journal.
+     * Runs in one transaction, deltas that are written concurrently are applied afterwards.
+     */
+    private void compactJournal() {
+        final SQLiteDatabase odysseyDB = getWritableDatabase();
+
+        odysseyDB.beginTransaction();
+
+        try {
+            final List<TrackModel> queue = readJournaledQueue(odysseyDB);
+
+            clearJournaledQueue(odysseyDB);
+
+            insertStateTracks(odysseyDB, queue, AUTOSAVE_TRACKS_TIMESTAMP);
+
+            odysseyDB.setTransactionSuccessful();
+
+            if (BuildConfig.DEBUG) {
+                Log.v(TAG, "compacted queue journal, tracks: " + queue.size());
+            }
+        } finally {
+            odysseyDB.endTransaction();
+        }
+    }
 }
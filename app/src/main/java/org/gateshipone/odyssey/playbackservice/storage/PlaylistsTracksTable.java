@@ -103,11 +103,27 @@ public class PlaylistsTracksTable {
             COLUMN_PLAYLIST_POSITION + " integer" +
             ");";
 
+    /**
+     * Index creation SQL statement, the tracks of a playlist are found and sorted without a table scan
+     */
+    private static final String INDEX_CREATE = "create index if not exists " + TABLE_NAME + "_playlist_position on " + TABLE_NAME + "(" +
+            COLUMN_PLAYLIST_ID + "," +
+            COLUMN_PLAYLIST_POSITION +
+            ");";
+
     private static final String DATABASE_DROP = "DROP TABLE if exists " + TABLE_NAME;
 
     public static void createTable(final SQLiteDatabase database) {
         // create new table
         database.execSQL(DATABASE_CREATE);
+        database.execSQL(INDEX_CREATE);
+    }
+
+    /**
+     * Adds the index to a table that was created by version 24 or older.
+     */
+    public static void createIndex(final SQLiteDatabase database) {
+        database.execSQL(INDEX_CREATE);
     }
 
     public static void dropTable(final SQLiteDatabase database) {
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2020 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.playbackservice.storage;
+
+import org.gateshipone.odyssey.models.TrackModel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects the changes of the play queue since the last autosave. The changes are written as deltas
+ * by the {@link OdysseyDatabaseManager} on the next autosave, so the cost of an autosave depends on
+ * the number of changes and not on the length of the queue.
+ * <p>
+ * Every change of the queue of the PlaybackService must be recorded here in the same order as it
+ * was applied to the queue. If the queue is replaced or too many tracks were changed, only a
+ * snapshot marker is kept and the next autosave writes the complete queue instead, so the journal
+ * never holds a copy of the whole queue.
+ */
+public class QueueJournal {
+
+    /**
+     * Inserts a track at a position.
+     */
+    static final int OPERATION_ADD = 0;
+
+    /**
+     * Removes the track at a position.
+     */
+    static final int OPERATION_REMOVE = 1;
+
+    /**
+     * Moves the track at a position to the target position.
+     */
+    static final int OPERATION_MOVE = 2;
+
+    /**
+     * Removes all tracks.
+     */
+    static final int OPERATION_CLEAR = 3;
+
+    /**
+     * Replaces the track at a position.
+     */
+    static final int OPERATION_SET = 4;
+
+    /**
+     * The complete queue must be written on the next autosave. This operation is never stored in
+     * the journal table.
+     */
+    static final int OPERATION_SNAPSHOT = 5;
+
+    /**
+     * Maximum number of single track operations that are kept until a snapshot is used instead.
+     */
+    private static final int MAX_PENDING_OPERATIONS = 1000;
+
+    private List<Delta> mPendingDeltas = new ArrayList<>();
+
+    /**
+     * Number of single track operations that are pending.
+     */
+    private int mPendingOperations;
+
+    /**
+     * True if the next autosave writes the complete queue. All changes are part of it.
+     */
+    private boolean mSnapshotPending;
+
+    QueueJournal() {
+    }
+
+    /**
+     * Records the insertion of a track.
+     *
+     * @param position Position of the inserted track
+     * @param track    The inserted track
+     */
+    public synchronized void recordAdd(final int position, final TrackModel track) {
+        recordDelta(new Delta(OPERATION_ADD, position, 0, Collections.singletonList(track)), 1);
+    }
+
+    /**
+     * Records the insertion of multiple tracks.
+     *
+     * @param position Position of the first inserted track
+     * @param tracks   The inserted tracks, the list is copied if it is kept
+     */
+    public synchronized void recordAdd(final int position, final List<TrackModel> tracks) {
+        if (tracks.isEmpty() || mSnapshotPending) {
+            return;
+        }
+        if (mPendingOperations + tracks.size() > MAX_PENDING_OPERATIONS) {
+            recordSnapshot();
+            return;
+        }
+        mPendingDeltas.add(new Delta(OPERATION_ADD, position, 0, new ArrayList<>(tracks)));
+        mPendingOperations += tracks.size();
+    }
+
+    /**
+     * Records that the track at a position was replaced.
+     *
+     * @param position Position of the replaced track
+     * @param track    The new track
+     */
+    public synchronized void recordSet(final int position, final TrackModel track) {
+        recordDelta(new Delta(OPERATION_SET, position, 0, Collections.singletonList(track)), 1);
+    }
+
+    /**
+     * Records the removal of a track.
+     *
+     * @param position Position of the removed track
+     */
+    public synchronized void recordRemove(final int position) {
+        recordDelta(new Delta(OPERATION_REMOVE, position, 0, null), 1);
+    }
+
+    /**
+     * Records that a track was moved.
+     *
+     * @param position       Old position of the track
+     * @param targetPosition New position of the track
+     */
+    public synchronized void recordMove(final int position, final int targetPosition) {
+        recordDelta(new Delta(OPERATION_MOVE, position, targetPosition, null), 1);
+    }
+
+    /**
+     * Records that the queue was cleared. All changes before are obsolete.
+     */
+    public synchronized void recordClear() {
+        if (mSnapshotPending) {
+            return;
+        }
+        mPendingDeltas.clear();
+        mPendingDeltas.add(new Delta(OPERATION_CLEAR, 0, 0, null));
+        mPendingOperations = 1;
+    }
+
+    /**
+     * Records that the queue was replaced as a whole. The next autosave writes the complete
+     * queue as it is at that time, so all changes before and after are obsolete.
+     */
+    public synchronized void recordSnapshot() {
+        mPendingDeltas.clear();
+        mPendingOperations = 0;
+        mSnapshotPending = true;
+    }
+
+    /**
+     * Adds a delta or switches to a snapshot if too many operations are pending.
+     */
+    private void recordDelta(final Delta delta, final int operations) {
+        if (mSnapshotPending) {
+            return;
+        }
+        if (mPendingOperations + operations > MAX_PENDING_OPERATIONS) {
+            recordSnapshot();
+            return;
+        }
+        mPendingDeltas.add(delta);
+        mPendingOperations += operations;
+    }
+
+    /**
+     * @return The number of single track operations that are pending.
+     */
+    public synchronized int getPendingOperations() {
+        return mPendingOperations;
+    }
+
+    /**
+     * Removes all pending deltas from the journal.
+     *
+     * @return The pending deltas in the order they were recorded or a single
+     * {@link #OPERATION_SNAPSHOT} delta if the complete queue must be written.
+     */
+    synchronized List<Delta> drain() {
+        final List<Delta> deltas;
+        if (mSnapshotPending) {
+            deltas = Collections.singletonList(new Delta(OPERATION_SNAPSHOT, 0, 0, null));
+        } else {
+            deltas = mPendingDeltas;
+        }
+        mPendingDeltas = new ArrayList<>();
+        mPendingOperations = 0;
+        mSnapshotPending = false;
+        return deltas;
+    }
+
+    /**
+     * Applies a single operation to the given queue. Positions are clamped to the bounds of the
+     * queue so a damaged journal can not break the restore of the queue. The queue may hold any
+     * kind of reference to its tracks.
+     */
+    static <T> void apply(final List<T> queue, final int operation, final int position, final int targetPosition, final T track) {
+        switch (operation) {
+            case OPERATION_ADD:
+                queue.add(Math.max(0, Math.min(position, queue.size())), track);
+                break;
+            case OPERATION_REMOVE:
+                if (position >= 0 && position < queue.size()) {
+                    queue.remove(position);
+                }
+                break;
+            case OPERATION_MOVE:
+                if (position >= 0 && position < queue.size()) {
+                    final T movedTrack = queue.remove(position);
+                    queue.add(Math.max(0, Math.min(targetPosition, queue.size())), movedTrack);
+                }
+                break;
+            case OPERATION_SET:
+                if (position >= 0 && position < queue.size()) {
+                    queue.set(position, track);
+                }
+                break;
+            case OPERATION_CLEAR:
+                queue.clear();
+                break;
+        }
+    }
+
+    /**
+     * A recorded change of the queue. Insertions of multiple tracks are kept as one delta.
+     */
+    static class Delta {
+        final int mOperation;
+
+        final int mPosition;
+
+        final int mTargetPosition;
+
+        final List<TrackModel> mTracks;
+
+        Delta(final int operation, final int position, final int targetPosition, final List<TrackModel> tracks) {
+            mOperation = operation;
+            mPosition = position;
+            mTargetPosition = targetPosition;
+            mTracks = tracks;
+        }
+    }
+}
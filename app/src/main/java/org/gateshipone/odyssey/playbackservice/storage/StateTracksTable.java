@@ -86,6 +86,16 @@ public class StateTracksTable {
      */
     public static final String COLUMN_BOOKMARK_TIMESTAMP = "bookmark_timestamp";
 
+    /**
+     * Name of the column that holds the position of the track in the related bookmark
+     */
+    public static final String COLUMN_TRACK_POSITION = "track_position";
+
+    /**
+     * Name of the index over the timestamp and the position of the tracks
+     */
+    public static final String INDEX_BOOKMARK_POSITION = TABLE_NAME + "_bookmark_position";
+
     /**
      * Database creation SQL statement
      */
@@ -100,14 +110,72 @@ public class StateTracksTable {
             COLUMN_TRACK_ARTIST_ID + " integer," +
             COLUMN_TRACK_URL + " text," +
             COLUMN_TRACK_ID + " integer," +
-            COLUMN_BOOKMARK_TIMESTAMP + " integer " +
+            COLUMN_BOOKMARK_TIMESTAMP + " integer," +
+            COLUMN_TRACK_POSITION + " integer" +
+            ");";
+
+    /**
+     * Index creation SQL statement, the tracks of a bookmark are found and sorted without a table scan
+     */
+    private static final String INDEX_CREATE = "create index if not exists " + INDEX_BOOKMARK_POSITION + " on " + TABLE_NAME + "(" +
+            COLUMN_BOOKMARK_TIMESTAMP + "," +
+            COLUMN_TRACK_POSITION +
             ");";
 
+    /**
+     * SQL statement to add the position column to a table of version 24 or older
+     */
+    private static final String POSITION_COLUMN_ADD = "ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_TRACK_POSITION + " integer";
+
+    /**
+     * Name of the temporary table that holds the first id of each bookmark during the upgrade
+     */
+    private static final String FIRST_IDS_TABLE_NAME = "odyssey_state_tracks_first_ids";
+
+    private static final String FIRST_IDS_CREATE = "CREATE TEMP TABLE " + FIRST_IDS_TABLE_NAME + "(" +
+            COLUMN_BOOKMARK_TIMESTAMP + " integer primary key," +
+            COLUMN_ID + " integer" +
+            ");";
+
+    /**
+     * SQL statement to collect the first id of each bookmark with a single pass over the table
+     */
+    private static final String FIRST_IDS_FILL = "INSERT INTO " + FIRST_IDS_TABLE_NAME +
+            " SELECT " + COLUMN_BOOKMARK_TIMESTAMP + ", MIN(" + COLUMN_ID + ") FROM " + TABLE_NAME +
+            " GROUP BY " + COLUMN_BOOKMARK_TIMESTAMP;
+
+    /**
+     * SQL statement to set the position of existing tracks, the tracks of one bookmark were
+     * inserted in order so the position is derived from the id. The first id of the bookmark is
+     * looked up by the primary key of the temporary table.
+     */
+    private static final String POSITION_COLUMN_FILL = "UPDATE " + TABLE_NAME + " SET " + COLUMN_TRACK_POSITION + "=" + COLUMN_ID +
+            " - (SELECT first." + COLUMN_ID + " FROM " + FIRST_IDS_TABLE_NAME + " AS first WHERE first." + COLUMN_BOOKMARK_TIMESTAMP + "=" +
+            TABLE_NAME + "." + COLUMN_BOOKMARK_TIMESTAMP + ")";
+
+    private static final String FIRST_IDS_DROP = "DROP TABLE " + FIRST_IDS_TABLE_NAME;
+
     private static final String DATABASE_DROP = "DROP TABLE if exists " + TABLE_NAME;
 
     public static void createTable(final SQLiteDatabase database) {
         // create new table
         database.execSQL(DATABASE_CREATE);
+        database.execSQL(INDEX_CREATE);
+    }
+
+    /**
+     * Adds the position column and the index to a table that was created by version 24 or older.
+     */
+    public static void upgradeToIndexedPositions(final SQLiteDatabase database) {
+        database.execSQL(POSITION_COLUMN_ADD);
+
+        database.execSQL(FIRST_IDS_CREATE);
+        database.execSQL(FIRST_IDS_FILL);
+        database.execSQL(POSITION_COLUMN_FILL);
+        database.execSQL(FIRST_IDS_DROP);
+
+        // the index is created once all positions are set
+        database.execSQL(INDEX_CREATE);
     }
 
     public static void dropTable(final SQLiteDatabase database) {
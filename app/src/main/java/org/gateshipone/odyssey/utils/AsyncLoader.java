@@ -28,6 +28,7 @@ import android.util.Pair;
 
 import org.gateshipone.odyssey.adapter.ScrollSpeedAdapter;
 import org.gateshipone.odyssey.artwork.ArtworkManager;
+import org.gateshipone.odyssey.artwork.BitmapPool;
 import org.gateshipone.odyssey.artwork.storage.ImageNotFoundException;
 import org.gateshipone.odyssey.models.AlbumModel;
 import org.gateshipone.odyssey.models.ArtistModel;
@@ -106,6 +107,8 @@ public class AsyncLoader extends AsyncTask<AsyncLoader.CoverViewHolder, Void, Bi
                 mCover.artworkManager.fetchImage(track);
             }
         }
+
+        // the image is already acquired by the ArtworkManager and held until it is shown
         return image;
     }
 
@@ -121,6 +124,16 @@ public class AsyncLoader extends AsyncTask<AsyncLoader.CoverViewHolder, Void, Bi
                 mCover.mAdapter.addImageLoadTime(System.currentTimeMillis() - mStartTime);
             }
             mCover.coverLoadable.setImage(result);
+            BitmapPool.getInstance().release(result);
+        }
+    }
+
+    @Override
+    protected void onCancelled(Bitmap result) {
+        super.onCancelled(result);
+
+        if (result != null) {
+            BitmapPool.getInstance().release(result);
         }
     }
 }
\ No newline at end of file
@@ -26,10 +26,22 @@ package org.gateshipone.odyssey.utils;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 
+import org.gateshipone.odyssey.artwork.BitmapPool;
+
 public class BitmapUtils {
 
     /**
-     * Resize retrieved bitmap if necessary
+     * Edge length of the image the placeholder color is averaged from
+     */
+    private static final int PLACEHOLDER_SAMPLE_SIZE = 8;
+
+    /**
+     * Minimum edge length the image is decoded with before it is scaled down to the sample size
+     */
+    private static final int PLACEHOLDER_DECODE_SIZE = 32;
+
+    /**
+     * Resize retrieved bitmap if necessary. The bitmap is decoded into a pooled bitmap if possible.
      */
     public static Bitmap decodeSampledBitmapFromFile(String pathName, int reqWidth, int reqHeight) {
 
@@ -48,11 +60,25 @@ public class BitmapUtils {
 
         // Decode bitmap with inSampleSize set
         options.inJustDecodeBounds = false;
-        return BitmapFactory.decodeFile(pathName, options);
+        setReusableBitmap(options);
+
+        Bitmap bitmap = null;
+        try {
+            bitmap = BitmapFactory.decodeFile(pathName, options);
+        } catch (IllegalArgumentException ignored) {
+            // the pooled bitmap did not fit, decode without it
+        }
+
+        if (bitmap == null && options.inBitmap != null) {
+            BitmapPool.getInstance().putBack(options.inBitmap);
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeFile(pathName, options);
+        }
+        return bitmap;
     }
 
     /**
-     * Resize retrieved bitmap if necessary
+     * Resize retrieved bitmap if necessary. The bitmap is decoded into a pooled bitmap if possible.
      */
     public static Bitmap decodeSampledBitmapFromByteArray(byte[] data, int reqWidth, int reqHeight) {
 
@@ -71,7 +97,128 @@ public class BitmapUtils {
 
         // Decode bitmap with inSampleSize set
         options.inJustDecodeBounds = false;
-        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        setReusableBitmap(options);
+
+        Bitmap bitmap = null;
+        try {
+            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (IllegalArgumentException ignored) {
+            // the pooled bitmap did not fit, decode without it
+        }
+
+        if (bitmap == null && options.inBitmap != null) {
+            BitmapPool.getInstance().putBack(options.inBitmap);
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Computes the average color of the image that is shown until the image is decoded.
+     *
+     * @param bitmap The decoded image
+     * @return The opaque average color or 0 if the image is fully transparent
+     */
+    public static int getPlaceholderColor(final Bitmap bitmap) {
+        final Bitmap sample = Bitmap.createScaledBitmap(bitmap, PLACEHOLDER_SAMPLE_SIZE, PLACEHOLDER_SAMPLE_SIZE, true);
+
+        final int[] pixels = new int[PLACEHOLDER_SAMPLE_SIZE * PLACEHOLDER_SAMPLE_SIZE];
+        sample.getPixels(pixels, 0, PLACEHOLDER_SAMPLE_SIZE, 0, 0, PLACEHOLDER_SAMPLE_SIZE, PLACEHOLDER_SAMPLE_SIZE);
+
+        if (sample != bitmap) {
+            sample.recycle();
+        }
+
+        return getAverageColor(pixels);
+    }
+
+    /**
+     * Computes the average color of an image file. The file is decoded with a large sample size,
+     * so this is cheap compared to decoding the image for a view.
+     *
+     * @param pathName Path of the image file
+     * @return The opaque average color or 0 if the file could not be decoded
+     */
+    public static int getPlaceholderColor(final String pathName) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(pathName, options);
+
+        options.inSampleSize = calculateInSampleSize(options, PLACEHOLDER_DECODE_SIZE, PLACEHOLDER_DECODE_SIZE);
+        options.inJustDecodeBounds = false;
+
+        return getPlaceholderColorAndRecycle(BitmapFactory.decodeFile(pathName, options));
+    }
+
+    /**
+     * Computes the average color of an encoded image.
+     *
+     * @param data The encoded image
+     * @return The opaque average color or 0 if the image could not be decoded
+     */
+    public static int getPlaceholderColor(final byte[] data) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+
+        options.inSampleSize = calculateInSampleSize(options, PLACEHOLDER_DECODE_SIZE, PLACEHOLDER_DECODE_SIZE);
+        options.inJustDecodeBounds = false;
+
+        return getPlaceholderColorAndRecycle(BitmapFactory.decodeByteArray(data, 0, data.length, options));
+    }
+
+    private static int getPlaceholderColorAndRecycle(final Bitmap bitmap) {
+        if (bitmap == null) {
+            return 0;
+        }
+
+        final int color = getPlaceholderColor(bitmap);
+        bitmap.recycle();
+        return color;
+    }
+
+    /**
+     * Averages the color channels of all pixels that are not mostly transparent.
+     */
+    private static int getAverageColor(final int[] pixels) {
+        long red = 0;
+        long green = 0;
+        long blue = 0;
+        int count = 0;
+
+        for (int pixel : pixels) {
+            if ((pixel >>> 24) < 0x80) {
+                continue;
+            }
+            red += (pixel >> 16) & 0xff;
+            green += (pixel >> 8) & 0xff;
+            blue += pixel & 0xff;
+            count++;
+        }
+
+        if (count == 0) {
+            return 0;
+        }
+
+        return 0xff000000 | (int) (red / count) << 16 | (int) (green / count) << 8 | (int) (blue / count);
+    }
+
+    /**
+     * Takes a bitmap from the {@link BitmapPool} that can hold the decoded image of the given options.
+     * The decoded bitmap is mutable, so it can be reused once it is evicted from the cache.
+     */
+    private static void setReusableBitmap(final BitmapFactory.Options options) {
+        options.inMutable = true;
+
+        if (options.outWidth > 0 && options.outHeight > 0) {
+            // the decoders round the sampled size differently, so round up
+            final int sampleSize = Math.max(1, options.inSampleSize);
+            final int width = (options.outWidth + sampleSize - 1) / sampleSize;
+            final int height = (options.outHeight + sampleSize - 1) / sampleSize;
+
+            options.inBitmap = BitmapPool.getInstance().get(width, height, Bitmap.Config.ARGB_8888);
+        }
     }
 
     /**
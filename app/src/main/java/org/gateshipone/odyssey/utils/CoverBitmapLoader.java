@@ -27,17 +27,77 @@ import android.graphics.Bitmap;
 
 import org.gateshipone.odyssey.artwork.ArtworkManager;
 import org.gateshipone.odyssey.artwork.BitmapCache;
+import org.gateshipone.odyssey.artwork.BitmapPool;
 import org.gateshipone.odyssey.artwork.storage.ImageNotFoundException;
 import org.gateshipone.odyssey.models.AlbumModel;
 import org.gateshipone.odyssey.models.ArtistModel;
 import org.gateshipone.odyssey.models.TrackModel;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads album and artist images in the background for a {@link CoverBitmapReceiver}.
+ * <p>
+ * All loaders share one bounded executor. Requests for the same image that are still queued are
+ * coalesced into one load. A new request of a loader supersedes its previous request of the same
+ * type (album or artist), superseded requests are removed from the queue and never delivered.
+ */
 public class CoverBitmapLoader {
 
+    /**
+     * Maximum number of images that are loaded in parallel.
+     */
+    private static final int LOADER_THREADS = 2;
+
+    /**
+     * Time after which idle loader threads are stopped.
+     */
+    private static final long LOADER_KEEP_ALIVE_SECONDS = 30;
+
+    private static final ThreadPoolExecutor LOADER_EXECUTOR = new ThreadPoolExecutor(LOADER_THREADS, LOADER_THREADS,
+            LOADER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+        final Thread thread = new Thread(runnable, "CoverBitmapLoader");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    static {
+        LOADER_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Tasks that are queued but not started yet, mapped by their image key. Also used as the lock
+     * for the request lists of all tasks.
+     */
+    private static final HashMap<String, LoaderTask> QUEUED_TASKS = new HashMap<>();
+
+    private static final LatencyCounter LOAD_LATENCY = new LatencyCounter("CoverBitmapLoader");
+
     private final CoverBitmapReceiver mListener;
 
     private final Context mApplicationContext;
 
+    /**
+     * Generation of the latest album and artist request of this loader. Requests with an older
+     * generation are superseded.
+     */
+    private final AtomicLong mAlbumGeneration = new AtomicLong();
+
+    private final AtomicLong mArtistGeneration = new AtomicLong();
+
+    /**
+     * The tasks of the latest album and artist request of this loader, guarded by QUEUED_TASKS.
+     */
+    private LoaderTask mAlbumTask;
+
+    private LoaderTask mArtistTask;
+
     public CoverBitmapLoader(Context context, CoverBitmapReceiver listener) {
         mApplicationContext = context.getApplicationContext();
         mListener = listener;
@@ -48,9 +108,7 @@ public class CoverBitmapLoader {
      */
     public void getImage(final TrackModel track, final int width, final int height) {
         if (track != null && track.getTrackAlbumId() != -1) {
-            // start the loader thread to load the image async
-            final Thread loaderThread = new Thread(new TrackAlbumImageRunner(track, width, height));
-            loaderThread.start();
+            submit(true, new TrackAlbumImageRunner(mApplicationContext, track, width, height));
         }
     }
 
@@ -59,9 +117,7 @@ public class CoverBitmapLoader {
             return;
         }
 
-        // start the loader thread to load the image async
-        final Thread loaderThread = new Thread(new ArtistImageRunner(artist, width, height));
-        loaderThread.start();
+        submit(false, new ArtistImageRunner(mApplicationContext, artist, width, height));
     }
 
     public void getAlbumImage(final AlbumModel album, final int width, final int height) {
@@ -69,9 +125,7 @@ public class CoverBitmapLoader {
             return;
         }
 
-        // start the loader thread to load the image async
-        final Thread loaderThread = new Thread(new AlbumImageRunner(album, width, height));
-        loaderThread.start();
+        submit(true, new AlbumImageRunner(mApplicationContext, album, width, height));
     }
 
     public void getArtistImage(final TrackModel track, final int width, final int height) {
@@ -79,30 +133,196 @@ public class CoverBitmapLoader {
             return;
         }
 
-        // start the loader thread to load the image async
-        final Thread loaderThread = new Thread(new TrackArtistImageRunner(track, width, height));
-        loaderThread.start();
+        submit(false, new TrackArtistImageRunner(mApplicationContext, track, width, height));
     }
 
-    private class TrackAlbumImageRunner implements Runnable {
+    /**
+     * @return The number of image loads that are waiting for a free loader thread.
+     */
+    public static int getQueueDepth() {
+        return LOADER_EXECUTOR.getQueue().size();
+    }
 
-        private final int mWidth;
+    /**
+     * @return The latency of all image loads, including the cache lookup and the decode.
+     */
+    public static LatencyCounter getLoadLatency() {
+        return LOAD_LATENCY;
+    }
 
-        private final int mHeight;
+    /**
+     * Supersedes the previous request of the same type and queues the given task. If a task for
+     * the same image is already queued, the request is attached to it instead.
+     *
+     * @param album True for an album image, false for an artist image
+     * @param task  The task to load the image
+     */
+    private void submit(final boolean album, final LoaderTask task) {
+        final Request request = new Request(this, album, (album ? mAlbumGeneration : mArtistGeneration).incrementAndGet());
+
+        final LoaderTask queuedTask;
+        synchronized (QUEUED_TASKS) {
+            // drop the previous task from the queue if nobody waits for it anymore
+            final LoaderTask previousTask = album ? mAlbumTask : mArtistTask;
+            if (previousTask != null && !previousTask.mStarted && !previousTask.hasCurrentRequest()) {
+                QUEUED_TASKS.remove(previousTask.mKey);
+                LOADER_EXECUTOR.remove(previousTask);
+            }
 
-        private final TrackModel mTrack;
+            queuedTask = QUEUED_TASKS.get(task.mKey);
+            if (queuedTask != null) {
+                queuedTask.mRequests.add(request);
+            } else {
+                task.mRequests.add(request);
+                QUEUED_TASKS.put(task.mKey, task);
+            }
 
-        private TrackAlbumImageRunner(final TrackModel track, final int width, final int height) {
-            mTrack = track;
+            if (album) {
+                mAlbumTask = queuedTask != null ? queuedTask : task;
+            } else {
+                mArtistTask = queuedTask != null ? queuedTask : task;
+            }
+        }
+
+        if (queuedTask == null) {
+            LOADER_EXECUTOR.execute(task);
+        }
+    }
+
+    /**
+     * A request of a loader for an image. Only delivered if it is not superseded.
+     */
+    private static class Request {
+
+        private final CoverBitmapLoader mLoader;
+
+        private final boolean mAlbum;
+
+        private final long mGeneration;
+
+        private Request(final CoverBitmapLoader loader, final boolean album, final long generation) {
+            mLoader = loader;
+            mAlbum = album;
+            mGeneration = generation;
+        }
+
+        private boolean isCurrent() {
+            return (mAlbum ? mLoader.mAlbumGeneration : mLoader.mArtistGeneration).get() == mGeneration;
+        }
+
+        private void deliver(final Bitmap bitmap) {
+            if (!isCurrent()) {
+                return;
+            }
+
+            if (mAlbum) {
+                mLoader.mListener.receiveAlbumBitmap(bitmap);
+            } else {
+                mLoader.mListener.receiveArtistBitmap(bitmap);
+            }
+        }
+    }
+
+    /**
+     * Base class of all image loads. Collects the coalesced requests until it is started.
+     */
+    private abstract static class LoaderTask implements Runnable {
+
+        /**
+         * Identifies the loaded image, tasks with the same key load the same image.
+         */
+        final String mKey;
+
+        final Context mApplicationContext;
+
+        final int mWidth;
+
+        final int mHeight;
+
+        /**
+         * Requests waiting for this image, guarded by QUEUED_TASKS.
+         */
+        final List<Request> mRequests = new ArrayList<>();
+
+        /**
+         * True once the task was taken from the queue, guarded by QUEUED_TASKS.
+         */
+        boolean mStarted;
+
+        LoaderTask(final String key, final Context context, final int width, final int height) {
+            mKey = key + ":" + width + "x" + height;
+            mApplicationContext = context;
             mWidth = width;
             mHeight = height;
         }
 
+        @Override
+        public final void run() {
+            synchronized (QUEUED_TASKS) {
+                mStarted = true;
+                if (QUEUED_TASKS.get(mKey) == this) {
+                    QUEUED_TASKS.remove(mKey);
+                }
+            }
+
+            // skip the load if all requests were superseded while this task was queued
+            if (!hasCurrentRequest()) {
+                return;
+            }
+
+            final long startTime = System.nanoTime();
+            load();
+            LOAD_LATENCY.addSince(startTime);
+        }
+
+        /**
+         * Loads the image and delivers it with {@link #deliver(Bitmap)}.
+         */
+        abstract void load();
+
+        /**
+         * Delivers the image to all requests that are not superseded.
+         *
+         * @param bitmap The image, acquired at the {@link BitmapPool}. It is released afterwards.
+         */
+        void deliver(final Bitmap bitmap) {
+            // the listeners keep the bitmap without reporting it to the pool
+            if (bitmap != null) {
+                BitmapPool.getInstance().pin(bitmap);
+                BitmapPool.getInstance().release(bitmap);
+            }
+
+            for (Request request : mRequests) {
+                request.deliver(bitmap);
+            }
+        }
+
+        boolean hasCurrentRequest() {
+            synchronized (QUEUED_TASKS) {
+                for (Request request : mRequests) {
+                    if (request.isCurrent()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class TrackAlbumImageRunner extends LoaderTask {
+
+        private final TrackModel mTrack;
+
+        private TrackAlbumImageRunner(final Context context, final TrackModel track, final int width, final int height) {
+            super("album:" + track.getTrackAlbumId(), context, width, height);
+            mTrack = track;
+        }
+
         /**
          * Load the image for the given track from the mediastore.
          */
         @Override
-        public void run() {
+        void load() {
             // At first get image independent of resolution (can be replaced later with higher resolution)
             final AlbumModel album = MusicLibraryHelper.createAlbumModelFromId(mTrack.getTrackAlbumId(), mApplicationContext);
             if (album == null) {
@@ -110,16 +330,16 @@ public class CoverBitmapLoader {
                 return;
             }
 
-            Bitmap image = BitmapCache.getInstance().requestAlbumBitmap(album);
+            Bitmap image = BitmapCache.getInstance().acquireAlbumBitmap(album);
             if (image != null) {
-                mListener.receiveAlbumBitmap(image);
+                deliver(image);
             }
 
             try {
                 // If image was to small get it in the right resolution
                 if (image == null || !(mWidth <= image.getWidth() && mHeight <= image.getHeight())) {
                     image = ArtworkManager.getInstance(mApplicationContext).getImage(album, mWidth, mHeight, true);
-                    mListener.receiveAlbumBitmap(image);
+                    deliver(image);
                     // Replace image with higher resolution one
                     BitmapCache.getInstance().putAlbumBitmap(album, image);
                 }
@@ -130,111 +350,68 @@ public class CoverBitmapLoader {
         }
     }
 
-    private class ArtistImageRunner implements Runnable {
-
-        private final int mWidth;
-
-        private final int mHeight;
+    private static class ArtistImageRunner extends LoaderTask {
 
         private final ArtistModel mArtist;
 
-        private ArtistImageRunner(final ArtistModel artist, final int width, final int height) {
+        private ArtistImageRunner(final Context context, final ArtistModel artist, final int width, final int height) {
+            super("artist:" + artist.getArtistName(), context, width, height);
             mArtist = artist;
-            mWidth = width;
-            mHeight = height;
         }
 
         /**
          * Load the image for the given artist from the mediastore.
          */
         @Override
-        public void run() {
-            // At first get image independent of resolution (can be replaced later with higher resolution)
-            Bitmap image = BitmapCache.getInstance().requestArtistImage(mArtist);
-            mListener.receiveArtistBitmap(image);
-
-            // If image was to small get it in the right resolution
-            if (image == null || !(mWidth <= image.getWidth() && mHeight <= image.getHeight())) {
-                try {
-                    image = ArtworkManager.getInstance(mApplicationContext).getImage(mArtist, mWidth, mHeight, true);
-                    mListener.receiveArtistBitmap(image);
-                    // Replace image with higher resolution one
-                    BitmapCache.getInstance().putArtistImage(mArtist, image);
-                } catch (ImageNotFoundException e) {
-                    ArtworkManager.getInstance(mApplicationContext).fetchImage(mArtist);
-                }
-            }
+        void load() {
+            loadArtistImage(this, mArtist);
         }
     }
 
-    private class TrackArtistImageRunner implements Runnable {
-
-        private final int mWidth;
+    private static class TrackArtistImageRunner extends LoaderTask {
 
-        private final int mHeight;
-
-        private final ArtistModel mArtist;
+        private final TrackModel mTrack;
 
-        private TrackArtistImageRunner(final TrackModel trackModel, final int width, final int height) {
-            long artistId = MusicLibraryHelper.getArtistIDFromName(trackModel.getTrackArtistName(), mApplicationContext);
-            mArtist = new ArtistModel(trackModel.getTrackArtistName(), artistId);
-            mWidth = width;
-            mHeight = height;
+        private TrackArtistImageRunner(final Context context, final TrackModel trackModel, final int width, final int height) {
+            super("artist:" + trackModel.getTrackArtistName(), context, width, height);
+            mTrack = trackModel;
         }
 
         /**
          * Load the image for the given artist from the mediastore.
          */
         @Override
-        public void run() {
-            // At first get image independent of resolution (can be replaced later with higher resolution)
-            Bitmap image = BitmapCache.getInstance().requestArtistImage(mArtist);
-            mListener.receiveArtistBitmap(image);
-
-            // If image was to small get it in the right resolution
-            if (image == null || !(mWidth <= image.getWidth() && mHeight <= image.getHeight())) {
-                try {
-                    image = ArtworkManager.getInstance(mApplicationContext).getImage(mArtist, mWidth, mHeight, true);
-                    mListener.receiveArtistBitmap(image);
-                    // Replace image with higher resolution one
-                    BitmapCache.getInstance().putArtistImage(mArtist, image);
-                } catch (ImageNotFoundException e) {
-                    ArtworkManager.getInstance(mApplicationContext).fetchImage(mArtist);
-                }
-            }
+        void load() {
+            long artistId = MusicLibraryHelper.getArtistIDFromName(mTrack.getTrackArtistName(), mApplicationContext);
+            loadArtistImage(this, new ArtistModel(mTrack.getTrackArtistName(), artistId));
         }
     }
 
-    private class AlbumImageRunner implements Runnable {
-
-        private final int mWidth;
-
-        private final int mHeight;
+    private static class AlbumImageRunner extends LoaderTask {
 
         private final AlbumModel mAlbum;
 
-        private AlbumImageRunner(AlbumModel album, int width, int height) {
+        private AlbumImageRunner(final Context context, final AlbumModel album, final int width, final int height) {
+            super("album:" + album.getAlbumId(), context, width, height);
             mAlbum = album;
-            mWidth = width;
-            mHeight = height;
         }
 
         /**
          * Load the image for the given album from the mediastore.
          */
         @Override
-        public void run() {
+        void load() {
             // At first get image independent of resolution (can be replaced later with higher resolution)
-            Bitmap image = BitmapCache.getInstance().requestAlbumBitmap(mAlbum);
+            Bitmap image = BitmapCache.getInstance().acquireAlbumBitmap(mAlbum);
             if (image != null) {
-                mListener.receiveAlbumBitmap(image);
+                deliver(image);
             }
 
             try {
                 // If image was to small get it in the right resolution
                 if (image == null || !(mWidth <= image.getWidth() && mHeight <= image.getHeight())) {
                     image = ArtworkManager.getInstance(mApplicationContext).getImage(mAlbum, mWidth, mHeight, true);
-                    mListener.receiveAlbumBitmap(image);
+                    deliver(image);
                     // Replace image with higher resolution one
                     BitmapCache.getInstance().putAlbumBitmap(mAlbum, image);
                 }
@@ -245,6 +422,27 @@ public class CoverBitmapLoader {
         }
     }
 
+    /**
+     * Loads the image for the given artist from the cache or the artwork database.
+     */
+    private static void loadArtistImage(final LoaderTask task, final ArtistModel artist) {
+        // At first get image independent of resolution (can be replaced later with higher resolution)
+        Bitmap image = BitmapCache.getInstance().acquireArtistImage(artist);
+        task.deliver(image);
+
+        // If image was to small get it in the right resolution
+        if (image == null || !(task.mWidth <= image.getWidth() && task.mHeight <= image.getHeight())) {
+            try {
+                image = ArtworkManager.getInstance(task.mApplicationContext).getImage(artist, task.mWidth, task.mHeight, true);
+                task.deliver(image);
+                // Replace image with higher resolution one
+                BitmapCache.getInstance().putArtistImage(artist, image);
+            } catch (ImageNotFoundException e) {
+                ArtworkManager.getInstance(task.mApplicationContext).fetchImage(artist);
+            }
+        }
+    }
+
     /**
      * Callback if image was loaded.
      */
@@ -253,4 +451,4 @@ public class CoverBitmapLoader {
 
         void receiveArtistBitmap(Bitmap bm);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2020 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.utils;
+
+import android.database.Cursor;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+
+import org.gateshipone.odyssey.models.GenericModel;
+
+import java.io.Closeable;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Read only list that is backed by a cursor. Models are only created for pages of the cursor that
+ * are accessed, a bounded number of pages is kept resident.
+ * <p>
+ * The first character of the section title of every row is read once when the list is created,
+ * so sections can be created without creating any model.
+ * <p>
+ * The list owns the cursor and must be closed by its owner once it is not used anymore.
+ */
+public class CursorModelList<T extends GenericModel> extends AbstractList<T> implements RandomAccess, Closeable {
+
+    /**
+     * Number of models that are created together.
+     */
+    private static final int PAGE_SIZE = 256;
+
+    /**
+     * Maximum number of pages with created models.
+     */
+    private static final int MAX_RESIDENT_PAGES = 8;
+
+    public interface ModelFactory<T> {
+        /**
+         * Creates the model for the current row of the cursor.
+         */
+        T createModel(final Cursor cursor);
+    }
+
+    private final Cursor mCursor;
+
+    private final ModelFactory<T> mModelFactory;
+
+    private final int mCount;
+
+    /**
+     * Section name for every row, see {@link #getSectionName(int)}.
+     */
+    private final char[] mSectionNames;
+
+    private final LruCache<Integer, Object[]> mPages;
+
+    private boolean mClosed;
+
+    /**
+     * Creates the list, should be called from a background thread as the section titles of all rows are read.
+     *
+     * @param cursor             The cursor, the list takes the ownership.
+     * @param sectionTitleColumn The column that contains the section title of a row.
+     * @param modelFactory       Factory to create the model of a row.
+     */
+    public CursorModelList(@NonNull final Cursor cursor, final String sectionTitleColumn, final ModelFactory<T> modelFactory) {
+        mCursor = cursor;
+        mModelFactory = modelFactory;
+        mCount = cursor.getCount();
+        mPages = new LruCache<>(MAX_RESIDENT_PAGES);
+
+        mSectionNames = new char[mCount];
+        final int sectionTitleIndex = cursor.getColumnIndexOrThrow(sectionTitleColumn);
+        if (cursor.moveToFirst()) {
+            int position = 0;
+            do {
+                final String sectionTitle = cursor.getString(sectionTitleIndex);
+                mSectionNames[position++] = (sectionTitle == null || sectionTitle.isEmpty()) ? ' ' : Character.toUpperCase(sectionTitle.charAt(0));
+            } while (cursor.moveToNext());
+        }
+    }
+
+    @Override
+    public synchronized T get(final int position) {
+        if (position < 0 || position >= mCount) {
+            throw new IndexOutOfBoundsException("position: " + position + " size: " + mCount);
+        }
+
+        final int pageIndex = position / PAGE_SIZE;
+        Object[] page = mPages.get(pageIndex);
+        if (page == null) {
+            page = loadPage(pageIndex);
+            mPages.put(pageIndex, page);
+        }
+
+        @SuppressWarnings("unchecked") final T model = (T) page[position % PAGE_SIZE];
+        return model;
+    }
+
+    @Override
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Returns the section name of a row without creating its model. The section name is the
+     * upper case first character of the section title or ' ' for an empty title.
+     *
+     * @param position The position of the row.
+     * @return The section name of the row.
+     */
+    public char getSectionName(final int position) {
+        return mSectionNames[position];
+    }
+
+    /**
+     * Closes the cursor, created models stay valid.
+     */
+    @Override
+    public synchronized void close() {
+        if (!mClosed) {
+            mClosed = true;
+            mCursor.close();
+        }
+    }
+
+    private Object[] loadPage(final int pageIndex) {
+        final int start = pageIndex * PAGE_SIZE;
+        final Object[] page = new Object[Math.min(PAGE_SIZE, mCount - start)];
+
+        if (mClosed) {
+            throw new IllegalStateException("cursor of the list is already closed");
+        }
+
+        if (mCursor.moveToPosition(start)) {
+            int index = 0;
+            do {
+                page[index++] = mModelFactory.createModel(mCursor);
+            } while (index < page.length && mCursor.moveToNext());
+        }
+
+        return page;
+    }
+}
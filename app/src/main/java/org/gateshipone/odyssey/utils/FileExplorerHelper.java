@@ -32,9 +32,7 @@ import org.gateshipone.odyssey.models.TrackModel;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.ListIterator;
 
 public class FileExplorerHelper {
 
@@ -101,6 +99,18 @@ public class FileExplorerHelper {
     public List<TrackModel> getTrackModelsForFolder(Context context, FileModel folder) {
         List<TrackModel> tracks = new ArrayList<>();
 
+        getTrackModelsForFolder(context, folder, tracks::add);
+
+        return tracks;
+    }
+
+    /**
+     * pass the TrackModels created for the given folder to the consumer as soon as they are created
+     * this excludes all subfolders
+     *
+     * @return False if the consumer stopped the lookup
+     */
+    public boolean getTrackModelsForFolder(Context context, FileModel folder, TrackConsumer consumer) {
         List<FileModel> files = PermissionHelper.getFilesForDirectory(context, folder);
 
         for (FileModel file : files) {
@@ -109,130 +119,16 @@ public class FileExplorerHelper {
                 if (file.isPlaylist()) {
                     // Parse the playlist file with a parser
                     PlaylistParser parser = PlaylistParserFactory.getParser(file);
-                    if (parser != null) {
-                        tracks.addAll(parser.parseList(context));
+                    if (parser != null && !parser.parseList(context, consumer)) {
+                        return false;
                     }
-                } else {
-                    tracks.add(getDummyTrackModelForFile(file));
-                }
-            }
-        }
-
-        return tracks;
-    }
-
-    /**
-     * Generates a list of {@link FileModel} objects that are either in the Android DB and not on the FS
-     * or that are on the FS but not in the Android DB.
-     *
-     * @param context  Context used for DB query
-     * @param basePath Path of files to check
-     * @return List of files that need to be scanned
-     */
-    public List<FileModel> getMissingDBFiles(Context context, FileModel basePath) {
-        List<FileModel> filesDB = MusicLibraryHelper.getMediaFilesForPath(basePath.getPath(), context);
-        List<FileModel> filesFS = new ArrayList<>();
-
-        getFilesRecursive(context, basePath, filesFS);
-
-        return generateFileListDiff(filesDB, filesFS);
-    }
-
-    /**
-     * Helper method to create a list of {@link FileModel} objects that are part of one list but not
-     * of the other.
-     *
-     * @param list1 First list of {@link FileModel} objects.
-     * @param list2 Second list of {@link FileModel} objects.
-     * @return List of {@link FileModel} that are only part of one of the two given lists.
-     */
-    private List<FileModel> generateFileListDiff(List<FileModel> list1, List<FileModel> list2) {
-        List<FileModel> filesDiff = new ArrayList<>();
-
-        // Sort lists so that an easy compare is possible because of given order.
-        Collections.sort(list1);
-        Collections.sort(list2);
-
-        // Create the difference between the to lists
-        ListIterator<FileModel> dbIterartor = list1.listIterator();
-        ListIterator<FileModel> fsIterartor = list2.listIterator();
-
-        // Get the first list elements (if any available)
-        FileModel list1Model = null;
-        if (dbIterartor.hasNext()) {
-            list1Model = dbIterartor.next();
-        }
-        FileModel list2Model = null;
-        if (fsIterartor.hasNext()) {
-            list2Model = fsIterartor.next();
-        }
-
-        while (dbIterartor.hasNext() || fsIterartor.hasNext()) {
-            int compareVal = 0;
-
-            // Check if files are available and compare them if both are available
-            if (list1Model != null && list2Model != null) {
-                compareVal = list1Model.compareTo(list2Model);
-            } else if (list1Model != null) {
-                // No model from the list2 available, make sure remaining list1 models are added
-                compareVal = -1;
-            } else if (list2Model != null) {
-                // No model from the list1 available, make sure remaining list2 models are added
-                compareVal = 1;
-            }
-            if (compareVal == 0) {
-                // Both are equal, move to next elements on both lists
-                if (dbIterartor.hasNext()) {
-                    list1Model = dbIterartor.next();
-                } else {
-                    list1Model = null;
-                }
-                if (fsIterartor.hasNext()) {
-                    list2Model = fsIterartor.next();
-                } else {
-                    list2Model = null;
-                }
-            } else if (compareVal < 0) {
-                // list1Model is less, move it forward and add current file
-                filesDiff.add(list1Model);
-                if (dbIterartor.hasNext()) {
-                    list1Model = dbIterartor.next();
-                } else {
-                    list1Model = null;
-                }
-            } else {
-                // list2Model is less, move it forward and add current file
-                filesDiff.add(list2Model);
-                if (fsIterartor.hasNext()) {
-                    list2Model = fsIterartor.next();
-                } else {
-                    list2Model = null;
+                } else if (!consumer.onTrackFound(getDummyTrackModelForFile(file))) {
+                    return false;
                 }
             }
         }
-        return filesDiff;
-    }
 
-    /**
-     * Helper method to create a list of of {@link FileModel} objects that are files for the given folder.
-     * This method will be called recursively for all subfolders.
-     *
-     * @param context The current android context.
-     * @param folder  The current folder.
-     * @param files   List of {@link FileModel} objects that are files and in the folder.
-     */
-    private void getFilesRecursive(Context context, FileModel folder, List<FileModel> files) {
-        if (folder.isFile()) {
-            // file is not a directory so add the filemodel to the list
-            files.add(folder);
-        } else {
-            List<FileModel> filesTmp = PermissionHelper.getFilesForDirectory(context, folder);
-
-            for (FileModel file : filesTmp) {
-                // call method for all files found in this folder
-                getFilesRecursive(context, file, files);
-            }
-        }
+        return true;
     }
 
     /**
@@ -244,17 +140,18 @@ public class FileExplorerHelper {
     public List<TrackModel> getTrackModelsForFolderAndSubFolders(Context context, FileModel folder, String filterString) {
         List<TrackModel> tracks = new ArrayList<>();
         // check current folder and subfolders for music files
-        getTrackModelsForFolderAndSubFolders(context, folder, tracks, filterString);
+        getTrackModelsForFolderAndSubFolders(context, folder, filterString, tracks::add);
 
         return tracks;
     }
 
     /**
-     * add TrackModel objects for the current folder and all subfolders to the tracklist
+     * pass TrackModel objects for the current folder and all subfolders to the consumer while the folders are traversed
      *
      * @param filterString A filter that is used to exclude folders/files that didn't contain this String.
+     * @return False if the consumer stopped the traversal
      */
-    private void getTrackModelsForFolderAndSubFolders(Context context, FileModel folder, List<TrackModel> tracks, String filterString) {
+    public boolean getTrackModelsForFolderAndSubFolders(Context context, FileModel folder, String filterString, TrackConsumer consumer) {
         if (folder.isFile()) {
             if (filterString == null || filterString.isEmpty() || folder.getName().toLowerCase().contains(filterString)) {
                 // file is not a directory so create a trackmodel for the file
@@ -262,11 +159,10 @@ public class FileExplorerHelper {
                     // Parse the playlist file with a parser
                     PlaylistParser parser = PlaylistParserFactory.getParser(folder);
                     if (parser != null) {
-
-                        tracks.addAll(parser.parseList(context));
+                        return parser.parseList(context, consumer);
                     }
                 } else {
-                    tracks.add(getDummyTrackModelForFile(folder));
+                    return consumer.onTrackFound(getDummyTrackModelForFile(folder));
                 }
             }
         } else {
@@ -275,9 +171,13 @@ public class FileExplorerHelper {
             for (FileModel file : files) {
                 if (filterString == null || filterString.isEmpty() || file.getName().toLowerCase().contains(filterString)) {
                     // call method for all files found in this folder
-                    getTrackModelsForFolderAndSubFolders(context, file, tracks, null);
+                    if (!getTrackModelsForFolderAndSubFolders(context, file, null, consumer)) {
+                        return false;
+                    }
                 }
             }
         }
+
+        return true;
     }
 }
@@ -75,8 +75,16 @@ public class FileUtils {
         final MessageDigest md = MessageDigest.getInstance("SHA-256");
         md.update(input.toString().getBytes());
 
-        final byte[] bytes = md.digest();
+        return toHexString(md.digest());
+    }
 
+    /**
+     * Converts the given bytes to a lower case hex string.
+     *
+     * @param bytes The bytes to convert, e.g. a hash value.
+     * @return The hex string with two characters per byte.
+     */
+    public static String toHexString(final byte[] bytes) {
         final StringBuilder hexString = new StringBuilder();
         for (byte oneByte : bytes) {
             final String hex = Integer.toHexString(0xff & oneByte);
@@ -109,6 +117,17 @@ public class FileUtils {
         outputStream.close();
     }
 
+    /**
+     * Returns the directory for artwork images with the given suffix. The directory is not created.
+     *
+     * @param context Context used for directory resolving
+     * @param dirName Directory suffix
+     * @return The artwork directory
+     */
+    public static File getArtworkDirectory(final Context context, final String dirName) {
+        return new File(context.getFilesDir() + "/" + ARTWORK_DIR + "/" + dirName + "/");
+    }
+
     /**
      * Generates the full absolute file path for an artwork image
      *
@@ -33,6 +33,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * Filters the model data of an adapter in the background with the {@link SearchIndex} of the data.
+ */
 public class FilterTask<T extends GenericModel> extends AsyncTask<String, Void, Pair<List<T>, String>> {
 
     public interface SuccessCallback<T> {
@@ -43,23 +46,16 @@ public class FilterTask<T extends GenericModel> extends AsyncTask<String, Void,
         void onFailure();
     }
 
-    public interface Filter<T> {
-        boolean matchesFilter(final T elem, final String filterString);
-    }
-
-    private final Filter<T> mFilter;
-
     private final SuccessCallback<T> mSuccessCallback;
 
     private final FailureCallback mFailureCallback;
 
-    private final WeakReference<List<T>> mModelDataRef;
+    private final WeakReference<SearchIndex<T>> mSearchIndexRef;
 
     private final ReentrantReadWriteLock.ReadLock mReadLock;
 
-    public FilterTask(final List<T> modelData, final ReentrantReadWriteLock.ReadLock readLock, final Filter<T> filter, final SuccessCallback<T> successCallback, final FailureCallback failureCallback) {
-        mModelDataRef = new WeakReference<>(modelData);
-        mFilter = filter;
+    public FilterTask(final SearchIndex<T> searchIndex, final ReentrantReadWriteLock.ReadLock readLock, final SuccessCallback<T> successCallback, final FailureCallback failureCallback) {
+        mSearchIndexRef = new WeakReference<>(searchIndex);
         mSuccessCallback = successCallback;
         mFailureCallback = failureCallback;
         mReadLock = readLock;
@@ -67,24 +63,25 @@ public class FilterTask<T extends GenericModel> extends AsyncTask<String, Void,
 
     @Override
     protected Pair<List<T>, String> doInBackground(String... lists) {
-        List<T> resultList = new ArrayList<>();
-
         String filterString = lists[0];
+
+        final SearchIndex<T> searchIndex = mSearchIndexRef.get();
+        if (searchIndex == null || isCancelled()) {
+            return new Pair<>(new ArrayList<>(), filterString);
+        }
+
+        // the model data must not change or be closed while the index is created and searched,
+        // a task that was cancelled by a swap of the model data must not touch the old data anymore
         mReadLock.lock();
-        for (T elem : mModelDataRef.get()) {
-            // Check if task was cancelled from the outside.
+        try {
             if (isCancelled()) {
-                resultList.clear();
-                mReadLock.unlock();
-                return new Pair<>(resultList, filterString);
-            }
-            if (mFilter.matchesFilter(elem, filterString)) {
-                resultList.add(elem);
+                return new Pair<>(new ArrayList<>(), filterString);
             }
-        }
 
-        mReadLock.unlock();
-        return new Pair<>(resultList, filterString);
+            return new Pair<>(searchIndex.search(filterString), filterString);
+        } finally {
+            mReadLock.unlock();
+        }
     }
 
     public final AsyncTask<String, Void, Pair<List<T>, String>> execute(String filterString) {
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2020 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.utils;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock free counter for the latency of an operation that can be called from multiple threads.
+ */
+public class LatencyCounter {
+
+    private final String mName;
+
+    private final AtomicLong mCount = new AtomicLong();
+
+    private final AtomicLong mTotalNs = new AtomicLong();
+
+    private final AtomicLong mMaxNs = new AtomicLong();
+
+    public LatencyCounter(final String name) {
+        mName = name;
+    }
+
+    /**
+     * Adds a measurement.
+     *
+     * @param startTimeNs Start time of the operation as returned by {@link System#nanoTime()}
+     */
+    public void addSince(final long startTimeNs) {
+        add(System.nanoTime() - startTimeNs);
+    }
+
+    /**
+     * Adds a measurement.
+     *
+     * @param durationNs The duration of the operation in ns
+     */
+    public void add(final long durationNs) {
+        mCount.incrementAndGet();
+        mTotalNs.addAndGet(durationNs);
+
+        long max = mMaxNs.get();
+        while (durationNs > max && !mMaxNs.compareAndSet(max, durationNs)) {
+            max = mMaxNs.get();
+        }
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public long getTotalNs() {
+        return mTotalNs.get();
+    }
+
+    public long getMaxNs() {
+        return mMaxNs.get();
+    }
+
+    /**
+     * @return The average duration in ns or 0 if nothing was measured yet
+     */
+    public long getAverageNs() {
+        final long count = mCount.get();
+        return count == 0 ? 0 : mTotalNs.get() / count;
+    }
+
+    public void reset() {
+        mCount.set(0);
+        mTotalNs.set(0);
+        mMaxNs.set(0);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return mName + ": count=" + getCount() + " avg=" + (getAverageNs() / 1000) + "us max=" + (getMaxNs() / 1000) + "us";
+    }
+}
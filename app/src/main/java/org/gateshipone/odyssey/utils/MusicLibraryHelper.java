@@ -36,7 +36,6 @@ import org.gateshipone.odyssey.BuildConfig;
 import org.gateshipone.odyssey.R;
 import org.gateshipone.odyssey.models.AlbumModel;
 import org.gateshipone.odyssey.models.ArtistModel;
-import org.gateshipone.odyssey.models.FileModel;
 import org.gateshipone.odyssey.models.PlaylistModel;
 import org.gateshipone.odyssey.models.TrackModel;
 import org.gateshipone.odyssey.utils.MediaStoreProjections.ProjectionAlbums;
@@ -522,31 +521,19 @@ public class MusicLibraryHelper {
     public static List<TrackModel> getAllTracks(final String filterString, final Context context) {
         final List<TrackModel> allTracks = new ArrayList<>();
 
-        // filter non music
-        final String[] whereVal = {"1"};
-
-        final String where = ProjectionTracks.IS_MUSIC + "=?";
-
-        final Cursor cursor = PermissionHelper.query(context, MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, ProjectionTracks.PROJECTION, where, whereVal, ProjectionTracks.TITLE + " COLLATE NOCASE");
+        final Cursor cursor = queryAllTracks(context);
 
         if (cursor != null) {
             if (cursor.moveToFirst()) {
+                final TrackModelFactory trackModelFactory = new TrackModelFactory(cursor);
+                final int trackNameColumnIndex = cursor.getColumnIndexOrThrow(ProjectionTracks.TITLE);
 
                 do {
-                    final String trackName = cursor.getString(cursor.getColumnIndexOrThrow(ProjectionTracks.TITLE));
-                    final long duration = cursor.getLong(cursor.getColumnIndexOrThrow(ProjectionTracks.DURATION));
-                    final int number = cursor.getInt(cursor.getColumnIndexOrThrow(ProjectionTracks.TRACK));
-                    final String artistName = cursor.getString(cursor.getColumnIndexOrThrow(ProjectionTracks.ARTIST));
-                    final long artistId = cursor.getLong(cursor.getColumnIndexOrThrow(ProjectionTracks.ARTIST_ID));
-                    final String albumName = cursor.getString(cursor.getColumnIndexOrThrow(ProjectionTracks.ALBUM));
-                    final long albumId = cursor.getLong(cursor.getColumnIndexOrThrow(ProjectionTracks.ALBUM_ID));
-                    final long id = cursor.getLong(cursor.getColumnIndexOrThrow(ProjectionTracks.ID));
-
-                    final Uri uri = ContentUris.withAppendedId(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, id);
+                    final String trackName = cursor.getString(trackNameColumnIndex);
 
                     // add the track
                     if (null == filterString || filterString.isEmpty() || trackName.toLowerCase().contains(filterString)) {
-                        allTracks.add(new TrackModel(trackName, artistName, artistId, albumName, albumId, duration, number, uri, id));
+                        allTracks.add(trackModelFactory.createModel(cursor));
                     }
 
                 } while (cursor.moveToNext());
@@ -558,6 +545,84 @@ public class MusicLibraryHelper {
         return allTracks;
     }
 
+    /**
+     * Return a cursor backed list of all tracks in the MediaStore.
+     * Models are only created for the accessed parts of the list.
+     *
+     * @param context The application context to access the content resolver.
+     * @return The list of all tracks found in the MediaStore sorted by title or null if the MediaStore could not be accessed.
+     * The list must be closed if it is not used anymore.
+     */
+    @Nullable
+    public static CursorModelList<TrackModel> getAllTracksPaged(final Context context) {
+        final Cursor cursor = queryAllTracks(context);
+
+        if (cursor == null) {
+            return null;
+        }
+
+        return new CursorModelList<>(cursor, ProjectionTracks.TITLE, new TrackModelFactory(cursor));
+    }
+
+    private static Cursor queryAllTracks(final Context context) {
+        // filter non music
+        final String[] whereVal = {"1"};
+
+        final String where = ProjectionTracks.IS_MUSIC + "=?";
+
+        return PermissionHelper.query(context, MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, ProjectionTracks.PROJECTION, where, whereVal, ProjectionTracks.TITLE + " COLLATE NOCASE");
+    }
+
+    /**
+     * Creates {@link TrackModel} from rows of a cursor with the {@link ProjectionTracks} projection.
+     * The column indices are resolved once for the cursor.
+     */
+    private static class TrackModelFactory implements CursorModelList.ModelFactory<TrackModel> {
+
+        private final int mTrackNameColumnIndex;
+
+        private final int mDurationColumnIndex;
+
+        private final int mNumberColumnIndex;
+
+        private final int mArtistNameColumnIndex;
+
+        private final int mArtistIdColumnIndex;
+
+        private final int mAlbumNameColumnIndex;
+
+        private final int mAlbumIdColumnIndex;
+
+        private final int mIdColumnIndex;
+
+        TrackModelFactory(final Cursor cursor) {
+            mTrackNameColumnIndex = cursor.getColumnIndexOrThrow(ProjectionTracks.TITLE);
+            mDurationColumnIndex = cursor.getColumnIndexOrThrow(ProjectionTracks.DURATION);
+            mNumberColumnIndex = cursor.getColumnIndexOrThrow(ProjectionTracks.TRACK);
+            mArtistNameColumnIndex = cursor.getColumnIndexOrThrow(ProjectionTracks.ARTIST);
+            mArtistIdColumnIndex = cursor.getColumnIndexOrThrow(ProjectionTracks.ARTIST_ID);
+            mAlbumNameColumnIndex = cursor.getColumnIndexOrThrow(ProjectionTracks.ALBUM);
+            mAlbumIdColumnIndex = cursor.getColumnIndexOrThrow(ProjectionTracks.ALBUM_ID);
+            mIdColumnIndex = cursor.getColumnIndexOrThrow(ProjectionTracks.ID);
+        }
+
+        @Override
+        public TrackModel createModel(final Cursor cursor) {
+            final String trackName = cursor.getString(mTrackNameColumnIndex);
+            final long duration = cursor.getLong(mDurationColumnIndex);
+            final int number = cursor.getInt(mNumberColumnIndex);
+            final String artistName = cursor.getString(mArtistNameColumnIndex);
+            final long artistId = cursor.getLong(mArtistIdColumnIndex);
+            final String albumName = cursor.getString(mAlbumNameColumnIndex);
+            final long albumId = cursor.getLong(mAlbumIdColumnIndex);
+            final long id = cursor.getLong(mIdColumnIndex);
+
+            final Uri uri = ContentUris.withAppendedId(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, id);
+
+            return new TrackModel(trackName, artistName, artistId, albumName, albumId, duration, number, uri, id);
+        }
+    }
+
     /**
      * Return a list of all albums in the MediaStore.
      *
@@ -810,6 +875,52 @@ public class MusicLibraryHelper {
         return trackStorageLocations;
     }
 
+    /**
+     * This method returns the storage locations of the tracks of all albums with one query.
+     *
+     * @param context The application context to access the content resolver.
+     * @return A {@link Map} of the album ids to the set of storage locations of their tracks.
+     */
+    public static Map<Long, Set<String>> getTrackStorageLocationsForAllAlbums(final Context context) {
+        final Map<Long, Set<String>> trackStorageLocations = new HashMap<>();
+
+        final String[] projection = {ProjectionTracks.ALBUM_ID, ProjectionTracks.DATA};
+
+        final String[] whereVal = {"1"};
+
+        final String where = ProjectionTracks.IS_MUSIC + "=?";
+
+        final Cursor cursor = PermissionHelper.query(context, MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, projection, where, whereVal, null);
+
+        if (cursor != null) {
+            if (cursor.moveToFirst()) {
+                final int albumIdColumnIndex = cursor.getColumnIndexOrThrow(ProjectionTracks.ALBUM_ID);
+                final int dataColumnIndex = cursor.getColumnIndexOrThrow(ProjectionTracks.DATA);
+
+                do {
+                    final String url = cursor.getString(dataColumnIndex);
+                    final int separator = url == null ? -1 : url.lastIndexOf('/');
+
+                    // the existence of the folder is checked when it is listed
+                    if (separator > 0) {
+                        final long albumId = cursor.getLong(albumIdColumnIndex);
+
+                        Set<String> albumLocations = trackStorageLocations.get(albumId);
+                        if (albumLocations == null) {
+                            albumLocations = new HashSet<>();
+                            trackStorageLocations.put(albumId, albumLocations);
+                        }
+                        albumLocations.add(url.substring(0, separator));
+                    }
+                } while (cursor.moveToNext());
+            }
+
+            cursor.close();
+        }
+
+        return trackStorageLocations;
+    }
+
 
     /**
      * Create and returns a {@link TrackModel} from the given {@link Uri}.
@@ -875,33 +986,37 @@ public class MusicLibraryHelper {
     }
 
     /**
-     * Create a list of {@link FileModel} that represents all music files found in the MediaStore for the given path.
+     * Return the paths of all media files in the MediaStore for the given base path.
      *
-     * @param basePath The path that should be used for the request.
+     * @param basePath The path the files must start with.
      * @param context  The application context to access the content resolver.
-     * @return The list of {@link FileModel} of all music files.
+     * @return The set of all paths, the paths are normalized like {@link File#getPath()}.
      */
-    static List<FileModel> getMediaFilesForPath(final String basePath, final Context context) {
-        final List<FileModel> files = new ArrayList<>();
+    public static Set<String> getMediaFilePathsForPath(final String basePath, final Context context) {
+        final Set<String> paths = new HashSet<>();
 
         final String[] whereVal = {basePath + "%"};
 
         final String where = ProjectionTracks.DATA + " LIKE ?";
 
-        final Cursor cursor = PermissionHelper.query(context, MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, ProjectionTracks.PROJECTION, where, whereVal, ProjectionTracks.TRACK);
+        final Cursor cursor = PermissionHelper.query(context, MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, new String[]{ProjectionTracks.DATA}, where, whereVal, null);
 
         if (cursor != null) {
             if (cursor.moveToFirst()) {
+                final int dataColumnIndex = cursor.getColumnIndexOrThrow(ProjectionTracks.DATA);
+
                 do {
-                    final String url = cursor.getString(cursor.getColumnIndexOrThrow(ProjectionTracks.DATA));
+                    final String url = cursor.getString(dataColumnIndex);
 
-                    files.add(new FileModel(url));
+                    if (url != null) {
+                        paths.add(new File(url).getPath());
+                    }
                 } while (cursor.moveToNext());
             }
 
             cursor.close();
         }
 
-        return files;
+        return paths;
     }
 }
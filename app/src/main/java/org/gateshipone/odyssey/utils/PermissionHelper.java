@@ -42,6 +42,16 @@ public class PermissionHelper {
 
     public static final int MY_PERMISSIONS_REQUEST_READ_EXTERNAL_STORAGE = 0;
 
+    /**
+     * Checks if the user granted the permission to read the external storage.
+     *
+     * @param context The application context for the permission check.
+     * @return True if the permission is granted.
+     */
+    public static boolean hasStoragePermission(final Context context) {
+        return ContextCompat.checkSelfPermission(context, Manifest.permission.READ_EXTERNAL_STORAGE) == PackageManager.PERMISSION_GRANTED;
+    }
+
     /**
      * Permission safe call of the query method of the content resolver.
      *
@@ -30,7 +30,6 @@ import org.gateshipone.odyssey.models.TrackModel;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Iterator;
 
 public abstract class PlaylistParser {
     private static final String TAG = PlaylistParser.class.getSimpleName();
@@ -75,54 +74,62 @@ public abstract class PlaylistParser {
      * Parses the File URL list generated from the subclasses. Tries to check if a path prefix
      * is necessary. Generates a list of {@link TrackModel}.
      *
-     * @param context Context used for {@link TrackModel} retrieval
-     * @param urls    List of File URLs
-     * @return ArrayList of {@link FileModel}
+     * @param context  Context used for {@link TrackModel} retrieval
+     * @param urls     List of File URLs
+     * @param consumer Receives the {@link TrackModel} of each url
+     * @return False if the consumer stopped the creation
      */
-    protected ArrayList<TrackModel> createTrackModels(Context context, ArrayList<String> urls) {
-        ArrayList<TrackModel> retList = new ArrayList<>();
-
+    protected boolean createTrackModels(Context context, ArrayList<String> urls, TrackConsumer consumer) {
         boolean foundPrefix = false;
         String pathPrefix = "";
 
-        Iterator<String> urlIterator = urls.iterator();
-
-        while (urlIterator.hasNext()) {
-            String url = urlIterator.next();
-
+        for (String url : urls) {
             // Check if prefix is found already, then skip prefix detection heuristic.
             if (!foundPrefix) {
                 try {
                     pathPrefix = findPrefix(url);
                     foundPrefix = true;
                 } catch (NoPrefixFoundException e) {
-                    // File not found with or without prefix. Remove it from list
-                    urlIterator.remove();
+                    // File not found with or without prefix. Skip it
                     continue;
                 }
             }
 
             File tempFile = new File(pathPrefix + '/' + url);
             if (!tempFile.exists()) {
-                // File does not exists even with found prefix, remove it.
-                urlIterator.remove();
+                // File does not exists even with found prefix, skip it.
+                continue;
             }
-        }
 
-        for (String url : urls) {
             FileModel tmpFile = new FileModel(pathPrefix + '/' + url);
 
+            // Each track is passed on directly, so the first tracks can be used while the rest is looked up
             TrackModel tmpModel = FileExplorerHelper.getInstance().getTrackModelForFile(context, tmpFile);
-            retList.add(tmpModel);
+            if (!consumer.onTrackFound(tmpModel)) {
+                return false;
+            }
         }
 
-        return retList;
+        return true;
     }
 
     public abstract ArrayList<String> getFileURLsFromFile(Context context);
 
     public ArrayList<TrackModel> parseList(Context context) {
-        return createTrackModels(context, getFileURLsFromFile(context));
+        final ArrayList<TrackModel> tracks = new ArrayList<>();
+        parseList(context, tracks::add);
+        return tracks;
+    }
+
+    /**
+     * Parses the playlist and passes every track to the consumer as soon as it is looked up.
+     *
+     * @param context  Context used for {@link TrackModel} retrieval
+     * @param consumer Receives the tracks of the playlist, can stop the parsing
+     * @return False if the consumer stopped the parsing
+     */
+    public boolean parseList(Context context, TrackConsumer consumer) {
+        return createTrackModels(context, getFileURLsFromFile(context), consumer);
     }
 
     private static class NoPrefixFoundException extends Exception {
@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2020 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey.utils;
+
+import androidx.annotation.NonNull;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Inverted index for the substring search in a list of models.
+ * <p>
+ * The search term of every model is normalized (lower case, accents removed) and split into
+ * trigrams. A query is answered by intersecting the posting lists of its trigrams and verifying
+ * the remaining candidates. If a query extends the previous query, only the previous result is
+ * verified again.
+ * <p>
+ * The index is built on the first search and is only valid for the list it was created for.
+ */
+public class SearchIndex<T> {
+
+    public interface TermProvider<T> {
+        String getSearchTerm(T model);
+    }
+
+    private static final int GRAM_LENGTH = 3;
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+
+    private static final int[] NO_POSITIONS = new int[0];
+
+    private final List<T> mModels;
+
+    private final TermProvider<T> mTermProvider;
+
+    /**
+     * Normalized search term of every model.
+     */
+    private String[] mTerms;
+
+    /**
+     * Sorted positions of the models for every trigram.
+     */
+    private HashMap<Long, int[]> mPostings;
+
+    private String mLastQuery;
+
+    private int[] mLastResult;
+
+    public SearchIndex(@NonNull final List<T> models, @NonNull final TermProvider<T> termProvider) {
+        mModels = models;
+        mTermProvider = termProvider;
+    }
+
+    /**
+     * Creates the index if not done yet. Must be called while the list can not be modified.
+     */
+    public synchronized void build() {
+        if (mTerms != null) {
+            return;
+        }
+
+        final int count = mModels.size();
+        final String[] terms = new String[count];
+        final HashMap<Long, Posting> postings = new HashMap<>();
+
+        for (int position = 0; position < count; position++) {
+            final String term = normalize(mTermProvider.getSearchTerm(mModels.get(position)));
+            terms[position] = term;
+
+            for (int start = 0; start + GRAM_LENGTH <= term.length(); start++) {
+                final long gram = packGram(term, start);
+
+                Posting posting = postings.get(gram);
+                if (posting == null) {
+                    posting = new Posting();
+                    postings.put(gram, posting);
+                }
+                posting.add(position);
+            }
+        }
+
+        mPostings = new HashMap<>(postings.size() * 4 / 3 + 1);
+        for (HashMap.Entry<Long, Posting> entry : postings.entrySet()) {
+            mPostings.put(entry.getKey(), entry.getValue().toArray());
+        }
+        mTerms = terms;
+    }
+
+    /**
+     * Returns all models whose search term contains the query, ignoring case and accents.
+     *
+     * @param query The query.
+     * @return The matching models in the order of the list.
+     */
+    public synchronized List<T> search(@NonNull final String query) {
+        final int[] positions = searchPositions(query);
+
+        final List<T> result = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            result.add(mModels.get(position));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the positions of all models whose search term contains the query, ignoring case and accents.
+     *
+     * @param query The query.
+     * @return The ascending positions of the matching models.
+     */
+    public synchronized int[] searchPositions(@NonNull final String query) {
+        build();
+
+        final String normalizedQuery = normalize(query);
+
+        int[] result;
+        if (mLastQuery != null && normalizedQuery.contains(mLastQuery)) {
+            // the query was extended, the result can only shrink
+            result = verify(mLastResult, mLastResult.length, normalizedQuery);
+        } else if (normalizedQuery.length() >= GRAM_LENGTH) {
+            result = intersectPostings(normalizedQuery);
+            result = verify(result, result.length, normalizedQuery);
+        } else {
+            result = scan(normalizedQuery);
+        }
+
+        mLastQuery = normalizedQuery;
+        mLastResult = result;
+
+        return result;
+    }
+
+    /**
+     * Normalizes a string for the search: accents are removed and all characters are lower case.
+     */
+    @NonNull
+    public static String normalize(final String string) {
+        if (string == null || string.isEmpty()) {
+            return "";
+        }
+
+        final String decomposed = Normalizer.normalize(string, Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    private int[] intersectPostings(final String normalizedQuery) {
+        final List<int[]> postings = new ArrayList<>();
+        for (int start = 0; start + GRAM_LENGTH <= normalizedQuery.length(); start++) {
+            final int[] posting = mPostings.get(packGram(normalizedQuery, start));
+            if (posting == null) {
+                return NO_POSITIONS;
+            }
+            postings.add(posting);
+        }
+
+        // start with the shortest posting list to keep the intermediate results small
+        int[] shortest = postings.get(0);
+        for (int[] posting : postings) {
+            if (posting.length < shortest.length) {
+                shortest = posting;
+            }
+        }
+
+        int[] result = shortest;
+        int resultSize = shortest.length;
+        for (int[] posting : postings) {
+            if (posting == shortest) {
+                continue;
+            }
+
+            final int[] intersection = new int[resultSize];
+            int size = 0;
+            int index = 0;
+            for (int i = 0; i < resultSize && index < posting.length; i++) {
+                final int position = result[i];
+                while (index < posting.length && posting[index] < position) {
+                    index++;
+                }
+                if (index < posting.length && posting[index] == position) {
+                    intersection[size++] = position;
+                }
+            }
+
+            result = intersection;
+            resultSize = size;
+            if (resultSize == 0) {
+                return NO_POSITIONS;
+            }
+        }
+
+        return resultSize == result.length ? result : Arrays.copyOf(result, resultSize);
+    }
+
+    private int[] verify(final int[] candidates, final int count, final String normalizedQuery) {
+        final int[] result = new int[count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            if (mTerms[candidates[i]].contains(normalizedQuery)) {
+                result[size++] = candidates[i];
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    private int[] scan(final String normalizedQuery) {
+        final int[] result = new int[mTerms.length];
+        int size = 0;
+        for (int position = 0; position < mTerms.length; position++) {
+            if (mTerms[position].contains(normalizedQuery)) {
+                result[size++] = position;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static long packGram(final String term, final int start) {
+        return ((long) term.charAt(start) << 32) | ((long) term.charAt(start + 1) << 16) | term.charAt(start + 2);
+    }
+
+    /**
+     * Growing list of ascending positions without duplicates.
+     */
+    private static class Posting {
+
+        private int[] mPositions = new int[4];
+
+        private int mSize;
+
+        void add(final int position) {
+            if (mSize > 0 && mPositions[mSize - 1] == position) {
+                return;
+            }
+            if (mSize == mPositions.length) {
+                mPositions = Arrays.copyOf(mPositions, mSize * 2);
+            }
+            mPositions[mSize++] = position;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(mPositions, mSize);
+        }
+    }
+}
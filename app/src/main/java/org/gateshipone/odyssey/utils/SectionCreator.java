@@ -35,6 +35,13 @@ public class SectionCreator<T extends GenericModel> {
         char getSectionName(T model);
     }
 
+    /**
+     * Provides the section names of a list by position, allows to create sections without accessing the models.
+     */
+    public interface SectionSource {
+        char getSectionName(int position);
+    }
+
     private final SectionChooser<T> mSectionChooser;
 
     private final List<String> mSectionList;
@@ -51,23 +58,21 @@ public class SectionCreator<T extends GenericModel> {
     }
 
     public void createSections(final List<T> modelData) {
-        clearSections();
+        createSections(modelData.size(), position -> mSectionChooser.getSectionName(modelData.get(position)));
+    }
 
-        final int count = modelData.size();
+    public void createSections(final int count, final SectionSource sectionSource) {
+        clearSections();
 
         if (count > 0) {
-            T currentModel = modelData.get(0);
-
-            char lastSection = mSectionChooser.getSectionName(currentModel);
+            char lastSection = sectionSource.getSectionName(0);
 
             mSectionList.add(String.valueOf(lastSection));
             mSectionPositions.add(0);
             mPositionSectionMap.put(lastSection, mSectionList.size() - 1);
 
             for (int i = 1; i < count; i++) {
-                currentModel = modelData.get(i);
-
-                final char currentSection = mSectionChooser.getSectionName(currentModel);
+                final char currentSection = sectionSource.getSectionName(i);
 
                 if (lastSection != currentSection) {
                     mSectionList.add("" + currentSection);
@@ -24,8 +24,10 @@ package org.gateshipone.odyssey.viewitems;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
 import android.util.Pair;
 import android.view.LayoutInflater;
+import android.view.View;
 import android.view.animation.AnimationUtils;
 import android.widget.ImageView;
 import android.widget.RelativeLayout;
@@ -36,6 +38,7 @@ import androidx.annotation.LayoutRes;
 
 import org.gateshipone.odyssey.adapter.ScrollSpeedAdapter;
 import org.gateshipone.odyssey.artwork.ArtworkManager;
+import org.gateshipone.odyssey.artwork.BitmapPool;
 import org.gateshipone.odyssey.models.GenericModel;
 import org.gateshipone.odyssey.utils.AsyncLoader;
 
@@ -46,6 +49,12 @@ public abstract class GenericImageViewItem extends RelativeLayout implements Cov
     private Bitmap mBitmap = null;
     private final ViewSwitcher mSwitcher;
 
+    /**
+     * View that is shown until the image is loaded and its background from the layout
+     */
+    private final View mPlaceholderView;
+    private final Drawable mPlaceholderBackground;
+
     private AsyncLoader mLoaderTask;
     private boolean mCoverDone;
 
@@ -67,6 +76,9 @@ public abstract class GenericImageViewItem extends RelativeLayout implements Cov
         mImageView = findViewById(imageviewID);
         mSwitcher = findViewById(switcherID);
 
+        mPlaceholderView = mSwitcher != null ? mSwitcher.getChildAt(0) : null;
+        mPlaceholderBackground = mPlaceholderView != null ? mPlaceholderView.getBackground() : null;
+
         mHolder = new AsyncLoader.CoverViewHolder();
         mHolder.coverLoadable = this;
         mHolder.mAdapter = adapter;
@@ -107,6 +119,9 @@ public abstract class GenericImageViewItem extends RelativeLayout implements Cov
     public void prepareArtworkFetching(final ArtworkManager artworkManager, final GenericModel modelItem) {
         if (!modelItem.equals(mHolder.modelItem) || !mCoverDone) {
             setImage(null);
+
+            // paint the average color of the image until the image itself is decoded
+            setPlaceholderColor(artworkManager.getPlaceholderColor(modelItem));
         }
         mHolder.artworkManager = artworkManager;
         mHolder.modelItem = modelItem;
@@ -135,6 +150,16 @@ public abstract class GenericImageViewItem extends RelativeLayout implements Cov
      */
     @Override
     public void setImage(final Bitmap image) {
+        if (mBitmap != image) {
+            // report the shown bitmap so an evicted bitmap is not reused while it is visible
+            if (mBitmap != null) {
+                BitmapPool.getInstance().release(mBitmap);
+            }
+            if (image != null) {
+                BitmapPool.getInstance().acquire(image);
+            }
+        }
+
         mBitmap = image;
         if (image != null) {
             mCoverDone = true;
@@ -150,6 +175,7 @@ public abstract class GenericImageViewItem extends RelativeLayout implements Cov
 
             mCoverDone = false;
             mHolder.modelItem = null;
+            setPlaceholderColor(0);
 
             mSwitcher.setOutAnimation(null);
             mSwitcher.setInAnimation(null);
@@ -160,7 +186,30 @@ public abstract class GenericImageViewItem extends RelativeLayout implements Cov
         }
     }
 
+    /**
+     * Sets the background of the placeholder.
+     *
+     * @param color The color of the image or 0 to use the background of the layout.
+     */
+    private void setPlaceholderColor(final int color) {
+        if (mPlaceholderView == null) {
+            return;
+        }
+
+        if (color != 0) {
+            mPlaceholderView.setBackgroundColor(color);
+        } else {
+            mPlaceholderView.setBackground(mPlaceholderBackground);
+        }
+    }
+
+    /**
+     * @return The shown bitmap. It is excluded from reuse, as the caller might keep it.
+     */
     public Bitmap getBitmap() {
+        if (mBitmap != null) {
+            BitmapPool.getInstance().pin(mBitmap);
+        }
         return mBitmap;
     }
 }
@@ -33,6 +33,7 @@ import androidx.preference.PreferenceManager;
 
 import org.gateshipone.odyssey.R;
 import org.gateshipone.odyssey.models.TrackModel;
+import org.gateshipone.odyssey.utils.CursorModelList;
 import org.gateshipone.odyssey.utils.MusicLibraryHelper;
 
 import java.lang.ref.WeakReference;
@@ -45,6 +46,11 @@ public class TrackViewModel extends GenericViewModel<TrackModel> {
      */
     private final long mAlbumId;
 
+    /**
+     * The cursor backed list of all tracks that is currently published, owned by this view model.
+     */
+    private CursorModelList<TrackModel> mTrackList;
+
     private TrackViewModel(@NonNull final Application application, final long albumId) {
         super(application);
 
@@ -56,6 +62,28 @@ public class TrackViewModel extends GenericViewModel<TrackModel> {
         new TrackLoaderTask(this).execute();
     }
 
+    @Override
+    protected void setData(final List<TrackModel> data) {
+        super.setData(data);
+
+        // the new list was delivered to the observers, the previous cursor is not needed anymore
+        if (mTrackList != null && mTrackList != data) {
+            mTrackList.close();
+        }
+        mTrackList = data instanceof CursorModelList ? (CursorModelList<TrackModel>) data : null;
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+
+        // the view model survives configuration changes, so the cursor is only released here
+        if (mTrackList != null) {
+            mTrackList.close();
+            mTrackList = null;
+        }
+    }
+
     private static class TrackLoaderTask extends AsyncTask<Void, Void, List<TrackModel>> {
 
         private final WeakReference<TrackViewModel> mViewModel;
@@ -72,8 +100,8 @@ public class TrackViewModel extends GenericViewModel<TrackModel> {
                 final Application application = model.getApplication();
 
                 if (model.mAlbumId == -1) {
-                    // load all tracks
-                    return MusicLibraryHelper.getAllTracks(null, application);
+                    // load all tracks, only the visible parts are created as models
+                    return MusicLibraryHelper.getAllTracksPaged(application);
                 } else {
                     // load album tracks
 
@@ -94,6 +122,8 @@ public class TrackViewModel extends GenericViewModel<TrackModel> {
 
             if (model != null) {
                 model.setData(result);
+            } else if (result instanceof CursorModelList) {
+                ((CursorModelList<TrackModel>) result).close();
             }
         }
     }
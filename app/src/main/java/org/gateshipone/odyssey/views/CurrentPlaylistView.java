@@ -30,6 +30,7 @@ import android.view.View;
 import android.widget.AdapterView;
 import android.widget.LinearLayout;
 import android.widget.ListView;
+import android.widget.ProgressBar;
 
 import androidx.annotation.Nullable;
 
@@ -45,6 +46,11 @@ public class CurrentPlaylistView extends LinearLayout implements AdapterView.OnI
     private final ListView mListView;
     private final Context mContext;
 
+    /**
+     * Shown while tracks of folders and playlists are still added in the background
+     */
+    private final ProgressBar mLoadingView;
+
     @Nullable
     private CurrentPlaylistAdapter mCurrentPlaylistAdapter;
 
@@ -53,6 +59,11 @@ public class CurrentPlaylistView extends LinearLayout implements AdapterView.OnI
 
     private boolean mHideArtwork;
 
+    /**
+     * Index of the playing track the list was last positioned to
+     */
+    private int mSelectedPlayingIndex = -1;
+
     public CurrentPlaylistView(Context context) {
         this(context, null);
     }
@@ -62,6 +73,13 @@ public class CurrentPlaylistView extends LinearLayout implements AdapterView.OnI
      */
     public CurrentPlaylistView(Context context, AttributeSet attrs) {
         super(context, attrs);
+        setOrientation(VERTICAL);
+
+        mLoadingView = new ProgressBar(context, null, android.R.attr.progressBarStyleHorizontal);
+        mLoadingView.setIndeterminate(true);
+        mLoadingView.setVisibility(GONE);
+        addView(mLoadingView, new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT));
+
         LayoutInflater.from(context).inflate(R.layout.list_linear, this, true);
 
         // get listview
@@ -90,16 +108,20 @@ public class CurrentPlaylistView extends LinearLayout implements AdapterView.OnI
 
         // set the selection to the current track, so the list view will positioned appropriately
         try {
-            mListView.setSelection(mPlaybackServiceConnection.getPBS().getCurrentIndex());
+            mSelectedPlayingIndex = mPlaybackServiceConnection.getPBS().getCurrentIndex();
+            mListView.setSelection(mSelectedPlayingIndex);
         } catch (RemoteException e) {
             e.printStackTrace();
         }
+
+        updateLoadingView();
     }
 
     public void unregisterPBSeviceConnection() {
         mListView.setAdapter(null);
         mPlaybackServiceConnection = null;
         mCurrentPlaylistAdapter = null;
+        mLoadingView.setVisibility(GONE);
     }
 
     /**
@@ -138,8 +160,31 @@ public class CurrentPlaylistView extends LinearLayout implements AdapterView.OnI
         if (mCurrentPlaylistAdapter != null) {
             mCurrentPlaylistAdapter.updateState(info);
         }
-        // set the selection to the current track, so the list view will positioned appropriately
-        mListView.setSelection(info.getPlayingIndex());
+        // set the selection to the current track, so the list view will positioned appropriately.
+        // Only do this if the track changed, the playlist changes while tracks are added in the
+        // background and the user should be able to scroll meanwhile.
+        if (info.getPlayingIndex() != mSelectedPlayingIndex) {
+            mSelectedPlayingIndex = info.getPlayingIndex();
+            mListView.setSelection(mSelectedPlayingIndex);
+        }
+
+        updateLoadingView();
+    }
+
+    /**
+     * Shows the progress bar while tracks are still added to the playlist.
+     */
+    private void updateLoadingView() {
+        boolean isLoadingTracks = false;
+        try {
+            if (mPlaybackServiceConnection != null) {
+                isLoadingTracks = mPlaybackServiceConnection.getPBS().isLoadingTracks();
+            }
+        } catch (RemoteException e) {
+            e.printStackTrace();
+        }
+
+        mLoadingView.setVisibility(isLoadingTracks ? VISIBLE : GONE);
     }
 
     /**
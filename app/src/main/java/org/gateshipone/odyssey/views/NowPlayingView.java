@@ -383,6 +383,13 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
                 e.printStackTrace();
             }
             return true;
+        } else if (itemId == R.id.view_nowplaying_action_cancel_loading) {
+            try {
+                mServiceConnection.getPBS().cancelLoadingTracks();
+            } catch (RemoteException e) {
+                e.printStackTrace();
+            }
+            return true;
         } else if (itemId == R.id.view_nowplaying_action_saveplaylist) {
             // open dialog in order to save the current playlist as a playlist in the mediastore
             ChoosePlaylistDialog choosePlaylistDialog = new ChoosePlaylistDialog();
@@ -973,12 +980,17 @@ public class NowPlayingView extends RelativeLayout implements SeekBar.OnSeekBarC
         }
 
         boolean hasActiveSleepTimer = false;
+        boolean isLoadingTracks = false;
         try {
             hasActiveSleepTimer = mServiceConnection.getPBS().hasActiveSleepTimer();
+            isLoadingTracks = mServiceConnection.getPBS().isLoadingTracks();
         } catch (RemoteException e) {
             e.printStackTrace();
         }
 
+        // Tracks of folders and playlists are still added in the background
+        menu.findItem(R.id.view_nowplaying_action_cancel_loading).setVisible(isLoadingTracks);
+
         if (hasActiveSleepTimer) {
             menu.findItem(R.id.view_nowplaying_action_start_sleep_timer).setVisible(false);
             menu.findItem(R.id.view_nowplaying_action_cancel_sleep_timer).setVisible(true);
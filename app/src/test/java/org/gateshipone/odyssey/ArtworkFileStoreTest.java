@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.gateshipone.odyssey.artwork.storage.ArtworkFileStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Checks the deduplication and the migration of the content addressed artwork files.
+ */
+public class ArtworkFileStoreTest {
+
+    private File mDirectory;
+
+    private ArtworkFileStore mFileStore;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("artwork", "");
+        mDirectory.delete();
+        mDirectory.mkdirs();
+
+        mFileStore = new ArtworkFileStore(mDirectory);
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void identicalImagesShareOneFile() throws IOException {
+        final String first = mFileStore.commit(mFileStore.write(getImage("cover")));
+        final String second = mFileStore.commit(mFileStore.write(getImage("cover")));
+        final String other = mFileStore.commit(mFileStore.write(getImage("other cover")));
+
+        assertEquals(first, second);
+        assertNotEquals(first, other);
+        assertEquals(2, getFileCount());
+        assertEquals(getImage("cover").length, mFileStore.getSize(first));
+    }
+
+    @Test
+    public void discardedFilesAreRemoved() throws IOException {
+        final ArtworkFileStore.PendingFile pendingFile = mFileStore.write(getImage("cover"));
+        assertEquals(1, getFileCount());
+
+        mFileStore.discard(pendingFile);
+        assertEquals(0, getFileCount());
+        assertEquals(0, mFileStore.getSize(pendingFile.getFileName()));
+    }
+
+    @Test
+    public void leftoverPendingFilesAreRemoved() throws IOException {
+        final String fileName = mFileStore.commit(mFileStore.write(getImage("cover")));
+        mFileStore.write(getImage("interrupted"));
+
+        // Left behind by an earlier process
+        for (File file : mDirectory.listFiles()) {
+            if (!file.getName().equals(fileName)) {
+                assertTrue(file.setLastModified(System.currentTimeMillis() - 60 * 60 * 1000));
+            }
+        }
+
+        mFileStore.removePendingFiles();
+
+        assertEquals(1, getFileCount());
+        assertTrue(new File(mDirectory, fileName).isFile());
+    }
+
+    @Test
+    public void runningWritesAreKept() throws IOException {
+        final ArtworkFileStore.PendingFile pendingFile = mFileStore.write(getImage("downloading"));
+
+        mFileStore.removePendingFiles();
+
+        assertEquals(1, getFileCount());
+        assertEquals(pendingFile.getFileName(), mFileStore.commit(pendingFile));
+        assertEquals(1, getFileCount());
+    }
+
+    @Test
+    public void migrationRenamesAndDeduplicatesFiles() throws IOException {
+        writeFile("album1.jpg", "cover");
+        writeFile("album2.jpg", "cover");
+
+        final String contentName = mFileStore.getContentName("album1.jpg");
+        assertEquals(contentName, mFileStore.getContentName("album2.jpg"));
+        assertEquals(contentName, mFileStore.commit(mFileStore.write(getImage("cover"))));
+        assertNull(mFileStore.getContentName("missing.jpg"));
+
+        assertTrue(mFileStore.move("album1.jpg", contentName));
+        assertTrue(mFileStore.move("album2.jpg", contentName));
+
+        assertEquals(1, getFileCount());
+        assertFalse(new File(mDirectory, "album1.jpg").exists());
+        assertEquals(contentName, mFileStore.getContentName(contentName));
+    }
+
+    private int getFileCount() {
+        final String[] files = mDirectory.list();
+        return files == null ? 0 : files.length;
+    }
+
+    private void writeFile(final String fileName, final String content) throws IOException {
+        try (FileOutputStream outputStream = new FileOutputStream(new File(mDirectory, fileName))) {
+            outputStream.write(getImage(content));
+        }
+    }
+
+    private static byte[] getImage(final String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+}
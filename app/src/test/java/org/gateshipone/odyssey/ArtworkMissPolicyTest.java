@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2020 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.gateshipone.odyssey.artwork.storage.ArtworkMissPolicy;
+import org.junit.Test;
+
+/**
+ * Checks the backoff of the negative artwork cache.
+ */
+public class ArtworkMissPolicyTest {
+
+    private static final long ONE_MINUTE_MS = 60 * 1000;
+
+    private static final long ONE_DAY_MS = 24 * 60 * ONE_MINUTE_MS;
+
+    @Test
+    public void transientFailuresBackOffExponentially() {
+        assertEquals(5 * ONE_MINUTE_MS, ArtworkMissPolicy.getRetryDelay(true, 1));
+        assertEquals(10 * ONE_MINUTE_MS, ArtworkMissPolicy.getRetryDelay(true, 2));
+        assertEquals(20 * ONE_MINUTE_MS, ArtworkMissPolicy.getRetryDelay(true, 3));
+
+        // a transient failure never blocks an item for longer than a day
+        assertEquals(ONE_DAY_MS, ArtworkMissPolicy.getRetryDelay(true, 20));
+        assertEquals(ONE_DAY_MS, ArtworkMissPolicy.getRetryDelay(true, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void missingImagesAreNotRequestedEverySession() {
+        assertEquals(7 * ONE_DAY_MS, ArtworkMissPolicy.getRetryDelay(false, 1));
+        assertEquals(14 * ONE_DAY_MS, ArtworkMissPolicy.getRetryDelay(false, 2));
+        assertEquals(90 * ONE_DAY_MS, ArtworkMissPolicy.getRetryDelay(false, 10));
+
+        assertTrue(ArtworkMissPolicy.getRetryDelay(false, 1) > ArtworkMissPolicy.getRetryDelay(true, 20));
+    }
+
+    @Test
+    public void invalidFailureCountUsesBaseDelay() {
+        assertEquals(ArtworkMissPolicy.getRetryDelay(true, 1), ArtworkMissPolicy.getRetryDelay(true, 0));
+        assertEquals(ArtworkMissPolicy.getRetryDelay(false, 1), ArtworkMissPolicy.getRetryDelay(false, -3));
+    }
+
+    @Test
+    public void statusCodes() {
+        assertTrue(ArtworkMissPolicy.isTransientStatus(503));
+        assertTrue(ArtworkMissPolicy.isTransientStatus(500));
+        assertTrue(ArtworkMissPolicy.isTransientStatus(429));
+        assertTrue(ArtworkMissPolicy.isTransientStatus(408));
+
+        assertFalse(ArtworkMissPolicy.isTransientStatus(404));
+        assertFalse(ArtworkMissPolicy.isTransientStatus(400));
+    }
+}
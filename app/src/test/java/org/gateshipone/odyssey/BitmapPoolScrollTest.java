@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+
+import org.gateshipone.odyssey.artwork.BitmapPool;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Scripted scroll through a long grid of covers. The covers are taken from the {@link BitmapPool}
+ * like the decoder does, shown in a fixed number of views and evicted from a small cache. Checks that
+ * evicted covers are reused and that a cover is never reused while a view shows it.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 30)
+public class BitmapPoolScrollTest {
+
+    private static final int COVERS = 2000;
+
+    private static final int VISIBLE_VIEWS = 12;
+
+    private static final int CACHED_COVERS = 48;
+
+    private static final int COVER_SIZE = 64;
+
+    @Test
+    public void scrollReusesEvictedCovers() {
+        final BitmapPool pool = BitmapPool.getInstance();
+        final long reuseStart = pool.getReuseCount();
+        int allocated = 0;
+
+        final Bitmap[] views = new Bitmap[VISIBLE_VIEWS];
+        final Set<Bitmap> shown = Collections.newSetFromMap(new IdentityHashMap<>());
+        final ArrayDeque<Bitmap> cache = new ArrayDeque<>();
+
+        for (int position = 0; position < COVERS; position++) {
+            Bitmap cover = pool.get(COVER_SIZE, COVER_SIZE, Bitmap.Config.ARGB_8888);
+            if (cover == null) {
+                cover = Bitmap.createBitmap(COVER_SIZE, COVER_SIZE, Bitmap.Config.ARGB_8888);
+                allocated++;
+            } else {
+                assertFalse("Reused a cover that is still shown", shown.contains(cover));
+                assertFalse("Reused a cover that is still cached", cache.contains(cover));
+            }
+
+            cache.addLast(cover);
+            if (cache.size() > CACHED_COVERS) {
+                pool.offer(cache.removeFirst());
+            }
+
+            // the view of the position scrolled out of the screen is recycled
+            final int view = position % VISIBLE_VIEWS;
+            if (views[view] != null) {
+                pool.release(views[view]);
+                shown.remove(views[view]);
+            }
+            views[view] = cover;
+            pool.acquire(cover);
+            shown.add(cover);
+        }
+
+        // every cover was either reused or allocated, only the covers that fill the cache and the
+        // views need a new allocation
+        assertEquals(COVERS - allocated, pool.getReuseCount() - reuseStart);
+        assertTrue("Allocated " + allocated + " covers", allocated <= CACHED_COVERS + VISIBLE_VIEWS + 1);
+    }
+}
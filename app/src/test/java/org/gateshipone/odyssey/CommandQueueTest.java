@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.gateshipone.odyssey.playbackservice.CommandQueue;
+import org.gateshipone.odyssey.playbackservice.ControlObject;
+import org.gateshipone.odyssey.playbackservice.ControlObject.PLAYBACK_ACTION;
+import org.junit.Test;
+
+/**
+ * Checks that transport controls only overtake bulk library operations in the
+ * {@link CommandQueue} and that redundant transport controls are merged.
+ */
+public class CommandQueueTest {
+
+    @Test
+    public void transportCommandsOvertakeLibraryCommands() {
+        final CommandQueue queue = new CommandQueue();
+
+        assertTrue(queue.offer(new ControlObject(PLAYBACK_ACTION.ODYSSEY_PLAYALLTRACKS, "")));
+        assertTrue(queue.offer(new ControlObject(PLAYBACK_ACTION.ODYSSEY_ENQUEUEARTIST, 1L, "", "")));
+        assertTrue(queue.offer(new ControlObject(PLAYBACK_ACTION.ODYSSEY_ENQUEUEDIRECTORYANDSUBDIRECTORIES, "/music", "")));
+        assertTrue(queue.offer(new ControlObject(PLAYBACK_ACTION.ODYSSEY_TOGGLEPAUSE)));
+
+        assertEquals(PLAYBACK_ACTION.ODYSSEY_TOGGLEPAUSE, queue.poll().getAction());
+        // the library commands keep their order
+        assertEquals(PLAYBACK_ACTION.ODYSSEY_PLAYALLTRACKS, queue.poll().getAction());
+        assertEquals(PLAYBACK_ACTION.ODYSSEY_ENQUEUEARTIST, queue.poll().getAction());
+        assertEquals(PLAYBACK_ACTION.ODYSSEY_ENQUEUEDIRECTORYANDSUBDIRECTORIES, queue.poll().getAction());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void transportCommandsKeepOrderOfOtherCommands() {
+        final CommandQueue queue = new CommandQueue();
+
+        assertTrue(queue.offer(new ControlObject(PLAYBACK_ACTION.ODYSSEY_ENQUEUEALBUM, 1L, "")));
+        assertTrue(queue.offer(new ControlObject(PLAYBACK_ACTION.ODYSSEY_DEQUEUETRACK, 3)));
+        assertTrue(queue.offer(new ControlObject(PLAYBACK_ACTION.ODYSSEY_RANDOM)));
+        assertTrue(queue.offer(new ControlObject(PLAYBACK_ACTION.ODYSSEY_NEXT)));
+
+        // the next track depends on the removed track and the random state
+        assertNull(queue.pollTransportCommand());
+        assertEquals(PLAYBACK_ACTION.ODYSSEY_ENQUEUEALBUM, queue.poll().getAction());
+        assertEquals(PLAYBACK_ACTION.ODYSSEY_DEQUEUETRACK, queue.poll().getAction());
+        assertEquals(PLAYBACK_ACTION.ODYSSEY_RANDOM, queue.poll().getAction());
+        assertEquals(PLAYBACK_ACTION.ODYSSEY_NEXT, queue.poll().getAction());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void transportCommandsDoNotOvertakePlayCommands() {
+        final CommandQueue queue = new CommandQueue();
+
+        assertTrue(queue.offer(new ControlObject(PLAYBACK_ACTION.ODYSSEY_SEEKTO, 1000)));
+        assertTrue(queue.offer(new ControlObject(PLAYBACK_ACTION.ODYSSEY_PLAYALBUM, 1L, "")));
+        assertTrue(queue.offer(new ControlObject(PLAYBACK_ACTION.ODYSSEY_NEXT)));
+        assertFalse(queue.offer(new ControlObject(PLAYBACK_ACTION.ODYSSEY_NEXT)));
+
+        // the seek was sent before the new playback, the skips belong to the new playback
+        assertEquals(PLAYBACK_ACTION.ODYSSEY_SEEKTO, queue.pollTransportCommand().getAction());
+        assertNull(queue.pollTransportCommand());
+        assertEquals(PLAYBACK_ACTION.ODYSSEY_PLAYALBUM, queue.poll().getAction());
+        final ControlObject next = queue.poll();
+        assertEquals(PLAYBACK_ACTION.ODYSSEY_NEXT, next.getAction());
+        assertEquals(2, CommandQueue.getSkipCount(next));
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void pollTransportCommandKeepsLibraryCommands() {
+        final CommandQueue queue = new CommandQueue();
+
+        queue.offer(new ControlObject(PLAYBACK_ACTION.ODYSSEY_ENQUEUEALBUM, 1L, ""));
+        queue.offer(new ControlObject(PLAYBACK_ACTION.ODYSSEY_PREVIOUS));
+
+        assertEquals(PLAYBACK_ACTION.ODYSSEY_PREVIOUS, queue.pollTransportCommand().getAction());
+        assertNull(queue.pollTransportCommand());
+        assertEquals(1, queue.size());
+        assertEquals(PLAYBACK_ACTION.ODYSSEY_ENQUEUEALBUM, queue.poll().getAction());
+    }
+
+    @Test
+    public void nextCommandsAreMerged() {
+        final CommandQueue queue = new CommandQueue();
+
+        assertTrue(queue.offer(new ControlObject(PLAYBACK_ACTION.ODYSSEY_NEXT)));
+        for (int i = 0; i < 4; i++) {
+            assertFalse(queue.offer(new ControlObject(PLAYBACK_ACTION.ODYSSEY_NEXT)));
+        }
+
+        assertEquals(1, queue.size());
+        final ControlObject next = queue.poll();
+        assertEquals(PLAYBACK_ACTION.ODYSSEY_NEXT, next.getAction());
+        assertEquals(5, CommandQueue.getSkipCount(next));
+    }
+
+    @Test
+    public void onlyConsecutiveCommandsAreMerged() {
+        final CommandQueue queue = new CommandQueue();
+
+        queue.offer(new ControlObject(PLAYBACK_ACTION.ODYSSEY_SEEKTO, 1000));
+        assertFalse(queue.offer(new ControlObject(PLAYBACK_ACTION.ODYSSEY_SEEKTO, 2000)));
+        queue.offer(new ControlObject(PLAYBACK_ACTION.ODYSSEY_NEXT));
+        // a seek after the next command belongs to the next track
+        assertTrue(queue.offer(new ControlObject(PLAYBACK_ACTION.ODYSSEY_SEEKTO, 3000)));
+        assertTrue(queue.offer(new ControlObject(PLAYBACK_ACTION.ODYSSEY_NEXT)));
+
+        assertEquals(4, queue.size());
+        assertEquals(2000, queue.poll().getIntParam());
+        assertEquals(1, CommandQueue.getSkipCount(queue.poll()));
+        assertEquals(3000, queue.poll().getIntParam());
+        assertEquals(1, CommandQueue.getSkipCount(queue.poll()));
+    }
+}
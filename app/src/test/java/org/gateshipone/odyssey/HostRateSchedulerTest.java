@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.gateshipone.odyssey;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.gateshipone.odyssey.artwork.network.HostRateScheduler;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fetches fake artwork from a {@link LocalArtworkServer} through the per host rate limiting. The
+ * token buckets run on a manual clock, so every dispatch happens at a known time.
+ */
+public class HostRateSchedulerTest {
+
+    private static final int REQUESTS_PER_HOST = 8;
+
+    private static final long REFILL_INTERVAL_MS = 100;
+
+    private static final long SERVER_LATENCY_MS = 20;
+
+    @Test
+    public void independentHostsAreFetchedInParallel() throws Exception {
+        final LocalArtworkServer server = new LocalArtworkServer(SERVER_LATENCY_MS);
+        final ExecutorService network = Executors.newFixedThreadPool(4);
+        final CountDownLatch done = new CountDownLatch(2 * REQUESTS_PER_HOST);
+        final Semaphore dispatches = new Semaphore(0);
+        final ManualClock clock = new ManualClock();
+        final Map<String, List<Long>> dispatchTimes = Collections.synchronizedMap(new HashMap<>());
+
+        final HostRateScheduler<String> scheduler = new HostRateScheduler<>(url -> {
+            final String host;
+            try {
+                host = new URL(url).getHost();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            synchronized (dispatchTimes) {
+                List<Long> times = dispatchTimes.get(host);
+                if (times == null) {
+                    times = new ArrayList<>();
+                    dispatchTimes.put(host, times);
+                }
+                times.add(clock.now());
+            }
+
+            network.execute(() -> {
+                try {
+                    LocalArtworkServer.fetch(url);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    done.countDown();
+                }
+            });
+            dispatches.release();
+        }, 1, REFILL_INTERVAL_MS, clock);
+
+        for (int i = 0; i < REQUESTS_PER_HOST; i++) {
+            for (String host : new String[]{"127.0.0.1", "localhost"}) {
+                scheduler.add(host, 0, server.getUrl(host, "cover" + i + ".jpg"));
+            }
+        }
+
+        // every interval both hosts get one token, one shared limit would only dispatch one request
+        for (int i = 0; i < REQUESTS_PER_HOST; i++) {
+            assertTrue(dispatches.tryAcquire(2, 10, TimeUnit.SECONDS));
+            assertEquals(0, dispatches.availablePermits());
+            clock.advance(REFILL_INTERVAL_MS);
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        scheduler.shutdown();
+        network.shutdown();
+        server.stop();
+
+        assertEquals(2 * REQUESTS_PER_HOST, server.getRequestCount());
+        assertEquals(0, scheduler.getPendingCount());
+
+        // every host stays within its rate limit
+        assertEquals(2, dispatchTimes.size());
+        for (List<Long> times : dispatchTimes.values()) {
+            assertEquals(REQUESTS_PER_HOST, times.size());
+            for (int i = 0; i < times.size(); i++) {
+                assertEquals(i * REFILL_INTERVAL_MS, (long) times.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void visibleRequestsAreSentFirst() throws Exception {
+        final List<String> dispatched = Collections.synchronizedList(new ArrayList<>());
+        final Semaphore dispatches = new Semaphore(0);
+        final ManualClock clock = new ManualClock();
+
+        final HostRateScheduler<String> scheduler = new HostRateScheduler<>(item -> {
+            dispatched.add(item);
+            dispatches.release();
+        }, 1, 50, clock);
+
+        // takes the only token, the following requests wait for the clock
+        scheduler.add("host", 0, "first");
+        assertTrue(dispatches.tryAcquire(1, 5, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 3; i++) {
+            scheduler.add("host", 0, "background" + i);
+        }
+        scheduler.add("host", 1, "visible");
+
+        for (int i = 0; i < 4; i++) {
+            clock.advance(50);
+            assertTrue(dispatches.tryAcquire(1, 5, TimeUnit.SECONDS));
+        }
+        scheduler.shutdown();
+
+        assertEquals(Arrays.asList("first", "visible", "background0", "background1", "background2"), dispatched);
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    private static class ManualClock implements HostRateScheduler.Clock {
+        private final AtomicLong mTime = new AtomicLong();
+
+        @Override
+        public long now() {
+            return mTime.get();
+        }
+
+        void advance(final long ms) {
+            mTime.addAndGet(ms);
+        }
+    }
+}
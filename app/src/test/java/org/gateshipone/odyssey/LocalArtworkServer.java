@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for the artwork hosts. Answers every request with a small fake image after a
+ * fixed latency, so the throughput of the artwork pipeline can be measured offline.
+ * <p>
+ * The server is reachable as "127.0.0.1" and as "localhost", which are two different hosts for
+ * the rate limiting.
+ */
+public class LocalArtworkServer {
+
+    private static final byte[] FAKE_IMAGE = new byte[2048];
+
+    private final HttpServer mServer;
+
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+
+    public LocalArtworkServer(final long latencyMs) throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(0), 0);
+        mServer.setExecutor(mExecutor);
+        mServer.createContext("/", exchange -> {
+            mRequestCount.incrementAndGet();
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+
+            exchange.getResponseHeaders().add("Content-Type", "image/jpeg");
+            exchange.sendResponseHeaders(200, FAKE_IMAGE.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(FAKE_IMAGE);
+            }
+        });
+        mServer.start();
+    }
+
+    /**
+     * @return The url of a fake image on the given host name
+     */
+    public String getUrl(final String host, final String path) {
+        return "http://" + host + ":" + mServer.getAddress().getPort() + "/" + path;
+    }
+
+    public int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    public void stop() {
+        mServer.stop(0);
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Downloads the url and returns the number of received bytes.
+     */
+    public static int fetch(final String url) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try (InputStream input = connection.getInputStream()) {
+            int length = 0;
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                length += read;
+            }
+            return length;
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.gateshipone.odyssey.models.TrackModel;
+import org.gateshipone.odyssey.playbackservice.QueueProducer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that the {@link QueueProducer} hands over the first track alone, keeps the order of the
+ * tracks and jobs and stops cancelled jobs and the stopped lookup.
+ */
+public class QueueProducerTest {
+
+    private static final int TRACK_COUNT = 1234;
+
+    /**
+     * Single thread like the handler of the PlaybackService
+     */
+    private ExecutorService mResultExecutor;
+
+    private QueueProducer mProducer;
+
+    @Before
+    public void setUp() {
+        mResultExecutor = Executors.newSingleThreadExecutor();
+        mProducer = new QueueProducer(mResultExecutor);
+    }
+
+    @After
+    public void tearDown() {
+        mProducer.release();
+        mResultExecutor.shutdown();
+    }
+
+    @Test
+    public void firstTrackIsHandedOverAlone() throws InterruptedException {
+        final RecordingSink sink = new RecordingSink();
+
+        mProducer.start(consumer -> {
+            for (int i = 0; i < TRACK_COUNT; i++) {
+                consumer.onTrackFound(TestTracks.createTrack(i));
+            }
+        }, sink);
+        assertTrue(mProducer.isLoading());
+
+        assertTrue(sink.mFinished.await(10, TimeUnit.SECONDS));
+        waitForResults();
+        assertFalse(mProducer.isLoading());
+
+        assertEquals(1, (int) sink.mChunkSizes.get(0));
+        assertEquals(TRACK_COUNT, sink.mTracks.size());
+        for (int i = 0; i < TRACK_COUNT; i++) {
+            assertEquals(i, sink.mTracks.get(i).getTrackId());
+        }
+    }
+
+    @Test
+    public void jobsKeepTheirOrder() throws InterruptedException {
+        final RecordingSink sink = new RecordingSink();
+        final RecordingSink secondSink = new RecordingSink();
+
+        mProducer.start(consumer -> {
+            for (int i = 0; i < TRACK_COUNT; i++) {
+                consumer.onTrackFound(TestTracks.createTrack(i));
+            }
+        }, sink);
+        mProducer.start(consumer -> consumer.onTrackFound(TestTracks.createTrack(TRACK_COUNT)), secondSink);
+
+        assertTrue(secondSink.mFinished.await(10, TimeUnit.SECONDS));
+        assertEquals(0, sink.mFinished.getCount());
+        assertEquals(TRACK_COUNT, sink.mTracks.size());
+        assertEquals(1, secondSink.mTracks.size());
+    }
+
+    @Test
+    public void cancelStopsRunningAndWaitingJobs() throws InterruptedException {
+        final CountDownLatch firstChunk = new CountDownLatch(1);
+        final AtomicInteger foundTracks = new AtomicInteger();
+        final RecordingSink sink = new RecordingSink() {
+            @Override
+            public void onTracksLoaded(List<TrackModel> tracks) {
+                super.onTracksLoaded(tracks);
+                firstChunk.countDown();
+            }
+        };
+        final RecordingSink waitingSink = new RecordingSink();
+
+        // Looks up tracks until it is stopped
+        mProducer.start(consumer -> {
+            int i = 0;
+            while (consumer.onTrackFound(TestTracks.createTrack(i++))) {
+                foundTracks.incrementAndGet();
+            }
+        }, sink);
+        mProducer.start(consumer -> consumer.onTrackFound(TestTracks.createTrack(-1)), waitingSink);
+
+        assertTrue(firstChunk.await(10, TimeUnit.SECONDS));
+        mProducer.cancel();
+
+        // A job started after the cancel runs after the cancelled ones
+        final RecordingSink laterSink = new RecordingSink();
+        mProducer.start(consumer -> consumer.onTrackFound(TestTracks.createTrack(0)), laterSink);
+        assertTrue(laterSink.mFinished.await(10, TimeUnit.SECONDS));
+        waitForResults();
+
+        assertTrue(sink.mCancelled);
+        assertTrue(waitingSink.mCancelled);
+        assertFalse(laterSink.mCancelled);
+        assertTrue(waitingSink.mTracks.isEmpty());
+        assertTrue(sink.mTracks.size() <= foundTracks.get() + 1);
+        assertEquals(1, laterSink.mTracks.size());
+        assertFalse(mProducer.isLoading());
+    }
+
+    @Test
+    public void stopKeepsFoundTracks() throws InterruptedException {
+        final CountDownLatch firstChunk = new CountDownLatch(1);
+        final AtomicInteger foundTracks = new AtomicInteger();
+        final RecordingSink sink = new RecordingSink() {
+            @Override
+            public void onTracksLoaded(List<TrackModel> tracks) {
+                super.onTracksLoaded(tracks);
+                firstChunk.countDown();
+            }
+        };
+        final RecordingSink waitingSink = new RecordingSink();
+
+        // Looks up tracks until it is stopped
+        mProducer.start(consumer -> {
+            int i = 0;
+            while (consumer.onTrackFound(TestTracks.createTrack(i++))) {
+                foundTracks.incrementAndGet();
+            }
+        }, sink);
+        mProducer.start(consumer -> consumer.onTrackFound(TestTracks.createTrack(-1)), waitingSink);
+
+        assertTrue(firstChunk.await(10, TimeUnit.SECONDS));
+        mProducer.stop();
+
+        assertTrue(waitingSink.mFinished.await(10, TimeUnit.SECONDS));
+        waitForResults();
+
+        // All accepted tracks are handed over, both jobs finish normally and only the running one was stopped
+        assertFalse(sink.mCancelled);
+        assertFalse(waitingSink.mCancelled);
+        assertEquals(foundTracks.get(), sink.mTracks.size());
+        assertEquals(1, waitingSink.mTracks.size());
+        assertFalse(mProducer.isLoading());
+    }
+
+    @Test
+    public void stopKeepsKnownTracks() throws InterruptedException {
+        final CountDownLatch stopped = new CountDownLatch(1);
+        final RecordingSink sink = new RecordingSink();
+
+        mProducer.start(consumer -> {
+            for (int i = 0; i < TRACK_COUNT; i++) {
+                consumer.onTrackFound(TestTracks.createTrack(i));
+                if (i == 0) {
+                    try {
+                        stopped.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }, false, sink);
+
+        mProducer.stop();
+        stopped.countDown();
+
+        assertTrue(sink.mFinished.await(10, TimeUnit.SECONDS));
+        waitForResults();
+
+        assertFalse(sink.mCancelled);
+        assertEquals(TRACK_COUNT, sink.mTracks.size());
+    }
+
+    @Test
+    public void cancelEndsLoadingImmediately() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final RecordingSink sink = new RecordingSink();
+
+        mProducer.start(consumer -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, sink);
+        assertTrue(mProducer.isLoading());
+
+        // Enqueues after a cleared playlist must not wait for the cancelled job
+        mProducer.cancel();
+        assertFalse(mProducer.isLoading());
+
+        release.countDown();
+        assertTrue(sink.mFinished.await(10, TimeUnit.SECONDS));
+        assertTrue(sink.mCancelled);
+        assertFalse(mProducer.isLoading());
+    }
+
+    private void waitForResults() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        mResultExecutor.execute(latch::countDown);
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+    }
+
+    private static class RecordingSink implements QueueProducer.TrackSink {
+        final List<TrackModel> mTracks = new ArrayList<>();
+
+        final List<Integer> mChunkSizes = new ArrayList<>();
+
+        final CountDownLatch mFinished = new CountDownLatch(1);
+
+        volatile boolean mCancelled;
+
+        @Override
+        public void onTracksLoaded(List<TrackModel> tracks) {
+            mChunkSizes.add(tracks.size());
+            mTracks.addAll(tracks);
+        }
+
+        @Override
+        public void onLoadingFinished(boolean cancelled) {
+            mCancelled = cancelled;
+            mFinished.countDown();
+        }
+    }
+}
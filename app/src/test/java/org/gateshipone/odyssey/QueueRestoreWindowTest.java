@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.gateshipone.odyssey.models.TrackModel;
+import org.gateshipone.odyssey.playbackservice.OdysseyServiceState;
+import org.gateshipone.odyssey.playbackservice.storage.OdysseyDatabaseManager;
+import org.gateshipone.odyssey.playbackservice.storage.QueueJournal;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that the tracks around the current track that are read on the start of the
+ * PlaybackService match the complete queue, for the journaled autosave and for a bookmark.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 30)
+public class QueueRestoreWindowTest {
+
+    private static final int QUEUE_SIZE = 1000;
+
+    private static final int RADIUS = 50;
+
+    @Test
+    public void readWindow() {
+        final OdysseyDatabaseManager databaseManager = OdysseyDatabaseManager.getInstance(ApplicationProvider.getApplicationContext());
+        final QueueJournal journal = databaseManager.getQueueJournal();
+
+        final List<TrackModel> queue = new ArrayList<>();
+        for (int i = 0; i < QUEUE_SIZE; i++) {
+            queue.add(TestTracks.createFileTrack(i));
+        }
+
+        journal.recordSnapshot();
+        databaseManager.saveState(queue, new OdysseyServiceState(), "auto", true, 1000);
+
+        // changes around the current track that are only stored in the journal
+        queue.add(500, TestTracks.createFileTrack(QUEUE_SIZE));
+        journal.recordAdd(500, queue.get(500));
+        queue.remove(480);
+        journal.recordRemove(480);
+        queue.add(510, queue.remove(20));
+        journal.recordMove(20, 510);
+        queue.add(0, TestTracks.createFileTrack(QUEUE_SIZE + 1));
+        journal.recordAdd(0, queue.get(0));
+        queue.set(505, TestTracks.createFileTrack(QUEUE_SIZE + 2));
+        journal.recordSet(505, queue.get(505));
+        databaseManager.saveState(queue, new OdysseyServiceState(), "auto", true, 2000);
+
+        checkWindow(databaseManager, queue, 500);
+        checkWindow(databaseManager, queue, 0);
+        checkWindow(databaseManager, queue, queue.size() - 1);
+
+        // a bookmark that is newer than the autosave is restored instead
+        final List<TrackModel> bookmark = new ArrayList<>(queue.subList(100, 300));
+        databaseManager.saveState(bookmark, new OdysseyServiceState(), "bookmark", false, 3000);
+
+        checkWindow(databaseManager, bookmark, 150);
+        checkWindow(databaseManager, bookmark, -1);
+    }
+
+    private void checkWindow(OdysseyDatabaseManager databaseManager, List<TrackModel> queue, int position) {
+        final List<TrackModel> window = databaseManager.readBookmarkTracksWindow(position, RADIUS);
+
+        assertEquals(queue.size(), window.size());
+
+        final int center = Math.max(0, position);
+        for (int i = 0; i < queue.size(); i++) {
+            if (Math.abs(i - center) <= RADIUS) {
+                assertEquals(queue.get(i).getTrackUriString(), window.get(i).getTrackUriString());
+            } else {
+                assertNull(window.get(i));
+            }
+        }
+    }
+}
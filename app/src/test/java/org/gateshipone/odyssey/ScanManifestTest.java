@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+
+import org.gateshipone.odyssey.mediascanner.MediaFileWalker;
+import org.gateshipone.odyssey.mediascanner.ScanManifest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class ScanManifestTest {
+
+    private File mRoot;
+
+    @Before
+    public void setUp() throws IOException {
+        mRoot = Files.createTempDirectory("odyssey_scan").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        delete(mRoot);
+    }
+
+    @Test
+    public void unchangedTreeReportsNoFiles() throws IOException {
+        final File album = createDirectory(mRoot, "artist/album");
+        createFile(album, "01.mp3", 10);
+        createFile(album, "02.mp3", 10);
+        createFile(album, "cover.jpg", 10);
+
+        final Set<String> database = new HashSet<>();
+        final ScanManifest first = walk(null, database, new ArrayList<>());
+        assertEquals(2, database.size());
+
+        final List<String> found = new ArrayList<>();
+        final ScanManifest second = walk(first, database, found);
+
+        assertTrue(found.isEmpty());
+        assertTrue(second.diff(first).isEmpty());
+    }
+
+    @Test
+    public void changedFilesAreReported() throws IOException {
+        final File album = createDirectory(mRoot, "artist/album");
+        createFile(album, "01.mp3", 10);
+        final File changed = createFile(album, "02.mp3", 10);
+        final long albumModified = album.lastModified();
+
+        final Set<String> database = new HashSet<>();
+        final ScanManifest first = walk(null, database, new ArrayList<>());
+
+        // a new file in a nested directory and a rewritten file in the album
+        final File added = createFile(createDirectory(mRoot, "artist/album/cd2"), "01.mp3", 10);
+        createFile(album, "02.mp3", 20);
+        album.setLastModified(albumModified - 10000);
+
+        final List<String> found = new ArrayList<>();
+        final ScanManifest second = walk(first, database, found);
+
+        Collections.sort(found);
+        final List<String> expected = new ArrayList<>();
+        expected.add(added.getPath());
+        expected.add(changed.getPath());
+        Collections.sort(expected);
+        assertEquals(expected, found);
+
+        final ScanManifest.Diff diff = second.diff(first);
+        assertEquals(Collections.singletonList(added.getPath()), diff.getAddedFiles());
+        assertEquals(Collections.singletonList(changed.getPath()), diff.getChangedFiles());
+        assertTrue(diff.getRemovedFiles().isEmpty());
+    }
+
+    @Test
+    public void filesAreMatchedByName() throws IOException {
+        final File album = createDirectory(mRoot, "album");
+        for (int i = 0; i < 200; i++) {
+            createFile(album, (199 - i) + ".mp3", 10);
+        }
+        final long albumModified = album.lastModified();
+
+        final Set<String> database = new HashSet<>();
+        final ScanManifest first = walk(null, database, new ArrayList<>());
+
+        final File changed = createFile(album, "42.mp3", 20);
+        album.setLastModified(albumModified - 10000);
+
+        final List<String> found = new ArrayList<>();
+        final ScanManifest second = walk(first, database, found);
+
+        assertEquals(Collections.singletonList(changed.getPath()), found);
+
+        final ScanManifest.Diff diff = second.diff(first);
+        assertEquals(Collections.singletonList(changed.getPath()), diff.getChangedFiles());
+        assertTrue(diff.getAddedFiles().isEmpty());
+        assertTrue(diff.getRemovedFiles().isEmpty());
+    }
+
+    @Test
+    public void manifestSurvivesSaveAndLoad() throws IOException {
+        createFile(createDirectory(mRoot, "artist/album"), "01.mp3", 10);
+        createFile(createDirectory(mRoot, "hidden"), ".nomedia", 0);
+
+        final ScanManifest manifest = walk(null, new HashSet<>(), new ArrayList<>());
+        final File file = new File(mRoot, "manifest.bin");
+        manifest.save(file);
+
+        final ScanManifest loaded = ScanManifest.load(file);
+        assertEquals(manifest.getDirectories().size(), loaded.getDirectories().size());
+        assertTrue(loaded.diff(manifest).isEmpty());
+
+        final ScanManifest.DirectoryEntry hidden = loaded.getDirectory(new File(mRoot, "hidden").getPath());
+        assertNotNull(hidden);
+        assertTrue(hidden.isNoMedia());
+    }
+
+    /**
+     * Walks the test directory and adds all found files to the database.
+     */
+    private ScanManifest walk(final ScanManifest previous, final Set<String> database, final List<String> found) {
+        final MediaFileWalker walker = new MediaFileWalker(database, previous, 10, new MediaFileWalker.Listener() {
+            @Override
+            public void onFilesFound(@NonNull List<String> paths) {
+                synchronized (found) {
+                    found.addAll(paths);
+                }
+            }
+
+            @Override
+            public void onWalkFinished() {
+            }
+        });
+        walker.walk(mRoot);
+        database.addAll(found);
+        return walker.getManifest();
+    }
+
+    private static File createDirectory(final File parent, final String name) {
+        final File directory = new File(parent, name);
+        assertTrue(directory.isDirectory() || directory.mkdirs());
+        return directory;
+    }
+
+    private static File createFile(final File directory, final String name, final int size) throws IOException {
+        final File file = new File(directory, name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[size]);
+        }
+        return file;
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
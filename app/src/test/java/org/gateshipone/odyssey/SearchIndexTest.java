@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey;
+
+import static org.junit.Assert.assertEquals;
+
+import org.gateshipone.odyssey.models.TrackModel;
+import org.gateshipone.odyssey.utils.SearchIndex;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SearchIndexTest {
+
+    private static final int LIBRARY_SIZE = 100000;
+
+    private static final String[] WORDS = {"love", "night", "dance", "heart", "fire", "rain", "dream", "blue",
+            "road", "home", "light", "song", "café", "señor", "über", "naïve", "river", "stone", "gold", "wild"};
+
+    @Test
+    public void ignoresCaseAndAccents() {
+        List<TrackModel> tracks = createTracks("Café del Mar", "CAFE", "Señorita", "Über Alles", "Nothing");
+        SearchIndex<TrackModel> searchIndex = new SearchIndex<>(tracks, TrackModel::getTrackName);
+
+        assertEquals(Arrays.asList(tracks.get(0), tracks.get(1)), searchIndex.search("cafe"));
+        assertEquals(Arrays.asList(tracks.get(0), tracks.get(1)), searchIndex.search("CAFÉ"));
+        assertEquals(Arrays.asList(tracks.get(2)), searchIndex.search("senor"));
+        assertEquals(Arrays.asList(tracks.get(3)), searchIndex.search("uber"));
+        assertEquals(Arrays.asList(tracks.get(4)), searchIndex.search("th"));
+        assertEquals(tracks, searchIndex.search(""));
+    }
+
+    @Test
+    public void matchesLinearScan() {
+        List<TrackModel> tracks = createLibrary(5000, new Random(1));
+        SearchIndex<TrackModel> searchIndex = new SearchIndex<>(tracks, TrackModel::getTrackName);
+
+        // typing, deleting and retyping queries to use the incremental and the full search
+        String[] queries = {"l", "lo", "lov", "love", "love ", "love n", "lov", "ni", "nig", "night",
+                "e", "ea", "ear", "heart", "hea", "cafe", "café", "cafe s", "xyz", "xyzzy", "ve", "ve ", "e d"};
+        for (String query : queries) {
+            assertEquals("query: " + query, linearScan(tracks, query), searchIndex.search(query));
+        }
+    }
+
+    @Test
+    public void searchLargeLibrary() {
+        Random random = new Random(2);
+        List<TrackModel> tracks = createLibrary(LIBRARY_SIZE, random);
+        AtomicInteger termRequests = new AtomicInteger();
+        SearchIndex<TrackModel> searchIndex = new SearchIndex<>(tracks, track -> {
+            termRequests.incrementAndGet();
+            return track.getTrackName();
+        });
+
+        List<String> normalizedTerms = new ArrayList<>(LIBRARY_SIZE);
+        for (TrackModel track : tracks) {
+            normalizedTerms.add(SearchIndex.normalize(track.getTrackName()));
+        }
+
+        for (int i = 0; i < 20; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+            // simulate typing the query
+            for (int length = 1; length <= word.length(); length++) {
+                String query = word.substring(0, length);
+                assertEquals("query: " + query, linearScanPositions(normalizedTerms, query), toList(searchIndex.searchPositions(query)));
+            }
+        }
+
+        // the search terms are only read once to build the index
+        assertEquals(LIBRARY_SIZE, termRequests.get());
+    }
+
+    private static List<Integer> linearScanPositions(List<String> normalizedTerms, String query) {
+        String normalizedQuery = SearchIndex.normalize(query);
+        List<Integer> result = new ArrayList<>();
+        for (int position = 0; position < normalizedTerms.size(); position++) {
+            if (normalizedTerms.get(position).contains(normalizedQuery)) {
+                result.add(position);
+            }
+        }
+        return result;
+    }
+
+    private static List<Integer> toList(int[] positions) {
+        List<Integer> result = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            result.add(position);
+        }
+        return result;
+    }
+
+    private static List<TrackModel> linearScan(List<TrackModel> tracks, String query) {
+        String normalizedQuery = SearchIndex.normalize(query);
+        List<TrackModel> result = new ArrayList<>();
+        for (TrackModel track : tracks) {
+            if (SearchIndex.normalize(track.getTrackName()).contains(normalizedQuery)) {
+                result.add(track);
+            }
+        }
+        return result;
+    }
+
+    private static List<TrackModel> createLibrary(int size, Random random) {
+        List<TrackModel> tracks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String name = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+            if (random.nextBoolean()) {
+                name = name.toUpperCase(Locale.ROOT);
+            }
+            tracks.add(TestTracks.createTrack(name, i));
+        }
+        return tracks;
+    }
+
+    private static List<TrackModel> createTracks(String... names) {
+        List<TrackModel> tracks = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            tracks.add(TestTracks.createTrack(names[i], i));
+        }
+        return tracks;
+    }
+}
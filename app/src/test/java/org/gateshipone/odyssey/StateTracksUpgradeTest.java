@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import org.gateshipone.odyssey.playbackservice.storage.StateTracksTable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Checks the upgrade of the state tracks table of version 24 or older to explicit track
+ * positions and the index over the bookmark timestamp.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 30)
+public class StateTracksUpgradeTest {
+
+    private static final int BOOKMARKS = 300;
+
+    private static final int TRACKS_PER_BOOKMARK = 20;
+
+    private SQLiteDatabase mDatabase;
+
+    @Before
+    public void createDatabase() {
+        // a private in-memory database with the scheme of version 24
+        mDatabase = SQLiteDatabase.create(null);
+        mDatabase.execSQL("create table " + StateTracksTable.TABLE_NAME + "(" +
+                StateTracksTable.COLUMN_ID + " integer primary key autoincrement," +
+                StateTracksTable.COLUMN_TRACK_NUMBER + " integer," +
+                StateTracksTable.COLUMN_TRACK_TITLE + " text," +
+                StateTracksTable.COLUMN_TRACK_ALBUM + " text," +
+                StateTracksTable.COLUMN_TRACK_ALBUM_ID + " integer," +
+                StateTracksTable.COLUMN_TRACK_DURATION + " integer," +
+                StateTracksTable.COLUMN_TRACK_ARTIST + " text," +
+                StateTracksTable.COLUMN_TRACK_ARTIST_ID + " integer," +
+                StateTracksTable.COLUMN_TRACK_URL + " text," +
+                StateTracksTable.COLUMN_TRACK_ID + " integer," +
+                StateTracksTable.COLUMN_BOOKMARK_TIMESTAMP + " integer" +
+                ");");
+    }
+
+    @After
+    public void closeDatabase() {
+        mDatabase.close();
+    }
+
+    @Test
+    public void upgradeSetsPositions() {
+        fillBookmarks();
+
+        StateTracksTable.upgradeToIndexedPositions(mDatabase);
+
+        for (int bookmark = 1; bookmark <= BOOKMARKS; bookmark++) {
+            final Cursor cursor = mDatabase.query(
+                    StateTracksTable.TABLE_NAME,
+                    new String[]{StateTracksTable.COLUMN_TRACK_NUMBER, StateTracksTable.COLUMN_TRACK_POSITION},
+                    StateTracksTable.COLUMN_BOOKMARK_TIMESTAMP + "=?",
+                    new String[]{Integer.toString(bookmark)},
+                    "",
+                    "",
+                    StateTracksTable.COLUMN_TRACK_POSITION);
+
+            assertEquals(TRACKS_PER_BOOKMARK, cursor.getCount());
+            int position = 0;
+            while (cursor.moveToNext()) {
+                // the track number was stored in insertion order
+                assertEquals(position, cursor.getInt(0));
+                assertEquals(position, cursor.getInt(1));
+                position++;
+            }
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void resumeUsesIndex() {
+        fillBookmarks();
+
+        StateTracksTable.upgradeToIndexedPositions(mDatabase);
+
+        final Cursor cursor = mDatabase.rawQuery("EXPLAIN QUERY PLAN SELECT * FROM " + StateTracksTable.TABLE_NAME +
+                " WHERE " + StateTracksTable.COLUMN_BOOKMARK_TIMESTAMP + "=? ORDER BY " + StateTracksTable.COLUMN_TRACK_POSITION, new String[]{"1"});
+
+        final StringBuilder plan = new StringBuilder();
+        while (cursor.moveToNext()) {
+            plan.append(cursor.getString(cursor.getColumnIndexOrThrow("detail"))).append('\n');
+        }
+        cursor.close();
+
+        assertTrue(plan.toString(), plan.indexOf(StateTracksTable.INDEX_BOOKMARK_POSITION) >= 0);
+        assertTrue(plan.toString(), plan.indexOf("TEMP B-TREE") < 0);
+    }
+
+    /**
+     * Inserts the tracks of all bookmarks in the order of their positions, one bookmark after the
+     * other as older versions saved them.
+     */
+    private void fillBookmarks() {
+        final SQLiteStatement insertStatement = mDatabase.compileStatement("INSERT INTO " + StateTracksTable.TABLE_NAME + " (" +
+                StateTracksTable.COLUMN_TRACK_TITLE + "," +
+                StateTracksTable.COLUMN_TRACK_NUMBER + "," +
+                StateTracksTable.COLUMN_TRACK_URL + "," +
+                StateTracksTable.COLUMN_BOOKMARK_TIMESTAMP +
+                ") VALUES (?,?,?,?)");
+
+        mDatabase.beginTransaction();
+        for (int bookmark = 1; bookmark <= BOOKMARKS; bookmark++) {
+            for (int position = 0; position < TRACKS_PER_BOOKMARK; position++) {
+                insertStatement.bindString(1, "Song " + position);
+                insertStatement.bindLong(2, position);
+                insertStatement.bindString(3, "file:///music/" + bookmark + "/" + position + ".mp3");
+                insertStatement.bindLong(4, bookmark);
+                insertStatement.executeInsert();
+            }
+        }
+        mDatabase.setTransactionSuccessful();
+        mDatabase.endTransaction();
+
+        insertStatement.close();
+    }
+}
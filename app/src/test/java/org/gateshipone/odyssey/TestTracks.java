@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey;
+
+import android.net.Uri;
+
+import org.gateshipone.odyssey.models.TrackModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates queues of tracks for tests. Every artist has {@link #ALBUMS_PER_ARTIST} albums with
+ * {@link #TRACKS_PER_ALBUM} tracks each, the id of a track is its position in the queue.
+ */
+final class TestTracks {
+
+    static final int TRACKS_PER_ALBUM = 10;
+
+    static final int ALBUMS_PER_ARTIST = 4;
+
+    private TestTracks() {
+    }
+
+    static List<TrackModel> createQueue(int size) {
+        final List<TrackModel> tracks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tracks.add(createTrack(i));
+        }
+        return tracks;
+    }
+
+    /**
+     * Creates a track with its own name strings like a track read from a cursor.
+     */
+    static TrackModel createTrack(int i) {
+        return createTrack("Song " + i, i);
+    }
+
+    /**
+     * Creates a track with the given name at the position i of the queue.
+     */
+    static TrackModel createTrack(String name, int i) {
+        return createTrack(name, i, null);
+    }
+
+    /**
+     * Creates a track with a file uri, needs the Robolectric runner.
+     */
+    static TrackModel createFileTrack(int i) {
+        return createTrack("Song " + i, i, Uri.parse("file:///music/" + i + ".mp3"));
+    }
+
+    private static TrackModel createTrack(String name, int i, Uri uri) {
+        final int album = i / TRACKS_PER_ALBUM;
+        final int artist = album / ALBUMS_PER_ARTIST;
+        return new TrackModel(name, "Artist " + artist, artist, "Album " + album, album,
+                180000, i % TRACKS_PER_ALBUM + 1, uri, i);
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.gateshipone.odyssey.models.TrackModel;
+import org.gateshipone.odyssey.playbackservice.TrackQueue;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks the gap buffer of the {@link TrackQueue} against an {@link ArrayList} and the shared
+ * names of a large queue.
+ */
+public class TrackQueueTest {
+
+    private static final int OPERATIONS = 20000;
+
+    private static final int LARGE_QUEUE = 100000;
+
+    @Test
+    public void randomOperations() {
+        final Random random = new Random(42);
+        final List<TrackModel> expected = new ArrayList<>();
+        final TrackQueue queue = new TrackQueue();
+
+        int nextId = 0;
+        for (int i = 0; i < OPERATIONS; i++) {
+            final int size = expected.size();
+            // insertions and removals are mostly around a moving position like the playing track
+            final int position = size == 0 ? 0 : Math.min(size, Math.max(0, size / 2 + random.nextInt(7) - 3));
+
+            switch (random.nextInt(8)) {
+                case 0:
+                case 1: {
+                    final TrackModel track = random.nextInt(20) == 0 ? null : TestTracks.createTrack(nextId++);
+                    expected.add(position, track);
+                    queue.add(position, track);
+                    break;
+                }
+                case 2: {
+                    final TrackModel track = TestTracks.createTrack(nextId++);
+                    expected.add(track);
+                    queue.add(track);
+                    break;
+                }
+                case 3: {
+                    final List<TrackModel> tracks = new ArrayList<>();
+                    for (int j = random.nextInt(30); j > 0; j--) {
+                        tracks.add(TestTracks.createTrack(nextId++));
+                    }
+                    expected.addAll(position, tracks);
+                    queue.addAll(position, tracks);
+                    break;
+                }
+                case 4:
+                case 5:
+                    if (position < size) {
+                        assertTrack(expected.remove(position), queue.remove(position));
+                    }
+                    break;
+                case 6:
+                    if (size > 0) {
+                        final int index = random.nextInt(size);
+                        final TrackModel track = TestTracks.createTrack(nextId++);
+                        assertTrack(expected.set(index, track), queue.set(index, track));
+                    }
+                    break;
+                case 7: {
+                    final int end = Math.min(size, position + random.nextInt(5));
+                    expected.subList(position, end).clear();
+                    queue.subList(position, end).clear();
+                    break;
+                }
+            }
+
+            assertEquals(expected.size(), queue.size());
+        }
+
+        assertQueue(expected, queue);
+
+        // removal with the iterator like in dequeueTracks
+        final Iterator<TrackModel> expectedIterator = expected.listIterator(expected.size() / 3);
+        final Iterator<TrackModel> iterator = queue.listIterator(queue.size() / 3);
+        for (int i = 0; i < 100 && expectedIterator.hasNext(); i++) {
+            assertTrack(expectedIterator.next(), iterator.next());
+            expectedIterator.remove();
+            iterator.remove();
+        }
+
+        assertQueue(expected, queue);
+        assertEquals(expected.indexOf(null), queue.indexOf(null));
+
+        queue.clear();
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void shuffleKeepsTracks() {
+        final TrackQueue queue = new TrackQueue(TestTracks.createQueue(1000));
+        // move the gap into the middle of the queue
+        queue.add(500, TestTracks.createTrack(1000));
+
+        queue.shuffle(new Random(42));
+
+        final long[] ids = new long[queue.size()];
+        for (int i = 0; i < queue.size(); i++) {
+            final TrackModel track = queue.get(i);
+            ids[i] = track.getTrackId();
+            assertEquals("Album " + (ids[i] / TestTracks.TRACKS_PER_ALBUM), track.getTrackAlbumName());
+        }
+        Arrays.sort(ids);
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(i, ids[i]);
+        }
+    }
+
+    @Test
+    public void namesArePooled() {
+        final TrackQueue queue = new TrackQueue(TestTracks.createQueue(LARGE_QUEUE));
+
+        assertEquals(LARGE_QUEUE, queue.size());
+        // every track was created with its own name strings, the queue keeps one string per name
+        for (int i = 1; i < LARGE_QUEUE; i++) {
+            final TrackModel previous = queue.get(i - 1);
+            final TrackModel track = queue.get(i);
+            if (previous.getTrackAlbumId() == track.getTrackAlbumId()) {
+                assertSame(previous.getTrackAlbumName(), track.getTrackAlbumName());
+                assertSame(previous.getTrackArtistName(), track.getTrackArtistName());
+            }
+        }
+    }
+
+    @Test
+    public void setDuration() {
+        final TrackQueue queue = new TrackQueue(TestTracks.createQueue(100));
+        // move the gap into the middle of the queue
+        queue.remove(50);
+
+        queue.get(60).setTrackDuration(1);
+        assertEquals(180000, queue.get(60).getTrackDuration());
+
+        queue.setDuration(60, 240000);
+        assertEquals(240000, queue.get(60).getTrackDuration());
+        assertEquals(61, queue.get(60).getTrackId());
+        assertEquals(180000, queue.get(59).getTrackDuration());
+    }
+
+    @Test
+    public void concurrentReads() throws InterruptedException {
+        final TrackQueue queue = new TrackQueue(TestTracks.createQueue(1000));
+        final Throwable[] failure = new Throwable[1];
+
+        // reads a window like a binder thread while the queue is changed around the gap
+        final Thread reader = new Thread(() -> {
+            try {
+                for (int i = 0; i < OPERATIONS; i++) {
+                    final List<TrackModel> window;
+                    synchronized (queue) {
+                        final int end = Math.min(queue.size(), 100);
+                        window = queue.copyRange(0, end);
+                    }
+                    for (TrackModel track : window) {
+                        assertEquals(180000, track.getTrackDuration());
+                    }
+                }
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        });
+        reader.start();
+
+        for (int i = 0; i < OPERATIONS; i++) {
+            queue.add(i % 50, TestTracks.createTrack(1000 + i));
+            queue.remove((i * 7) % 50);
+        }
+        reader.join();
+
+        assertNull(failure[0]);
+        assertEquals(1000, queue.size());
+    }
+
+    private static void assertQueue(List<TrackModel> expected, TrackQueue queue) {
+        assertEquals(expected.size(), queue.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i) == null, queue.isNull(i));
+            assertTrack(expected.get(i), queue.get(i));
+        }
+    }
+
+    private static void assertTrack(TrackModel expected, TrackModel track) {
+        if (expected == null) {
+            assertNull(track);
+            return;
+        }
+        assertEquals(expected.getTrackId(), track.getTrackId());
+        assertEquals(expected.getTrackName(), track.getTrackName());
+        assertEquals(expected.getTrackArtistName(), track.getTrackArtistName());
+        assertEquals(expected.getTrackAlbumName(), track.getTrackAlbumName());
+        assertEquals(expected.getTrackAlbumId(), track.getTrackAlbumId());
+        assertEquals(expected.getTrackNumber(), track.getTrackNumber());
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2023 Team Gateship-One
+ * (Hendrik Borghorst & Frederik Luetkes)
+ *
+ * The AUTHORS.md file contains a detailed contributors list:
+ * <https://github.com/gateship-one/odyssey/blob/master/AUTHORS.md>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.odyssey;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.gateshipone.odyssey.models.TrackModel;
+import org.gateshipone.odyssey.models.TrackRandomGenerator;
+import org.junit.Test;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Checks the smart shuffle buckets with a large queue. Every track is drawn exactly once per round
+ * and the queue is only read once to fill the buckets, drawing and refilling the buckets does not
+ * touch the queue again.
+ */
+public class TrackRandomGeneratorBucketsTest {
+
+    private static final int QUEUE_SIZE = 40000;
+
+    private static final int ROUNDS = 2;
+
+    @Test
+    public void drawAllTracksArtistsAndAlbum() {
+        drawAllTracks(50);
+    }
+
+    @Test
+    public void drawAllTracksOnlyArtists() {
+        drawAllTracks(100);
+    }
+
+    @Test
+    public void drawAllTracksOnlyAlbums() {
+        drawAllTracks(0);
+    }
+
+    private void drawAllTracks(int intelligenceFactor) {
+        final CountingList queue = new CountingList(TestTracks.createQueue(QUEUE_SIZE));
+
+        final TrackRandomGenerator randomGenerator = new TrackRandomGenerator();
+        randomGenerator.setEnabled(intelligenceFactor);
+        randomGenerator.fillFromList(queue);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            final boolean[] drawn = new boolean[QUEUE_SIZE];
+            for (int i = 0; i < QUEUE_SIZE; i++) {
+                final int trackNumber = randomGenerator.getRandomTrackNumber();
+                assertFalse("Track " + trackNumber + " drawn twice in round " + round, drawn[trackNumber]);
+                drawn[trackNumber] = true;
+            }
+        }
+
+        assertEquals(QUEUE_SIZE, queue.mReads);
+    }
+
+    /**
+     * Counts the reads of the tracks of a queue.
+     */
+    private static class CountingList extends AbstractList<TrackModel> {
+
+        private final List<TrackModel> mTracks;
+
+        private int mReads;
+
+        CountingList(List<TrackModel> tracks) {
+            mTracks = tracks;
+        }
+
+        @Override
+        public TrackModel get(int index) {
+            mReads++;
+            return mTracks.get(index);
+        }
+
+        @Override
+        public int size() {
+            return mTracks.size();
+        }
+    }
+}